@@ -1,15 +1,32 @@
 package de.fzi.dbs.xml.transform;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
 import net.sf.saxon.TransformerFactoryImpl;
 
 import org.apache.log4j.Logger;
 import org.fao.geonet.utils.CachedTransformer;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -22,6 +39,18 @@ import javax.xml.transform.stream.StreamSource;
  * Caching implementation of JAXP transformer factory. This implementation caches templates that
  * were loaded from local files so that consequent calls to local stylesheets require stylesheet
  * reparsing only if stylesheet was changed.
+ *
+ * The cache can be configured with the following system properties:
+ * <ul>
+ * <li><code>geonetwork.xslt.cache.size</code>: maximum number of templates kept in the cache, the
+ * least recently used templates are evicted first (default 2000, 0 or less for no limit).</li>
+ * <li><code>geonetwork.xslt.cache.checkInterval</code>: minimum delay in milliseconds between two
+ * checks of the date of last modification of a stylesheet (default 1000, 0 to check on each call,
+ * a negative value to never check).</li>
+ * <li><code>geonetwork.xslt.cache.watch</code>: if true, templates are invalidated when the file
+ * system reports a change in the folder of the stylesheet instead of checking the date of last
+ * modification (default false).</li>
+ * </ul>
  */
 public class CachingTransformerFactory extends TransformerFactoryImpl implements CachedTransformer {
     /**
@@ -29,18 +58,31 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     protected static final Logger logger =
         Logger.getLogger(CachingTransformerFactory.class);
+
+    public static final String CACHE_SIZE_PROPERTY = "geonetwork.xslt.cache.size";
+    public static final String CHECK_INTERVAL_PROPERTY = "geonetwork.xslt.cache.checkInterval";
+    public static final String WATCH_PROPERTY = "geonetwork.xslt.cache.watch";
+
+    private static final int maxSize = Integer.getInteger(CACHE_SIZE_PROPERTY, 2000);
+    private static final long checkInterval = Long.getLong(CHECK_INTERVAL_PROPERTY, 1000);
+    private static final boolean watch = Boolean.getBoolean(WATCH_PROPERTY);
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
     /**
-     * Active readers count.
-     */
-    static int activeReaders = 0;
-    /**
-     * Active writers count.
+     * Templates cache, the least recently used entries are evicted once the maximum size is reached.
      */
-    static int activeWriters = 0;
+    private static final Cache<String, TemplatesCacheEntry> templatesCache = buildCache();
+    private static final AtomicLong compileTimeNanos = new AtomicLong();
+
     /**
-     * Map to hold templates cache.
+     * Folders registered in the watch service.
      */
-    private static Map<String, TemplatesCacheEntry> templatesCache = new HashMap<String, TemplatesCacheEntry>();
+    private static final Set<Path> watchedDirectories =
+        Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private static WatchService watchService;
 
     /**
      * Clear the stylesheet cache. This is not part of the JAXP TransformerFactoryImpl so users
@@ -48,16 +90,38 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      * broken.
      */
     public void clearCache() {
-        beforeWrite();
-        templatesCache.clear();
-        afterWrite();
+        templatesCache.invalidateAll();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return (int) templatesCache.size();
+    }
+
+    @Override
+    public long getCompileTimeMillis() {
+        return compileTimeNanos.get() / 1000000;
     }
 
     /**
      * Process the source into a Transformer object. If source is a StreamSource with
      * <code>systemID</code> pointing to a file, transformer is produced from a cached templates
-     * object. Cache is done in soft references; cached objects are reloaded, when file's date of
-     * last modification changes.
+     * object. Cached objects are reloaded when file's date of last modification changes.
      *
      * @param source An object that holds a URI, input stream, etc.
      * @return A Transformer object that may be used to perform a transformation in a single thread,
@@ -94,102 +158,127 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     protected Transformer newTransformer(final File file)
         throws TransformerConfigurationException {
+        final String absolutePath = file.getAbsolutePath();
         // Search the cache for the templates entry
-        TemplatesCacheEntry templatesCacheEntry = read(file.getAbsolutePath());
-
-        // If entry found
-        if (templatesCacheEntry != null) {
-            // Check timestamp of modification
-            if (templatesCacheEntry.lastModified
-                < templatesCacheEntry.templatesFile.lastModified())
-                templatesCacheEntry = null;
+        TemplatesCacheEntry templatesCacheEntry = templatesCache.getIfPresent(absolutePath);
+
+        // If entry found, check timestamp of modification
+        if (templatesCacheEntry != null && templatesCacheEntry.isObsolete()) {
+            templatesCache.asMap().remove(absolutePath, templatesCacheEntry);
+            templatesCacheEntry = null;
         }
         // If no templatesEntry is found or this entry was obsolete
         if (templatesCacheEntry == null) {
-            //System.out.println("Loading transformation [" + file.getAbsolutePath() + "].");
+            misses.incrementAndGet();
             // If this file does not exists, throw the exception
             if (!file.exists()) {
                 throw new TransformerConfigurationException(
                     "Requested transformation ["
-                        + file.getAbsolutePath()
+                        + absolutePath
                         + "] does not exist.");
             }
 
             // Create new cache entry
+            long start = System.nanoTime();
             templatesCacheEntry =
                 new TemplatesCacheEntry(newTemplates(new StreamSource(file)), file);
+            compileTimeNanos.addAndGet(System.nanoTime() - start);
 
             // Save this entry to the cache
-            write(file.getAbsolutePath(), templatesCacheEntry);
+            templatesCache.put(absolutePath, templatesCacheEntry);
+            if (watch) {
+                watch(file);
+            }
         } else {
-            //System.out.println("Using cached transformation [" + file.getAbsolutePath() + "].");
+            hits.incrementAndGet();
         }
         return templatesCacheEntry.templates.newTransformer();
     }
 
-    /**
-     * Returns a templates cache entry for the specified absolute path.
-     *
-     * @param absolutePath absolute path of the entry.
-     * @return Templates cache entry for the specified path.
-     */
-    protected TemplatesCacheEntry read(String absolutePath) {
-        beforeRead();
-        final TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
-        afterRead();
-        return templatesCacheEntry;
-    }
-
-    /**
-     * Saves templates cache entry for the specified absolute path.
-     *
-     * @param absolutePath        absolute path of the entry.
-     * @param templatesCacheEntry templates cache entry to save.
-     */
-    protected void write(String absolutePath, TemplatesCacheEntry templatesCacheEntry) {
-        beforeWrite();
-        templatesCache.put(absolutePath, templatesCacheEntry);
-        afterWrite();
+    private static Cache<String, TemplatesCacheEntry> buildCache() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (maxSize > 0) {
+            builder.maximumSize(maxSize);
+        }
+        return builder.removalListener(new RemovalListener<String, TemplatesCacheEntry>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, TemplatesCacheEntry> notification) {
+                if (notification.getCause() == RemovalCause.SIZE) {
+                    evictions.incrementAndGet();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Evicted transformation [" + notification.getKey() + "] from the cache.");
+                    }
+                }
+            }
+        }).build();
     }
 
     /**
-     * Invoked just before reading, waits until reading is allowed.
+     * Register the folder of a stylesheet in the watch service.
      */
-    protected synchronized void beforeRead() {
-        while (activeWriters > 0)
-            try {
-                wait();
-            } catch (InterruptedException iex) {
-            }
-        ++activeReaders;
+    private static void watch(File file) {
+        Path dir = file.getAbsoluteFile().toPath().getParent();
+        if (dir == null || watchedDirectories.contains(dir)) {
+            return;
+        }
+        try {
+            getWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.add(dir);
+        } catch (IOException e) {
+            logger.warn("Unable to watch folder [" + dir + "] for stylesheet changes: " + e.getMessage());
+        }
     }
 
-    /**
-     * Invoked just after reading.
-     */
-    protected synchronized void afterRead() {
-        --activeReaders;
-        notifyAll();
+    private static synchronized WatchService getWatchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    processWatchEvents();
+                }
+            }, "xslt-cache-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        return watchService;
     }
 
     /**
-     * Invoked just before writing, waits until writing is allowed.
+     * Invalidate the templates of the stylesheets reported as changed by the watch service.
      */
-    protected synchronized void beforeWrite() {
-        while (activeReaders > 0 || activeWriters > 0)
+    private static void processWatchEvents() {
+        while (true) {
+            WatchKey key;
             try {
-                wait();
-            } catch (InterruptedException iex) {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
             }
-        ++activeWriters;
-    }
-
-    /**
-     * Invoked just after writing.
-     */
-    protected synchronized void afterWrite() {
-        --activeWriters;
-        notifyAll();
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    templatesCache.invalidateAll();
+                } else {
+                    String changed = dir.resolve((Path) event.context()).toAbsolutePath().toString();
+                    if (templatesCache.asMap().remove(changed) != null && logger.isDebugEnabled()) {
+                        logger.debug("Transformation [" + changed + "] changed, removed from the cache.");
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(dir);
+                // The folder is not accessible anymore, drop its templates
+                Iterator<String> iterator = templatesCache.asMap().keySet().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().startsWith(dir.toAbsolutePath().toString())) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -199,17 +288,22 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
         /**
          * When was the cached entry last modified.
          */
-        private long lastModified;
+        private final long lastModified;
 
         /**
          * Cached templates object.
          */
-        private Templates templates;
+        private final Templates templates;
 
         /**
          * Templates file object.
          */
-        private File templatesFile;
+        private final File templatesFile;
+
+        /**
+         * When was the date of last modification of the file last checked (nano time).
+         */
+        private volatile long lastChecked;
 
         /**
          * Constructs a new cache entry.
@@ -221,6 +315,23 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
             this.templates = templates;
             this.templatesFile = templatesFile;
             this.lastModified = templatesFile.lastModified();
+            this.lastChecked = System.nanoTime();
+        }
+
+        /**
+         * Check (if the check interval is elapsed) if the file was modified since the templates
+         * were compiled.
+         */
+        private boolean isObsolete() {
+            if (watch || checkInterval < 0) {
+                return false;
+            }
+            long now = System.nanoTime();
+            if (checkInterval > 0 && now - lastChecked < checkInterval * 1000000) {
+                return false;
+            }
+            lastChecked = now;
+            return lastModified < templatesFile.lastModified();
         }
     }
 }
@@ -28,4 +28,29 @@ package org.fao.geonet.utils;
  */
 public interface CachedTransformer {
     void clearCache();
+
+    /**
+     * @return the number of transformers created from cached templates.
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of transformers for which templates had to be compiled.
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the number of templates removed from the cache to keep it under its maximum size.
+     */
+    long getCacheEvictions();
+
+    /**
+     * @return the number of templates in the cache.
+     */
+    int getCacheSize();
+
+    /**
+     * @return the total time spent compiling templates.
+     */
+    long getCompileTimeMillis();
 }
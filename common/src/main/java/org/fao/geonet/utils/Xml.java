@@ -26,6 +26,8 @@ package org.fao.geonet.utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.sf.json.JSON;
 import net.sf.json.xml.XMLSerializer;
 import net.sf.saxon.Configuration;
@@ -72,8 +74,10 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamResult;
@@ -106,13 +110,17 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -128,6 +136,22 @@ public final class Xml {
     public static final Namespace xsiNS = Namespace.getNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
     public static final NioPathAwareEntityResolver PATH_RESOLVER = new NioPathAwareEntityResolver();
 
+    /**
+     * Compiled schemas by xsd file. {@link Schema} objects are immutable and thread safe
+     * so they can be shared by concurrent validations.
+     */
+    private static final ConcurrentMap<Path, Schema> SCHEMA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Schemas loading grammars from schemaLocation hints by schema (resolver) name and hints. A
+     * schema keeps the grammars it loaded by namespace, so documents with different hints for a
+     * namespace must not share it. The hints come from the documents, so the number of schemas
+     * is bounded.
+     */
+    private static final Cache<String, Schema> HINTS_SCHEMA_CACHE = CacheBuilder.newBuilder()
+        .maximumSize(100)
+        .build();
+
     //--------------------------------------------------------------------------
 
     /**
@@ -532,6 +556,54 @@ public final class Xml {
     }
     //--------------------------------------------------------------------------
 
+    /**
+     * Compiles stylesheets in advance so that they are ready in the cache of the stylesheet
+     * transformer factory. This is a no-op for transformer factories which do not cache
+     * stylesheets. Stylesheets which can not be compiled on their own (eg. only included by
+     * other stylesheets) are ignored.
+     *
+     * A dedicated factory instance is used (the templates cache is shared by all the instances)
+     * so that the configuration of the factory used by requests is not changed while they run.
+     */
+    public static void preloadStylesheets(Collection<Path> styleSheetPaths) {
+        TransformerFactory transFact;
+        try {
+            TransformerFactory sharedFactory = TransformerFactoryFactory.getTransformerFactory();
+            if (!(sharedFactory instanceof CachedTransformer)) {
+                return;
+            }
+            transFact = TransformerFactory.newInstance(sharedFactory.getClass().getName(),
+                sharedFactory.getClass().getClassLoader());
+        } catch (TransformerConfigurationException | TransformerFactoryConfigurationError e) {
+            Log.warning(Log.ENGINE, "Unable to get transformer factory to preload stylesheets: " + e.getMessage());
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int nbLoaded = 0;
+        for (Path styleSheetPath : styleSheetPaths) {
+            NioPathHolder.setBase(styleSheetPath);
+            try {
+                transFact.setURIResolver(new JeevesURIResolver());
+                try {
+                    transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
+                    transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
+                    transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, false);
+                    transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
+                } catch (IllegalArgumentException e) {
+                    Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
+                }
+                transFact.newTransformer(new StreamSource(styleSheetPath.toUri().toASCIIString()));
+                nbLoaded++;
+            } catch (Exception e) {
+                Log.debug(Log.ENGINE, "Stylesheet " + styleSheetPath + " not preloaded: " + e.getMessage());
+            }
+        }
+        Log.info(Log.ENGINE, String.format("%d stylesheets preloaded in %d ms.",
+            nbLoaded, System.currentTimeMillis() - start));
+    }
+
+    //--------------------------------------------------------------------------
+
     /**
      * Transform an xml tree to PDF using XSL-FOP     * putting the result to a stream (uses a
      * stylesheet on disk)
@@ -909,13 +981,13 @@ public final class Xml {
     /**
      * Validates an XML document using the hints in the schemaLocation attribute.
      */
-    public synchronized static void validate(Element xml) throws Exception {
+    public static void validate(Element xml) throws Exception {
         String schemaLoc = xml.getAttributeValue("schemaLocation", xsiNS);
         if (schemaLoc == null || schemaLoc.equals("")) {
             throw new IllegalArgumentException("XML document missing/blank schemaLocation hints - cannot validate");
         }
         XmlErrorHandler eh = new XmlErrorHandler();
-        Schema schema = factory().newSchema();
+        Schema schema = getSchemaFromHints(null, xml);
         Element xsdErrors = validateRealGuts(schema, xml, eh, null);
         if (xsdErrors != null) {
             throw new XSDValidationErrorEx("XSD Validation error(s):\n" + getString(xsdErrors), xsdErrors);
@@ -941,7 +1013,7 @@ public final class Xml {
      * Validates an xml document with respect to schemaLocation hints using supplied error handler.
      */
     public static Element validateInfo(Element xml, XmlErrorHandler eh, String schemaName) throws Exception {
-        Schema schema = factory().newSchema();
+        Schema schema = getSchemaFromHints(schemaName, xml);
         return validateRealGuts(schema, xml, eh, schemaName);
     }
 
@@ -958,7 +1030,51 @@ public final class Xml {
 
     //---------------------------------------------------------------------------
 
+    /**
+     * Get the compiled schema of an xsd file. Compiled schemas are cached
+     * until {@link #clearSchemaCache()} is called.
+     */
     private static Schema getSchemaFromPath(Path schemaPath) throws SAXException {
+        Schema schema = SCHEMA_CACHE.get(schemaPath);
+        if (schema == null) {
+            schema = compileSchema(schemaPath);
+            Schema previous = SCHEMA_CACHE.putIfAbsent(schemaPath, schema);
+            if (previous != null) {
+                schema = previous;
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Get the schema loading grammars from the schemaLocation hints of the documents.
+     * One schema is used per resolver (ie. metadata schema) and hints of the root element so
+     * that grammars loaded by a validation are reused by the next ones with the same hints.
+     */
+    private static Schema getSchemaFromHints(String schemaName, Element xml) throws SAXException {
+        String key = (schemaName == null ? "" : schemaName)
+            + "|" + Objects.toString(xml.getAttributeValue("schemaLocation", xsiNS), "")
+            + "|" + Objects.toString(xml.getAttributeValue("noNamespaceSchemaLocation", xsiNS), "");
+        Schema schema = HINTS_SCHEMA_CACHE.getIfPresent(key);
+        if (schema == null) {
+            // concurrent validations may both create a schema, the last one is kept
+            schema = factory().newSchema();
+            HINTS_SCHEMA_CACHE.put(key, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * Remove all compiled schemas from the cache, eg. when a schema plugin is added,
+     * updated or removed. As schemas may import xsd files from other schemas, all
+     * schemas are removed.
+     */
+    public static void clearSchemaCache() {
+        SCHEMA_CACHE.clear();
+        HINTS_SCHEMA_CACHE.invalidateAll();
+    }
+
+    private static Schema compileSchema(Path schemaPath) throws SAXException {
         PathStreamSource schemaFile = new PathStreamSource(schemaPath);
         schemaFile.setSystemId(schemaPath.toUri().toASCIIString());
 
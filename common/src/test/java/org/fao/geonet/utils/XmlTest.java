@@ -29,13 +29,16 @@ import com.google.common.jimfs.Jimfs;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.Constants;
 import org.fao.geonet.SystemInfo;
+import org.fao.geonet.exceptions.XSDValidationErrorEx;
 import org.fao.geonet.utils.debug.OpenResourceTracker;
 import org.jdom.Attribute;
 import org.jdom.Element;
 import org.jdom.Namespace;
 import org.jdom.Text;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.context.support.GenericApplicationContext;
 
 import java.io.IOException;
@@ -52,6 +55,7 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -63,6 +67,9 @@ public class XmlTest {
     private static final List<Namespace> NAMESPACES = Arrays.asList(GMD, GCO);
     public static Element TEST_METADATA;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUp() throws Exception {
         TEST_METADATA = Xml.loadFile(XmlTest.class.getResource("xmltest/sampleXml.xml"));
@@ -80,6 +87,63 @@ public class XmlTest {
         assertXsdFile(element);
     }
 
+    @Test
+    public void testValidateWithCachedSchema() throws Exception {
+        Path xsd = folder.newFile("test.xsd").toPath();
+        writeXsd(xsd, "xs:string");
+        Element valid = Xml.loadString("<value>text</value>", false);
+
+        Xml.validate(xsd, valid);
+        // Uses the cached schema
+        Xml.validate(xsd, valid);
+
+        // The cached schema is only replaced when the cache is cleared
+        writeXsd(xsd, "xs:integer");
+        Xml.validate(xsd, valid);
+        Xml.clearSchemaCache();
+        try {
+            Xml.validate(xsd, valid);
+            fail("Expected a validation error with the new schema");
+        } catch (XSDValidationErrorEx e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testValidateWithDifferentHintsForANamespace() throws Exception {
+        Path stringXsd = folder.newFile("string.xsd").toPath();
+        Path integerXsd = folder.newFile("integer.xsd").toPath();
+        writeXsd(stringXsd, "urn:test", "xs:string");
+        writeXsd(integerXsd, "urn:test", "xs:integer");
+
+        Xml.validate(withHint(stringXsd, "text"));
+        // The grammar loaded for the namespace with the first hint is not reused
+        try {
+            Xml.validate(withHint(integerXsd, "text"));
+            fail("Expected a validation error with the schema of the hint");
+        } catch (XSDValidationErrorEx e) {
+            // expected
+        }
+        Xml.validate(withHint(integerXsd, "1"));
+    }
+
+    private static Element withHint(Path xsd, String text) throws Exception {
+        return Xml.loadString("<t:value xmlns:t=\"urn:test\" " +
+            "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
+            "xsi:schemaLocation=\"urn:test " + xsd.toUri() + "\">" + text + "</t:value>", false);
+    }
+
+    private static void writeXsd(Path xsd, String targetNamespace, String type) throws IOException {
+        Files.write(xsd, ("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" " +
+            "targetNamespace=\"" + targetNamespace + "\" elementFormDefault=\"qualified\">" +
+            "<xs:element name=\"value\" type=\"" + type + "\"/></xs:schema>").getBytes(Constants.CHARSET));
+    }
+
+    private static void writeXsd(Path xsd, String type) throws IOException {
+        Files.write(xsd, ("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+            "<xs:element name=\"value\" type=\"" + type + "\"/></xs:schema>").getBytes(Constants.CHARSET));
+    }
+
     @Test
     public void testLoadString() throws Exception {
         Path path = Paths.get(XmlTest.class.getResource("xmltest/sampleXml.xml").toURI());
@@ -27,6 +27,7 @@ import java.io.Closeable;
 import java.util.Objects;
 import javax.servlet.http.HttpServletRequest;
 import jeeves.component.ProfileManager;
+import jeeves.interfaces.StreamedResponse;
 import jeeves.server.UserSession;
 import jeeves.server.dispatchers.ServiceManager;
 import jeeves.server.local.LocalServiceRequest;
@@ -39,6 +40,7 @@ import jeeves.transaction.TransactionTask;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.Logger;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.kernel.UserPrivileges;
 import org.fao.geonet.utils.Log;
 import org.jdom.Element;
 import org.springframework.context.ApplicationContext;
@@ -216,6 +218,18 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
             warning("Shared service context \""+_service+"\"  context is shared, and should not be cleared");
         }
 
+        /**
+         * The shared context is used by long running background processes, privileges are never cached.
+         */
+        @Override
+        public UserPrivileges getUserPrivileges() {
+            return null;
+        }
+
+        @Override
+        public void setUserPrivileges(UserPrivileges privileges) {
+        }
+
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder("AppHandlerServiceContext ");
@@ -270,6 +284,14 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
      * @see #_responseHeaders
      */
     protected Integer _statusCode;
+    /**
+     * Binary response written directly to the output of a file service.
+     */
+    protected StreamedResponse _streamedResponse;
+    /**
+     * Privileges of the user resolved by the AccessManager during the request.
+     */
+    protected volatile UserPrivileges _userPrivileges;
 
     /**
      * Context for service execution.
@@ -541,6 +563,8 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
             this._responseHeaders = null;
             this._servlet = null;
             this._userSession = null;
+            this._userPrivileges = null;
+            this._streamedResponse = null;
         }
         else {
             debug("Service context unexpectedly cleared twice, previously cleared by "+deAllocation.getStackTrace()[1]);
@@ -612,6 +636,7 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
      */
     public void setIpAddress(final String address) {
         _ipAddress = address;
+        _userPrivileges = null;
     }
 
     public Path getUploadDir() {
@@ -639,6 +664,19 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
 
     public void setUserSession(final UserSession session) {
         _userSession = session;
+        _userPrivileges = null;
+    }
+
+    /**
+     * Privileges of the user cached by the {@link org.fao.geonet.kernel.AccessManager}, or null if
+     * not resolved yet or if privileges must not be cached for this context.
+     */
+    public UserPrivileges getUserPrivileges() {
+        return _userPrivileges;
+    }
+
+    public void setUserPrivileges(UserPrivileges privileges) {
+        _userPrivileges = privileges;
     }
 
     /**
@@ -707,6 +745,21 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
         }
     }
 
+    /**
+     * Run the callback once the servlet is initialized instead of polling {@link #isServletInitialized()}.
+     * The callback is run immediately in the calling thread if the servlet is already initialized
+     * (or if Jeeves is not running in a servlet container), otherwise by the thread initializing the servlet.
+     *
+     * @param callback callback to run, should hand over any long running work to another thread
+     */
+    public void runWhenServletInitialized(final Runnable callback) {
+        if (_servlet != null) {
+            _servlet.runWhenInitialized(callback);
+        } else {
+            callback.run();
+        }
+    }
+
     //--------------------------------------------------------------------------
 
     public void setLogger(final Logger l) {
@@ -813,6 +866,17 @@ public class ServiceContext extends BasicContext implements AutoCloseable  {
         this._statusCode = statusCode;
     }
 
+    public StreamedResponse getStreamedResponse() {
+        return _streamedResponse;
+    }
+
+    /**
+     * Stream the response of a service with a file output instead of returning a file.
+     */
+    public void setStreamedResponse(StreamedResponse streamedResponse) {
+        this._streamedResponse = streamedResponse;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("ServiceContext ");
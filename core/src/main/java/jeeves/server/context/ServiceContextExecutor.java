@@ -0,0 +1,306 @@
+//=============================================================================
+//===	Copyright (C) 2001-2005 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This library is free software; you can redistribute it and/or
+//===	modify it under the terms of the GNU Lesser General Public
+//===	License as published by the Free Software Foundation; either
+//===	version 2.1 of the License, or (at your option) any later version.
+//===
+//===	This library is distributed in the hope that it will be useful,
+//===	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//===	Lesser General Public License for more details.
+//===
+//===	You should have received a copy of the GNU Lesser General Public
+//===	License along with this library; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package jeeves.server.context;
+
+import jeeves.server.UserSession;
+import jeeves.server.dispatchers.ServiceManager;
+
+import org.fao.geonet.utils.Log;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//=============================================================================
+
+/**
+ * Thread pool for background tasks which need a service context.
+ * <p>
+ * Each worker thread creates its service context (and user session) once and keeps it set as thread
+ * local for its whole life instead of each task building and registering its own context. Tasks get
+ * the context with {@link ServiceContext#get()}. The user session is cleared after each task so that
+ * an authentication does not leak to the next task.
+ * </p>
+ * <p>
+ * Tasks which depend on the current transaction or on the servlet being up are queued by
+ * {@link #executeAfterCommit(Collection)} from transaction and servlet initialization callbacks, so
+ * no thread is kept polling for them.
+ * </p>
+ * <p>
+ * The queue of the pool may be bounded: once it is full, submitting a task blocks until a worker
+ * takes one, so that producers cannot queue work faster than it is done. A worker thread submitting
+ * to its own full pool runs the task itself instead of waiting for a thread which may be itself.
+ * The callbacks of {@link #executeAfterCommit(Collection)} never block: they hand the tasks to a
+ * single feeder thread which queues them in order, so that neither the servlet initialization nor
+ * a committing request waits for a large job to be queued.
+ * </p>
+ * <p>
+ * Tasks implementing {@link DiscardableTask} are notified when they will never be run (the
+ * executor was shut down before they were queued or run).
+ * </p>
+ */
+public class ServiceContextExecutor extends ThreadPoolExecutor {
+    private final String name;
+    private final ServiceContext parent;
+    private final ThreadLocal<ServiceContext> workerContext = new ThreadLocal<ServiceContext>();
+    private final ExecutorService feeder;
+
+    /**
+     * A task which must release what it holds if it is not run.
+     */
+    public interface DiscardableTask extends Runnable {
+        /**
+         * Called instead of {@link #run()} when the task will never be run.
+         */
+        void discarded();
+    }
+
+    /**
+     * @param name    name of the service contexts and prefix of the thread names
+     * @param parent  context providing the application context, base url, language and servlet
+     *                of the worker contexts. It must stay available while the executor is in use.
+     * @param threads number of threads, idle threads are stopped after a minute
+     */
+    public ServiceContextExecutor(final String name, final ServiceContext parent, int threads) {
+        this(name, parent, threads, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param name          name of the service contexts and prefix of the thread names
+     * @param parent        context providing the application context, base url, language and
+     *                      servlet of the worker contexts. It must stay available while the
+     *                      executor is in use.
+     * @param threads       number of threads, idle threads are stopped after a minute
+     * @param queueCapacity maximum number of tasks waiting for a thread, submitting more tasks
+     *                      blocks until one is taken
+     */
+    public ServiceContextExecutor(final String name, final ServiceContext parent, int threads, int queueCapacity) {
+        super(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity));
+        this.name = name;
+        this.parent = parent;
+        setThreadFactory(new WorkerThreadFactory());
+        setRejectedExecutionHandler(new WaitForQueue());
+        allowCoreThreadTimeOut(true);
+        this.feeder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-feeder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Change the number of threads of the pool.
+     */
+    public synchronized void setThreads(int threads) {
+        if (threads > getMaximumPoolSize()) {
+            setMaximumPoolSize(threads);
+            setCorePoolSize(threads);
+        } else if (threads < getMaximumPoolSize()) {
+            setCorePoolSize(threads);
+            setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Queue the tasks once the current transaction (if any) is completed and the servlet is
+     * initialized, so that the tasks see the committed data and a fully started application.
+     * The tasks are queued immediately if there is nothing to wait for.
+     */
+    public void executeAfterCommit(final Collection<? extends Runnable> tasks) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    executeWhenServletInitialized(tasks);
+                }
+            });
+        } else {
+            executeWhenServletInitialized(tasks);
+        }
+    }
+
+    /**
+     * Queue the tasks once the servlet is initialized. The tasks are queued by the feeder thread,
+     * the servlet initialization does not wait for them.
+     */
+    public void executeWhenServletInitialized(Collection<? extends Runnable> tasks) {
+        final List<Runnable> pending = new ArrayList<Runnable>(tasks);
+        parent.runWhenServletInitialized(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    feeder.execute(new Feed(pending));
+                } catch (RejectedExecutionException e) {
+                    Log.warning(Log.SERVICE, "Background tasks not run, " + name + " executor is shut down.");
+                    discard(pending);
+                }
+            }
+        });
+    }
+
+    private static void discard(Collection<? extends Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task instanceof DiscardableTask) {
+                try {
+                    ((DiscardableTask) task).discarded();
+                } catch (RuntimeException e) {
+                    Log.error(Log.SERVICE, "Error releasing a discarded background task", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        feeder.shutdown();
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        discard(feeder.shutdownNow());
+        List<Runnable> notRun = super.shutdownNow();
+        discard(notRun);
+        return notRun;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        ServiceContext context = workerContext.get();
+        // a task may have replaced or removed the thread local context
+        if (context != null && ServiceContext.get() != context) {
+            context.setAsThreadLocal();
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable error) {
+        super.afterExecute(task, error);
+        ServiceContext context = workerContext.get();
+        if (context != null) {
+            context.setService(name);
+            if (context.getUserSession() != null) {
+                context.getUserSession().clear();
+            } else {
+                context.setUserSession(new UserSession());
+            }
+        }
+    }
+
+    /**
+     * Queues tasks from the feeder thread, waiting for room in the queue.
+     */
+    private final class Feed implements DiscardableTask {
+        private final List<Runnable> tasks;
+
+        private Feed(List<Runnable> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    execute(tasks.get(i));
+                } catch (RejectedExecutionException e) {
+                    Log.warning(Log.SERVICE, "Background tasks not run, " + name + " executor is shut down.");
+                    discard(tasks.subList(i, tasks.size()));
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void discarded() {
+            discard(tasks);
+        }
+    }
+
+    /**
+     * Blocks the submitting thread until the queue has room for the task.
+     */
+    private final class WaitForQueue implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException(name + " executor is shut down.");
+            }
+            if (workerContext.get() != null) {
+                // a worker waiting for its own pool could wait forever
+                task.run();
+                return;
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the " + name + " executor queue.", e);
+            }
+        }
+    }
+
+    /**
+     * Creates threads preparing their service context before taking tasks.
+     */
+    private final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable worker) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ServiceManager serviceManager = parent.getBean(ServiceManager.class);
+                    ServiceContext context = serviceManager.createServiceContext(name, parent);
+                    context.setUserSession(new UserSession());
+                    context.setAsThreadLocal();
+                    workerContext.set(context);
+                    try {
+                        worker.run();
+                    } finally {
+                        workerContext.remove();
+                        context.close();
+                    }
+                }
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
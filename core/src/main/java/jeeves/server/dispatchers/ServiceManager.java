@@ -28,6 +28,7 @@ import jeeves.component.ProfileManager;
 import jeeves.constants.ConfigFile;
 import jeeves.constants.Jeeves;
 import jeeves.interfaces.Service;
+import jeeves.interfaces.StreamedResponse;
 import jeeves.monitor.MonitorManager;
 import jeeves.monitor.timer.ServiceManagerGuiServicesTimer;
 import jeeves.monitor.timer.ServiceManagerServicesTimer;
@@ -925,7 +926,17 @@ public class ServiceManager {
 
         else {
             final NodeInfo nodeInfo = context.getBean(NodeInfo.class);
-            if (outPage.isFile()) {
+            final StreamedResponse streamedResponse = context.getStreamedResponse();
+            if (outPage.isFile() && streamedResponse != null) {
+                // the service writes the response itself, no file is created
+                context.setStreamedResponse(null);
+                if (context.getStatusCode() != null) {
+                    ((ServiceRequest) req).setStatusCode(context.getStatusCode());
+                }
+                req.beginStream(streamedResponse.getContentType(), -1, streamedResponse.getContentDisposition(), cache);
+                streamedResponse.write(req.getOutputStream());
+                req.endStream();
+            } else if (outPage.isFile()) {
                 // PDF Output
                 if (outPage.getContentType().equals("application/pdf") && !outPage.getStyleSheet().equals("")) {
 
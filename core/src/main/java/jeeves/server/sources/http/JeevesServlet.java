@@ -40,6 +40,8 @@ import org.fao.geonet.utils.Log;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletContext;
@@ -61,7 +63,11 @@ import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 public class JeevesServlet extends HttpServlet {
     public static final String USER_SESSION_ATTRIBUTE_KEY = Jeeves.Elem.SESSION;
     private static final long serialVersionUID = 1L;
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
+    /**
+     * Callbacks waiting for the end of the initialization.
+     */
+    private final List<Runnable> initializationCallbacks = new ArrayList<Runnable>();
 
     //---------------------------------------------------------------------------
     //---
@@ -80,7 +86,19 @@ public class JeevesServlet extends HttpServlet {
             jeevesAppContext.getBean(JeevesEngine.class).init(pathFinder.getAppPath(), pathFinder.getConfigPath(),
                 pathFinder.getBaseUrl(), this);
 
-            initialized = true;
+            List<Runnable> callbacks;
+            synchronized (initializationCallbacks) {
+                initialized = true;
+                callbacks = new ArrayList<Runnable>(initializationCallbacks);
+                initializationCallbacks.clear();
+            }
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    Log.error(Log.ENGINE, "Error running servlet initialization callback: " + e.getMessage(), e);
+                }
+            }
         } catch (Throwable e) {
             JeevesEngine.handleStartupError(e);
         }
@@ -217,6 +235,21 @@ public class JeevesServlet extends HttpServlet {
     public boolean isInitialized() {
         return initialized;
     }
+
+    /**
+     * Run the callback once the servlet is initialized, immediately (in the calling thread) if it
+     * already is. The callback is run by the thread initializing the servlet so it should only
+     * hand work over to another thread.
+     */
+    public void runWhenInitialized(Runnable callback) {
+        synchronized (initializationCallbacks) {
+            if (!initialized) {
+                initializationCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
 }
 
 //=============================================================================
@@ -23,8 +23,8 @@
 
 package org.fao.geonet.kernel;
 
-import static org.fao.geonet.repository.specification.OperationAllowedSpecs.hasMetadataId;
-import static org.fao.geonet.repository.specification.OperationAllowedSpecs.hasOperation;
+import static org.fao.geonet.repository.specification.OperationAllowedSpecs.hasGroupIdIn;
+import static org.fao.geonet.repository.specification.OperationAllowedSpecs.hasMetadataIdIn;
 import static org.springframework.data.jpa.domain.Specifications.where;
 
 import java.sql.SQLException;
@@ -32,10 +32,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.ApplicationContextHolder;
@@ -45,43 +50,78 @@ import org.fao.geonet.domain.Group;
 import org.fao.geonet.domain.MetadataSourceInfo;
 import org.fao.geonet.domain.Operation;
 import org.fao.geonet.domain.OperationAllowed;
+import org.fao.geonet.domain.OperationAllowedId;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.ReservedGroup;
 import org.fao.geonet.domain.ReservedOperation;
-import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroup;
-import org.fao.geonet.domain.User_;
+import org.fao.geonet.events.group.GroupCreated;
+import org.fao.geonet.events.group.GroupRemoved;
+import org.fao.geonet.events.md.MetadataEvent;
+import org.fao.geonet.events.md.MetadataRemove;
+import org.fao.geonet.events.md.MetadataUpdate;
+import org.fao.geonet.events.md.sharing.MetadataShare;
+import org.fao.geonet.events.setting.SettingsUpdated;
+import org.fao.geonet.events.user.UserEvent;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
+import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.repository.GroupRepository;
-import org.fao.geonet.repository.GroupRepositoryCustom;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.OperationRepository;
-import org.fao.geonet.repository.SettingRepository;
-import org.fao.geonet.repository.SortUtils;
 import org.fao.geonet.repository.UserGroupRepository;
 import org.fao.geonet.repository.UserRepository;
+import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.repository.specification.UserGroupSpecs;
 import org.fao.geonet.utils.Log;
 import org.jdom.Element;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.domain.Specifications;
 
+import com.google.common.collect.Lists;
+
 import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
 
 /**
  * Handles the access to a metadata depending on the metadata/group.
+ *
+ * The groups of the user, the owner and the operations allowed on the records are resolved once
+ * per request and kept in the {@link UserPrivileges} of the service context. They are reloaded
+ * when the privileges of a record or the group memberships change (see {@link
+ * #onApplicationEvent(ApplicationEvent)}).
  */
-public class AccessManager {
+public class AccessManager implements ApplicationListener<ApplicationEvent> {
+
+    /**
+     * Number of counters used to track the modifications of the privileges of the records (a
+     * power of 2). Records sharing a counter are reloaded together.
+     */
+    private static final int RECORD_VERSION_SLOTS = 4096;
+
+    /**
+     * Maximum number of records per query when resolving the privileges of many records.
+     */
+    private static final int MAX_RECORDS_PER_QUERY = 500;
+
+    /**
+     * Incremented when group memberships, user profiles, groups or the intranet settings change.
+     */
+    private final AtomicLong privilegesVersion = new AtomicLong();
+
+    /**
+     * Incremented when the privileges or the owner of a record change.
+     */
+    private final AtomicLongArray recordVersions = new AtomicLongArray(RECORD_VERSION_SLOTS);
 
     @Autowired
-    SettingRepository settingRepository;
+    SettingManager settingManager;
 
     @Autowired
     IMetadataUtils metadataUtils;
@@ -130,9 +170,10 @@ public class AccessManager {
      */
     public Set<Operation> getOperations(ServiceContext context, String mdId, String ip, Collection<Operation> operations) throws Exception {
         Set<Operation> results;
+        Map<Integer, Operation> allOperations = getAllOperations(getPrivileges(context, context.getUserSession(), ip));
         // if user is an administrator OR is the owner of the record then allow all operations
         if (isOwner(context, mdId)) {
-            results = new HashSet<>(operationRepository.findAll());
+            results = new HashSet<>(allOperations.values());
         } else {
             if (operations == null) {
                 results = new HashSet<>(getAllOperations(context, mdId, ip));
@@ -143,13 +184,58 @@ public class AccessManager {
             UserSession us = context.getUserSession();
             if ((us != null) && us.isAuthenticated() &&
                 (us.getProfile() == Profile.Editor || us.getProfile() == Profile.Reviewer)) {
-                results.add(operationRepository.findReservedOperation(ReservedOperation.view));
+                results.add(allOperations.get(ReservedOperation.view.getId()));
             }
         }
 
         return results;
     }
 
+    /**
+     * Returns the operations the user can perform on each record, as {@link
+     * #getOperations(ServiceContext, String, String)} does for one record but with a few queries
+     * for all the records (eg. a page of search results).
+     *
+     * @param context service context
+     * @param mdIds   metadata records to check
+     * @return set of operations available to user by record id, in the order of the ids
+     */
+    public Map<Integer, Set<Operation>> getOperations(ServiceContext context, Collection<Integer> mdIds) throws Exception {
+        UserSession us = context.getUserSession();
+        String ip = context.getIpAddress();
+        UserPrivileges privileges = getPrivileges(context, us, ip);
+        Map<Integer, Operation> allOperations = getAllOperations(privileges);
+
+        Set<Integer> owned = getOwnedRecords(context, privileges, mdIds);
+        List<Integer> notOwned = new ArrayList<>();
+        for (Integer mdId : mdIds) {
+            if (!owned.contains(mdId)) {
+                notOwned.add(mdId);
+            }
+        }
+        Map<Integer, Map<Integer, Set<Integer>>> operationGroups = getOperationGroups(privileges, us, ip, notOwned);
+        boolean canView = isUserAuthenticated(us) &&
+            (us.getProfile() == Profile.Editor || us.getProfile() == Profile.Reviewer);
+
+        Map<Integer, Set<Operation>> results = new LinkedHashMap<>();
+        for (Integer mdId : mdIds) {
+            Set<Operation> operations;
+            if (owned.contains(mdId)) {
+                operations = new HashSet<>(allOperations.values());
+            } else {
+                operations = new HashSet<>();
+                for (Integer operationId : operationGroups.get(mdId).keySet()) {
+                    operations.add(allOperations.get(operationId));
+                }
+                if (canView) {
+                    operations.add(allOperations.get(ReservedOperation.view.getId()));
+                }
+            }
+            results.put(mdId, operations);
+        }
+        return results;
+    }
+
     public Set<String> getOperationNames(ServiceContext context, String mdId, String ip, Collection<Operation> operations) throws Exception {
         Set<String> names = new HashSet<String>();
 
@@ -165,12 +251,12 @@ public class AccessManager {
      */
     public Set<Operation> getAllOperations(ServiceContext context, String mdId, String ip) throws Exception {
         HashSet<Operation> operations = new HashSet<Operation>();
-        Set<Integer> groups = getUserGroups(context.getUserSession(),
-            ip, false);
-        for (OperationAllowed opAllow : operationAllowedRepository.findByMetadataId(mdId)) {
-            if (groups.contains(opAllow.getId().getGroupId())) {
-                operations.add(operationRepository.findOne(opAllow.getId().getOperationId()));
-            }
+        UserSession us = context.getUserSession();
+        UserPrivileges privileges = getPrivileges(context, us, ip);
+        Map<Integer, Operation> allOperations = getAllOperations(privileges);
+        Integer id = Integer.valueOf(mdId);
+        for (Integer operationId : getOperationGroups(privileges, us, ip, Collections.singleton(id)).get(id).keySet()) {
+            operations.add(allOperations.get(operationId));
         }
         return operations;
     }
@@ -181,7 +267,14 @@ public class AccessManager {
      * @param editingGroupsOnly TODO
      */
     public Set<Integer> getUserGroups(UserSession usrSess, String ip, boolean editingGroupsOnly) throws Exception {
-        final ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        UserPrivileges privileges = getPrivileges(getCurrentContext(), usrSess, ip);
+        return new HashSet<>(getUserGroups(privileges, usrSess, ip, editingGroupsOnly));
+    }
+
+    private Set<Integer> getUserGroups(UserPrivileges privileges, UserSession usrSess, String ip, boolean editingGroupsOnly) {
+        if (!editingGroupsOnly && privileges.getGroups() != null) {
+            return privileges.getGroups();
+        }
 
         Set<Integer> hs = new HashSet<Integer>();
 
@@ -200,16 +293,17 @@ public class AccessManager {
                 List<Integer> allGroupIds = groupRepository.findIds();
 
                 hs.addAll(allGroupIds);
+            } else if (editingGroupsOnly) {
+                hs.addAll(getProfileGroups(privileges, usrSess, Profile.Editor));
             } else {
-                Specification<UserGroup> spec = UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt());
-                if (editingGroupsOnly) {
-                    spec = Specifications.where(spec).and(UserGroupSpecs.hasProfile(Profile.Editor));
-                }
-
-                hs.addAll(userGroupRepository.findGroupIds(spec));
+                hs.addAll(userGroupRepository.findGroupIds(UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt())));
             }
         }
-        return hs;
+        Set<Integer> groups = Collections.unmodifiableSet(hs);
+        if (!editingGroupsOnly) {
+            privileges.setGroups(groups);
+        }
+        return groups;
     }
 
     /**
@@ -234,17 +328,28 @@ public class AccessManager {
 
         // get other groups
         if ((usrSess != null) && usrSess.isAuthenticated()) {
-            Specification<UserGroup> spec =
-                UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt());
-            spec = Specifications
-                .where(spec)
-                .and(UserGroupSpecs.hasProfile(Profile.Reviewer));
-
-            hs.addAll(userGroupRepository.findGroupIds(spec));
+            ServiceContext context = getCurrentContext();
+            UserPrivileges privileges = getPrivileges(context, usrSess, context == null ? null : context.getIpAddress());
+            hs.addAll(getProfileGroups(privileges, usrSess, Profile.Reviewer));
         }
         return hs;
     }
 
+    /**
+     * Returns the groups where the (authenticated) user has the profile.
+     */
+    private Set<Integer> getProfileGroups(UserPrivileges privileges, UserSession usrSess, Profile profile) {
+        Set<Integer> groups = privileges.getGroups(profile);
+        if (groups == null) {
+            Specification<UserGroup> spec = Specifications
+                .where(UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt()))
+                .and(UserGroupSpecs.hasProfile(profile));
+            groups = Collections.unmodifiableSet(new HashSet<>(userGroupRepository.findGroupIds(spec)));
+            privileges.setGroups(profile, groups);
+        }
+        return groups;
+    }
+
     /**
      * TODO javadoc.
      *
@@ -326,11 +431,21 @@ public class AccessManager {
      * @param id The metadata internal identifier
      */
     public boolean isOwner(final ServiceContext context, final String id) throws Exception {
-        AbstractMetadata info = metadataUtils.findOne(id);
-        if (info == null)
+        UserSession us = context.getUserSession();
+        if (!isUserAuthenticated(us)) {
             return false;
-        final MetadataSourceInfo sourceInfo = info.getSourceInfo();
-        return isOwner(context, sourceInfo);
+        }
+
+        int metadataId = Integer.parseInt(id);
+        UserPrivileges privileges = getPrivileges(context, us, context.getIpAddress());
+        long recordVersion = getRecordVersion(metadataId);
+        Boolean owner = privileges.isOwner(metadataId, recordVersion);
+        if (owner == null) {
+            AbstractMetadata info = metadataUtils.findOne(id);
+            owner = info != null && isOwner(context, info.getSourceInfo());
+            privileges.setOwner(metadataId, recordVersion, owner);
+        }
+        return owner;
     }
 
     /**
@@ -370,11 +485,98 @@ public class AccessManager {
         if (groupOwner == null) {
             return false;
         }
-        for (Integer userGroup : getReviewerGroups(us)) {
-            if (userGroup == groupOwner.intValue())
-                return true;
+        UserPrivileges privileges = getPrivileges(context, us, context.getIpAddress());
+        return getProfileGroups(privileges, us, Profile.Reviewer).contains(groupOwner);
+    }
+
+    /**
+     * Returns the ids of the records owned by the user (see {@link #isOwner(ServiceContext,
+     * MetadataSourceInfo)}).
+     */
+    private Set<Integer> getOwnedRecords(ServiceContext context, UserPrivileges privileges, Collection<Integer> mdIds) throws Exception {
+        Set<Integer> owned = new HashSet<>();
+        if (!isUserAuthenticated(context.getUserSession())) {
+            return owned;
         }
-        return false;
+
+        Map<Integer, Long> toLoad = new LinkedHashMap<>();
+        for (Integer mdId : mdIds) {
+            long recordVersion = getRecordVersion(mdId);
+            Boolean owner = privileges.isOwner(mdId, recordVersion);
+            if (owner == null) {
+                toLoad.put(mdId, recordVersion);
+            } else if (owner) {
+                owned.add(mdId);
+            }
+        }
+        for (List<Integer> ids : Lists.partition(new ArrayList<>(toLoad.keySet()), MAX_RECORDS_PER_QUERY)) {
+            Map<Integer, MetadataSourceInfo> sourceInfos = metadataUtils.findAllSourceInfo(MetadataSpecs.hasMetadataIdIn(ids));
+            for (Integer mdId : ids) {
+                MetadataSourceInfo sourceInfo = sourceInfos.get(mdId);
+                boolean owner = sourceInfo != null && isOwner(context, sourceInfo);
+                privileges.setOwner(mdId, toLoad.get(mdId), owner);
+                if (owner) {
+                    owned.add(mdId);
+                }
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * Returns for each record the groups of the user allowed to perform each operation (group ids
+     * by operation id).
+     */
+    private Map<Integer, Map<Integer, Set<Integer>>> getOperationGroups(UserPrivileges privileges, UserSession us, String ip,
+                                                                       Collection<Integer> mdIds) {
+        Map<Integer, Map<Integer, Set<Integer>>> results = new HashMap<>();
+        Map<Integer, Long> toLoad = new LinkedHashMap<>();
+        for (Integer mdId : mdIds) {
+            long recordVersion = getRecordVersion(mdId);
+            Map<Integer, Set<Integer>> groupsByOperation = privileges.getOperationGroups(mdId, recordVersion);
+            if (groupsByOperation == null) {
+                toLoad.put(mdId, recordVersion);
+                results.put(mdId, new HashMap<Integer, Set<Integer>>());
+            } else {
+                results.put(mdId, groupsByOperation);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return results;
+        }
+
+        Set<Integer> groups = getUserGroups(privileges, us, ip, false);
+        for (List<Integer> ids : Lists.partition(new ArrayList<>(toLoad.keySet()), MAX_RECORDS_PER_QUERY)) {
+            for (OperationAllowed opAllowed : operationAllowedRepository.findAll(where(hasMetadataIdIn(ids)).and(hasGroupIdIn(groups)))) {
+                OperationAllowedId id = opAllowed.getId();
+                Map<Integer, Set<Integer>> groupsByOperation = results.get(id.getMetadataId());
+                Set<Integer> operationGroups = groupsByOperation.get(id.getOperationId());
+                if (operationGroups == null) {
+                    operationGroups = new HashSet<>();
+                    groupsByOperation.put(id.getOperationId(), operationGroups);
+                }
+                operationGroups.add(id.getGroupId());
+            }
+        }
+        for (Map.Entry<Integer, Long> entry : toLoad.entrySet()) {
+            privileges.setOperationGroups(entry.getKey(), entry.getValue(), results.get(entry.getKey()));
+        }
+        return results;
+    }
+
+    /**
+     * Returns all the operations by id.
+     */
+    private Map<Integer, Operation> getAllOperations(UserPrivileges privileges) {
+        Map<Integer, Operation> operations = privileges.getOperations();
+        if (operations == null) {
+            operations = new HashMap<>();
+            for (Operation operation : operationRepository.findAll()) {
+                operations.put(operation.getId(), operation);
+            }
+            privileges.setOperations(operations);
+        }
+        return operations;
     }
 
     /**
@@ -515,14 +717,9 @@ public class AccessManager {
         }
 
         // Check if the user is a reviewer in the metadata owners group.
-        Specification<UserGroup> hasUserIdAndGroupAndProfile = where(UserGroupSpecs.hasProfile(Profile.Reviewer))
-            .and(UserGroupSpecs.hasGroupId(metadata.getSourceInfo().getGroupOwner()))
-            .and(UserGroupSpecs.hasUserId(us.getUserIdAsInt()));
-
-        UserGroupRepository userGroupRepo = context.getBean(UserGroupRepository.class);
-        long count = userGroupRepo.count(hasUserIdAndGroupAndProfile);
-
-        return  (count > 0);
+        Integer groupOwner = metadata.getSourceInfo().getGroupOwner();
+        UserPrivileges privileges = getPrivileges(context, us, context.getIpAddress());
+        return groupOwner != null && getProfileGroups(privileges, us, Profile.Reviewer).contains(groupOwner);
     }
 
     /**
@@ -537,23 +734,17 @@ public class AccessManager {
             return false;
         }
 
-        List<OperationAllowed> allOpAlloweds = operationAllowedRepository.findAll(
-          where(hasMetadataId(id)).and(hasOperation(ReservedOperation.editing)));
+        String ip = context.getIpAddress();
+        UserPrivileges privileges = getPrivileges(context, us, ip);
+        Integer metadataId = Integer.valueOf(id);
+        Set<Integer> editingGroups = getOperationGroups(privileges, us, ip, Collections.singleton(metadataId))
+            .get(metadataId).get(ReservedOperation.editing.getId());
 
-        if (allOpAlloweds.isEmpty()) {
+        if (editingGroups == null) {
             return false;
         }
 
-        Specifications spec = where(UserGroupSpecs.hasProfile(profile)).and(UserGroupSpecs.hasUserId(us.getUserIdAsInt()));
-
-        List<Integer> opAlloweds = new ArrayList<Integer>();
-        for (OperationAllowed opAllowed : allOpAlloweds) {
-            opAlloweds.add(opAllowed.getId().getGroupId());
-        }
-        spec = spec.and(UserGroupSpecs.hasGroupIds(opAlloweds));
-
-        return (!userGroupRepository.findAll(spec).isEmpty());
-
+        return !Collections.disjoint(editingGroups, getProfileGroups(privileges, us, profile));
     }
 
     /**
@@ -609,14 +800,13 @@ public class AccessManager {
         }
 
         // IPv4
-        Setting network = settingRepository.findOne(Settings.SYSTEM_INTRANET_NETWORK);
-        Setting netmask = settingRepository.findOne(Settings.SYSTEM_INTRANET_NETMASK);
+        String network = settingManager.getValue(Settings.SYSTEM_INTRANET_NETWORK, true);
+        String netmask = settingManager.getValue(Settings.SYSTEM_INTRANET_NETMASK, true);
 
         try {
-            if (network != null && netmask != null &&
-                StringUtils.isNotEmpty(network.getValue()) && StringUtils.isNotEmpty(netmask.getValue())) {
-                long lIntranetNet = getAddress(network.getValue());
-                long lIntranetMask = getAddress(netmask.getValue());
+            if (StringUtils.isNotEmpty(network) && StringUtils.isNotEmpty(netmask)) {
+                long lIntranetNet = getAddress(network);
+                long lIntranetMask = getAddress(netmask);
                 long lAddress = getAddress(ip.split(",")[0]);
                 return (lAddress & lIntranetMask) == (lIntranetNet & lIntranetMask);
             }
@@ -654,6 +844,57 @@ public class AccessManager {
         }
     }
 
+    /**
+     * Discards the privileges of a record cached by the requests in progress. The privileges
+     * modified through the repository entities are tracked with the {@link MetadataShare} events,
+     * this is only needed for bulk updates which do not trigger them.
+     *
+     * @param metadataId the id of the metadata
+     */
+    public void privilegesChanged(int metadataId) {
+        recordVersions.incrementAndGet(metadataId & (RECORD_VERSION_SLOTS - 1));
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof MetadataShare) {
+            privilegesChanged(((MetadataShare) event).getRecord());
+        } else if (event instanceof MetadataUpdate || event instanceof MetadataRemove) {
+            AbstractMetadata md = ((MetadataEvent) event).getMd();
+            if (md != null) {
+                privilegesChanged(md.getId());
+            }
+        } else if (event instanceof UserEvent || event instanceof GroupCreated
+            || event instanceof GroupRemoved || event instanceof SettingsUpdated) {
+            privilegesVersion.incrementAndGet();
+        }
+    }
+
+    private long getRecordVersion(int metadataId) {
+        return recordVersions.get(metadataId & (RECORD_VERSION_SLOTS - 1));
+    }
+
+    /**
+     * Returns the privileges cached in the service context for the user and ip address, or new
+     * privileges (stored in the context if possible) when there are none or they are outdated.
+     */
+    private UserPrivileges getPrivileges(ServiceContext context, UserSession us, String ip) {
+        long version = privilegesVersion.get();
+        UserPrivileges privileges = context == null ? null : context.getUserPrivileges();
+        if (privileges == null || !privileges.isValid(us, ip, version)) {
+            privileges = new UserPrivileges(us, ip, version);
+            if (context != null) {
+                context.setUserPrivileges(privileges);
+            }
+        }
+        return privileges;
+    }
+
+    private ServiceContext getCurrentContext() {
+        ServiceContext context = ServiceContext.get();
+        return context == null || context.isCleared() ? null : context;
+    }
+
     /**
      * Checks if the user is authenticated: there's an user session authenticated.
      *
@@ -166,7 +166,7 @@ public class AllThesaurus extends Thesaurus {
     }
 
     @Override
-    public synchronized QueryResultsTable performRequest(final String query) throws IOException, MalformedQueryException,
+    public QueryResultsTable performRequest(final String query) throws IOException, MalformedQueryException,
         QueryEvaluationException, AccessDeniedException {
         final Map<Thesaurus, QueryResultsTable> allResults = Maps.newIdentityHashMap();
         onThesauri(null, new Function<Thesaurus, Void>() {
@@ -222,7 +222,7 @@ public class AllThesaurus extends Thesaurus {
     }
 
     @Override
-    public synchronized boolean isFreeCode(final String namespace, final String code) throws AccessDeniedException {
+    public boolean isFreeCode(final String namespace, final String code) throws AccessDeniedException {
         return onThesauri(true, new Function<Thesaurus, Boolean>() {
             @Nullable
             @Override
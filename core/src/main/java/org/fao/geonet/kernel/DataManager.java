@@ -53,6 +53,7 @@ import org.fao.geonet.kernel.datamanager.IMetadataSchemaUtils;
 import org.fao.geonet.kernel.datamanager.IMetadataStatus;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.datamanager.IMetadataValidator;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.search.ISearchManager;
 import org.fao.geonet.repository.UserGroupRepository;
@@ -184,16 +185,36 @@ public class DataManager {
         metadataIndexer.batchIndexInThreadPool(metadataIds);
     }
 
+    @Deprecated
+    public void batchIndexInThreadPool(List<?> metadataIds, ISearchManager searchManager) {
+        metadataIndexer.batchIndexInThreadPool(metadataIds, searchManager);
+    }
+
+    @Deprecated
+    public void indexInThreadPoolAndWait(List<?> metadataIds, ISearchManager searchManager) throws Exception {
+        metadataIndexer.indexInThreadPoolAndWait(metadataIds, searchManager);
+    }
+
     @Deprecated
     public boolean isIndexing() {
         return metadataIndexer.isIndexing();
     }
 
+    @Deprecated
+    public IndexingProgress getIndexingProgress() {
+        return metadataIndexer.getIndexingProgress();
+    }
+
     @Deprecated
     public void indexMetadata(final List<String> metadataIds) throws Exception {
         metadataIndexer.indexMetadata(metadataIds);
     }
 
+    @Deprecated
+    public int indexMetadataBatch(final List<String> metadataIds, ISearchManager searchManager) throws Exception {
+        return metadataIndexer.indexMetadataBatch(metadataIds, searchManager);
+    }
+
     @Deprecated
     public void indexMetadata(final String metadataId, boolean forceRefreshReaders, ISearchManager searchManager) throws Exception {
         metadataIndexer.indexMetadata(metadataId, forceRefreshReaders, searchManager);
@@ -25,17 +25,21 @@ package org.fao.geonet.kernel;
 
 import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
+import jeeves.server.context.ServiceContextExecutor;
 
 import jeeves.server.dispatchers.ServiceManager;
 import org.fao.geonet.Util;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.User;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
+import org.fao.geonet.kernel.datamanager.base.BaseMetadataIndexer;
+import org.fao.geonet.kernel.search.ISearchManager;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.fao.geonet.utils.Log;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.transaction.TransactionStatus;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,15 +49,20 @@ import javax.annotation.Nullable;
 
 /**
  * A runnable for indexing multiple metadata in a separate thread.
+ *
+ * The task is meant to be run by a {@link ServiceContextExecutor} which provides the service context
+ * of the thread and queues the task once the transaction which changed the records is completed and
+ * the servlet is initialized. When run by another thread, the task creates its own service context.
  */
-public final class IndexMetadataTask implements Runnable {
+public final class IndexMetadataTask implements ServiceContextExecutor.DiscardableTask {
 
     private final String serviceName;
     private final ServiceManager serviceManager;
     private final List<?> _metadataIds;
-    private final TransactionStatus _transactionStatus;
     private final Set<IndexMetadataTask> _batchIndex;
-    private final SearchManager searchManager;
+    private final ISearchManager searchManager;
+    private final boolean defaultSearchManager;
+    private final IndexingProgress progress;
     private final AtomicInteger indexed;
     private final ConfigurableApplicationContext appContext;
     private User _user;
@@ -61,25 +70,40 @@ public final class IndexMetadataTask implements Runnable {
     /**
      * Setup index metadata task to be run.
      *
-     * The context is used to look up beans for setup and configuration only. The task will create its own serviceContext
-     * to be used during indexing.
+     * The context is used to look up beans for setup and configuration only.
      *
      * @param context           context object responsible for starting the activity
      * @param metadataIds       the metadata ids to index (either integers or strings)
      * @param batchIndex        Set used to track outstanding tasks
-     * @param transactionStatus if non-null, wait for the transaction to complete before indexing
      * @param indexed           Used to track number of indexed records
      */
     public IndexMetadataTask(@Nonnull ServiceContext context, @Nonnull List<?> metadataIds, Set<IndexMetadataTask> batchIndex,
-                      @Nullable TransactionStatus transactionStatus, @Nonnull AtomicInteger indexed) {
+                             @Nonnull AtomicInteger indexed) {
+        this(context, metadataIds, batchIndex, indexed, null, null);
+    }
+
+    /**
+     * Setup index metadata task to be run.
+     *
+     * @param context           context object responsible for starting the activity
+     * @param metadataIds       the metadata ids to index (either integers or strings)
+     * @param batchIndex        Set used to track outstanding tasks
+     * @param indexed           Used to track number of indexed records
+     * @param searchManager     the search manager to index into or null to use the default one
+     * @param progress          if non-null, updated when the records are indexed
+     */
+    public IndexMetadataTask(@Nonnull ServiceContext context, @Nonnull List<?> metadataIds, Set<IndexMetadataTask> batchIndex,
+                             @Nonnull AtomicInteger indexed,
+                             @Nullable ISearchManager searchManager, @Nullable IndexingProgress progress) {
         this.indexed = indexed;
-        this._transactionStatus = transactionStatus;
         this.serviceName = context.getService();
         this._metadataIds = metadataIds;
         this._batchIndex = batchIndex;
         this.serviceManager = context.getBean(ServiceManager.class);
         this.appContext = context.getApplicationContext();
-        this.searchManager = context.getBean(SearchManager.class);
+        this.defaultSearchManager = searchManager == null;
+        this.searchManager = searchManager == null ? context.getBean(SearchManager.class) : searchManager;
+        this.progress = progress;
 
         batchIndex.add(this);
 
@@ -91,50 +115,78 @@ public final class IndexMetadataTask implements Runnable {
     /**
      * Perform index task in a seperate thread.
      * <p>
-     * Task waits for transactionStatus (if available) to be completed, and for servlet to be initialized.
+     * The task does not wait for the transaction or the servlet, the caller is responsible for
+     * queuing it when they are ready (see {@link ServiceContextExecutor#executeAfterCommit}).
      * </p>
      */
     @Override
     public void run() {
-        try (ServiceContext indexMedataContext = serviceManager.createServiceContext(serviceName+":IndexTask", appContext)) {
-            indexMedataContext.setUserSession(new UserSession());
-            indexMedataContext.setAsThreadLocal();
-            while (_transactionStatus != null && !_transactionStatus.isCompleted()) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    return;
-                }
+        ServiceContext workerContext = ServiceContext.get();
+        if (workerContext != null) {
+            workerContext.setService(serviceName + ":IndexTask");
+            if (workerContext.getUserSession() == null) {
+                workerContext.setUserSession(new UserSession());
             }
-            // poll context to see whether servlet is up yet
-            while (!indexMedataContext.isServletInitialized()) {
-                if (Log.isDebugEnabled(Geonet.DATA_MANAGER)) {
-                    Log.debug(Geonet.DATA_MANAGER, "Waiting for servlet to finish initializing..");
-                }
-                try {
-                    Thread.sleep(10000); // sleep 10 seconds
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+            index(workerContext);
+        } else {
+            try (ServiceContext indexMedataContext = serviceManager.createServiceContext(serviceName + ":IndexTask", appContext)) {
+                indexMedataContext.setUserSession(new UserSession());
+                indexMedataContext.setAsThreadLocal();
+                index(indexMedataContext);
+            }
+        }
+    }
+
+    /**
+     * The task will not be run: the records are counted as not indexed.
+     */
+    @Override
+    public void discarded() {
+        try {
+            if (progress != null) {
+                progress.done(_metadataIds.size(), _metadataIds.size());
+                progress.failed(_metadataIds.size());
             }
+        } finally {
+            _batchIndex.remove(this);
+        }
+    }
 
+    private void index(ServiceContext indexMedataContext) {
+        try {
             DataManager dataManager = indexMedataContext.getBean(DataManager.class);
             // servlet up so safe to index all metadata that needs indexing
-            for (Object metadataId : _metadataIds) {
-                this.indexed.incrementAndGet();
-                if (this.indexed.compareAndSet(500, 0)) {
-                    try {
-                        searchManager.forceIndexChanges();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
+            for (int start = 0; start < _metadataIds.size(); start += BaseMetadataIndexer.INDEX_BATCH_SIZE) {
+                List<String> chunk = new ArrayList<>();
+                for (Object metadataId : _metadataIds.subList(start,
+                    Math.min(start + BaseMetadataIndexer.INDEX_BATCH_SIZE, _metadataIds.size()))) {
+                    chunk.add(metadataId.toString());
                 }
 
+                int errors = chunk.size();
                 try {
-                    dataManager.indexMetadata(metadataId.toString(), false, null);
+                    errors = dataManager.indexMetadataBatch(chunk, defaultSearchManager ? null : searchManager);
                 } catch (Exception e) {
-                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata '" + metadataId + "': " + e.getMessage()
+                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata '" + chunk + "': " + e.getMessage()
                         + "\n" + Util.getStackTrace(e));
+                    if (progress != null) {
+                        // the index is out of sync until the next reconciliation
+                        progress.failed(chunk.size());
+                    }
+                } finally {
+                    if (progress != null) {
+                        progress.done(chunk.size(), errors);
+                    }
+                }
+
+                int nbIndexed = this.indexed.addAndGet(chunk.size());
+                // the thread which resets the counter commits, a failed reset is done by the next chunk
+                if (nbIndexed >= BaseMetadataIndexer.INDEX_BATCH_SIZE && this.indexed.compareAndSet(nbIndexed, 0)) {
+                    try {
+                        searchManager.forceIndexChanges();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
             }
             if (_user != null && indexMedataContext.getUserSession().getUserId() == null) {
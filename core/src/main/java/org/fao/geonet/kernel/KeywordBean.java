@@ -65,6 +65,28 @@ public class KeywordBean {
         this.isoLanguageMapper = isoLangMapper;
     }
 
+    /**
+     * Creates a copy of a keyword.
+     */
+    public KeywordBean(KeywordBean keyword) {
+        this.isoLanguageMapper = keyword.isoLanguageMapper;
+        this.values.putAll(keyword.values);
+        this.definitions.putAll(keyword.definitions);
+        this.id = keyword.id;
+        this.code = keyword.code;
+        this.coordEast = keyword.coordEast;
+        this.coordWest = keyword.coordWest;
+        this.coordSouth = keyword.coordSouth;
+        this.coordNorth = keyword.coordNorth;
+        this.thesaurusKey = keyword.thesaurusKey;
+        this.selected = keyword.selected;
+        this.thesaurusTitle = keyword.thesaurusTitle;
+        this.thesaurusDate = keyword.thesaurusDate;
+        this.downloadUrl = keyword.downloadUrl;
+        this.keywordUrl = keyword.keywordUrl;
+        this.defaultLang = keyword.defaultLang;
+    }
+
     /**
      * Transforms a list of KeywordBean object into its iso19139 representation.
      *
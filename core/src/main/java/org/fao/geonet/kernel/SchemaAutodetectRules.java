@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Autodetect rules of the registered schemas (the <code>autodetect</code> element of the
+ * schema-ident.xml files), compiled once when the schemas are registered.
+ *
+ * Root element rules are indexed by namespace and name of the root element so that only a map
+ * lookup is needed. For the other rules, the record is traversed once to collect the elements,
+ * values, attributes and namespaces referenced by the rules, and the rules are checked against
+ * this summary instead of traversing the record for each schema and each rule.
+ */
+class SchemaAutodetectRules {
+
+    /**
+     * The schemas the rules were compiled from, to detect registration changes.
+     */
+    private final List<Schema> compiledSchemas;
+
+    /**
+     * Schema names by namespace URI and name of the root element.
+     */
+    private final Map<String, List<String>> rootIndex = new HashMap<>();
+
+    private final List<Rule> needleRules = new ArrayList<>();
+    private final List<Rule> valueRules = new ArrayList<>();
+    private final List<Rule> attributeRules = new ArrayList<>();
+    private final List<Rule> namespaceRules = new ArrayList<>();
+
+    /**
+     * Elements whose value is used by a rule.
+     */
+    private final Set<String> valueKeys = new HashSet<>();
+
+    SchemaAutodetectRules(Map<String, Schema> schemas) {
+        this.compiledSchemas = new ArrayList<>(schemas.values());
+        for (Map.Entry<String, Schema> entry : schemas.entrySet()) {
+            String schemaName = entry.getKey();
+            List<Element> autodetectElements = entry.getValue().getAutodetectElements();
+            if (autodetectElements == null) {
+                continue;
+            }
+            for (Element elem : autodetectElements) {
+                compile(schemaName, elem);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compile(String schemaName, Element elem) {
+        Attribute type = elem.getAttribute("type");
+        List<Element> kids = elem.getChildren();
+
+        if (elem.getName().equals("attributes")) {
+            List<Attribute> atts = elem.getAttributes();
+            if (!atts.isEmpty()) {
+                Rule rule = new Rule(schemaName);
+                for (Attribute att : atts) {
+                    rule.keys.add(attributeKey(att.getName(), att.getValue()));
+                }
+                attributeRules.add(rule);
+            }
+        } else if (elem.getName().equals("namespaces")) {
+            List<Namespace> nss = elem.getAdditionalNamespaces();
+            if (!nss.isEmpty()) {
+                Rule rule = new Rule(schemaName);
+                for (Namespace ns : nss) {
+                    rule.keys.add(ns.getURI());
+                }
+                namespaceRules.add(rule);
+            }
+        }
+
+        if (kids.isEmpty()) {
+            return;
+        }
+
+        if (type != null && "root".equals(type.getValue())) {
+            for (Element kid : kids) {
+                String key = elementKey(kid);
+                List<String> candidates = rootIndex.get(key);
+                if (candidates == null) {
+                    candidates = new ArrayList<>();
+                    rootIndex.put(key, candidates);
+                }
+                if (!candidates.contains(schemaName)) {
+                    candidates.add(schemaName);
+                }
+            }
+        } else if (type != null && "search".equals(type.getValue())) {
+            Rule rule = new Rule(schemaName);
+            for (Element kid : kids) {
+                rule.keys.add(elementKey(kid));
+            }
+            needleRules.add(rule);
+        }
+
+        Rule rule = new Rule(schemaName);
+        for (Element kid : kids) {
+            String key = elementKey(kid);
+            String regex = StringUtils.deleteWhitespace(kid.getValue());
+            try {
+                rule.keys.add(key);
+                rule.patterns.add(Pattern.compile(regex));
+                valueKeys.add(key);
+            } catch (PatternSyntaxException e) {
+                Log.warning(Geonet.SCHEMA_MANAGER, "Ignoring autodetect element " + kid.getName() + " of schema "
+                    + schemaName + ", invalid pattern " + regex + ": " + e.getMessage());
+                return;
+            }
+        }
+        valueRules.add(rule);
+    }
+
+    /**
+     * @return true if the rules were compiled from the schemas currently registered.
+     */
+    boolean isCompiledFrom(Map<String, Schema> schemas) {
+        if (schemas.size() != compiledSchemas.size()) {
+            return false;
+        }
+        Iterator<Schema> compiled = compiledSchemas.iterator();
+        for (Schema schema : schemas.values()) {
+            if (compiled.next() != schema) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Summarize a record for the evaluation of the rules.
+     */
+    RecordSummary summarize(Element md) {
+        return new RecordSummary(md);
+    }
+
+    /**
+     * @return the names of the schemas matching the record for the autodetect mode, in schema
+     * registration order.
+     */
+    List<String> match(RecordSummary record, int mode) {
+        switch (mode) {
+            case SchemaManager.MODE_ROOT:
+                List<String> candidates = rootIndex.get(elementKey(record.root));
+                return candidates == null ? Collections.<String>emptyList() : candidates;
+            case SchemaManager.MODE_NEEDLE:
+                return match(needleRules, record.getElements());
+            case SchemaManager.MODE_NEEDLEWITHVALUE:
+                return matchValues(record);
+            case SchemaManager.MODE_ATTRIBUTEWITHVALUE:
+                return match(attributeRules, record.getAttributes());
+            case SchemaManager.MODE_NAMESPACE:
+                return match(namespaceRules, record.getNamespaces());
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private List<String> match(List<Rule> rules, Set<String> found) {
+        Set<String> matches = new LinkedHashSet<>();
+        for (Rule rule : rules) {
+            if (found.containsAll(rule.keys)) {
+                matches.add(rule.schemaName);
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private List<String> matchValues(RecordSummary record) {
+        Set<String> matches = new LinkedHashSet<>();
+        for (Rule rule : valueRules) {
+            if (matches.contains(rule.schemaName)) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < rule.keys.size() && match; i++) {
+                match = false;
+                List<String> values = record.getValues().get(rule.keys.get(i));
+                if (values != null) {
+                    Pattern pattern = rule.patterns.get(i);
+                    for (String value : values) {
+                        if (pattern.matcher(value).matches()) {
+                            match = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (match) {
+                matches.add(rule.schemaName);
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private static String elementKey(Element element) {
+        return element.getNamespaceURI() + "|" + element.getName();
+    }
+
+    private static String attributeKey(String name, String value) {
+        return name + "=" + value;
+    }
+
+    /**
+     * Rule of one schema: all the keys must be found in the record.
+     */
+    private static final class Rule {
+        final String schemaName;
+        final List<String> keys = new ArrayList<>();
+        /**
+         * For rules on element values, the pattern of each key.
+         */
+        final List<Pattern> patterns = new ArrayList<>();
+
+        Rule(String schemaName) {
+            this.schemaName = schemaName;
+        }
+    }
+
+    /**
+     * Elements, values, attributes and namespaces of a record (excluding the root element as the
+     * rules search the descendants), collected in a single traversal on first use.
+     */
+    final class RecordSummary {
+        private final Element root;
+        private Set<String> elements;
+        private Map<String, List<String>> values;
+        private Set<String> attributes;
+        private Set<String> namespaces;
+
+        private RecordSummary(Element root) {
+            this.root = root;
+        }
+
+        private Set<String> getElements() {
+            collect();
+            return elements;
+        }
+
+        private Map<String, List<String>> getValues() {
+            collect();
+            return values;
+        }
+
+        private Set<String> getAttributes() {
+            collect();
+            return attributes;
+        }
+
+        private Set<String> getNamespaces() {
+            collect();
+            return namespaces;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void collect() {
+            if (elements != null) {
+                return;
+            }
+            elements = new HashSet<>();
+            values = new HashMap<>();
+            attributes = new HashSet<>();
+            namespaces = new HashSet<>();
+            boolean needAttributes = !attributeRules.isEmpty();
+            boolean needNamespaces = !namespaceRules.isEmpty();
+
+            if (needNamespaces) {
+                addNamespaces(root);
+            }
+            Iterator<Element> descendants = root.getDescendants(new ElementFilter());
+            while (descendants.hasNext()) {
+                Element element = descendants.next();
+                String key = elementKey(element);
+                elements.add(key);
+                if (valueKeys.contains(key)) {
+                    List<String> elementValues = values.get(key);
+                    if (elementValues == null) {
+                        elementValues = new ArrayList<>();
+                        values.put(key, elementValues);
+                    }
+                    elementValues.add(StringUtils.deleteWhitespace(element.getValue()));
+                }
+                if (needAttributes) {
+                    for (Attribute att : (List<Attribute>) element.getAttributes()) {
+                        if (att.getNamespace() == Namespace.NO_NAMESPACE) {
+                            attributes.add(attributeKey(att.getName(), att.getValue()));
+                        }
+                    }
+                }
+                if (needNamespaces) {
+                    addNamespaces(element);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addNamespaces(Element element) {
+            namespaces.add(element.getNamespaceURI());
+            for (Namespace ns : (List<Namespace>) element.getAdditionalNamespaces()) {
+                namespaces.add(ns.getURI());
+            }
+        }
+    }
+}
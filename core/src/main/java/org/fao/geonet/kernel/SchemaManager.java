@@ -49,14 +49,12 @@ import org.fao.geonet.schema.iso19139.ISO19139SchemaPlugin;
 import org.fao.geonet.utils.*;
 import org.fao.geonet.utils.nio.NioPathAwareCatalogResolver;
 import org.jdom.*;
-import org.jdom.filter.ElementFilter;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * Class that handles all functions relating to metadata schemas. This includes
@@ -68,11 +66,11 @@ import java.util.regex.Pattern;
  */
 public class SchemaManager {
 
-    private static final int MODE_NEEDLE = 0;
-    private static final int MODE_ROOT = 1;
-    private static final int MODE_NEEDLEWITHVALUE = 2;
-    private static final int MODE_ATTRIBUTEWITHVALUE = 3;
-    private static final int MODE_NAMESPACE = 4;
+    static final int MODE_NEEDLE = 0;
+    static final int MODE_ROOT = 1;
+    static final int MODE_NEEDLEWITHVALUE = 2;
+    static final int MODE_ATTRIBUTEWITHVALUE = 3;
+    static final int MODE_NAMESPACE = 4;
 
     private static final String GEONET_SCHEMA_URI = "http://geonetwork-opensource.org/schemas/schema-ident";
     private static final Namespace GEONET_SCHEMA_PREFIX_NS = Namespace.getNamespace("gns", GEONET_SCHEMA_URI);
@@ -86,6 +84,10 @@ public class SchemaManager {
      */
     private static int activeWriters = 0;
     private Map<String, Schema> hmSchemas = new HashMap<>();
+    /**
+     * Autodetect rules compiled from the registered schemas, rebuilt when the schemas change.
+     */
+    private volatile SchemaAutodetectRules autodetectRules;
     private Map<String, Namespace> hmSchemasTypenames = new HashMap<>();
     private String[] fnames = {"labels.xml", "codelists.xml", "strings.xml"};
     private Path schemaPluginsDir;
@@ -222,6 +224,42 @@ public class SchemaManager {
 
         writeSchemaPluginCatalog(schemaPluginCatRoot);
 
+        preloadStylesheets();
+    }
+
+    /**
+     * Compile in the background the indexing, presentation and processing stylesheets of
+     * the schemas so that the first requests do not pay the stylesheet compilation cost.
+     * Set the system property <code>geonetwork.xslt.cache.preload</code> to false to disable it.
+     */
+    private void preloadStylesheets() {
+        if ("false".equalsIgnoreCase(System.getProperty("geonetwork.xslt.cache.preload"))) {
+            return;
+        }
+        final List<Path> styleSheets = new ArrayList<>();
+        for (Schema schema : hmSchemas.values()) {
+            for (String folder : new String[]{"index-fields", "present", "process"}) {
+                Path dir = schema.getDir().resolve(folder);
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> xslFiles = Files.newDirectoryStream(dir, "*.xsl")) {
+                    for (Path xslFile : xslFiles) {
+                        styleSheets.add(xslFile);
+                    }
+                } catch (IOException e) {
+                    Log.warning(Geonet.SCHEMA_MANAGER, "Unable to list stylesheets of " + dir + ": " + e.getMessage());
+                }
+            }
+        }
+        Thread preload = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Xml.preloadStylesheets(styleSheets);
+            }
+        }, "xslt-preload");
+        preload.setDaemon(true);
+        preload.start();
     }
 
     //--------------------------------------------------------------------------
@@ -685,18 +723,20 @@ public class SchemaManager {
         beforeRead();
         try {
             String schema;
+            SchemaAutodetectRules rules = getAutodetectRules();
+            SchemaAutodetectRules.RecordSummary record = rules.summarize(md);
 
             // -- check the autodetect elements for all schemas with the most
             // -- specific test first, then in order of increasing generality,
             // -- first match wins
-            schema = compareElementsAndAttributes(md, MODE_ATTRIBUTEWITHVALUE);
+            schema = compareElementsAndAttributes(rules, record, md, MODE_ATTRIBUTEWITHVALUE);
             if (schema != null) {
                 if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
                     Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(attributes) examination");
             }
 
             if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NEEDLEWITHVALUE);
+                schema = compareElementsAndAttributes(rules, record, md, MODE_NEEDLEWITHVALUE);
                 if (schema != null) {
                     if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
                         Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements with value) examination");
@@ -704,7 +744,7 @@ public class SchemaManager {
             }
 
             if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NEEDLE);
+                schema = compareElementsAndAttributes(rules, record, md, MODE_NEEDLE);
                 if (schema != null) {
                     if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
                         Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements) examination");
@@ -712,7 +752,7 @@ public class SchemaManager {
             }
 
             if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_ROOT);
+                schema = compareElementsAndAttributes(rules, record, md, MODE_ROOT);
                 if (schema != null) {
                     if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
                         Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements with root) examination");
@@ -720,7 +760,7 @@ public class SchemaManager {
             }
 
             if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NAMESPACE);
+                schema = compareElementsAndAttributes(rules, record, md, MODE_NAMESPACE);
                 if (schema != null) {
                     if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
                         Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(namespaces) examination");
@@ -855,6 +895,7 @@ public class SchemaManager {
             }
 
             removeSchemaInfo(name);
+            Xml.clearSchemaCache();
         }
     }
 
@@ -874,6 +915,8 @@ public class SchemaManager {
         try {
             ZipUtil.extract(zipFs, schemaDir);
 
+            Xml.clearSchemaCache();
+
             // -- add schema using the addSchema method
             processSchema(applicationContext, schemaDir, schemaPluginCatRoot);
 
@@ -1009,6 +1052,7 @@ public class SchemaManager {
     public void reloadSchema(String schemaIdentifier) {
         MetadataSchema metadataSchema = this.getSchema(schemaIdentifier);
         metadataSchema.loadSchematronRules(basePath);
+        Xml.clearSchemaCache();
     }
 
 
@@ -1580,224 +1624,40 @@ public class SchemaManager {
         return schemaLocElem.getTextNormalize();
     }
 
+    /**
+     * @return the autodetect rules of the registered schemas, compiled again if the schemas have
+     * changed since the last detection.
+     */
+    private SchemaAutodetectRules getAutodetectRules() {
+        SchemaAutodetectRules rules = autodetectRules;
+        if (rules == null || !rules.isCompiledFrom(hmSchemas)) {
+            rules = new SchemaAutodetectRules(hmSchemas);
+            autodetectRules = rules;
+        }
+        return rules;
+    }
+
     /**
      * Search all available schemas for one which contains the element(s) or attributes specified in
      * the autodetect info.
      *
-     * @param md the XML record whose schema we are trying to find
+     * @param rules  the compiled autodetect rules of the schemas
+     * @param record the summary of the record used to evaluate the rules
+     * @param md     the XML record whose schema we are trying to find
      */
-    private String compareElementsAndAttributes(Element md, int mode) throws SchemaMatchConflictException {
-        String returnVal = null;
-        Set<String> allSchemas = getSchemas();
-        List<String> matches = new ArrayList<>();
-
+    private String compareElementsAndAttributes(SchemaAutodetectRules rules, SchemaAutodetectRules.RecordSummary record,
+                                                Element md, int mode) throws SchemaMatchConflictException {
         if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
             Log.debug(Geonet.SCHEMA_MANAGER, "Schema autodetection starting on " + md.getName() + " (Namespace: " + md.getNamespace() + ") using mode: " + mode + "...");
 
-        for (String schemaName : allSchemas) {
-            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                Log.debug(Geonet.SCHEMA_MANAGER, "	Doing schema " + schemaName);
-            Schema schema = hmSchemas.get(schemaName);
-            List<Element> adElems = schema.getAutodetectElements();
-
-            for (Element elem : adElems) {
-                if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER, "		Checking autodetect element " + Xml.getString(elem) + " with name " + elem.getName());
-
-                @SuppressWarnings("unchecked")
-                List<Element> elemKids = elem.getChildren();
-                boolean match = false;
-
-                Attribute type = elem.getAttribute("type");
-
-                // --- try and find the attribute and value in md
-                if (mode == MODE_ATTRIBUTEWITHVALUE && elem.getName().equals("attributes")) {
-                    @SuppressWarnings("unchecked")
-                    List<Attribute> atts = elem.getAttributes();
-                    for (Attribute searchAtt : atts) {
-                        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding attribute " + searchAtt.toString());
-
-                        if (isMatchingAttributeInMetadata(searchAtt, md)) {
-                            match = true;
-                        } else {
-                            match = false;
-                            break;
-                        }
-                    }
-
-                    // --- try and find the namespace in md
-                } else if (mode == MODE_NAMESPACE && elem.getName().equals("namespaces")) {
-                    @SuppressWarnings("unchecked")
-                    List<Namespace> nss = elem.getAdditionalNamespaces();
-                    for (Namespace ns : nss) {
-                        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding namespace " + ns.toString());
-
-                        if (isMatchingNamespaceInMetadata(ns, md)) {
-                            match = true;
-                        } else {
-                            match = false;
-                            break;
-                        }
-                    }
-                } else {
-                    for (Element kid : elemKids) {
-
-                        // --- is the kid the same as the root of the md
-                        if (mode == MODE_ROOT && type != null && "root".equals(type.getValue())) {
-                            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing " + Xml.getString(kid) + " with " + md.getName() + " with namespace " + md.getNamespace() + " : " + (kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-                            if (kid.getName().equals(md.getName()) &&
-                                kid.getNamespace().equals(md.getNamespace())) {
-                                match = true;
-                                break;
-                            } else {
-                                match = false;
-                            }
-                            // --- try and find the kid in the md (kid only, not value)
-                        } else if (mode == MODE_NEEDLE && type != null && "search".equals(type.getValue())) {
-                            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing " + Xml.getString(kid) + " with " + md.getName() + " with namespace " + md.getNamespace() + " : " + (kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-
-                            if (isMatchingElementInMetadata(kid, md, false)) {
-                                match = true;
-                            } else {
-                                match = false;
-                                break;
-                            }
-                            // --- try and find the kid in the md (kid + value)
-                        } else if (mode == MODE_NEEDLEWITHVALUE) {
-                            if (isMatchingElementInMetadata(kid, md, true)) {
-                                match = true;
-                            } else {
-                                match = false;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (match && (!matches.contains(schemaName))) matches.add(schemaName);
-            }
-        }
+        List<String> matches = rules.match(record, mode);
 
         if (matches.size() > 1) {
             throw new SchemaMatchConflictException("Metadata record with " + md.getName() + " (Namespace " + md.getNamespace() + " matches more than one schema - namely: " + matches.toString() + " - during schema autodetection mode " + mode);
         } else if (matches.size() == 1) {
-            returnVal = matches.get(0);
-        }
-
-        return returnVal;
-    }
-
-    /**
-     * This method searches an entire metadata file for an attribute that matches the "needle"
-     * metadata attribute arg - A matching attribute has the same name and value.
-     *
-     * @param needle   the XML attribute we are trying to find
-     * @param haystack the XML metadata record we are searching
-     */
-    private boolean isMatchingAttributeInMetadata(Attribute needle, Element haystack) {
-        boolean returnVal = false;
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-            Attribute tempAtt = tempElement.getAttribute(needle.getName());
-            if (tempAtt.equals(needle)) {
-                returnVal = true;
-                break;
-            }
-        }
-        return returnVal;
-    }
-
-    /**
-     * This method searches all elements of a metadata for a namespace that matches the "needle"
-     * namespace arg. (Note: matching namespaces have the same URI, prefix is ignored).
-     *
-     * @param needle   the XML namespace we are trying to find
-     * @param haystack the XML metadata record we are searching
-     */
-    private boolean isMatchingNamespaceInMetadata(Namespace needle, Element haystack) {
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-        if (checkNamespacesOnElement(needle, haystack)) return true;
-
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-            if (checkNamespacesOnElement(needle, tempElement)) return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * This method searches an elements and its namespaces for a match with an input namespace.
-     *
-     * @param ns   the XML namespace we are trying to find
-     * @param elem the XML metadata element whose namespaces are to be searched
-     */
-    private boolean checkNamespacesOnElement(Namespace ns, Element elem) {
-        if (elem.getNamespace().equals(ns)) return true;
-        @SuppressWarnings("unchecked")
-        List<Namespace> nss = elem.getAdditionalNamespaces();
-        for (Namespace ans : nss) {
-            if (ans.equals(ns)) return true;
-        }
-        return false;
-    }
-
-    /**
-     * This method searches an entire metadata file for an element that matches the "needle"
-     * metadata element arg - A matching element has the same name, namespace and value.
-     *
-     * @param needle     the XML element we are trying to find
-     * @param haystack   the XML metadata record we are searching
-     * @param checkValue compare the value of the needle with the value of the element we find in
-     *                   the md
-     */
-    private boolean isMatchingElementInMetadata(Element needle, Element haystack, boolean checkValue) {
-        boolean returnVal = false;
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-
-        String needleName = needle.getName();
-        Namespace needleNS = needle.getNamespace();
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + Xml.getString(needle));
-
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-
-            if (tempElement.getName().equals(needleName) && tempElement.getNamespace().equals(needleNS)) {
-                if (checkValue) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  Searching value for element: " + tempElement.getName());
-
-                    String needleVal = StringUtils.deleteWhitespace(needle.getValue());
-                    String tempVal = StringUtils.deleteWhitespace(tempElement.getValue());
-                    returnVal = Pattern.matches(needleVal, tempVal);
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER)) {
-                        Log.debug(Geonet.SCHEMA_MANAGER, "    Pattern " + needleVal + " applied to value " + tempVal + " match: " + returnVal);
-                    }
-                    if (returnVal) {
-                        break;
-                    }
-                } else {
-                    returnVal = true;
-                    break;
-                }
-            }
+            return matches.get(0);
         }
-        return returnVal;
+        return null;
     }
 
     /**
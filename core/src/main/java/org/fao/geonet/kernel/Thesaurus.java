@@ -22,6 +22,9 @@
 
 package org.fao.geonet.kernel;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.exceptions.TermNotFoundException;
@@ -55,19 +58,76 @@ import org.openrdf.sesame.sail.StatementIterator;
 import org.springframework.context.ApplicationContext;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A SKOS thesaurus stored in a Sesame repository.
+ *
+ * Queries are executed concurrently, the methods modifying the thesaurus are executed alone. The
+ * results of the queries and the keywords retrieved by URI are cached (up to
+ * <code>geonetwork.thesaurus.cache.queries</code> queries and
+ * <code>geonetwork.thesaurus.cache.keywords</code> keywords per thesaurus) until the thesaurus is
+ * modified.
+ */
 public class Thesaurus {
     private static final String DEFAULT_THESAURUS_NAMESPACE = "https://registry.geonetwork-opensource.org/concept#";
 
+    private static final int QUERY_CACHE_SIZE = Integer.getInteger("geonetwork.thesaurus.cache.queries", 1000);
+
+    private static final int KEYWORD_CACHE_SIZE = Integer.getInteger("geonetwork.thesaurus.cache.keywords", 5000);
+
+    /**
+     * Time in milliseconds between a modification and the export of the thesaurus file, the
+     * modifications done meanwhile are written by the same export.
+     */
+    private static final long EXPORT_DELAY = Long.getLong("geonetwork.thesaurus.exportDelay", 5000);
+
+    private static final ScheduledExecutorService EXPORTER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "thesaurus-export");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Read lock for the queries, write lock for the modifications of the repository.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Cache<String, QueryResultsTable> queryCache =
+        CacheBuilder.newBuilder().maximumSize(QUERY_CACHE_SIZE).build();
+
+    private final Cache<String, KeywordBean> keywordCache =
+        CacheBuilder.newBuilder().maximumSize(KEYWORD_CACHE_SIZE).build();
+
+    /**
+     * Incremented on each modification of the thesaurus.
+     */
+    private final AtomicLong version = new AtomicLong();
+
     private String fname;
 
     private String type;
@@ -76,7 +136,29 @@ public class Thesaurus {
 
     private Path thesaurusFile;
 
-    private LocalRepository repository;
+    private volatile LocalRepository repository;
+
+    /**
+     * If true, the repository does not write the thesaurus file: the file is exported (see
+     * {@link #flush()}) after the modifications.
+     */
+    private volatile boolean exportFile;
+
+    /**
+     * If not null, the checksum of the exported file is written to this file (eg. to know if an
+     * on-disk store is up to date with the file).
+     */
+    private volatile Path checksumFile;
+
+    /**
+     * True when modifications are not written to the thesaurus file yet.
+     */
+    private final AtomicBoolean exportPending = new AtomicBoolean();
+
+    /**
+     * Serializes the exports so that an older content never replaces a newer one.
+     */
+    private final Object exportLock = new Object();
 
     private String title;
 
@@ -264,16 +346,33 @@ public class Thesaurus {
 
     }
 
-    public synchronized LocalRepository getRepository() {
+    public LocalRepository getRepository() {
         return repository;
     }
 
-    public synchronized Thesaurus setRepository(LocalRepository repository) {
-        this.repository = repository;
+    public Thesaurus setRepository(LocalRepository repository) {
+        return setRepository(repository, false, null);
+    }
+
+    /**
+     * @param exportFile   true if the repository does not write the thesaurus file: the file is
+     *                     exported a few seconds after the modifications (see {@link #flush()}).
+     * @param checksumFile if not null, the checksum of the exported file is written to this file.
+     */
+    public Thesaurus setRepository(LocalRepository repository, boolean exportFile, @Nullable Path checksumFile) {
+        lock.writeLock().lock();
+        try {
+            this.repository = repository;
+            this.exportFile = exportFile;
+            this.checksumFile = checksumFile;
+            invalidateCaches();
+        } finally {
+            lock.writeLock().unlock();
+        }
         return this;
     }
 
-    public synchronized Thesaurus initRepository() throws ConfigurationException, IOException {
+    public Thesaurus initRepository() throws ConfigurationException, IOException {
         RepositoryConfig repConfig = new RepositoryConfig(getKey());
 
         SailConfig syncSail = new SailConfig("org.openrdf.sesame.sailimpl.sync.SyncRdfSchemaRepository");
@@ -290,15 +389,121 @@ public class Thesaurus {
     }
 
     /**
-     * TODO javadoc.
+     * Execute a SeRQL query. The results are cached until the thesaurus is modified and must not
+     * be modified.
      */
-    public synchronized QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
+    public QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
         QueryEvaluationException, AccessDeniedException {
-        if (Log.isDebugEnabled(Geonet.THESAURUS))
-            Log.debug(Geonet.THESAURUS, "Query : " + query);
+        QueryResultsTable resultsTable = queryCache.getIfPresent(query);
+        if (resultsTable != null) {
+            return resultsTable;
+        }
 
-        //printResultsTable(resultsTable);
-        return repository.performTableQuery(QueryLanguage.SERQL, query);
+        lock.readLock().lock();
+        try {
+            if (Log.isDebugEnabled(Geonet.THESAURUS))
+                Log.debug(Geonet.THESAURUS, "Query : " + query);
+
+            //printResultsTable(resultsTable);
+            resultsTable = repository.performTableQuery(QueryLanguage.SERQL, query);
+            // Modifications wait for the read lock to be released so the results are still valid
+            queryCache.put(query, resultsTable);
+            return resultsTable;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the cached queries and keywords and schedule the export of the thesaurus file if the
+     * repository does not write it, called with the write lock held after each modification.
+     */
+    private void modified() {
+        invalidateCaches();
+        if (exportFile && exportPending.compareAndSet(false, true)) {
+            EXPORTER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, EXPORT_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the modifications not exported yet to the thesaurus file. Call it before reading the
+     * file, the export runs a few seconds after the modifications so that a series of
+     * modifications (eg. an import of keywords) writes the file once.
+     */
+    public void flush() {
+        synchronized (exportLock) {
+            if (exportPending.compareAndSet(true, false) && exportFile) {
+                lock.readLock().lock();
+                try {
+                    exportFile();
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop writing the thesaurus file, the modifications not exported yet are lost (eg. the
+     * thesaurus is deleted).
+     */
+    void stopFileExport() {
+        exportFile = false;
+        exportPending.set(false);
+    }
+
+    private void invalidateCaches() {
+        version.incrementAndGet();
+        queryCache.invalidateAll();
+        keywordCache.invalidateAll();
+    }
+
+    /**
+     * Write the content of the repository to the thesaurus file, replacing it once complete.
+     */
+    private void exportFile() {
+        Path file = thesaurusFile.toAbsolutePath();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (InputStream in = repository.extractRDF(RDFFormat.RDFXML, true, true, true, true)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+            if (checksumFile != null) {
+                writeChecksum(file, checksumFile);
+            }
+        } catch (IOException | AccessDeniedException e) {
+            Log.error(Geonet.THESAURUS, "Unable to write thesaurus file " + file + ": " + e.getMessage(), e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    Log.warning(Geonet.THESAURUS, "Unable to delete " + tmp + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the checksum of the content of a file.
+     */
+    static String checksum(Path file) throws IOException {
+        return com.google.common.io.Files.hash(file.toFile(), Hashing.sha1()).toString();
+    }
+
+    /**
+     * Write the checksum of a file to another file.
+     */
+    static void writeChecksum(Path file, Path checksumFile) throws IOException {
+        Files.write(checksumFile, checksum(file).getBytes(StandardCharsets.UTF_8));
     }
 
     public boolean hasConceptScheme(String uri) {
@@ -363,69 +568,75 @@ public class Thesaurus {
      *
      * @param keyword The keyword to add
      */
-    public synchronized URI addElement(KeywordBean keyword) throws IOException, AccessDeniedException, GraphException {
-        Graph myGraph = new org.openrdf.model.impl.GraphImpl();
-
-        ValueFactory myFactory = myGraph.getValueFactory();
-
-        // Define namespace
-        String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
-        String namespaceGml = "http://www.opengis.net/gml#";
-
-        // Create subject
-        URI mySubject = myFactory.createURI(keyword.getUriCode());
-
-        URI skosClass = myFactory.createURI(namespaceSkos, "Concept");
-        URI rdfType = myFactory.createURI(org.openrdf.vocabulary.RDF.TYPE);
-        URI predicatePrefLabel = myFactory
-            .createURI(namespaceSkos, "prefLabel");
-        URI predicateScopeNote = myFactory
-            .createURI(namespaceSkos, "scopeNote");
-
-        URI predicateBoundedBy = myFactory.createURI(namespaceGml, "BoundedBy");
-        URI predicateEnvelope = myFactory.createURI(namespaceGml, "Envelope");
-        URI predicateSrsName = myFactory.createURI(namespaceGml, "srsName");
-        URI srsNameURI = myFactory
-            .createURI("http://www.opengis.net/gml/srs/epsg.xml#epsg:4326");
-        BNode gmlNode = myFactory.createBNode();
-        URI predicateLowerCorner = myFactory.createURI(namespaceGml,
-            "lowerCorner");
-        URI predicateUpperCorner = myFactory.createURI(namespaceGml,
-            "upperCorner");
-
-        Literal lowerCorner = myFactory.createLiteral(keyword.getCoordWest() + " " + keyword.getCoordSouth());
-        Literal upperCorner = myFactory.createLiteral(keyword.getCoordEast() + " " + keyword.getCoordNorth());
-
-        mySubject.addProperty(rdfType, skosClass);
-        Set<Entry<String, String>> values = keyword.getValues().entrySet();
-        for (Entry<String, String> entry : values) {
-            String language = toiso639_1_Lang(entry.getKey());
-            Value valueObj = myFactory.createLiteral(entry.getValue(), language);
-            myGraph.add(mySubject, predicatePrefLabel, valueObj);
+    public URI addElement(KeywordBean keyword) throws IOException, AccessDeniedException, GraphException {
+        lock.writeLock().lock();
+        try {
+            Graph myGraph = new org.openrdf.model.impl.GraphImpl();
 
-        }
-        Set<Entry<String, String>> definitions = keyword.getDefinitions().entrySet();
-        for (Entry<String, String> entry : definitions) {
-            String language = toiso639_1_Lang(entry.getKey());
-            Value definitionObj = myFactory.createLiteral(entry.getValue(), language);
-            myGraph.add(mySubject, predicateScopeNote, definitionObj);
+            ValueFactory myFactory = myGraph.getValueFactory();
 
-        }
-        myGraph.add(mySubject, predicateBoundedBy, gmlNode);
+            // Define namespace
+            String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
+            String namespaceGml = "http://www.opengis.net/gml#";
 
-        gmlNode.addProperty(rdfType, predicateEnvelope);
-        myGraph.add(gmlNode, predicateLowerCorner, lowerCorner);
-        myGraph.add(gmlNode, predicateUpperCorner, upperCorner);
-        myGraph.add(gmlNode, predicateSrsName, srsNameURI);
+            // Create subject
+            URI mySubject = myFactory.createURI(keyword.getUriCode());
 
-        repository.addGraph(myGraph);
-        return mySubject;
+            URI skosClass = myFactory.createURI(namespaceSkos, "Concept");
+            URI rdfType = myFactory.createURI(org.openrdf.vocabulary.RDF.TYPE);
+            URI predicatePrefLabel = myFactory
+                .createURI(namespaceSkos, "prefLabel");
+            URI predicateScopeNote = myFactory
+                .createURI(namespaceSkos, "scopeNote");
+
+            URI predicateBoundedBy = myFactory.createURI(namespaceGml, "BoundedBy");
+            URI predicateEnvelope = myFactory.createURI(namespaceGml, "Envelope");
+            URI predicateSrsName = myFactory.createURI(namespaceGml, "srsName");
+            URI srsNameURI = myFactory
+                .createURI("http://www.opengis.net/gml/srs/epsg.xml#epsg:4326");
+            BNode gmlNode = myFactory.createBNode();
+            URI predicateLowerCorner = myFactory.createURI(namespaceGml,
+                "lowerCorner");
+            URI predicateUpperCorner = myFactory.createURI(namespaceGml,
+                "upperCorner");
+
+            Literal lowerCorner = myFactory.createLiteral(keyword.getCoordWest() + " " + keyword.getCoordSouth());
+            Literal upperCorner = myFactory.createLiteral(keyword.getCoordEast() + " " + keyword.getCoordNorth());
+
+            mySubject.addProperty(rdfType, skosClass);
+            Set<Entry<String, String>> values = keyword.getValues().entrySet();
+            for (Entry<String, String> entry : values) {
+                String language = toiso639_1_Lang(entry.getKey());
+                Value valueObj = myFactory.createLiteral(entry.getValue(), language);
+                myGraph.add(mySubject, predicatePrefLabel, valueObj);
+
+            }
+            Set<Entry<String, String>> definitions = keyword.getDefinitions().entrySet();
+            for (Entry<String, String> entry : definitions) {
+                String language = toiso639_1_Lang(entry.getKey());
+                Value definitionObj = myFactory.createLiteral(entry.getValue(), language);
+                myGraph.add(mySubject, predicateScopeNote, definitionObj);
+
+            }
+            myGraph.add(mySubject, predicateBoundedBy, gmlNode);
+
+            gmlNode.addProperty(rdfType, predicateEnvelope);
+            myGraph.add(gmlNode, predicateLowerCorner, lowerCorner);
+            myGraph.add(gmlNode, predicateUpperCorner, upperCorner);
+            myGraph.add(gmlNode, predicateSrsName, srsNameURI);
+
+            repository.addGraph(myGraph);
+            return mySubject;
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Remove keyword from thesaurus.
      */
-    public synchronized Thesaurus removeElement(KeywordBean keyword) throws MalformedQueryException,
+    public Thesaurus removeElement(KeywordBean keyword) throws MalformedQueryException,
         QueryEvaluationException, IOException, AccessDeniedException {
         String namespace = keyword.getNameSpaceCode();
         String code = keyword.getRelativeCode();
@@ -436,23 +647,35 @@ public class Thesaurus {
     /**
      * Remove keyword from thesaurus.
      */
-    public synchronized Thesaurus removeElement(String namespace, String code) throws AccessDeniedException {
-        Graph myGraph = repository.getGraph();
-        ValueFactory myFactory = myGraph.getValueFactory();
-        URI subject = myFactory.createURI(namespace, code);
+    public Thesaurus removeElement(String namespace, String code) throws AccessDeniedException {
+        lock.writeLock().lock();
+        try {
+            Graph myGraph = repository.getGraph();
+            ValueFactory myFactory = myGraph.getValueFactory();
+            URI subject = myFactory.createURI(namespace, code);
 
-        return removeElement(myGraph, subject);
+            return removeElement(myGraph, subject);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Remove keyword from thesaurus.
      */
-    public synchronized Thesaurus removeElement(String uri) throws AccessDeniedException {
-        Graph myGraph = repository.getGraph();
-        ValueFactory myFactory = myGraph.getValueFactory();
-        URI subject = myFactory.createURI(uri);
+    public Thesaurus removeElement(String uri) throws AccessDeniedException {
+        lock.writeLock().lock();
+        try {
+            Graph myGraph = repository.getGraph();
+            ValueFactory myFactory = myGraph.getValueFactory();
+            URI subject = myFactory.createURI(uri);
 
-        return removeElement(myGraph, subject);
+            return removeElement(myGraph, subject);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     private Thesaurus removeElement(Graph myGraph, URI subject)
@@ -491,93 +714,99 @@ public class Thesaurus {
      *                languages) and the coordinates will only be updated if they are non-empty
      *                strings.
      */
-    public synchronized URI updateElement(KeywordBean keyword, boolean replace) throws AccessDeniedException, IOException,
+    public URI updateElement(KeywordBean keyword, boolean replace) throws AccessDeniedException, IOException,
         MalformedQueryException, QueryEvaluationException, GraphException {
+        lock.writeLock().lock();
+        try {
 
-        // Get thesaurus graph
-        Graph myGraph = repository.getGraph();
+            // Get thesaurus graph
+            Graph myGraph = repository.getGraph();
 
-        // Set namespace skos and predicates
-        ValueFactory myFactory = myGraph.getValueFactory();
-        String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
-        URI predicatePrefLabel = myFactory.createURI(namespaceSkos, "prefLabel");
-        URI predicateScopeNote = myFactory.createURI(namespaceSkos, "scopeNote");
+            // Set namespace skos and predicates
+            ValueFactory myFactory = myGraph.getValueFactory();
+            String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
+            URI predicatePrefLabel = myFactory.createURI(namespaceSkos, "prefLabel");
+            URI predicateScopeNote = myFactory.createURI(namespaceSkos, "scopeNote");
 
-        // Get subject (URI)
-        URI subject = myFactory.createURI(keyword.getUriCode());
+            // Get subject (URI)
+            URI subject = myFactory.createURI(keyword.getUriCode());
 
-        // Remove old labels
-        StatementIterator iter = myGraph.getStatements(subject, predicatePrefLabel, null);
-        removeMatchingLiterals(replace, myGraph, iter, keyword.getValues().keySet());
+            // Remove old labels
+            StatementIterator iter = myGraph.getStatements(subject, predicatePrefLabel, null);
+            removeMatchingLiterals(replace, myGraph, iter, keyword.getValues().keySet());
 
-        // remove old scopeNote
-        iter = myGraph.getStatements(subject, predicateScopeNote, null);
-        removeMatchingLiterals(replace, myGraph, iter, keyword.getDefinitions().keySet());
+            // remove old scopeNote
+            iter = myGraph.getStatements(subject, predicateScopeNote, null);
+            removeMatchingLiterals(replace, myGraph, iter, keyword.getDefinitions().keySet());
 
-        // add updated Labels
-        Set<Entry<String, String>> values = keyword.getValues().entrySet();
-        for (Entry<String, String> entry : values) {
-            String language = toiso639_1_Lang(entry.getKey());
-            Value valueObj = myFactory.createLiteral(entry.getValue(), language);
-            myGraph.add(subject, predicatePrefLabel, valueObj);
+            // add updated Labels
+            Set<Entry<String, String>> values = keyword.getValues().entrySet();
+            for (Entry<String, String> entry : values) {
+                String language = toiso639_1_Lang(entry.getKey());
+                Value valueObj = myFactory.createLiteral(entry.getValue(), language);
+                myGraph.add(subject, predicatePrefLabel, valueObj);
 
-        }
-        // add updated Definitions/Notes
-        Set<Entry<String, String>> definitions = keyword.getDefinitions().entrySet();
-        for (Entry<String, String> entry : definitions) {
-            String language = toiso639_1_Lang(entry.getKey());
-            Value definitionObj = myFactory.createLiteral(entry.getValue(), language);
-            myGraph.add(subject, predicateScopeNote, definitionObj);
+            }
+            // add updated Definitions/Notes
+            Set<Entry<String, String>> definitions = keyword.getDefinitions().entrySet();
+            for (Entry<String, String> entry : definitions) {
+                String language = toiso639_1_Lang(entry.getKey());
+                Value definitionObj = myFactory.createLiteral(entry.getValue(), language);
+                myGraph.add(subject, predicateScopeNote, definitionObj);
 
-        }
+            }
 
-        // update bbox
-        if (replace || !(keyword.getCoordEast() + keyword.getCoordNorth() + keyword.getCoordWest() + keyword.getCoordSouth()).trim().isEmpty()) {
-            String namespaceGml = "http://www.opengis.net/gml#";
-            URI predicateBoundedBy = myFactory.createURI(namespaceGml, "BoundedBy");
-            URI predicateLowerCorner = myFactory.createURI(namespaceGml, "lowerCorner");
-            URI predicateUpperCorner = myFactory.createURI(namespaceGml, "upperCorner");
+            // update bbox
+            if (replace || !(keyword.getCoordEast() + keyword.getCoordNorth() + keyword.getCoordWest() + keyword.getCoordSouth()).trim().isEmpty()) {
+                String namespaceGml = "http://www.opengis.net/gml#";
+                URI predicateBoundedBy = myFactory.createURI(namespaceGml, "BoundedBy");
+                URI predicateLowerCorner = myFactory.createURI(namespaceGml, "lowerCorner");
+                URI predicateUpperCorner = myFactory.createURI(namespaceGml, "upperCorner");
 
-            BNode subjectGml = null;
-            iter = myGraph.getStatements(subject, predicateBoundedBy, null);
-            while (iter.hasNext()) {
-                AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
-                if (st.get().getObject() instanceof BNode) {
-                    subjectGml = (BNode) st.get().getObject();
+                BNode subjectGml = null;
+                iter = myGraph.getStatements(subject, predicateBoundedBy, null);
+                while (iter.hasNext()) {
+                    AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
+                    if (st.get().getObject() instanceof BNode) {
+                        subjectGml = (BNode) st.get().getObject();
+                    }
                 }
-            }
-            if (subjectGml != null) {
-                // lowerCorner
-                iter = myGraph.getStatements(subjectGml, predicateLowerCorner, null);
-                while (true) {
-                    if (!(iter.hasNext())) {
+                if (subjectGml != null) {
+                    // lowerCorner
+                    iter = myGraph.getStatements(subjectGml, predicateLowerCorner, null);
+                    while (true) {
+                        if (!(iter.hasNext())) {
+                            break;
+                        }
+                        AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
+                        myGraph.remove(st.get());
                         break;
                     }
-                    AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
-                    myGraph.remove(st.get());
-                    break;
-                }
-                // upperCorner
-                iter = myGraph.getStatements(subjectGml, predicateUpperCorner, null);
-                while (true) {
-                    if (!(iter.hasNext())) {
+                    // upperCorner
+                    iter = myGraph.getStatements(subjectGml, predicateUpperCorner, null);
+                    while (true) {
+                        if (!(iter.hasNext())) {
+                            break;
+                        }
+                        AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
+                        myGraph.remove(st.get());
                         break;
                     }
-                    AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
-                    myGraph.remove(st.get());
-                    break;
-                }
-                // create the new statements
-                Literal lowerCorner = myFactory.createLiteral(keyword.getCoordWest() + " " + keyword.getCoordSouth());
-                Literal upperCorner = myFactory.createLiteral(keyword.getCoordEast() + " " + keyword.getCoordNorth());
+                    // create the new statements
+                    Literal lowerCorner = myFactory.createLiteral(keyword.getCoordWest() + " " + keyword.getCoordSouth());
+                    Literal upperCorner = myFactory.createLiteral(keyword.getCoordEast() + " " + keyword.getCoordNorth());
 
-                // Add the new statements
-                myGraph.add(subjectGml, predicateLowerCorner, lowerCorner);
-                myGraph.add(subjectGml, predicateUpperCorner, upperCorner);
+                    // Add the new statements
+                    myGraph.add(subjectGml, predicateLowerCorner, lowerCorner);
+                    myGraph.add(subjectGml, predicateUpperCorner, upperCorner);
+                }
             }
-        }
 
-        return subject;
+            return subject;
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
 
@@ -610,20 +839,25 @@ public class Thesaurus {
      * @param namespace Use null, to check a concept identifier not based on thesaurus namespace
      * @param code      The concept identifier
      */
-    public synchronized boolean isFreeCode(String namespace, String code) throws AccessDeniedException {
-        boolean res = true;
-        Graph myGraph = repository.getGraph();
-        ValueFactory myFactory = myGraph.getValueFactory();
-        URI obj = namespace == null ? myFactory.createURI(code) : myFactory.createURI(namespace, code);
-        Collection<?> statementsCollection = myGraph.getStatementCollection(obj, null, null);
-        if (statementsCollection != null && statementsCollection.size() > 0) {
-            res = false;
-        }
-        statementsCollection = myGraph.getStatementCollection(null, null, obj);
-        if (statementsCollection != null && statementsCollection.size() > 0) {
-            res = false;
+    public boolean isFreeCode(String namespace, String code) throws AccessDeniedException {
+        lock.readLock().lock();
+        try {
+            boolean res = true;
+            Graph myGraph = repository.getGraph();
+            ValueFactory myFactory = myGraph.getValueFactory();
+            URI obj = namespace == null ? myFactory.createURI(code) : myFactory.createURI(namespace, code);
+            Collection<?> statementsCollection = myGraph.getStatementCollection(obj, null, null);
+            if (statementsCollection != null && statementsCollection.size() > 0) {
+                res = false;
+            }
+            statementsCollection = myGraph.getStatementCollection(null, null, obj);
+            if (statementsCollection != null && statementsCollection.size() > 0) {
+                res = false;
+            }
+            return res;
+        } finally {
+            lock.readLock().unlock();
         }
-        return res;
     }
 
     public Thesaurus updateCode(KeywordBean bean, String newcode) throws AccessDeniedException, IOException {
@@ -634,16 +868,22 @@ public class Thesaurus {
      * Update concept code by creating URI from namespace and code. This is recommended when
      * thesaurus concept identifiers contains # eg. http://vocab.nerc.ac.uk/collection/P07/current#CFV13N44
      */
-    public synchronized Thesaurus updateCode(String namespace, String oldcode, String newcode) throws AccessDeniedException, IOException {
-        Graph myGraph = repository.getGraph();
+    public Thesaurus updateCode(String namespace, String oldcode, String newcode) throws AccessDeniedException, IOException {
+        lock.writeLock().lock();
+        try {
+            Graph myGraph = repository.getGraph();
 
-        ValueFactory myFactory = myGraph.getValueFactory();
+            ValueFactory myFactory = myGraph.getValueFactory();
 
-        URI oldobj = myFactory.createURI(namespace, oldcode);
-        URI newobj = myFactory.createURI(namespace, newcode);
+            URI oldobj = myFactory.createURI(namespace, oldcode);
+            URI newobj = myFactory.createURI(namespace, newcode);
 
-        return updateElementCode(myGraph, oldobj, newobj);
+            return updateElementCode(myGraph, oldobj, newobj);
 
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -652,15 +892,21 @@ public class Thesaurus {
      * <p>
      * eg. http://vocab.nerc.ac.uk/collection/P07/current/CFV13N44/
      */
-    public synchronized Thesaurus updateCodeByURI(String olduri, String newuri) throws AccessDeniedException, IOException {
-        Graph myGraph = repository.getGraph();
+    public Thesaurus updateCodeByURI(String olduri, String newuri) throws AccessDeniedException, IOException {
+        lock.writeLock().lock();
+        try {
+            Graph myGraph = repository.getGraph();
 
-        ValueFactory myFactory = myGraph.getValueFactory();
+            ValueFactory myFactory = myGraph.getValueFactory();
 
-        URI oldobj = myFactory.createURI(olduri);
-        URI newobj = myFactory.createURI(newuri);
+            URI oldobj = myFactory.createURI(olduri);
+            URI newobj = myFactory.createURI(newuri);
 
-        return updateElementCode(myGraph, oldobj, newobj);
+            return updateElementCode(myGraph, oldobj, newobj);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     private Thesaurus updateElementCode(Graph myGraph, URI oldobj, URI newobj) {
@@ -685,26 +931,32 @@ public class Thesaurus {
      * Set the title of the thesaurus and save the graph to the repository.
      */
     public void addTitleElement(String thesaurusTitle) throws IOException, AccessDeniedException, GraphException {
+        lock.writeLock().lock();
+        try {
 
-        Graph myGraph = new org.openrdf.model.impl.GraphImpl();
+            Graph myGraph = new org.openrdf.model.impl.GraphImpl();
 
-        ValueFactory myFactory = myGraph.getValueFactory();
+            ValueFactory myFactory = myGraph.getValueFactory();
 
-        String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
-        String namespaceDC = "http://purl.org/dc/elements/1.1/";
+            String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
+            String namespaceDC = "http://purl.org/dc/elements/1.1/";
 
-        URI mySubject = myFactory.createURI(this.getDefaultNamespace());
-        URI skosClass = myFactory.createURI(namespaceSkos, "ConceptScheme");
-        URI titleURI = myFactory.createURI(namespaceDC, "title");
+            URI mySubject = myFactory.createURI(this.getDefaultNamespace());
+            URI skosClass = myFactory.createURI(namespaceSkos, "ConceptScheme");
+            URI titleURI = myFactory.createURI(namespaceDC, "title");
 
-        URI rdfType = myFactory.createURI(org.openrdf.vocabulary.RDF.TYPE);
+            URI rdfType = myFactory.createURI(org.openrdf.vocabulary.RDF.TYPE);
 
-        mySubject.addProperty(rdfType, skosClass);
+            mySubject.addProperty(rdfType, skosClass);
 
-        Value valueObj = myFactory.createLiteral(thesaurusTitle);
-        myGraph.add(mySubject, titleURI, valueObj);
+            Value valueObj = myFactory.createLiteral(thesaurusTitle);
+            myGraph.add(mySubject, titleURI, valueObj);
 
-        repository.addGraph(myGraph);
+            repository.addGraph(myGraph);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     //   <skos:ConceptScheme rdf:about="http://www.thesaurus.gc.ca/#CoreSubjectThesaurus">
@@ -946,21 +1198,27 @@ public class Thesaurus {
      * @param subject the keyword that is related to the other keyword
      * @param related the relation between the two keywords
      */
-    public synchronized void addRelation(String subject, KeywordRelation related, String relatedSubject) throws AccessDeniedException, IOException,
+    public void addRelation(String subject, KeywordRelation related, String relatedSubject) throws AccessDeniedException, IOException,
         MalformedQueryException, QueryEvaluationException, GraphException {
+        lock.writeLock().lock();
+        try {
 
-        Graph myGraph = repository.getGraph();
+            Graph myGraph = repository.getGraph();
 
-        // Set namespace skos and predicates
-        ValueFactory myFactory = myGraph.getValueFactory();
-        String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
-        URI relationURI = myFactory.createURI(namespaceSkos, related.name);
-        URI opposteRelationURI = myFactory.createURI(namespaceSkos, related.opposite().name);
-        URI subjectURI = myFactory.createURI(subject);
-        URI relatedSubjectURI = myFactory.createURI(relatedSubject);
+            // Set namespace skos and predicates
+            ValueFactory myFactory = myGraph.getValueFactory();
+            String namespaceSkos = "http://www.w3.org/2004/02/skos/core#";
+            URI relationURI = myFactory.createURI(namespaceSkos, related.name);
+            URI opposteRelationURI = myFactory.createURI(namespaceSkos, related.opposite().name);
+            URI subjectURI = myFactory.createURI(subject);
+            URI relatedSubjectURI = myFactory.createURI(relatedSubject);
 
-        myGraph.add(subjectURI, relationURI, relatedSubjectURI);
-        myGraph.add(relatedSubjectURI, opposteRelationURI, subjectURI);
+            myGraph.add(subjectURI, relationURI, relatedSubjectURI);
+            myGraph.add(relatedSubjectURI, opposteRelationURI, subjectURI);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -970,6 +1228,14 @@ public class Thesaurus {
      * @return keyword
      */
     public KeywordBean getKeyword(String uri, String... languages) {
+        String cacheKey = uri + "|" + Arrays.toString(languages);
+        KeywordBean cached = keywordCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            // Callers may update the keyword, return a copy
+            return new KeywordBean(cached);
+        }
+        long currentVersion = version.get();
+
         List<KeywordBean> keywords;
 
         try {
@@ -987,7 +1253,13 @@ public class Thesaurus {
             throw new TermNotFoundException(getTermNotFoundMessage(uri));
         }
 
-        return keywords.get(0);
+        KeywordBean keyword = keywords.get(0);
+        keywordCache.put(cacheKey, new KeywordBean(keyword));
+        if (version.get() != currentVersion) {
+            // The thesaurus was modified during the query
+            keywordCache.invalidate(cacheKey);
+        }
+        return keyword;
     }
 
     /**
@@ -1188,9 +1460,15 @@ public class Thesaurus {
         return updateElement(bean, true);
     }
 
-    public synchronized void clear() throws IOException, AccessDeniedException {
-        AdminListener listener = new DummyAdminListener();
-        repository.clear(listener);
+    public void clear() throws IOException, AccessDeniedException {
+        lock.writeLock().lock();
+        try {
+            AdminListener listener = new DummyAdminListener();
+            repository.clear(listener);
+        } finally {
+            modified();
+            lock.writeLock().unlock();
+        }
     }
 
     public String getDefaultNamespace() {
@@ -26,20 +26,26 @@ import static com.google.common.io.Files.getNameWithoutExtension;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 
 import jeeves.server.dispatchers.ServiceManager;
 import org.fao.geonet.Util;
@@ -59,6 +65,8 @@ import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.openrdf.sesame.Sesame;
+import org.openrdf.sesame.admin.DummyAdminListener;
+import org.openrdf.sesame.config.AccessDeniedException;
 import org.openrdf.sesame.config.ConfigurationException;
 import org.openrdf.sesame.config.RepositoryConfig;
 import org.openrdf.sesame.config.SailConfig;
@@ -67,6 +75,7 @@ import org.openrdf.sesame.repository.local.LocalRepository;
 import org.openrdf.sesame.repository.local.LocalService;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import jeeves.server.context.ServiceContext;
 import jeeves.xlink.Processor;
@@ -75,10 +84,27 @@ import org.springframework.context.ConfigurableApplicationContext;
 
 public class ThesaurusManager implements ThesaurusFinder {
 
+    /**
+     * Number of thesauri loaded in parallel at startup.
+     */
+    private static final int LOADER_THREADS = Integer.getInteger("geonetwork.thesaurus.loaders",
+        Runtime.getRuntime().availableProcessors());
+
+    /**
+     * If true, the external thesauri are loaded once in an on-disk (Sesame native) store instead of
+     * memory. The store is rebuilt when the checksum of the RDF file changes. Changes made through
+     * the API are written to the RDF file too (see {@link Thesaurus#flush()}). The native store has no RDFS inference: queries only see the statements of the
+     * file, which is all the thesaurus queries use.
+     */
+    private static final boolean NATIVE_STORE = Boolean.getBoolean("geonetwork.thesaurus.nativeStore");
+
+    private static final String CHECKSUM_FILE = "checksum";
+
     private SettingManager settingManager;
     private ConcurrentHashMap<String, Thesaurus> thesauriMap = new ConcurrentHashMap<String, Thesaurus>();
     private LocalService service = null;
     private Path thesauriDirectory = null;
+    private Path storeDirectory = null;
     private boolean initialized = false;
     private AllThesaurus allThesaurus;
 
@@ -111,6 +137,10 @@ public class ThesaurusManager implements ThesaurusFinder {
         thesauriDir = thesauriDir.toAbsolutePath();
         thesauriDirectory = thesauriDir.toAbsolutePath();
 
+        if (NATIVE_STORE) {
+            storeDirectory = context.getBean(GeonetworkDataDirectory.class).getSystemDataDir().resolve("thesauri-store");
+        }
+
         batchBuildTable(isTest, context, thesauriDir);
     }
 
@@ -122,29 +152,28 @@ public class ThesaurusManager implements ThesaurusFinder {
      * @param thesauriDir directory containing thesauri
      */
     private void batchBuildTable(boolean synchRun, ServiceContext context, Path thesauriDir) {
-        ExecutorService executor = null;
-        try {
-            Runnable worker = new InitThesauriTableTask(context, thesauriDir);
-            if (synchRun) {
-                ServiceContext restore = ServiceContext.get();
-              try {
+        final Runnable worker = new InitThesauriTableTask(context, thesauriDir);
+        if (synchRun) {
+            ServiceContext restore = ServiceContext.get();
+            try {
                 if( restore != null){
                     restore.clearAsThreadLocal();
                 }
                 worker.run();
-              } finally {
+            } finally {
                 if( restore != null){
                     restore.setAsThreadLocal();
                 }
-              }
-            } else {
-                executor = Executors.newFixedThreadPool(1);
-                executor.execute(worker);
-            }
-        } finally {
-            if (executor != null) {
-                executor.shutdown();
             }
+        } else {
+            context.runWhenServletInitialized(new Runnable() {
+                @Override
+                public void run() {
+                    ExecutorService executor = Executors.newFixedThreadPool(1);
+                    executor.execute(worker);
+                    executor.shutdown();
+                }
+            });
         }
     }
 
@@ -157,27 +186,46 @@ public class ThesaurusManager implements ThesaurusFinder {
         thesauriMap = new ConcurrentHashMap<>();
         Log.info(Geonet.THESAURUS_MAN, "Scanning " + thesauriDirectory);
 
-        if (thesauriDirectory != null && Files.isDirectory(thesauriDirectory)) {
-            String[] types = {Geonet.CodeList.EXTERNAL, Geonet.CodeList.LOCAL, Geonet.CodeList.REGISTER};
-            for (String type : types) {
-                // init of external repositories
-                Path externalThesauriDirectory = thesauriDirectory.resolve(type).resolve(Geonet.CodeList.THESAURUS);
-                if (Files.isDirectory(externalThesauriDirectory)) {
-                    try (DirectoryStream<Path> paths = Files.newDirectoryStream(externalThesauriDirectory, IO.DIRECTORIES_FILTER)) {
-                        for (Path aRdfDataDirectory : paths) {
-                            loadRepositories(aRdfDataDirectory, type, context);
+        // The RDF files are parsed in parallel
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, LOADER_THREADS),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("thesaurus-loader-%d").build());
+        List<Future<?>> loading = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        try {
+            if (thesauriDirectory != null && Files.isDirectory(thesauriDirectory)) {
+                String[] types = {Geonet.CodeList.EXTERNAL, Geonet.CodeList.LOCAL, Geonet.CodeList.REGISTER};
+                for (String type : types) {
+                    // init of external repositories
+                    Path externalThesauriDirectory = thesauriDirectory.resolve(type).resolve(Geonet.CodeList.THESAURUS);
+                    if (Files.isDirectory(externalThesauriDirectory)) {
+                        try (DirectoryStream<Path> paths = Files.newDirectoryStream(externalThesauriDirectory, IO.DIRECTORIES_FILTER)) {
+                            for (Path aRdfDataDirectory : paths) {
+                                loadRepositories(aRdfDataDirectory, type, context, executor, loading);
+                            }
                         }
                     }
                 }
             }
+
+            for (Future<?> future : loading) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    // errors are logged by the loading task
+                }
+            }
+        } finally {
+            executor.shutdown();
         }
+        Log.info(Geonet.THESAURUS_MAN, thesauriMap.size() + " thesauri loaded in " + (System.currentTimeMillis() - start) + "ms");
     }
 
     /**
      *
      * @param thesauriDirectory
      */
-    private void loadRepositories(Path thesauriDirectory, String root, ServiceContext context) throws IOException {
+    private void loadRepositories(Path thesauriDirectory, String root, ServiceContext context,
+                                  ExecutorService executor, List<Future<?>> loading) throws IOException {
 
         final String siteURL = context.getBean(SettingManager.class).getSiteURL(context);
 
@@ -209,12 +257,18 @@ public class ThesaurusManager implements ThesaurusFinder {
                     gst = new Thesaurus(getIsoLanguagesMapper(context), rdfFileName, root, thesaurusDirName, thesauriDirectory.resolve(aRdfDataFile), siteURL);
                 }
 
-                try {
-                    addThesaurus(gst, false);
-                } catch (Exception e) {
-                    Log.error(Geonet.THESAURUS_MAN, "Error adding thesaurus " + aRdfDataFile + ": " + e.getMessage(), e);
-                    // continue loading
-                }
+                loading.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            addThesaurus(gst, false);
+                        } catch (Exception e) {
+                            Log.error(Geonet.THESAURUS_MAN, "Error adding thesaurus " + aRdfDataFile + ": " + e.getMessage(), e);
+                            // continue loading
+                        }
+                        return null;
+                    }
+                }));
             }
         }
     }
@@ -282,13 +336,34 @@ public class ThesaurusManager implements ThesaurusFinder {
 
     }
 
+    /**
+     * Write the modifications of the thesauri not exported yet to their files.
+     */
+    @PreDestroy
+    public void flush() {
+        for (Thesaurus thesaurus : thesauriMap.values()) {
+            thesaurus.flush();
+        }
+    }
+
     /**
      *
      * @param name
      */
     public void remove(String name) {
-        service.removeRepository(name);
+        Thesaurus thesaurus = thesauriMap.get(name);
+        if (thesaurus != null) {
+            thesaurus.stopFileExport();
+        }
+        removeRepository(service, name);
         thesauriMap.remove(name);
+        if (storeDirectory != null) {
+            try {
+                IO.deleteFileOrDirectory(storeDirectory.resolve(name), true);
+            } catch (IOException e) {
+                Log.warning(Geonet.THESAURUS_MAN, "Unable to remove the store of thesaurus " + name + ": " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -296,27 +371,112 @@ public class ThesaurusManager implements ThesaurusFinder {
      * @param gst
      */
     private void createThesaurusRepository(Thesaurus gst) throws Exception {
+        if (storeDirectory != null && Geonet.CodeList.EXTERNAL.equals(gst.getType())) {
+            try {
+                openNativeRepository(service, gst, storeDirectory);
+            } catch (ConfigurationException e) {
+                Log.error(Geonet.THESAURUS_MAN, "Create Thesaurus Repository error", e);
+                throw e;
+            }
+            return;
+        }
         LocalRepository thesaurusRepository;
         try {
             RepositoryConfig repConfig = new RepositoryConfig(gst.getKey());
 
+            // The memory store is not bound to the file: it would be parsed while the repository
+            // is created, one thesaurus at a time. The file is loaded once the repository is
+            // registered and written back by the thesaurus after the modifications.
             SailConfig syncSail = new SailConfig("org.openrdf.sesame.sailimpl.sync.SyncRdfSchemaRepository");
-            SailConfig memSail = new org.openrdf.sesame.sailimpl.memory.RdfSchemaRepositoryConfig(
-                gst.getFile().toAbsolutePath().toString(), RDFFormat.RDFXML);
+            SailConfig memSail = new SailConfig("org.openrdf.sesame.sailimpl.memory.RdfSchemaRepository");
             repConfig.addSail(syncSail);
             repConfig.addSail(memSail);
             repConfig.setWorldReadable(true);
             repConfig.setWorldWriteable(true);
 
-            thesaurusRepository = service.createRepository(repConfig);
+            thesaurusRepository = createRepository(service, repConfig);
 
-            gst.setRepository(thesaurusRepository);
+            Path rdfFile = gst.getFile().toAbsolutePath();
+            if (Files.exists(rdfFile)) {
+                thesaurusRepository.addData(rdfFile.toFile(), rdfFile.toUri().toString(), RDFFormat.RDFXML, false,
+                    new DummyAdminListener());
+            }
+
+            gst.setRepository(thesaurusRepository, true, null);
         } catch (ConfigurationException e) {
             Log.error(Geonet.THESAURUS_MAN, "Create Thesaurus Repository error", e);
             throw e;
         }
     }
 
+    /**
+     * Thesauri are loaded by several threads and the Sesame service is not documented as thread
+     * safe, so the repositories are created and removed one at a time. The repositories are
+     * created empty and the data is loaded outside of the lock.
+     */
+    private static LocalRepository createRepository(LocalService service, RepositoryConfig repConfig)
+        throws ConfigurationException {
+        synchronized (service) {
+            return service.createRepository(repConfig);
+        }
+    }
+
+    private static void removeRepository(LocalService service, String name) {
+        synchronized (service) {
+            service.removeRepository(name);
+        }
+    }
+
+    /**
+     * Open the on-disk store of a thesaurus, (re)loading the RDF file if it changed since the store
+     * was built.
+     *
+     * @param storeDirectory directory containing the stores of the thesauri
+     * @return true if the store was (re)built from the RDF file.
+     */
+    static boolean openNativeRepository(LocalService service, Thesaurus gst, Path storeDirectory)
+        throws IOException, ConfigurationException, AccessDeniedException {
+        Path rdfFile = gst.getFile().toAbsolutePath();
+        Path dir = storeDirectory.resolve(gst.getKey());
+        Path checksumFile = dir.resolve(CHECKSUM_FILE);
+
+        boolean upToDate = isStoreUpToDate(rdfFile, checksumFile);
+        if (!upToDate) {
+            IO.deleteFileOrDirectory(dir, true);
+            Files.createDirectories(dir);
+        }
+
+        RepositoryConfig repConfig = new RepositoryConfig(gst.getKey());
+
+        SailConfig syncSail = new SailConfig("org.openrdf.sesame.sailimpl.sync.SyncRdfRepository");
+        SailConfig nativeSail = new SailConfig("org.openrdf.sesame.sailimpl.nativerdf.NativeRdfRepository");
+        nativeSail.setParameter("dir", dir.toString());
+        repConfig.addSail(syncSail);
+        repConfig.addSail(nativeSail);
+        repConfig.setWorldReadable(true);
+        repConfig.setWorldWriteable(true);
+
+        LocalRepository thesaurusRepository = createRepository(service, repConfig);
+
+        if (!upToDate) {
+            Log.info(Geonet.THESAURUS_MAN, "Building the store of thesaurus " + gst.getKey());
+            thesaurusRepository.addData(rdfFile.toFile(), rdfFile.toUri().toString(), RDFFormat.RDFXML, false,
+                new DummyAdminListener());
+            Thesaurus.writeChecksum(rdfFile, checksumFile);
+        }
+
+        gst.setRepository(thesaurusRepository, true, checksumFile);
+        return !upToDate;
+    }
+
+    /**
+     * @return true if the checksum file contains the checksum of the RDF file.
+     */
+    static boolean isStoreUpToDate(Path rdfFile, Path checksumFile) throws IOException {
+        return Files.exists(checksumFile) &&
+            Thesaurus.checksum(rdfFile).equals(new String(Files.readAllBytes(checksumFile), StandardCharsets.UTF_8).trim());
+    }
+
     public Path getThesauriDirectory() {
         return thesauriDirectory;
     }
@@ -397,7 +557,7 @@ public class ThesaurusManager implements ThesaurusFinder {
             if (Log.isDebugEnabled(Geonet.THESAURUS_MAN))
                 Log.debug(Geonet.THESAURUS_MAN, "Created thesaurus " + theKey + " from register " + uuid);
         } else {
-            service.removeRepository(theKey);
+            removeRepository(service, theKey);
             createThesaurusRepository(gst);
             if (Log.isDebugEnabled(Geonet.THESAURUS_MAN))
                 Log.debug(Geonet.THESAURUS_MAN, "Rebuilt thesaurus " + theKey + " from register " + uuid);
@@ -534,8 +694,8 @@ public class ThesaurusManager implements ThesaurusFinder {
      * A Task to build the thesaurus table once the servlet is up.
      *
      * Since <b>thesauri can be metadata records</b> (registers) they can also have xlinks. These
-     * may not be resolveable until the servlet is up. Hence we start a thread that waits until the
-     * servlet is up before reading the thesauri and creating the thesaurus table.
+     * may not be resolveable until the servlet is up. Hence the thread reading the thesauri and
+     * creating the thesaurus table is only started once the servlet is up.
      */
     final class InitThesauriTableTask implements Runnable {
 
@@ -554,13 +714,6 @@ public class ThesaurusManager implements ThesaurusFinder {
         public void run() {
             try (ServiceContext context = serviceManager.createServiceContext(Geonet.THESAURUS_MAN, appContext)) {
                 context.setAsThreadLocal();
-                // poll context to see whether servlet is up yet
-                while (!context.isServletInitialized()) {
-                    if (Log.isDebugEnabled(Geonet.THESAURUS_MAN)) {
-                        Log.debug(Geonet.THESAURUS_MAN, "Waiting for servlet to finish initializing..");
-                    }
-                    Thread.sleep(10000); // sleep 10 seconds
-                }
                 try {
                     initThesauriTable(thesauriDir, context);
                 } catch (Exception e) {
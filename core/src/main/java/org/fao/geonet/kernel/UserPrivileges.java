@@ -0,0 +1,174 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.fao.geonet.domain.Operation;
+import org.fao.geonet.domain.Profile;
+
+import jeeves.server.UserSession;
+
+/**
+ * Privileges of the user of a request, resolved by the {@link AccessManager} on first use and
+ * reused for the lifetime of the {@link jeeves.server.context.ServiceContext} they are attached to.
+ *
+ * The instance is only valid for the user, profile and ip address it was created for and as long
+ * as the privileges version of the {@link AccessManager} does not change (eg. when a user joins
+ * or leaves a group). Each record entry also remembers the version of the record sharing it was
+ * resolved with so that the privileges of a record modified during the request are reloaded.
+ * The record entries are bounded in number and age as a request may go through many records (eg.
+ * a batch process).
+ */
+public class UserPrivileges {
+    /**
+     * Maximum number of records for which the privileges are kept.
+     */
+    private static final int MAX_RECORDS = 10000;
+    /**
+     * Time the privileges of a record are kept.
+     */
+    private static final int RECORD_EXPIRY_MINUTES = 10;
+
+    private final boolean authenticated;
+    private final int userId;
+    private final Profile profile;
+    private final String ip;
+    private final long version;
+
+    private volatile Map<Integer, Operation> operations;
+    private volatile Set<Integer> groups;
+    private final ConcurrentMap<Profile, Set<Integer>> profileGroups = new ConcurrentHashMap<>();
+    private final Cache<Integer, RecordEntry<Boolean>> owners = newRecordCache();
+    private final Cache<Integer, RecordEntry<Map<Integer, Set<Integer>>>> operationGroups = newRecordCache();
+
+    UserPrivileges(UserSession session, String ip, long version) {
+        this.authenticated = session != null && session.isAuthenticated();
+        this.userId = authenticated ? session.getUserIdAsInt() : -1;
+        this.profile = authenticated ? session.getProfile() : null;
+        this.ip = ip;
+        this.version = version;
+    }
+
+    /**
+     * @return true if these privileges can be used for the user and ip address.
+     */
+    boolean isValid(UserSession session, String ip, long version) {
+        if (this.version != version || !Objects.equals(this.ip, ip)) {
+            return false;
+        }
+        boolean sessionAuthenticated = session != null && session.isAuthenticated();
+        if (!sessionAuthenticated) {
+            return !authenticated;
+        }
+        return authenticated && userId == session.getUserIdAsInt() && profile == session.getProfile();
+    }
+
+    /**
+     * @return all the operations by id or null if not loaded yet.
+     */
+    Map<Integer, Operation> getOperations() {
+        return operations;
+    }
+
+    void setOperations(Map<Integer, Operation> operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * @return the ids of the groups the user can access or null if not resolved yet.
+     */
+    Set<Integer> getGroups() {
+        return groups;
+    }
+
+    void setGroups(Set<Integer> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * @return the ids of the groups where the user has the profile or null if not resolved yet.
+     */
+    Set<Integer> getGroups(Profile groupProfile) {
+        return profileGroups.get(groupProfile);
+    }
+
+    void setGroups(Profile groupProfile, Set<Integer> groupIds) {
+        profileGroups.put(groupProfile, groupIds);
+    }
+
+    /**
+     * @return whether the user owns the record or null if unknown or resolved with another version of
+     * the record sharing.
+     */
+    Boolean isOwner(int metadataId, long recordVersion) {
+        return get(owners, metadataId, recordVersion);
+    }
+
+    void setOwner(int metadataId, long recordVersion, boolean owner) {
+        owners.put(metadataId, new RecordEntry<>(owner, recordVersion));
+    }
+
+    /**
+     * @return the ids of the groups of the user allowed to perform each operation on the record (by
+     * operation id) or null if unknown or resolved with another version of the record sharing.
+     */
+    Map<Integer, Set<Integer>> getOperationGroups(int metadataId, long recordVersion) {
+        return get(operationGroups, metadataId, recordVersion);
+    }
+
+    void setOperationGroups(int metadataId, long recordVersion, Map<Integer, Set<Integer>> groupsByOperation) {
+        operationGroups.put(metadataId, new RecordEntry<>(groupsByOperation, recordVersion));
+    }
+
+    private static <T> Cache<Integer, RecordEntry<T>> newRecordCache() {
+        return CacheBuilder.newBuilder()
+            .maximumSize(MAX_RECORDS)
+            .expireAfterWrite(RECORD_EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .build();
+    }
+
+    private static <T> T get(Cache<Integer, RecordEntry<T>> entries, int metadataId, long recordVersion) {
+        RecordEntry<T> entry = entries.getIfPresent(metadataId);
+        return entry == null || entry.recordVersion != recordVersion ? null : entry.value;
+    }
+
+    private static final class RecordEntry<T> {
+        private final T value;
+        private final long recordVersion;
+
+        private RecordEntry(T value, long recordVersion) {
+            this.value = value;
+            this.recordVersion = recordVersion;
+        }
+    }
+}
@@ -93,6 +93,30 @@ public interface IMetadataIndexer {
      */
     void batchIndexInThreadPool( List<?> metadataIds);
 
+    /**
+     * Index multiple metadata in the background indexing thread pool. Wait until the current
+     * transaction commits before starting (to make sure that all metadata are committed).
+     *
+     * @param metadataIds the metadata ids to index
+     * @param searchManager the search manager to index into or null to use the default one
+     */
+    void batchIndexInThreadPool(List<?> metadataIds, ISearchManager searchManager);
+
+    /**
+     * Index multiple metadata in the background indexing thread pool and wait until they are
+     * indexed and the changes are committed to the index. The records must already be committed
+     * to the database.
+     *
+     * @param metadataIds the metadata ids to index
+     * @param searchManager the search manager to index into or null to use the default one
+     */
+    void indexInThreadPoolAndWait(List<?> metadataIds, ISearchManager searchManager) throws Exception;
+
+    /**
+     * Progress and throughput of the background indexing.
+     */
+    IndexingProgress getIndexingProgress();
+
     /**
      * Is the platform currently indexing?
      *
@@ -108,6 +132,18 @@ public interface IMetadataIndexer {
      */
     void indexMetadata(List<String> metadataIds) throws Exception;
 
+    /**
+     * Index the list of records passed as parameter in order, loading the database information
+     * required for indexing (owner, groups, privileges, status, validation, ...) for a chunk of
+     * records at once instead of record by record.
+     *
+     * @param metadataIds
+     * @param searchManager the search manager to use or null to use the default one
+     * @return the number of records which could not be indexed
+     * @throws Exception
+     */
+    int indexMetadataBatch(List<String> metadataIds, ISearchManager searchManager) throws Exception;
+
     /**
      * Index one record defined by metadataId
      *
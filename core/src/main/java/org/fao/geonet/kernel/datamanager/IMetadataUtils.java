@@ -564,6 +564,26 @@ public interface IMetadataUtils {
     @Nonnull
     Page<Pair<Integer, ISODate>> findAllIdsAndChangeDates(@Nonnull Pageable pageable);
 
+    /**
+     * Find the next ids and change dates of the metadata, sorted by id. Used to walk all the
+     * records page by page without the cost of an offset.
+     *
+     * @param afterId    only return the metadata with an id greater than this one.
+     * @param maxResults the maximum number of results to return.
+     * @return List of &lt;MetadataId, changeDate&gt; sorted by id
+     */
+    @Nonnull
+    List<Pair<Integer, ISODate>> findIdsAndChangeDatesAfter(int afterId, int maxResults);
+
+    /**
+     * Summary of the records which changes when records are added, removed or updated. It is
+     * used to detect whether the database changed since the index was last synchronized.
+     *
+     * @return an opaque value which can be compared with a previous summary.
+     */
+    @Nonnull
+    String getChangeSummary();
+
     /**
      * Load the source info objects for all the metadata selected by the spec.
      *
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and throughput of the background indexing.
+ *
+ * Counters are reset when records are submitted while no indexing is in progress
+ * so the figures always describe the current (or last) indexing job.
+ *
+ * The dirty flag is not reset with the counters: it is set when any record (in a background job
+ * or not) fails to be indexed and is only cleared once a full reconciliation of the index with the
+ * database completes. Until then the index may be out of sync with the database.
+ */
+public class IndexingProgress {
+
+    /**
+     * The steps of the indexing of a record.
+     */
+    public enum Stage {
+        /**
+         * Loading of the database information (owner, groups, privileges, status, ...) of a chunk of records.
+         */
+        fetch,
+        /**
+         * Loading of the record XML and XLink resolution.
+         */
+        load,
+        /**
+         * Index fields XSLT, geometry extraction and writing of the document in the index.
+         */
+        index
+    }
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean dirty = true;
+    private volatile long startTime = System.currentTimeMillis();
+    private volatile long endTime = -1;
+    private final Map<Stage, StageStatistics> stages = new LinkedHashMap<>();
+
+    public IndexingProgress() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStatistics());
+        }
+    }
+
+    /**
+     * Register records to be indexed.
+     */
+    public synchronized void submit(int nbRecords) {
+        if (getPending() <= 0) {
+            submitted.set(0);
+            indexed.set(0);
+            errors.set(0);
+            for (StageStatistics stageStatistics : stages.values()) {
+                stageStatistics.reset();
+            }
+            startTime = System.currentTimeMillis();
+        }
+        endTime = -1;
+        submitted.addAndGet(nbRecords);
+    }
+
+    /**
+     * Register records which have been processed (with or without error).
+     */
+    public void done(int nbRecords, int nbErrors) {
+        indexed.addAndGet(nbRecords);
+        errors.addAndGet(nbErrors);
+        if (getPending() <= 0) {
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Register a record which could not be indexed.
+     */
+    public void failed() {
+        failed(1);
+    }
+
+    /**
+     * Register records which could not be indexed.
+     */
+    public synchronized void failed(int nbRecords) {
+        failures.addAndGet(nbRecords);
+        dirty = true;
+    }
+
+    /**
+     * @return the number of records which could not be indexed since startup, this counter is
+     * never reset.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Clear the dirty flag once a reconciliation of the index with the database completed.
+     *
+     * @param failuresBefore the value of {@link #getFailures()} when the reconciliation started,
+     *                       the flag is kept if a record failed since then.
+     */
+    public synchronized void reconciled(long failuresBefore) {
+        if (failures.get() == failuresBefore) {
+            dirty = false;
+        }
+    }
+
+    /**
+     * @return true if a record failed to be indexed or if the index was not reconciled with the
+     * database since startup.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Register the time spent by one execution of a stage.
+     */
+    public void record(Stage stage, long startNanos) {
+        stages.get(stage).add(System.nanoTime() - startNanos);
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getPending() {
+        return submitted.get() - indexed.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time the last record was indexed or -1 if indexing is in progress.
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public double getRecordsPerSecond() {
+        long end = endTime == -1 ? System.currentTimeMillis() : endTime;
+        long duration = end - startTime;
+        return duration <= 0 ? 0 : indexed.get() * 1000d / duration;
+    }
+
+    public Map<Stage, StageStatistics> getStages() {
+        return stages;
+    }
+
+    /**
+     * Latency of one stage.
+     */
+    public static class StageStatistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void add(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            do {
+                max = maxNanos.get();
+            } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+        }
+
+        void reset() {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getAverageMillis() {
+            long nb = count.get();
+            return nb == 0 ? 0 : totalNanos.get() / 1000000d / nb;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1000000d;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.get() / 1000000d;
+        }
+    }
+}
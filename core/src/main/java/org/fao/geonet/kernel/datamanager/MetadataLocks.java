@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager;
+
+import com.google.common.util.concurrent.Striped;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Locks serializing the updates of a record.
+ *
+ * The locks are striped by record id so that records are updated concurrently, two records
+ * only wait for each other when their ids share a stripe. The locks are reentrant.
+ */
+public class MetadataLocks {
+
+    private final Striped<Lock> locks;
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contentions = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public MetadataLocks(int stripes) {
+        locks = Striped.lock(stripes);
+    }
+
+    /**
+     * Acquire the lock of a record, waiting for the update of the record (or of a record of
+     * the same stripe) in progress if any.
+     *
+     * @return the lock to unlock once the update is done.
+     */
+    public Lock lock(int metadataId) {
+        Lock lock = locks.get(metadataId);
+        acquisitions.incrementAndGet();
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet();
+            long start = System.nanoTime();
+            lock.lock();
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+        return lock;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return the number of times a lock was already held by another thread.
+     */
+    public long getContentions() {
+        return contentions.get();
+    }
+
+    /**
+     * @return the total time spent waiting for a lock.
+     */
+    public double getWaitMillis() {
+        return waitNanos.get() / 1000000d;
+    }
+}
@@ -23,9 +23,9 @@
 
 package org.fao.geonet.kernel.datamanager.base;
 
-import java.util.concurrent.TimeUnit;
 import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
+import jeeves.server.context.ServiceContextExecutor;
 import jeeves.server.dispatchers.ServiceManager;
 import jeeves.xlink.Processor;
 import org.apache.commons.lang.StringUtils;
@@ -59,6 +59,7 @@ import org.fao.geonet.kernel.SelectionManager;
 import org.fao.geonet.kernel.SvnManager;
 import org.fao.geonet.kernel.XmlSerializer;
 import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
 import org.fao.geonet.kernel.datamanager.IMetadataManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.datamanager.draft.DraftMetadataIndexer;
@@ -72,6 +73,9 @@ import org.fao.geonet.repository.MetadataStatusRepository;
 import org.fao.geonet.repository.MetadataValidationRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.UserRepository;
+import org.fao.geonet.repository.specification.InspireAtomFeedSpecs;
+import org.fao.geonet.repository.specification.MetadataValidationSpecs;
+import org.fao.geonet.repository.specification.OperationAllowedSpecs;
 import org.fao.geonet.repository.userfeedback.UserFeedbackRepository;
 import org.fao.geonet.resources.Resources;
 import org.fao.geonet.util.ThreadUtils;
@@ -85,21 +89,20 @@ import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.transaction.NoTransactionException;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -116,6 +119,22 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPublisherAware {
 
+    /**
+     * Number of records for which database information is loaded at once when indexing a list of records.
+     */
+    public static final int INDEX_BATCH_SIZE = 500;
+
+    /**
+     * Minimum number of records of a chunk queued in the indexing thread pool.
+     */
+    public static final int INDEX_MIN_CHUNK_SIZE = 10;
+
+    /**
+     * Maximum number of chunks waiting for a thread of the indexing thread pool. Queuing more
+     * chunks blocks until one is taken.
+     */
+    public static final int INDEX_MAX_QUEUED_CHUNKS = 100;
+
     Lock waitLoopLock = new ReentrantLock();
     Lock indexingLock = new ReentrantLock();
 
@@ -160,6 +179,11 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
     /** Private service context managed by service init / destroy for use by metadata indexing tasks. */
     private ServiceContext indexMetadataTaskContext;
 
+    /** Pool shared by all indexing jobs, created on first use. */
+    private ServiceContextExecutor indexingExecutor;
+
+    private final IndexingProgress indexingProgress = new IndexingProgress();
+
     public BaseMetadataIndexer() {
     }
 
@@ -173,6 +197,12 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
     }
 
     public void destroy(){
+        synchronized (this) {
+            if (indexingExecutor != null) {
+                indexingExecutor.shutdownNow();
+                indexingExecutor = null;
+            }
+        }
         if (indexMetadataTaskContext != null) {
             indexMetadataTaskContext.clear();
             indexMetadataTaskContext = null;
@@ -318,53 +348,109 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
      */
     @Override
     public void batchIndexInThreadPool( List<?> metadataIds) {
+        batchIndexInThreadPool(metadataIds, null);
+    }
+
+    /**
+     * Index multiple metadata in the indexing thread pool. Wait until the current
+     * transaction commits before starting (to make sure that all metadata
+     * are committed).
+     *
+     * The records are split in small chunks queued in a pool shared by all indexing
+     * jobs, so that a thread which is done with a chunk takes the next one instead of
+     * waiting for the slowest slice of records. The queue of the pool is bounded (see
+     * {@link #INDEX_MAX_QUEUED_CHUNKS}): once it is full, the feeder thread of the pool
+     * waits before queuing the next chunks. The caller (and the transaction or servlet
+     * initialization callback) does not wait.
+     *
+     * @param metadataIds the metadata ids to index
+     * @param searchManager the search manager to use or null to use the default one
+     */
+    @Override
+    public void batchIndexInThreadPool(List<?> metadataIds, ISearchManager searchManager) {
+        ServiceContextExecutor executor = getIndexingExecutor(ThreadUtils.getNumberOfThreads());
+        // queued once the transaction commits and the servlet is up
+        executor.executeAfterCommit(createIndexingTasks(metadataIds, searchManager));
+    }
 
-        TransactionStatus transactionStatus = null;
+    /**
+     * Index multiple metadata in the indexing thread pool and wait until they are indexed and the
+     * changes are committed to the index. The records must already be committed to the database.
+     *
+     * @param metadataIds   the metadata ids to index
+     * @param searchManager the search manager to use or null to use the default one
+     */
+    @Override
+    public void indexInThreadPoolAndWait(List<?> metadataIds, ISearchManager searchManager) throws Exception {
+        ServiceContextExecutor executor = getIndexingExecutor(ThreadUtils.getNumberOfThreads());
+        List<IndexMetadataTask> indexTasks = createIndexingTasks(metadataIds, searchManager);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (IndexMetadataTask task : indexTasks) {
+            tasks.add(Executors.callable(task));
+        }
         try {
-            transactionStatus = TransactionAspectSupport.currentTransactionStatus();
-        } catch (NoTransactionException e) {
-            // not in a transaction so we can go ahead.
+            executor.invokeAll(tasks);
+        } finally {
+            // tasks cancelled on interruption are never run
+            batchIndex.removeAll(indexTasks);
         }
-        // split reindexing task according to number of processors we can assign
+        (searchManager == null ? this.searchManager : searchManager).forceIndexChanges();
+    }
+
+    private List<IndexMetadataTask> createIndexingTasks(List<?> metadataIds, ISearchManager searchManager) {
         int threadCount = ThreadUtils.getNumberOfThreads();
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
 
-        int perThread;
-        if (metadataIds.size() < threadCount)
-            perThread = metadataIds.size();
-        else
-            perThread = metadataIds.size() / threadCount;
+        // small enough chunks for threads to balance the work, big enough
+        // for the database information to be loaded efficiently.
+        int perTask = Math.max(INDEX_MIN_CHUNK_SIZE,
+            Math.min(INDEX_BATCH_SIZE, metadataIds.size() / (threadCount * 4)));
         int index = 0;
         if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
             Log.debug(Geonet.INDEX_ENGINE, "Indexing " + metadataIds.size() + " records.");
             Log.debug(Geonet.INDEX_ENGINE, metadataIds.toString());
         }
         AtomicInteger numIndexedTracker = new AtomicInteger();
+        indexingProgress.submit(metadataIds.size());
 
-
-
+        List<IndexMetadataTask> tasks = new ArrayList<>();
         while (index < metadataIds.size()) {
             int start = index;
-            int count = Math.min(perThread, metadataIds.size() - start);
+            int count = Math.min(perTask, metadataIds.size() - start);
             int nbRecords = start + count;
 
             if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
                 Log.debug(Geonet.INDEX_ENGINE, "Indexing records from " + start + " to " + nbRecords);
             }
 
-            List<?> subList = metadataIds.subList(start, nbRecords);
+            List<?> subList = new ArrayList<>(metadataIds.subList(start, nbRecords));
 
             if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
                 Log.debug(Geonet.INDEX_ENGINE, subList.toString());
             }
 
-            // create threads to process this chunk of ids
-            Runnable worker = new IndexMetadataTask(indexMetadataTaskContext, subList, batchIndex, transactionStatus, numIndexedTracker);
-            executor.execute(worker);
+            tasks.add(new IndexMetadataTask(indexMetadataTaskContext, subList, batchIndex,
+                numIndexedTracker, searchManager, indexingProgress));
             index += count;
         }
-        // let the started threads finish in the background and then clean up executor
-        executor.shutdown();
+        return tasks;
+    }
+
+    /**
+     * @return the pool shared by all indexing jobs, resized to the configured number of threads.
+     */
+    private synchronized ServiceContextExecutor getIndexingExecutor(int threadCount) {
+        if (indexingExecutor == null) {
+            indexingExecutor = new ServiceContextExecutor("gn-indexing", indexMetadataTaskContext, threadCount,
+                INDEX_MAX_QUEUED_CHUNKS);
+        } else {
+            indexingExecutor.setThreads(threadCount);
+        }
+        return indexingExecutor;
+    }
+
+    @Override
+    public IndexingProgress getIndexingProgress() {
+        return indexingProgress;
     }
 
     @Override
@@ -379,20 +465,142 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
     @Override
     public void indexMetadata(final List<String> metadataIds) throws Exception {
-        for (String metadataId : metadataIds) {
-            indexMetadata(metadataId, false, null);
-        }
+        indexMetadataBatch(metadataIds, null);
 
         searchManager.forceIndexChanges();
     }
 
+    @Override
+    public int indexMetadataBatch(final List<String> metadataIds, ISearchManager searchManager) throws Exception {
+        int errors = 0;
+        for (int start = 0; start < metadataIds.size(); start += INDEX_BATCH_SIZE) {
+            List<String> chunk = metadataIds.subList(start, Math.min(start + INDEX_BATCH_SIZE, metadataIds.size()));
+            long fetchStart = System.nanoTime();
+            MetadataIndexingBatch batch = loadIndexingBatch(chunk);
+            indexingProgress.record(IndexingProgress.Stage.fetch, fetchStart);
+            for (String metadataId : chunk) {
+                if (!indexMetadata(metadataId, false, searchManager, batch)) {
+                    errors++;
+                }
+            }
+        }
+        return errors;
+    }
+
     @Override
     public void indexMetadata(final String metadataId, boolean forceRefreshReaders, ISearchManager searchManager)
         throws Exception {
+        indexMetadata(metadataId, forceRefreshReaders, searchManager, null);
+    }
+
+    /**
+     * Load the database information required to index a set of records
+     * using one query per association type.
+     *
+     * @param metadataIds the metadata ids (either integers or strings)
+     */
+    protected MetadataIndexingBatch loadIndexingBatch(final Collection<?> metadataIds) {
+        MetadataIndexingBatch batch = new MetadataIndexingBatch();
+        Set<Integer> ids = new HashSet<>();
+        for (Object metadataId : metadataIds) {
+            try {
+                ids.add(Integer.valueOf(metadataId.toString()));
+            } catch (NumberFormatException e) {
+                // Reported when indexing the record
+            }
+        }
+        if (ids.isEmpty()) {
+            return batch;
+        }
+
+        batch.advancedRatings = RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE));
+        batch.preferGroupLogo = settingManager.getValueAsBool(Settings.SYSTEM_PREFER_GROUP_LOGO, true);
+
+        Set<Integer> userIds = new HashSet<>();
+        Set<Integer> groupIds = new HashSet<>();
+        Set<String> uuids = new HashSet<>();
+        for (AbstractMetadata md : metadataUtils.findAll(ids)) {
+            if (batch.metadata.containsKey(md.getId())) {
+                // An approved record takes precedence over a draft with the same id
+                continue;
+            }
+            batch.metadata.put(md.getId(), md);
+            uuids.add(md.getUuid());
+            if (md.getSourceInfo().getOwner() != null) {
+                userIds.add(md.getSourceInfo().getOwner());
+            }
+            if (md.getSourceInfo().getGroupOwner() != null) {
+                groupIds.add(md.getSourceInfo().getGroupOwner());
+            }
+        }
+
+        for (OperationAllowed operationAllowed : operationAllowedRepository.findAll(OperationAllowedSpecs.hasMetadataIdIn(ids))) {
+            int metadataId = operationAllowed.getId().getMetadataId();
+            List<OperationAllowed> operations = batch.operationsAllowed.get(metadataId);
+            if (operations == null) {
+                operations = new ArrayList<>();
+                batch.operationsAllowed.put(metadataId, operations);
+            }
+            operations.add(operationAllowed);
+            if (operationAllowed.getId().getOperationId() == ReservedOperation.view.getId()) {
+                groupIds.add(operationAllowed.getId().getGroupId());
+            }
+        }
+
+        if (!userIds.isEmpty()) {
+            for (User user : userRepository.findAll(userIds)) {
+                batch.users.put(user.getId(), user);
+            }
+        }
+        if (!groupIds.isEmpty()) {
+            for (Group group : groupRepository.findAll(groupIds)) {
+                batch.groups.put(group.getId(), group);
+            }
+        }
+
+        // Statuses are sorted by change date so the first one is the current one
+        Sort statusSort = new Sort(Sort.Direction.DESC, MetadataStatus_.changeDate.getName());
+        for (MetadataStatus status : statusRepository.findAllByMetadataIdInAndByType(ids, StatusValueType.workflow, statusSort)) {
+            if (!batch.workflowStatus.containsKey(status.getMetadataId())) {
+                batch.workflowStatus.put(status.getMetadataId(), status);
+            }
+        }
+
+        for (MetadataValidation validation : metadataValidationRepository.findAll(MetadataValidationSpecs.hasMetadataIdIn(ids))) {
+            int metadataId = validation.getId().getMetadataId();
+            List<MetadataValidation> validations = batch.validations.get(metadataId);
+            if (validations == null) {
+                validations = new ArrayList<>();
+                batch.validations.put(metadataId, validations);
+            }
+            validations.add(validation);
+        }
+
+        for (InspireAtomFeed feed : inspireAtomFeedRepository.findAll(InspireAtomFeedSpecs.hasMetadataIdIn(ids))) {
+            batch.atomFeeds.put(feed.getMetadataId(), feed);
+        }
+
+        if (batch.advancedRatings && !uuids.isEmpty()) {
+            for (Object[] count : userFeedbackRepository.countByMetadata_UuidIn(uuids)) {
+                batch.feedbackCounts.put((String) count[0], ((Number) count[1]).intValue());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Index one record using the information of the batch it is part of.
+     *
+     * @param batch the prefetched information of the records being indexed
+     *              or null to load it for this record only.
+     * @return false if the record could not be indexed.
+     */
+    protected boolean indexMetadata(final String metadataId, boolean forceRefreshReaders, ISearchManager searchManager,
+                                 MetadataIndexingBatch batch) throws Exception {
         waitLoopLock.lock();
         try {
             if (waitForIndexing.contains(metadataId)) {
-                return;
+                return true;
             }
             while (indexing.contains(metadataId)) {
                 try {
@@ -402,7 +610,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                         wait(200);
                     }
                 } catch (InterruptedException e) {
-                    return;
+                    return true;
                 } finally {
                     waitForIndexing.remove(metadataId);
                 }
@@ -426,7 +634,19 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             Vector<Element> moreFields = new Vector<Element>();
             int id = Integer.parseInt(metadataId);
 
+            if (batch == null) {
+                batch = loadIndexingBatch(Collections.singletonList(metadataId));
+            }
+
+            fullMd = batch.getMetadata(id);
+            if( fullMd == null){
+                // Metadata record has been subsequently deleted
+                searchManager.delete(metadataId);
+                return true;
+            }
+
             // get metadata, extracting and indexing any xlinks
+            long loadStart = System.nanoTime();
             Element md = getXmlSerializer().selectNoXLinkResolver(metadataId, true, false);
             if (getXmlSerializer().resolveXLinks()) {
                 List<Attribute> xlinks = Processor.getXLinks(md);
@@ -443,13 +663,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             } else {
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.HASXLINKS, "0", true, true));
             }
+            indexingProgress.record(IndexingProgress.Stage.load, loadStart);
 
-            fullMd = metadataUtils.findOne(id);
-            if( fullMd == null){
-                // Metadata record has been subsequently deleted
-                searchManager.delete(metadataId);
-                return;
-            }
             final String schema = fullMd.getDataInfo().getSchemaId();
             final String createDate = fullMd.getDataInfo().getCreateDate().getDateAndTime();
             final String changeDate = fullMd.getDataInfo().getChangeDate().getDateAndTime();
@@ -487,8 +702,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.DUMMY, "0", false, true));
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.POPULARITY, popularity, true, true));
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.RATING, rating, true, true));
-            if (RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE))) {
-                int nbOfFeedback = userFeedbackRepository.findByMetadata_Uuid(uuid).size();
+            if (batch.isAdvancedRatings()) {
+                int nbOfFeedback = batch.getFeedbackCount(uuid);
                 moreFields.add(
                     SearchManager.makeField(Geonet.IndexFieldNames.FEEDBACKCOUNT, nbOfFeedback + "", true, true));
             }
@@ -496,15 +711,15 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.EXTRA, extra, false, true));
 
             // If the metadata has an atom document, index related information
-            InspireAtomFeed feed = inspireAtomFeedRepository.findByMetadataId(id);
+            InspireAtomFeed feed = batch.getAtomFeed(id);
 
             if ((feed != null) && StringUtils.isNotEmpty(feed.getAtom())) {
                 moreFields.add(SearchManager.makeField("has_atom", "y", true, true));
                 moreFields.add(SearchManager.makeField("any", feed.getAtom(), false, true));
             }
 
-            if (owner != null) {
-                User user = userRepository.findOne(fullMd.getSourceInfo().getOwner());
+            if (fullMd.getSourceInfo().getOwner() != null) {
+                User user = batch.getUser(fullMd.getSourceInfo().getOwner());
                 if (user != null) {
                     moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.USERINFO, user.getUsername() + "|"
                         + user.getSurname() + "|" + user.getName() + "|" + user.getProfile(), true, false));
@@ -517,11 +732,11 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
             String logoUUID = null;
             if (groupOwner != null) {
-                final Group group = groupRepository.findOne(groupOwner);
+                final Group group = batch.getGroup(groupOwner);
                 if (group != null) {
                     moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_OWNER,
                         String.valueOf(groupOwner), true, true));
-                    final boolean preferGroup = settingManager.getValueAsBool(Settings.SYSTEM_PREFER_GROUP_LOGO, true);
+                    final boolean preferGroup = batch.isPreferGroupLogo();
                     if (group.getWebsite() != null && !group.getWebsite().isEmpty() && preferGroup) {
                         moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_WEBSITE, group.getWebsite(),
                             true, false));
@@ -532,33 +747,13 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 }
             }
 
-            // Group logo are in the harvester folder and contains extension in file name
-            boolean added = false;
-            if (StringUtils.isNotEmpty(logoUUID)) {
-                final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
-                try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
-                    if (logo != null) {
-                        added = true;
-                        moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO,
-                                                               "/images/harvesting/" + logo.getPath().getFileName(),
-                                                               true, false));
-                    }
-                }
-            }
-
-            // If not available, use the local catalog logo
-            if (!added) {
-                logoUUID = source + ".png";
-                final Path logosDir = resources.locateLogosDir(getServiceContext());
-                try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), logoUUID, logosDir)) {
-                    if (image != null) {
-                        moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO, "/images/logos/" + logoUUID, true, false));
-                    }
-                }
+            String logo = getLogo(batch, logoUUID, source);
+            if (logo != null) {
+                moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO, logo, true, false));
             }
 
             // get privileges
-            List<OperationAllowed> operationsAllowed = operationAllowedRepository.findAllById_MetadataId(id);
+            List<OperationAllowed> operationsAllowed = batch.getOperationsAllowed(id);
 
             boolean isPublishedToAll = false;
 
@@ -570,7 +765,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.OP_PREFIX + operationId,
                     String.valueOf(groupId), true, true));
                 if (operationId == ReservedOperation.view.getId()) {
-                    Group g = groupRepository.findOne(groupId);
+                    Group g = batch.getGroup(groupId);
                     if (g != null) {
                         moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_PUBLISHED, g.getName(),
                             true, true));
@@ -592,10 +787,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             }
 
             // get status
-            Sort statusSort = new Sort(Sort.Direction.DESC, MetadataStatus_.changeDate.getName());
-            List<MetadataStatus> statuses = statusRepository.findAllByMetadataIdAndByType(id, StatusValueType.workflow, statusSort);
-            if (!statuses.isEmpty()) {
-                MetadataStatus stat = statuses.get(0);
+            MetadataStatus stat = batch.getWorkflowStatus(id);
+            if (stat != null) {
                 String status = String.valueOf(stat.getStatusValue().getId());
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.STATUS, status, true, true));
                 String statusChangeDate = stat.getChangeDate().getDateAndTime();
@@ -607,7 +800,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             // -1 : not evaluated
             // 0 : invalid
             // 1 : valid
-            List<MetadataValidation> validationInfo = metadataValidationRepository.findAllById_MetadataId(id);
+            List<MetadataValidation> validationInfo = batch.getValidations(id);
             if (validationInfo.isEmpty()) {
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.VALID, "-1", true, true));
             } else {
@@ -641,12 +834,15 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             //To inject extra fields from BaseMetadataIndexer inherited beans
             addExtraFields(fullMd, moreFields);
 
+            long indexStart = System.nanoTime();
             searchManager.index(schemaManager.getSchemaDir(schema), md, metadataId, moreFields, metadataType, root,
                 forceRefreshReaders);
+            indexingProgress.record(IndexingProgress.Stage.index, indexStart);
 
         } catch (Exception x) {
             Log.error(Geonet.DATA_MANAGER, "The metadata document index with id=" + metadataId
                 + " is corrupt/invalid - ignoring it. Error: " + x.getMessage(), x);
+            indexingProgress.failed();
             fullMd = null;
         } finally {
             indexingLock.lock();
@@ -659,8 +855,48 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         if (fullMd != null) {
             this.publisher.publishEvent(new MetadataIndexCompleted(fullMd));
         }
+        return fullMd != null;
     }
 
+    /**
+     * Group logo are in the harvester folder and contains extension in file name.
+     * If not available, use the local catalog logo.
+     * The lookups are cached in the batch as most records of a batch share the same logos.
+     *
+     * @return the logo index field value or null if none
+     */
+    private String getLogo(MetadataIndexingBatch batch, String logoUUID, String source) throws IOException {
+        if (StringUtils.isNotEmpty(logoUUID)) {
+            String groupLogo = batch.logos.get(logoUUID);
+            if (groupLogo == null) {
+                groupLogo = "";
+                final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
+                try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
+                    if (logo != null) {
+                        groupLogo = "/images/harvesting/" + logo.getPath().getFileName();
+                    }
+                }
+                batch.logos.put(logoUUID, groupLogo);
+            }
+            if (!groupLogo.isEmpty()) {
+                return groupLogo;
+            }
+        }
+
+        String sourceLogoUUID = source + ".png";
+        String sourceLogo = batch.logos.get(sourceLogoUUID);
+        if (sourceLogo == null) {
+            sourceLogo = "";
+            final Path logosDir = resources.locateLogosDir(getServiceContext());
+            try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), sourceLogoUUID, logosDir)) {
+                if (image != null) {
+                    sourceLogo = "/images/logos/" + sourceLogoUUID;
+                }
+            }
+            batch.logos.put(sourceLogoUUID, sourceLogo);
+        }
+        return sourceLogo.isEmpty() ? null : sourceLogo;
+    }
 
     /**
      * Function to be overrided by children to add extra fields cleanly.
@@ -50,13 +50,12 @@ import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.MetadataCategory;
 import org.fao.geonet.domain.MetadataDataInfo;
-import org.fao.geonet.domain.MetadataDataInfo_;
 import org.fao.geonet.domain.MetadataFileUpload;
 import org.fao.geonet.domain.MetadataFileUpload_;
 import org.fao.geonet.domain.MetadataSourceInfo;
 import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.domain.MetadataValidation;
-import org.fao.geonet.domain.Metadata_;
+import org.fao.geonet.domain.Operation;
 import org.fao.geonet.domain.OperationAllowed;
 import org.fao.geonet.domain.OperationAllowedId;
 import org.fao.geonet.domain.Pair;
@@ -65,6 +64,7 @@ import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.EditLib;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.HarvestInfoProvider;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.ThesaurusManager;
@@ -72,12 +72,15 @@ import org.fao.geonet.kernel.UpdateDatestamp;
 import org.fao.geonet.kernel.XmlSerializer;
 import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
 import org.fao.geonet.kernel.datamanager.IMetadataManager;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
+import org.fao.geonet.kernel.datamanager.MetadataLocks;
 import org.fao.geonet.kernel.datamanager.IMetadataOperations;
 import org.fao.geonet.kernel.datamanager.IMetadataSchemaUtils;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.datamanager.IMetadataValidator;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.schema.SchemaPlugin;
+import org.fao.geonet.kernel.search.IndexChangeDates;
 import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.MetaSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
@@ -97,7 +100,6 @@ import org.fao.geonet.repository.MetadataStatusRepository;
 import org.fao.geonet.repository.MetadataValidationRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.PathSpec;
-import org.fao.geonet.repository.SortUtils;
 import org.fao.geonet.repository.Updater;
 import org.fao.geonet.repository.UserRepository;
 import org.fao.geonet.repository.UserSavedSelectionRepository;
@@ -115,9 +117,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.transaction.TransactionStatus;
 
@@ -128,13 +127,13 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.Root;
 import javax.transaction.Transactional;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -144,6 +143,7 @@ import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
 import static org.springframework.data.jpa.domain.Specifications.where;
 
@@ -198,6 +198,12 @@ public class BaseMetadataManager implements IMetadataManager {
     private UserSavedSelectionRepository userSavedSelectionRepository;
 
     private static final int METADATA_BATCH_PAGE_SIZE = 50000;
+    private static final String INDEX_WATERMARK_FILE = "index-watermark.txt";
+
+    /**
+     * Serialize the updates of a record without blocking the updates of the other records.
+     */
+    private final MetadataLocks updateLocks = new MetadataLocks(256);
 
     @Autowired
     private ApplicationContext _applicationContext;
@@ -236,83 +242,136 @@ public class BaseMetadataManager implements IMetadataManager {
 
     @Override
     public void destroy() throws Exception {
+        writeIndexWatermark();
     }
 
     /**
      * Reindex content, refreshing the index for any content that has changed.
      *
+     * Unless a reindex is forced, the check is skipped if the database did not change since the
+     * index watermark was written at the last shutdown. Once done, the index is no longer
+     * considered dirty unless a record failed to be indexed in the meantime (or fails in the
+     * reindexing scheduled by the check).
+     *
+     * Only the Lucene index is reconciled, the Elasticsearch index is updated through the index
+     * API.
+     *
      * @param forceReindex Force reindex of all content
      * @throws Exception
      */
     public void refreshIndex(boolean forceReindex) throws Exception {
-        // From DataManager:
-
-        // get lastchangedate of all metadata in index
-        Map<String, String> docs = getSearchManager().getDocsChangeDate();
+        IndexingProgress progress = metadataIndexer.getIndexingProgress();
+        long failuresBefore = progress.getFailures();
+        if (!forceReindex && isIndexSynchronized()) {
+            LOGGER_DATA_MANAGER.info("Database unchanged since the index watermark was written, index check skipped.");
+            progress.reconciled(failuresBefore);
+            return;
+        }
 
-        // set up results HashMap for post processing of records to be indexed
-        ArrayList<String> toIndex = new ArrayList<String>();
+        // get lastchangedate of all metadata in index, sorted by id
+        IndexChangeDates docs = getSearchManager().getDocsChangeDates();
 
         LOGGER_DATA_MANAGER.debug("INDEX CONTENT:");
 
-        Sort sortByMetadataChangeDate = SortUtils.createSort(Metadata_.dataInfo, MetadataDataInfo_.changeDate);
-        int currentPage = 0;
-        Page<Pair<Integer, ISODate>> results = metadataUtils
-            .findAllIdsAndChangeDates(new PageRequest(currentPage, METADATA_BATCH_PAGE_SIZE, sortByMetadataChangeDate));
+        // walk the records by id so that a page does not cost more than the previous one, and
+        // submit the records to index page by page instead of collecting all of them first
+        int lastId = Integer.MIN_VALUE;
+        List<Pair<Integer, ISODate>> results = metadataUtils.findIdsAndChangeDatesAfter(lastId, METADATA_BATCH_PAGE_SIZE);
 
         // index all metadata in DBMS if needed
-        while (results.getNumberOfElements() > 0) {
+        while (!results.isEmpty()) {
+            List<String> toIndex = new ArrayList<String>();
             for (Pair<Integer, ISODate> result : results) {
-
-                // get metadata
-                String id = String.valueOf(result.one());
+                int id = result.one();
 
                 LOGGER_DATA_MANAGER.debug("- record ({})", id);
 
-                String idxLastChange = docs.get(id);
+                long idxLastChange = docs.find(id);
 
                 // if metadata is not indexed index it
-                if (idxLastChange == null) {
+                if (idxLastChange == IndexChangeDates.NOT_INDEXED) {
                     LOGGER_DATA_MANAGER.debug("-  will be indexed");
-                    toIndex.add(id);
+                    toIndex.add(String.valueOf(id));
 
                     // else, if indexed version is not the latest index it
                 } else {
-                    docs.remove(id);
-
-                    String lastChange = result.two().toString();
+                    long lastChange = result.two().toDate().getTime();
 
                     LOGGER_DATA_MANAGER.debug("- lastChange: {}", lastChange);
                     LOGGER_DATA_MANAGER.debug("- idxLastChange: {}", idxLastChange);
 
-                    // date in index contains 't', date in DBMS contains 'T'
-                    if (forceReindex || !idxLastChange.equalsIgnoreCase(lastChange)) {
+                    if (forceReindex || idxLastChange != lastChange) {
                         LOGGER_DATA_MANAGER.debug("-  will be indexed");
-                        toIndex.add(id);
+                        toIndex.add(String.valueOf(id));
                     }
                 }
             }
 
-            currentPage++;
-            results = metadataRepository
-                .findAllIdsAndChangeDates(new PageRequest(currentPage, METADATA_BATCH_PAGE_SIZE, sortByMetadataChangeDate));
-        }
+            // if anything to index then schedule it to be done after servlet is
+            // up so that any links to local fragments are resolvable
+            if (toIndex.size() > 0) {
+                metadataIndexer.batchIndexInThreadPool(toIndex);
+            }
 
-        // if anything to index then schedule it to be done after servlet is
-        // up so that any links to local fragments are resolvable
-        if (toIndex.size() > 0) {
-            metadataIndexer.batchIndexInThreadPool( toIndex);
+            lastId = results.get(results.size() - 1).one();
+            results = metadataUtils.findIdsAndChangeDatesAfter(lastId, METADATA_BATCH_PAGE_SIZE);
         }
 
-        if (docs.size() > 0) { // anything left?
+        int[] notInDb = docs.getNotFound();
+        if (notInDb.length > 0) { // anything left?
             LOGGER_DATA_MANAGER.debug("INDEX HAS RECORDS THAT ARE NOT IN DB:");
         }
 
         // remove from index metadata not in DBMS
-        for (String id : docs.keySet()) {
-            getSearchManager().delete(id);
+        for (int id : notInDb) {
+            getSearchManager().delete(String.valueOf(id));
             LOGGER_DATA_MANAGER.debug("- removed record ({}) from index", id);
         }
+        progress.reconciled(failuresBefore);
+    }
+
+    private Path getIndexWatermarkFile() {
+        return getApplicationContext().getBean(GeonetworkDataDirectory.class).getLuceneDir().resolve(INDEX_WATERMARK_FILE);
+    }
+
+    /**
+     * Check the index watermark written at the last shutdown. The watermark is removed so that
+     * the index is checked on the next start if the catalogue is not shut down properly.
+     *
+     * @return true if the database did not change since the watermark was written.
+     */
+    private boolean isIndexSynchronized() {
+        Path watermarkFile = getIndexWatermarkFile();
+        if (!Files.exists(watermarkFile)) {
+            return false;
+        }
+        try {
+            String watermark = new String(Files.readAllBytes(watermarkFile), StandardCharsets.UTF_8);
+            Files.delete(watermarkFile);
+            return watermark.equals(metadataUtils.getChangeSummary());
+        } catch (Exception e) {
+            LOGGER_DATA_MANAGER.warn("Unable to check index watermark {}: {}", watermarkFile, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record the state of the database once all records are indexed so that the next start can
+     * skip the index check. Nothing is written if indexing is in progress, or if the index is dirty:
+     * not reconciled since startup or a record failed to be indexed since the last reconciliation.
+     */
+    private void writeIndexWatermark() {
+        IndexingProgress progress = metadataIndexer.getIndexingProgress();
+        if (progress.isDirty() || progress.getPending() > 0) {
+            LOGGER_DATA_MANAGER.info("Indexing not complete, the index will be checked on next start.");
+            return;
+        }
+        Path watermarkFile = getIndexWatermarkFile();
+        try {
+            Files.write(watermarkFile, metadataUtils.getChangeSummary().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            LOGGER_DATA_MANAGER.warn("Unable to write index watermark {}: {}", watermarkFile, e.getMessage());
+        }
     }
 
     protected SearchManager getSearchManager() {
@@ -751,14 +810,19 @@ public class BaseMetadataManager implements IMetadataManager {
      * For update of owner info.
      */
     @Override
-    public synchronized void updateMetadataOwner(final int id, final String owner, final String groupOwner) throws Exception {
-        metadataRepository.update(id, new Updater<Metadata>() {
-            @Override
-            public void apply(@Nonnull Metadata entity) {
-                entity.getSourceInfo().setGroupOwner(Integer.valueOf(groupOwner));
-                entity.getSourceInfo().setOwner(Integer.valueOf(owner));
-            }
-        });
+    public void updateMetadataOwner(final int id, final String owner, final String groupOwner) throws Exception {
+        Lock lock = updateLocks.lock(id);
+        try {
+            metadataRepository.update(id, new Updater<Metadata>() {
+                @Override
+                public void apply(@Nonnull Metadata entity) {
+                    entity.getSourceInfo().setGroupOwner(Integer.valueOf(groupOwner));
+                    entity.getSourceInfo().setOwner(Integer.valueOf(owner));
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -769,7 +833,25 @@ public class BaseMetadataManager implements IMetadataManager {
      * @return metadata if the that was updated
      */
     @Override
-    public synchronized AbstractMetadata updateMetadata(final ServiceContext context, final String metadataId, final Element md,
+    public AbstractMetadata updateMetadata(final ServiceContext context, final String metadataId, final Element md,
+        final boolean validate, final boolean ufo, final boolean index, final String lang, final String changeDate,
+        final boolean updateDateStamp) throws Exception {
+        Lock lock = updateLocks.lock(Integer.parseInt(metadataId));
+        try {
+            return doUpdateMetadata(context, metadataId, md, validate, ufo, index, lang, changeDate, updateDateStamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The locks serializing the updates of a record.
+     */
+    public MetadataLocks getUpdateLocks() {
+        return updateLocks;
+    }
+
+    private AbstractMetadata doUpdateMetadata(final ServiceContext context, final String metadataId, final Element md,
         final boolean validate, final boolean ufo, final boolean index, final String lang, final String changeDate,
         final boolean updateDateStamp) throws Exception {
         Log.trace(Geonet.DATA_MANAGER, "Update record with id " + metadataId);
@@ -1162,9 +1244,8 @@ public class BaseMetadataManager implements IMetadataManager {
         });
         Specification<OperationAllowed> operationAllowedSpec = OperationAllowedSpecs.hasMetadataIdIn(metadataIds);
 
-        final Collection<Integer> allUserGroups = accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), false);
-        final SetMultimap<Integer, ReservedOperation> operationsPerMetadata = loadOperationsAllowed(context,
-            where(operationAllowedSpec).and(OperationAllowedSpecs.hasGroupIdIn(allUserGroups)));
+        final Map<Integer, Set<Operation>> operationsPerMetadata = accessManager.getOperations(context,
+            new ArrayList<>(metadataIds));
         final Set<Integer> visibleToAll = loadOperationsAllowed(context,
             where(operationAllowedSpec).and(OperationAllowedSpecs.isPublic(ReservedOperation.view))).keySet();
         final Set<Integer> downloadableByGuest = loadOperationsAllowed(context,
@@ -1177,9 +1258,12 @@ public class BaseMetadataManager implements IMetadataManager {
             Element infoEl = entry.getValue();
             final Integer mdId = Integer.valueOf(entry.getKey());
             MetadataSourceInfo sourceInfo = allSourceInfo.get(mdId);
-            Set<ReservedOperation> operations = operationsPerMetadata.get(mdId);
-            if (operations == null) {
-                operations = Collections.emptySet();
+            Set<ReservedOperation> operations = new HashSet<>();
+            for (Operation operation : operationsPerMetadata.get(mdId)) {
+                ReservedOperation reservedOperation = ReservedOperation.lookup(operation.getId());
+                if (reservedOperation != null) {
+                    operations.add(reservedOperation);
+                }
             }
 
             boolean isOwner = accessManager.isOwner(context, sourceInfo);
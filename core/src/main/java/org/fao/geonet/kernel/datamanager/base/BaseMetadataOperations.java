@@ -42,6 +42,7 @@ import org.fao.geonet.domain.UserGroupId;
 import org.fao.geonet.events.md.MetadataPublished;
 import org.fao.geonet.events.md.MetadataUnpublished;
 import org.fao.geonet.exceptions.ServiceNotAllowedEx;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.SvnManager;
 import org.fao.geonet.kernel.datamanager.IMetadataOperations;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
@@ -79,6 +80,9 @@ public class BaseMetadataOperations implements IMetadataOperations, ApplicationE
     private SettingManager settingManager;
     @Autowired(required = false)
     private SvnManager svnManager;
+    @Autowired
+    @Lazy
+    private AccessManager accessManager;
 
     private ApplicationEventPublisher eventPublisher;
 
@@ -114,6 +118,8 @@ public class BaseMetadataOperations implements IMetadataOperations, ApplicationE
         } else {
             opAllowedRepo.deleteAllByMetadataId(Integer.parseInt(metadataId));
         }
+        // Bulk deletes do not trigger the sharing events
+        accessManager.privilegesChanged(Integer.parseInt(metadataId));
     }
 
     /**
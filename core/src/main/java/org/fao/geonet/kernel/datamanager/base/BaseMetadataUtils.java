@@ -33,6 +33,7 @@ import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.NodeInfo;
 import org.fao.geonet.constants.Edit;
@@ -1067,6 +1068,25 @@ public class BaseMetadataUtils implements IMetadataUtils {
         return metadataRepository.findAllIdsAndChangeDates(pageable);
     }
 
+    @Override
+    public List<Pair<Integer, ISODate>> findIdsAndChangeDatesAfter(int afterId, int maxResults) {
+        return metadataRepository.findIdsAndChangeDatesAfter(afterId, maxResults);
+    }
+
+    @Override
+    public String getChangeSummary() {
+        return toChangeSummary(metadataRepository.findChangeSummary());
+    }
+
+    /**
+     * @param rows the result of a change summary query.
+     * @return the count, greatest id and most recent change date separated by '|'.
+     */
+    protected static String toChangeSummary(List<Object[]> rows) {
+        Object[] row = rows.isEmpty() ? new Object[0] : rows.get(0);
+        return StringUtils.join(row, '|');
+    }
+
     @Override
     public Map<Integer, MetadataSourceInfo> findAllSourceInfo(Specification<? extends AbstractMetadata> spec) {
         try {
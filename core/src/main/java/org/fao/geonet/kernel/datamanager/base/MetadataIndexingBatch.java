@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager.base;
+
+import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.domain.Group;
+import org.fao.geonet.domain.InspireAtomFeed;
+import org.fao.geonet.domain.MetadataStatus;
+import org.fao.geonet.domain.MetadataValidation;
+import org.fao.geonet.domain.OperationAllowed;
+import org.fao.geonet.domain.User;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Database information needed to index a chunk of records, loaded with a few set based
+ * queries by {@link BaseMetadataIndexer} instead of one query per record and per association.
+ *
+ * An instance is only used by the thread indexing the chunk and is discarded afterwards.
+ */
+public class MetadataIndexingBatch {
+    final Map<Integer, AbstractMetadata> metadata = new HashMap<>();
+    final Map<Integer, User> users = new HashMap<>();
+    final Map<Integer, Group> groups = new HashMap<>();
+    final Map<Integer, List<OperationAllowed>> operationsAllowed = new HashMap<>();
+    final Map<Integer, MetadataStatus> workflowStatus = new HashMap<>();
+    final Map<Integer, List<MetadataValidation>> validations = new HashMap<>();
+    final Map<Integer, InspireAtomFeed> atomFeeds = new HashMap<>();
+    final Map<String, Integer> feedbackCounts = new HashMap<>();
+    /**
+     * Logo index field value by logo file name. An empty string means that no logo was found.
+     */
+    final Map<String, String> logos = new HashMap<>();
+
+    boolean preferGroupLogo;
+    boolean advancedRatings;
+
+    /**
+     * @return the record or null if the record does not exist (anymore).
+     */
+    public AbstractMetadata getMetadata(int id) {
+        return metadata.get(id);
+    }
+
+    public User getUser(int id) {
+        return users.get(id);
+    }
+
+    public Group getGroup(int id) {
+        return groups.get(id);
+    }
+
+    public List<OperationAllowed> getOperationsAllowed(int metadataId) {
+        List<OperationAllowed> operations = operationsAllowed.get(metadataId);
+        return operations == null ? Collections.<OperationAllowed>emptyList() : operations;
+    }
+
+    /**
+     * @return the most recent workflow status of the record or null if none.
+     */
+    public MetadataStatus getWorkflowStatus(int metadataId) {
+        return workflowStatus.get(metadataId);
+    }
+
+    public List<MetadataValidation> getValidations(int metadataId) {
+        List<MetadataValidation> validationInfo = validations.get(metadataId);
+        return validationInfo == null ? Collections.<MetadataValidation>emptyList() : validationInfo;
+    }
+
+    public InspireAtomFeed getAtomFeed(int metadataId) {
+        return atomFeeds.get(metadataId);
+    }
+
+    public int getFeedbackCount(String metadataUuid) {
+        Integer count = feedbackCounts.get(metadataUuid);
+        return count == null ? 0 : count;
+    }
+
+    public boolean isPreferGroupLogo() {
+        return preferGroupLogo;
+    }
+
+    public boolean isAdvancedRatings() {
+        return advancedRatings;
+    }
+}
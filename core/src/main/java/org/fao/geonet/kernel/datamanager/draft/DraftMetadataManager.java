@@ -25,6 +25,7 @@ package org.fao.geonet.kernel.datamanager.draft;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.PostConstruct;
@@ -102,17 +103,22 @@ public class DraftMetadataManager extends BaseMetadataManager implements IMetada
      * For update of owner info.
      */
     @Override
-    public synchronized void updateMetadataOwner(final int id, final String owner, final String groupOwner)
+    public void updateMetadataOwner(final int id, final String owner, final String groupOwner)
         throws Exception {
 
         if (metadataDraftRepository.exists(id)) {
-            metadataDraftRepository.update(id, new Updater<MetadataDraft>() {
-                @Override
-                public void apply(@Nonnull MetadataDraft entity) {
-                    entity.getSourceInfo().setGroupOwner(Integer.valueOf(groupOwner));
-                    entity.getSourceInfo().setOwner(Integer.valueOf(owner));
-                }
-            });
+            Lock lock = getUpdateLocks().lock(id);
+            try {
+                metadataDraftRepository.update(id, new Updater<MetadataDraft>() {
+                    @Override
+                    public void apply(@Nonnull MetadataDraft entity) {
+                        entity.getSourceInfo().setGroupOwner(Integer.valueOf(groupOwner));
+                        entity.getSourceInfo().setOwner(Integer.valueOf(owner));
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
         } else {
             super.updateMetadataOwner(id, owner, groupOwner);
         }
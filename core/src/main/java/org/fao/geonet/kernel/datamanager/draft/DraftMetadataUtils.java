@@ -390,6 +390,33 @@ public class DraftMetadataUtils extends BaseMetadataUtils {
         return res;
     }
 
+    /**
+     * Merges the next records of both tables by id. Records and drafts share the same id
+     * sequence, so an id is never returned twice.
+     */
+    @Override
+    public List<Pair<Integer, ISODate>> findIdsAndChangeDatesAfter(int afterId, int maxResults) {
+        List<Pair<Integer, ISODate>> records = super.findIdsAndChangeDatesAfter(afterId, maxResults);
+        List<Pair<Integer, ISODate>> drafts = metadataDraftRepository.findIdsAndChangeDatesAfter(afterId, maxResults);
+
+        List<Pair<Integer, ISODate>> list = new ArrayList<Pair<Integer, ISODate>>(Math.min(maxResults, records.size() + drafts.size()));
+        int r = 0;
+        int d = 0;
+        while (list.size() < maxResults && (r < records.size() || d < drafts.size())) {
+            if (d == drafts.size() || (r < records.size() && records.get(r).one() < drafts.get(d).one())) {
+                list.add(records.get(r++));
+            } else {
+                list.add(drafts.get(d++));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public String getChangeSummary() {
+        return super.getChangeSummary() + "|" + toChangeSummary(metadataDraftRepository.findChangeSummary());
+    }
+
     @Override
     public Map<Integer, MetadataSourceInfo> findAllSourceInfo(Specification<? extends AbstractMetadata> spec) {
         Map<Integer, MetadataSourceInfo> map = new LinkedHashMap<Integer, MetadataSourceInfo>();
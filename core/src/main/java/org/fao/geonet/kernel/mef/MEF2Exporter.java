@@ -26,11 +26,15 @@ package org.fao.geonet.kernel.mef;
 import static com.google.common.xml.XmlEscapers.xmlContentEscaper;
 import static org.fao.geonet.Constants.CHARSET;
 import static org.fao.geonet.constants.Geonet.IndexFieldNames.LOCALE;
+import static org.fao.geonet.kernel.mef.MEFConstants.DIR_PRIVATE;
+import static org.fao.geonet.kernel.mef.MEFConstants.DIR_PUBLIC;
 import static org.fao.geonet.kernel.mef.MEFConstants.FILE_INFO;
 import static org.fao.geonet.kernel.mef.MEFConstants.FILE_METADATA;
+import static org.fao.geonet.kernel.mef.MEFConstants.FS;
 import static org.fao.geonet.kernel.mef.MEFConstants.MD_DIR;
 import static org.fao.geonet.kernel.mef.MEFConstants.SCHEMA;
 
+import java.io.OutputStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -50,7 +54,6 @@ import org.fao.geonet.Constants;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.ZipUtil;
 import org.fao.geonet.api.records.attachments.Store;
-import org.fao.geonet.api.records.attachments.StoreUtils;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.MetadataRelation;
@@ -77,6 +80,11 @@ import org.jdom.Element;
 import jeeves.server.context.ServiceContext;
 
 class MEF2Exporter {
+    /**
+     * Maximum number of entries waiting to be written when streaming a MEF file.
+     */
+    private static final int MAX_PENDING_ENTRIES = 64;
+
     /**
      * Create a MEF2 file in ZIP format.
      *
@@ -103,12 +111,46 @@ class MEF2Exporter {
                                 boolean approved) throws Exception {
 
         Path file = Files.createTempFile("mef-", ".mef");
+        try (FileSystem zipFs = ZipUtil.createZipFs(file);
+             MEFOutput output = MEFOutput.forZipFileSystem(zipFs)) {
+            export(context, uuids, format, skipUUID, stylePath, resolveXlink, removeXlinkAttribute,
+                skipError, addSchemaLocation, approved, output);
+        }
+        return file;
+    }
+
+    /**
+     * Write a MEF2 file in ZIP format to a stream without creating a temporary file. Records are
+     * prepared while the previous ones are compressed and written by another thread.
+     *
+     * @param uuids List of records to export.
+     * @param format {@link Format} to export.
+     * @param out the stream to write to, not closed by this method. If the export fails the
+     *            archive is left without its central directory.
+     */
+    public static void doExport(ServiceContext context, Set<String> uuids,
+                                Format format, boolean skipUUID, Path stylePath, boolean resolveXlink,
+                                boolean removeXlinkAttribute, boolean skipError, boolean addSchemaLocation,
+                                boolean approved, OutputStream out) throws Exception {
+        MEFOutput output = MEFOutput.forStream(out, MAX_PENDING_ENTRIES);
+        try {
+            export(context, uuids, format, skipUUID, stylePath, resolveXlink, removeXlinkAttribute,
+                skipError, addSchemaLocation, approved, output);
+        } catch (Throwable t) {
+            output.abort();
+            throw t;
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void export(ServiceContext context, Set<String> uuids,
+                               Format format, boolean skipUUID, Path stylePath, boolean resolveXlink,
+                               boolean removeXlinkAttribute, boolean skipError, boolean addSchemaLocation,
+                               boolean approved, MEFOutput output) throws Exception {
         SearchManager searchManager = context.getBean(SearchManager.class);
         String contextLang = context.getLanguage() == null ? Geonet.DEFAULT_LANGUAGE : context.getLanguage();
-        try (
-            FileSystem zipFs = ZipUtil.createZipFs(file);
-            IndexAndTaxonomy indexReaderAndTaxonomy = searchManager.getNewIndexReader(contextLang);
-        ) {
+        try (IndexAndTaxonomy indexReaderAndTaxonomy = searchManager.getNewIndexReader(contextLang)) {
             StringBuilder csvBuilder = new StringBuilder("\"schema\";\"uuid\";\"id\";\"type\";\"isHarvested\";\"title\";\"abstract\"\n");
             Element html = new Element("html").addContent(new Element("head").addContent(Arrays.asList(
                 new Element("title").setText("Export Index"),
@@ -212,7 +254,7 @@ class MEF2Exporter {
                                 )))
                         ))
                     )));
-                    createMetadataFolder(context, md, zipFs, skipUUID, stylePath,
+                    createMetadataFolder(context, md, output, skipUUID, stylePath,
                     format, resolveXlink, removeXlinkAttribute, addSchemaLocation);                } catch (Throwable t) {
                     if (skipError) {
                         Log.error(Geonet.MEF, "Error exporting metadata to MEF file: " + uuid1, t);
@@ -225,10 +267,9 @@ class MEF2Exporter {
                 }
 
             }
-            Files.write(zipFs.getPath("/index.csv"), csvBuilder.toString().getBytes(Constants.CHARSET));
-            Files.write(zipFs.getPath("/index.html"), Xml.getString(html).getBytes(Constants.CHARSET));
+            output.write("index.csv", csvBuilder.toString().getBytes(Constants.CHARSET));
+            output.write("index.html", Xml.getString(html).getBytes(Constants.CHARSET));
         }
-        return file;
     }
 
     private static String cleanXml(String xmlTextContent) {
@@ -251,16 +292,15 @@ class MEF2Exporter {
      * files are included in MEF file. Export relevant information according to format parameter.
      *
      * @param metadata  Metadata record to export
-     * @param zipFs Zip file to add new record
+     * @param output MEF file to add new record
      */
     private static void createMetadataFolder(ServiceContext context,
-                                             AbstractMetadata metadata, FileSystem zipFs, boolean skipUUID,
+                                             AbstractMetadata metadata, MEFOutput output, boolean skipUUID,
                                              Path stylePath, Format format, boolean resolveXlink,
                                              boolean removeXlinkAttribute,
                                              boolean addSchemaLocation) throws Exception {
 
-        final Path metadataRootDir = zipFs.getPath(metadata.getUuid());
-        Files.createDirectories(metadataRootDir);
+        final String metadataRootDir = metadata.getUuid() + FS;
 
         Pair<AbstractMetadata, String> recordAndMetadataForExport =
             MEFLib.retrieveMetadata(context, metadata, resolveXlink, removeXlinkAttribute, addSchemaLocation);
@@ -273,24 +313,21 @@ class MEF2Exporter {
         if (!"y".equals(isTemp) && !"n".equals(isTemp))
             throw new Exception("Cannot export sub template");
 
-        final Path metadataXmlDir = metadataRootDir.resolve(MD_DIR);
-        Files.createDirectories(metadataXmlDir);
+        final String metadataXmlDir = metadataRootDir + MD_DIR;
 
-        for (Pair<String, String> output : ExportFormat.getFormats(context, record)) {
-            Files.write(metadataXmlDir.resolve(output.one()), output.two().getBytes(CHARSET));
+        for (Pair<String, String> exportFormat : ExportFormat.getFormats(context, record)) {
+            output.write(metadataXmlDir + exportFormat.one(), exportFormat.two().getBytes(CHARSET));
         }
 
         // --- save native metadata
-        Files.write(metadataXmlDir.resolve(FILE_METADATA), xmlDocumentAsString.getBytes(CHARSET));
+        output.write(metadataXmlDir + FILE_METADATA, xmlDocumentAsString.getBytes(CHARSET));
 
 
         // --- save Feature Catalog
         String ftUUID = getFeatureCatalogID(context, record.getId());
         if (!ftUUID.equals("")) {
             Pair<AbstractMetadata, String> ftrecordAndMetadata = MEFLib.retrieveMetadata(context, record, resolveXlink, removeXlinkAttribute, addSchemaLocation);
-            Path featureMdDir = metadataRootDir.resolve(SCHEMA);
-            Files.createDirectories(featureMdDir);
-            Files.write(featureMdDir.resolve(FILE_METADATA), ftrecordAndMetadata.two().getBytes(CHARSET));
+            output.write(metadataRootDir + SCHEMA + FILE_METADATA, ftrecordAndMetadata.two().getBytes(CHARSET));
         }
 
         final Store store = context.getBean("resourceStore", Store.class);
@@ -300,7 +337,7 @@ class MEF2Exporter {
         // --- save thumbnails and maps
 
         if (format == Format.PARTIAL || format == Format.FULL) {
-            StoreUtils.extract(context, metadata.getUuid(), publicResources, metadataRootDir.resolve("public"), true);
+            writeResources(context, store, metadata.getUuid(), publicResources, output, metadataRootDir + DIR_PUBLIC);
         }
 
         List<MetadataResource> privateResources = null;
@@ -309,7 +346,7 @@ class MEF2Exporter {
                 Lib.resource.checkPrivilege(context, id, ReservedOperation.download);
                 privateResources = store.getResources(context, metadata.getUuid(),
                     MetadataResourceVisibility.PRIVATE, null, true);
-                StoreUtils.extract(context, metadata.getUuid(), privateResources, metadataRootDir.resolve("private"), true);
+                writeResources(context, store, metadata.getUuid(), privateResources, output, metadataRootDir + DIR_PRIVATE);
             } catch (Exception e) {
                 // Current user could not download private data
             }
@@ -319,7 +356,16 @@ class MEF2Exporter {
         byte[] binData = MEFLib.buildInfoFile(context, record, format, publicResources,
             privateResources, skipUUID).getBytes(Constants.ENCODING);
 
-        Files.write(metadataRootDir.resolve(FILE_INFO), binData);
+        output.write(metadataRootDir + FILE_INFO, binData);
+    }
+
+    private static void writeResources(ServiceContext context, Store store, String metadataUuid,
+                                       List<MetadataResource> resources, MEFOutput output,
+                                       String destinationDir) throws Exception {
+        for (MetadataResource resource : resources) {
+            output.write(destinationDir + resource.getFilename(),
+                store.getResource(context, metadataUuid, resource.getVisibility(), resource.getFilename(), true));
+        }
     }
 
     /**
@@ -34,6 +34,7 @@ import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
@@ -150,6 +151,19 @@ public class MEFLib {
             skipError, addSchemaLocation, approved);
     }
 
+    /**
+     * Write a MEF2 file to a stream, without temporary file.
+     */
+    public static void doMEF2Export(ServiceContext context,
+                                    Set<String> uuids, String format, boolean skipUUID, Path stylePath, boolean resolveXlink,
+                                    boolean removeXlinkAttribute, boolean skipError, boolean addSchemaLocation,
+                                    boolean approved, OutputStream out)
+        throws Exception {
+        MEF2Exporter.doExport(context, uuids, Format.parse(format),
+            skipUUID, stylePath, resolveXlink, removeXlinkAttribute,
+            skipError, addSchemaLocation, approved, out);
+    }
+
     // --------------------------------------------------------------------------
 
     public static void visit(Path mefFile, IVisitor visitor, IMEFVisitor v)
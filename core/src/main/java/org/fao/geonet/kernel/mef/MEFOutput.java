@@ -0,0 +1,278 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.mef;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.fao.geonet.api.records.attachments.Store;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Destination of the entries of a MEF file: a ZIP file system or a stream.
+ *
+ * Entry names are relative to the root of the archive with '/' as separator, parent folders are
+ * created as needed.
+ */
+abstract class MEFOutput implements Closeable {
+
+    /**
+     * Add an entry to the archive.
+     */
+    abstract void write(String name, byte[] content) throws IOException;
+
+    /**
+     * Add a resource of the store to the archive. The resource holder is closed once the resource
+     * is copied.
+     */
+    abstract void write(String name, Store.ResourceHolder resource) throws IOException;
+
+    /**
+     * Mark the export as failed: the archive is not completed when closed, so that a client reading
+     * a stream gets a broken archive instead of a valid one missing records.
+     */
+    void abort() {
+    }
+
+    /**
+     * Write the entries in a ZIP file system.
+     */
+    static MEFOutput forZipFileSystem(FileSystem zipFs) {
+        return new ZipFileSystemOutput(zipFs);
+    }
+
+    /**
+     * Write the archive to a stream, the caller remains responsible for closing the stream.
+     *
+     * Entries are compressed and written by another thread while the next records are prepared.
+     * At most maxPendingEntries entries are waiting to be written, adding an entry blocks when the
+     * stream is slower than the preparation of the records.
+     */
+    static MEFOutput forStream(OutputStream out, int maxPendingEntries) {
+        return new ZipStreamOutput(out, maxPendingEntries);
+    }
+
+    private static class ZipFileSystemOutput extends MEFOutput {
+        private final FileSystem zipFs;
+
+        ZipFileSystemOutput(FileSystem zipFs) {
+            this.zipFs = zipFs;
+        }
+
+        @Override
+        void write(String name, byte[] content) throws IOException {
+            Files.write(createParent(name), content);
+        }
+
+        @Override
+        void write(String name, Store.ResourceHolder resource) throws IOException {
+            try {
+                Files.copy(resource.getPath(), createParent(name));
+            } finally {
+                resource.close();
+            }
+        }
+
+        private Path createParent(String name) throws IOException {
+            Path path = zipFs.getPath(name);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            return path;
+        }
+
+        @Override
+        public void close() {
+            // The file system is closed by its owner
+        }
+    }
+
+    private static class ZipStreamOutput extends MEFOutput {
+        private final ZipOutputStream zos;
+        private final Semaphore pendingEntries;
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mef-writer-%d").build());
+        /**
+         * Folders already added, only used by the writer thread.
+         */
+        private final Set<String> folders = new HashSet<>();
+        private volatile IOException failure;
+        private volatile boolean aborted;
+
+        ZipStreamOutput(OutputStream out, int maxPendingEntries) {
+            this.zos = new ZipOutputStream(out);
+            this.pendingEntries = new Semaphore(Math.max(1, maxPendingEntries));
+        }
+
+        @Override
+        void write(final String name, final byte[] content) throws IOException {
+            submit(new EntryWriter() {
+                @Override
+                public void write() throws IOException {
+                    zos.write(content);
+                }
+
+                @Override
+                public void close() {
+                }
+            }, name);
+        }
+
+        @Override
+        void write(final String name, final Store.ResourceHolder resource) throws IOException {
+            submit(new EntryWriter() {
+                @Override
+                public void write() throws IOException {
+                    Files.copy(resource.getPath(), zos);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    resource.close();
+                }
+            }, name);
+        }
+
+        /**
+         * Queue an entry, the entry is closed once written or if it cannot be queued.
+         */
+        private void submit(final EntryWriter entry, final String name) throws IOException {
+            boolean queued = false;
+            try {
+                checkFailure();
+                try {
+                    pendingEntries.acquire();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting to write " + name);
+                }
+                try {
+                    queue(entry, name);
+                    queued = true;
+                } catch (RejectedExecutionException e) {
+                    pendingEntries.release();
+                    throw new IOException("MEF output closed, " + name + " not written", e);
+                }
+            } finally {
+                if (!queued) {
+                    close(entry, name);
+                }
+            }
+        }
+
+        private void queue(final EntryWriter entry, final String name) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (failure == null && !aborted) {
+                            addFolders(name);
+                            zos.putNextEntry(new ZipEntry(name));
+                            entry.write();
+                            zos.closeEntry();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } finally {
+                        pendingEntries.release();
+                        close(entry, name);
+                    }
+                }
+            });
+        }
+
+        private static void close(EntryWriter entry, String name) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                Log.warning(Geonet.MEF, "Error closing resource " + name + ": " + e.getMessage());
+            }
+        }
+
+        private void addFolders(String name) throws IOException {
+            int end = name.indexOf('/');
+            while (end > 0) {
+                String folder = name.substring(0, end + 1);
+                if (folders.add(folder)) {
+                    zos.putNextEntry(new ZipEntry(folder));
+                    zos.closeEntry();
+                }
+                end = name.indexOf('/', end + 1);
+            }
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.shutdown();
+            try {
+                while (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                    Log.debug(Geonet.MEF, "Waiting for MEF entries to be written");
+                }
+            } catch (InterruptedException e) {
+                writer.shutdownNow();
+                throw new InterruptedIOException("Interrupted while writing MEF entries");
+            }
+            if (aborted) {
+                // do not write the central directory
+                return;
+            }
+            checkFailure();
+            zos.finish();
+            zos.flush();
+        }
+
+        private interface EntryWriter {
+            void write() throws IOException;
+
+            void close() throws IOException;
+        }
+    }
+}
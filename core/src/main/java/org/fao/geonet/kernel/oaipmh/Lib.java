@@ -30,6 +30,8 @@ import jeeves.server.context.ServiceContext;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.MetaSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.fao.geonet.kernel.search.SearcherType;
@@ -41,6 +43,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 //=============================================================================
 
@@ -131,6 +134,34 @@ public class Lib {
 
     }
 
+    //---------------------------------------------------------------------------
+
+    /**
+     * Search one page of records in change date then id order, after a keyset cursor (see
+     * {@link LuceneSearcher#searchAfterChangeDate}).
+     *
+     * @param lastChangeDate change date of the last record returned or null for the first page
+     * @param lastId         id of the last record returned
+     * @return the number of records after the cursor and the change date (as indexed) of the first
+     * <code>maxHits</code> of them, by id, in keyset order.
+     */
+    public static Pair<Integer, Map<Integer, String>> searchChangeDatesAfter(ServiceContext context, Element params,
+                                                                             String lastChangeDate, int lastId,
+                                                                             int maxHits) throws Exception {
+        GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+        SearchManager sm = gc.getBean(SearchManager.class);
+
+        try (MetaSearcher searcher = sm.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+
+            if (context.isDebugEnabled())
+                context.debug("Searching after " + lastChangeDate + "/" + lastId + " with params:\n" + Xml.getString(params));
+
+            Map<Integer, String> result = ((LuceneSearcher) searcher).searchAfterChangeDate(context, params, dummyConfig,
+                lastChangeDate, lastId, maxHits);
+            return Pair.read(searcher.getSize(), result);
+        }
+    }
+
     //---------------------------------------------------------------------------
     //---
     //--- Variables
@@ -25,11 +25,11 @@ package org.fao.geonet.kernel.oaipmh.services;
 
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Pair;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.oaipmh.Lib;
 import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
 import org.fao.geonet.kernel.oaipmh.OaiPmhService;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.utils.Log;
@@ -45,20 +45,32 @@ import org.fao.oaipmh.util.SearchResult;
 import org.jdom.Element;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import jeeves.server.context.ServiceContext;
 
 
 public abstract class AbstractTokenLister implements OaiPmhService {
 
-    protected ResumptionTokenCache cache;
+    /**
+     * Order of the records in the list, the order of the keyset used by the resumption tokens. It
+     * is the order of the index: change date then id, both compared as strings.
+     */
+    private static final Comparator<Map.Entry<Integer, String>> KEYSET_ORDER = new Comparator<Map.Entry<Integer, String>>() {
+        @Override
+        public int compare(Map.Entry<Integer, String> o1, Map.Entry<Integer, String> o2) {
+            int result = o1.getValue().compareTo(o2.getValue());
+            return result != 0 ? result : String.valueOf(o1.getKey()).compareTo(String.valueOf(o2.getKey()));
+        }
+    };
 
     private SettingManager settingMan;
     private SchemaManager schemaMan;
 
-    public AbstractTokenLister(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        this.cache = cache;
+    public AbstractTokenLister(SettingManager sm, SchemaManager scm) {
         this.settingMan = sm;
         this.schemaMan = scm;
     }
@@ -106,6 +118,13 @@ public abstract class AbstractTokenLister implements OaiPmhService {
         return dateUntil;
     }
 
+    /**
+     * @return the validity of the resumption tokens in seconds.
+     */
+    public long getTimeout() {
+        return settingMan.getValueAsInt(Settings.SYSTEM_OAI_TOKENTIMEOUT);
+    }
+
     public AbstractResponse execute(AbstractRequest request,
                                     ServiceContext context) throws Exception {
 
@@ -114,93 +133,95 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 
         TokenListRequest req = (TokenListRequest) request;
 
-        //UserSession  session = context.getUserSession();
-        SearchResult result;
-
-        //String token = req.getResumptionToken();
-        String strToken = req.getResumptionToken();
-        GeonetworkResumptionToken token = null;
+        // The token holds the arguments of the first request and the last record returned,
+        // the search is run again for the records after the last one returned
+        GeonetworkResumptionToken token = new GeonetworkResumptionToken(req);
+        boolean resumed = req.getResumptionToken() != null;
 
+        if (resumed) {
+            if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
+                Log.debug(Geonet.OAI_HARVESTER, "OAI " + this.getClass().getSimpleName() + " : using ResumptionToken :" + req.getResumptionToken());
 
-        int pos = 0;
-
-        if (strToken == null) {
+            if (token.isExpired())
+                throw new BadResumptionTokenException("Expired resumptionToken : " + req.getResumptionToken());
+        } else {
             if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
                 Log.debug(Geonet.OAI_HARVESTER, "OAI " + this.getClass().getSimpleName() + " : new request (no resumptionToken)");
-            Element params = new Element("request");
 
             ISODate from = req.getFrom();
             ISODate until = req.getUntil();
-            String set = req.getSet();
-            String prefix = req.getMetadataPrefix();
-
-            if (from != null) {
-                String sFrom = from.isDateOnly() ? from.getDateAsString() : from.toString();
-                params.addContent(new Element(getDateFrom()).setText(sFrom));
-            }
-
-            if (until != null) {
-                String sTo = until.isDateOnly() ? until.getDateAsString() : until.toString();
-                params.addContent(new Element(getDateUntil()).setText(sTo));
-            }
-
             if (from != null && until != null && from.timeDifferenceInSeconds(until) > 0)
                 throw new BadArgumentException("From is greater than until");
+        }
 
-            if (set != null)
-                params.addContent(new Element("category").setText(set));
+        Element params = new Element("request");
 
-            params.addContent(new Element("_schema").setText(prefix));
+        if (!token.getFrom().isEmpty())
+            params.addContent(new Element(getDateFrom()).setText(token.getFrom()));
 
-            // now do the search
-            result = new SearchResult(prefix);
-            if (schemaMan.existsSchema(prefix)) {
-                result.setIds(Lib.search(context, params));
-            } else {
-                // collect up all the schemas that we can convert to create prefix,
-                // search ids and add to the result set
-                List<String> schemas = getSchemasThatCanConvertTo(prefix);
-                for (String schema : schemas) {
-                    params.removeChild("_schema");
-                    params.addContent(new Element("_schema").setText(schema));
-                    result.addIds(Lib.search(context, (Element) params.clone()));
-                }
-                if (schemas.size() == 0) result.setIds(new ArrayList<Integer>());
-            }
+        if (!token.getUntil().isEmpty())
+            params.addContent(new Element(getDateUntil()).setText(token.getUntil()));
 
-            if (result.getIds().size() == 0)
-                throw new NoRecordsMatchException("No results");
+        if (!token.getSet().isEmpty())
+            params.addContent(new Element("category").setText(token.getSet()));
 
-            // we only need a new token if the result set is big enough
-            if (result.getIds().size() > getMaxRecords()) {
-                token = new GeonetworkResumptionToken(req, result);
-                cache.storeResumptionToken(token);
-            }
+        String prefix = token.getPrefix();
+        params.addContent(new Element("_schema").setText(prefix));
 
+        // now do the search, only the page after the last record returned (and one more record
+        // to know if there is a next page) is retrieved
+        String lastChangeDate = resumed ? token.getLastChangeDate() : null;
+        int pageSize = getMaxRecords();
+        List<Map.Entry<Integer, String>> records = new ArrayList<Map.Entry<Integer, String>>();
+        int remaining = 0;
+        if (schemaMan.existsSchema(prefix)) {
+            Pair<Integer, Map<Integer, String>> page = Lib.searchChangeDatesAfter(context, params, lastChangeDate, token.getLastId(), pageSize + 1);
+            remaining = page.one();
+            records.addAll(page.two().entrySet());
         } else {
-            //result = (SearchResult) session.getProperty(Lib.SESSION_OBJECT);
-            token = cache.getResumptionToken(GeonetworkResumptionToken.buildKey(req));
-            if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
-                Log.debug(Geonet.OAI_HARVESTER, "OAI ListRecords : using ResumptionToken :" + GeonetworkResumptionToken.buildKey(req));
-
-            if (token == null)
-                throw new BadResumptionTokenException("No session for token : " + GeonetworkResumptionToken.buildKey(req));
+            // collect up all the schemas that we can convert to create prefix,
+            // search a page of each of them and merge them in keyset order
+            for (String schema : getSchemasThatCanConvertTo(prefix)) {
+                params.removeChild("_schema");
+                params.addContent(new Element("_schema").setText(schema));
+                Pair<Integer, Map<Integer, String>> page = Lib.searchChangeDatesAfter(context, (Element) params.clone(), lastChangeDate, token.getLastId(), pageSize + 1);
+                remaining += page.one();
+                records.addAll(page.two().entrySet());
+            }
+            Collections.sort(records, KEYSET_ORDER);
+        }
 
-            result = token.getRes();
+        if (!resumed && records.size() == 0)
+            throw new NoRecordsMatchException("No results");
 
-            //pos = result.parseToken(token);
-            pos = GeonetworkResumptionToken.getPos(req);
+        int end = Math.min(records.size(), pageSize);
+        boolean hasMore = records.size() > pageSize;
+        SearchResult result = new SearchResult(prefix);
+        List<Integer> ids = new ArrayList<Integer>(end);
+        for (Map.Entry<Integer, String> record : records.subList(0, end)) {
+            ids.add(record.getKey());
         }
+        result.setIds(ids);
 
-        ListResponse res = processRequest(req, pos, result, context);
-        pos = pos + res.getSize();
+        ListResponse res = processRequest(req, 0, result, context);
 
-        if (token == null && res.getSize() == 0)
+        if (!resumed && !hasMore && res.getSize() == 0)
             throw new NoRecordsMatchException("No results");
 
-        //result.setupToken(res, pos);
-        if (token != null) token.setupToken(pos);
-        res.setResumptionToken(token);
+        // we only need a token if the result set is big enough
+        if (resumed || hasMore) {
+            int completeListSize = token.getPos() + remaining;
+            if (end > 0) {
+                Map.Entry<Integer, String> last = records.get(end - 1);
+                token.setupToken(last.getValue(), last.getKey(), end, completeListSize, getTimeout());
+            } else {
+                token.setupToken(token.getLastChangeDate(), token.getLastId(), 0, completeListSize, getTimeout());
+            }
+            if (!hasMore) {
+                token.reset();    // reset token to indicate last chunk
+            }
+            res.setResumptionToken(token);
+        }
 
         return res;
 
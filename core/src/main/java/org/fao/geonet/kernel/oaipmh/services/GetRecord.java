@@ -26,6 +26,7 @@ package org.fao.geonet.kernel.oaipmh.services;
 import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataUuid;
 
 import java.nio.file.Path;
+import java.util.concurrent.Callable;
 
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Geonet;
@@ -60,49 +61,55 @@ public class GetRecord implements OaiPmhService {
     // function builds a OAI records from a metadata record, according to the arguments select and selectVal
     public static Record buildRecordStat(ServiceContext context, Specification<Metadata> spec/*String select, Object selectVal*/,
                                          String prefix) throws Exception {
-        GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
-        SchemaManager sm = gc.getBean(SchemaManager.class);
-
         AbstractMetadata metadata = context.getBean(IMetadataUtils.class).findOne(spec);
         if (metadata == null)
             throw new IdDoesNotExistException(spec.toString());
 
-        String uuid = metadata.getUuid();
+        return prepareRecord(context, metadata, prefix).call();
+    }
+
+    /**
+     * Collect the information needed to build the OAI record of a metadata record. The returned
+     * task parses and converts the metadata record. It must run on a thread where the service
+     * context is set as the conversion stylesheets may use it.
+     *
+     * @throws CannotDisseminateFormatException if the record cannot be converted to the prefix.
+     */
+    public static Callable<Record> prepareRecord(ServiceContext context, AbstractMetadata metadata, String prefix) throws Exception {
+        GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+        SchemaManager sm = gc.getBean(SchemaManager.class);
+
+        final String uuid = metadata.getUuid();
         final MetadataDataInfo dataInfo = metadata.getDataInfo();
         String schema = dataInfo.getSchemaId();
-        String changeDate = dataInfo.getChangeDate().getDateAndTime();
-        String data = metadata.getData();
-
-        Element md = Xml.loadString(data, false);
+        final String changeDate = dataInfo.getChangeDate().getDateAndTime();
+        final String data = metadata.getData();
 
         //--- try to disseminate format
 
+        final Attribute schemaLocAtt;
+        final Path schemaDir;
+        final Element env;
         if (prefix.equals(schema)) {
-            Attribute schemaLocAtt = sm.getSchemaLocation(schema, context);
-            if (schemaLocAtt != null) {
-                if (md.getAttribute(schemaLocAtt.getName(), schemaLocAtt.getNamespace()) == null) {
-                    md.setAttribute(schemaLocAtt);
-                    // make sure namespace declaration for schemalocation is present -
-                    // remove it first (does nothing if not there) then add it
-                    md.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
-                    md.addNamespaceDeclaration(schemaLocAtt.getNamespace());
-                }
-            }
+            schemaLocAtt = sm.getSchemaLocation(schema, context);
+            schemaDir = null;
+            env = null;
         } else {
-            Path schemaDir = sm.getSchemaDir(schema);
+            schemaLocAtt = null;
+            schemaDir = sm.getSchemaDir(schema);
             if (Lib.existsConverter(schemaDir, prefix)) {
                 final String siteURL = context.getBean(SettingManager.class).getSiteURL(context);
-                Element env = Lib.prepareTransformEnv(uuid, changeDate, context.getBaseUrl(), siteURL, gc.getBean(SettingManager.class)
+                env = Lib.prepareTransformEnv(uuid, changeDate, context.getBaseUrl(), siteURL, gc.getBean(SettingManager.class)
                     .getSiteName());
-                md = Lib.transform(schemaDir, env, md, prefix + ".xsl");
             } else {
                 throw new CannotDisseminateFormatException("Unknown prefix : " + prefix);
             }
         }
+        final String stylesheet = prefix + ".xsl";
 
         //--- build header and set some infos
 
-        Header h = new Header();
+        final Header h = new Header();
 
         h.setIdentifier(uuid);
         h.setDateStamp(new ISODate(changeDate));
@@ -111,14 +118,35 @@ public class GetRecord implements OaiPmhService {
             h.addSet(metadataCategory.getName());
         }
 
-        //--- build and return record
+        return new Callable<Record>() {
+            @Override
+            public Record call() throws Exception {
+                Element md = Xml.loadString(data, false);
+
+                if (env == null) {
+                    if (schemaLocAtt != null) {
+                        if (md.getAttribute(schemaLocAtt.getName(), schemaLocAtt.getNamespace()) == null) {
+                            md.setAttribute((Attribute) schemaLocAtt.clone());
+                            // make sure namespace declaration for schemalocation is present -
+                            // remove it first (does nothing if not there) then add it
+                            md.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
+                            md.addNamespaceDeclaration(schemaLocAtt.getNamespace());
+                        }
+                    }
+                } else {
+                    md = Lib.transform(schemaDir, (Element) env.clone(), md, stylesheet);
+                }
+
+                //--- build and return record
 
-        Record r = new Record();
+                Record r = new Record();
 
-        r.setHeader(h);
-        r.setMetadata(md);
+                r.setHeader(h);
+                r.setMetadata(md);
 
-        return r;
+                return r;
+            }
+        };
     }
 
     //---------------------------------------------------------------------------
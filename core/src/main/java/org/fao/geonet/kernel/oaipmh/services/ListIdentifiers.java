@@ -31,7 +31,6 @@ import org.fao.geonet.domain.MetadataCategory;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.oaipmh.Lib;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.requests.ListIdentifiersRequest;
 import org.fao.oaipmh.requests.TokenListRequest;
@@ -40,13 +39,18 @@ import org.fao.oaipmh.responses.ListIdentifiersResponse;
 import org.fao.oaipmh.responses.ListResponse;
 import org.fao.oaipmh.util.SearchResult;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
 import jeeves.server.context.ServiceContext;
 
 //=============================================================================
 
 public class ListIdentifiers extends AbstractTokenLister {
-    public ListIdentifiers(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        super(cache, sm, scm);
+    public ListIdentifiers(SettingManager sm, SchemaManager scm) {
+        super(sm, scm);
     }
 
     public String getVerb() {
@@ -66,10 +70,18 @@ public class ListIdentifiers extends AbstractTokenLister {
 
         int num = 0;
 
+        //--- retrieve the metadata of the page at once
+
+        List<Integer> ids = result.getIds().subList(pos, Math.min(result.getIds().size(), pos + getMaxRecords()));
+        Map<Integer, AbstractMetadata> metadata = new HashMap<Integer, AbstractMetadata>();
+        for (AbstractMetadata md : context.getBean(IMetadataUtils.class).findAll(new HashSet<Integer>(ids))) {
+            metadata.put(md.getId(), md);
+        }
+
         while (num < getMaxRecords() && pos < result.getIds().size()) {
             int id = result.getIds().get(pos);
 
-            Header h = buildHeader(context, id, result.prefix);
+            Header h = buildHeader(context, metadata.get(id), result.prefix);
 
             if (h != null) {
                 res.addHeader(h);
@@ -90,12 +102,10 @@ public class ListIdentifiers extends AbstractTokenLister {
     //---
     //---------------------------------------------------------------------------
 
-    private Header buildHeader(ServiceContext context, int id, String prefix) throws Exception {
+    private Header buildHeader(ServiceContext context, AbstractMetadata metadata, String prefix) throws Exception {
         GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
         SchemaManager sm = gc.getBean(SchemaManager.class);
 
-        final AbstractMetadata metadata = gc.getBean(IMetadataUtils.class).findOne(id);
-
         //--- maybe the metadata has been removed
 
         if (metadata == null) {
@@ -24,20 +24,22 @@
 package org.fao.geonet.kernel.oaipmh.services;
 
 
-import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataId;
-
-import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.kernel.SchemaManager;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
+import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.exceptions.CannotDisseminateFormatException;
-import org.fao.oaipmh.exceptions.IdDoesNotExistException;
 import org.fao.oaipmh.requests.ListRecordsRequest;
 import org.fao.oaipmh.requests.TokenListRequest;
 import org.fao.oaipmh.responses.ListRecordsResponse;
 import org.fao.oaipmh.responses.Record;
 import org.fao.oaipmh.util.SearchResult;
-import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 import jeeves.server.context.ServiceContext;
 
@@ -45,9 +47,8 @@ import jeeves.server.context.ServiceContext;
 
 public class ListRecords extends AbstractTokenLister {
 
-
-    public ListRecords(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        super(cache, sm, scm);
+    public ListRecords(SettingManager sm, SchemaManager scm) {
+        super(sm, scm);
     }
 
     public String getVerb() {
@@ -63,49 +64,34 @@ public class ListRecords extends AbstractTokenLister {
 
     public ListRecordsResponse processRequest(TokenListRequest req, int pos, SearchResult result, ServiceContext context) throws Exception {
 
-        int num = 0;
         ListRecordsResponse res = new ListRecordsResponse();
 
-        //--- loop to retrieve metadata
+        //--- retrieve the metadata of the page at once
 
-        while (num < getMaxRecords() && pos < result.getIds().size()) {
-            int id = result.getIds().get(pos);
+        List<Integer> ids = result.getIds().subList(pos, Math.min(result.getIds().size(), pos + getMaxRecords()));
+        Map<Integer, AbstractMetadata> metadata = new HashMap<Integer, AbstractMetadata>();
+        for (AbstractMetadata md : context.getBean(IMetadataUtils.class).findAll(new HashSet<Integer>(ids))) {
+            metadata.put(md.getId(), md);
+        }
 
-            Record r = buildRecord(context, id, result.prefix);
+        //--- and convert them, on the request thread as the conversions may use the service context
 
-            if (r != null) {
-                res.addRecord(r);
-                num++;
-            }
+        for (Integer id : ids) {
+            AbstractMetadata md = metadata.get(id);
 
-            pos++;
+            // the metadata may have been removed or may not be convertible, skip it
+            if (md != null) {
+                try {
+                    res.addRecord(GetRecord.prepareRecord(context, md, result.prefix).call());
+                } catch (CannotDisseminateFormatException e) {
+                    // skip
+                }
+            }
         }
 
         return res;
 
     }
-
-    //---------------------------------------------------------------------------
-    //---
-    //--- Private methods
-    //---
-    //---------------------------------------------------------------------------
-
-    private Record buildRecord(ServiceContext context, int id, String prefix) throws Exception {
-
-        // have to catch exceptions and return null because this function can
-        // be called several times for a list of MD records
-        // and we do not want to stop because of one error
-        try {
-            return GetRecord.buildRecordStat(context, (Specification<Metadata>)hasMetadataId(id), prefix);
-        } catch (IdDoesNotExistException e) {
-            return null;
-        } catch (CannotDisseminateFormatException e2) {
-            return null;
-        } catch (Exception e3) {
-            throw e3;
-        }
-    }
 }
 
 //=============================================================================
@@ -23,6 +23,7 @@
 
 package org.fao.geonet.kernel.search;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -43,6 +44,7 @@ import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.domain.Source;
+import org.fao.geonet.es.EsBulkProcessor;
 import org.fao.geonet.es.EsClient;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SelectionManager;
@@ -69,6 +71,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 
 public class EsSearchManager implements ISearchManager {
@@ -203,6 +206,12 @@ public class EsSearchManager implements ISearchManager {
 
     @Override
     public void end() throws Exception {
+        synchronized (this) {
+            if (bulkProcessor != null) {
+                bulkProcessor.close();
+                bulkProcessor = null;
+            }
+        }
     }
 
     @Override
@@ -211,9 +220,38 @@ public class EsSearchManager implements ISearchManager {
         return null;
     }
 
+    @Value("${es.index.bulk.actions:200}")
     private int commitInterval = 200;
-    private Map<String, String> listOfDocumentsToIndex = new HashMap<>();
-    private Map<String, String> listOfPublicDocumentsToIndex = new HashMap<>();
+
+    @Value("${es.index.bulk.size:5242880}")
+    private long bulkSizeInBytes = 5242880;
+
+    @Value("${es.index.bulk.flushInterval:5000}")
+    private long bulkFlushInterval = 5000;
+
+    @Value("${es.index.bulk.concurrentRequests:2}")
+    private int bulkConcurrentRequests = 2;
+
+    @Value("${es.index.bulk.maxRetries:3}")
+    private int bulkMaxRetries = 3;
+
+    @Value("${es.index.bulk.backoff:200}")
+    private long bulkBackoff = 200;
+
+    private volatile EsBulkProcessor bulkProcessor;
+
+    /**
+     * Maximum time the rebuild of the index waits for the last bulk requests.
+     */
+    private static final long REBUILD_WAIT_MINUTES = 10;
+
+    /**
+     * Fields of a document kept in the document indexed in place of a record rejected by
+     * Elasticsearch.
+     */
+    private static final String[] INDEXING_ERROR_DOC_FIELDS = {
+        ID, DOC_TYPE, "uuid", "metadataIdentifier", "sourceCatalogue", "scope", "harvesterUuid", "harvesterId"
+    };
 
     @Autowired
     SourceRepository sourceRepository;
@@ -251,24 +289,73 @@ public class EsSearchManager implements ISearchManager {
         doc.put("harvesterUuid", settingManager.getSiteId());
         doc.put("harvesterId", settingManager.getNodeURL());
         String json = mapper.writeValueAsString(doc);
-        if (doc.get("isPublishedToAll").asBoolean()) {
-            listOfPublicDocumentsToIndex.put(id, json);
+        // Records are indexed by the indexing thread pool, the bulk requests are sent
+        // asynchronously so that indexing threads only wait when too many are in flight.
+        EsBulkProcessor processor = getBulkProcessor();
+        if (processor != null) {
+            processor.add(index, id, json);
+            if (StringUtils.isNotEmpty(publicIndex) && doc.get("isPublishedToAll").asBoolean()) {
+                processor.add(publicIndex, id, json);
+            }
         }
-        listOfDocumentsToIndex.put(id, json);
-        if (listOfDocumentsToIndex.size() == commitInterval) {
-            sendDocumentsToIndex();
+    }
+
+    /**
+     * @return the bulk processor or null if Elasticsearch is not configured.
+     */
+    public EsBulkProcessor getBulkProcessor() {
+        EsBulkProcessor processor = bulkProcessor;
+        if (processor == null && client != null && client.isActivated()) {
+            synchronized (this) {
+                processor = bulkProcessor;
+                if (processor == null) {
+                    processor = new EsBulkProcessor(client, new IndexingErrorListener(),
+                        commitInterval, bulkSizeInBytes, bulkFlushInterval,
+                        bulkConcurrentRequests, bulkMaxRetries, bulkBackoff);
+                    bulkProcessor = processor;
+                }
+            }
         }
+        return processor;
     }
 
-    private void sendDocumentsToIndex() throws IOException {
-        synchronized (this) {
-            if (listOfDocumentsToIndex.size() > 0) {
-                client.bulkRequest(index, listOfDocumentsToIndex);
-                if (StringUtils.isNotEmpty(publicIndex)) {
-                    client.bulkRequest(publicIndex, listOfPublicDocumentsToIndex);
-                    listOfPublicDocumentsToIndex.clear();
+    /**
+     * Replaces the records rejected by Elasticsearch by a document flagged with the indexing error
+     * fields so that they can be found in the index.
+     */
+    private class IndexingErrorListener implements EsBulkProcessor.Listener {
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final String errorField = IndexFields.INDEXING_ERROR_FIELD.substring(1);
+        private final String errorMsgField = IndexFields.INDEXING_ERROR_MSG.substring(1);
+
+        @Override
+        public void onFailure(String failedIndex, String id, String source, String error) {
+            Log.error(Geonet.INDEX_ENGINE, String.format(
+                "Record %s not indexed in %s. Error is: %s", id, failedIndex, error));
+            if (!index.equals(failedIndex)) {
+                return;
+            }
+            try {
+                JsonNode failedDoc = mapper.readTree(source);
+                if (failedDoc.has(errorMsgField)) {
+                    // Already the error document
+                    return;
+                }
+                ObjectNode errorDoc = mapper.createObjectNode();
+                for (String field : INDEXING_ERROR_DOC_FIELDS) {
+                    if (failedDoc.has(field)) {
+                        errorDoc.set(field, failedDoc.get(field));
+                    }
                 }
-                listOfDocumentsToIndex.clear();
+                errorDoc.put(errorField, "1");
+                errorDoc.put(errorMsgField, "GNIDX-BULK||" + error);
+                EsBulkProcessor processor = bulkProcessor;
+                if (processor != null) {
+                    processor.add(index, id, mapper.writeValueAsString(errorDoc));
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.error(Geonet.INDEX_ENGINE, String.format(
+                    "Record %s not flagged with indexing error. Error is: %s", id, e.getMessage()), e);
             }
         }
     }
@@ -406,10 +493,22 @@ public class EsSearchManager implements ISearchManager {
         return String.valueOf(booleanValues.contains(value));
     }
 
+    /**
+     * Send the documents added so far without waiting for Elasticsearch to index them: this is
+     * called by the indexing threads after each chunk of records.
+     */
     @Override
     public void forceIndexChanges() throws IOException {
+        EsBulkProcessor processor = bulkProcessor;
+        if (processor != null) {
+            processor.flush();
+        }
     }
 
+    /**
+     * Index the records and wait until Elasticsearch has processed them (or until
+     * {@link #REBUILD_WAIT_MINUTES} elapsed), so that the index is complete when this returns.
+     */
     @Override
     public boolean rebuildIndex(ServiceContext context, boolean xlinks,
                                 boolean reset, String bucket) throws Exception {
@@ -439,10 +538,7 @@ public class EsSearchManager implements ISearchManager {
                     }
                 }
             }
-            for(String id : listOfIdsToIndex) {
-                dataMan.indexMetadata(id + "", false, this);
-            }
-            sendDocumentsToIndex();
+            dataMan.indexInThreadPoolAndWait(listOfIdsToIndex, this);
         } else {
             final Specifications<Metadata> metadataSpec =
                 Specifications.where((Specification<Metadata>)MetadataSpecs.isType(MetadataType.METADATA))
@@ -450,12 +546,15 @@ public class EsSearchManager implements ISearchManager {
             final List<Integer> metadataIds = metadataRepository.findAllIdsBy(
                 Specifications.where(metadataSpec)
             );
-            for(Integer id : metadataIds) {
-                dataMan.indexMetadata(id + "", false, this);
-            }
-            sendDocumentsToIndex();
+            dataMan.indexInThreadPoolAndWait(metadataIds, this);
         }
 
+        EsBulkProcessor processor = bulkProcessor;
+        if (processor != null && !processor.flushAndWait(REBUILD_WAIT_MINUTES, TimeUnit.MINUTES)) {
+            Log.warning(Geonet.INDEX_ENGINE, String.format(
+                "Index rebuild returns before Elasticsearch has processed all the records (waited %d minutes).",
+                REBUILD_WAIT_MINUTES));
+        }
         return true;
     }
 
@@ -489,21 +588,6 @@ public class EsSearchManager implements ISearchManager {
 //        }
 //    }
 
-    @Override
-    public Map<String, String> getDocsChangeDate() throws Exception {
-        String query = "{\"query\": {\"filtered\": {\"query_string\": \"*:*\"}}}";
-        Search search = new Search.Builder(query).addIndex(index).addType(indexType).build();
-        // TODO: limit to needed field
-//        params.setFields(ID, Geonet.IndexFieldNames.DATABASE_CHANGE_DATE);
-        SearchResult searchResult = client.getClient().execute(search);
-
-//        final Map<String, String> result = new HashMap<>();
-//        iterateQuery(searchResult.getHits(), doc ->
-//            result.put(doc.getFieldValue(ID).toString(),
-//                convertDate(doc.getFieldValue(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE))));
-        return null;
-    }
-
     @Override
     public ISODate getDocChangeDate(String mdId) throws Exception {
         // TODO: limit to needed field
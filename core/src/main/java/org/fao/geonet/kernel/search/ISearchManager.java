@@ -31,7 +31,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import jeeves.server.ServiceConfig;
@@ -77,8 +76,6 @@ public interface ISearchManager {
                          boolean reset,
                          String bucket) throws Exception;
 
-    Map<String, String> getDocsChangeDate() throws Exception;
-
     ISODate getDocChangeDate(String mdId) throws Exception;
 
     Set<Integer> getDocsWithXLinks() throws Exception;
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.fao.geonet.domain.ISODate;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Ids and change dates of the records of the index, used to reconcile the index with the database.
+ *
+ * Entries are kept in primitive arrays sorted by id (epoch milliseconds for the dates) instead of
+ * a map of strings so that a large catalogue can be compared with the database using a few bytes
+ * per record. Each lookup marks the record as found, the records never looked up are in the index
+ * but not in the database anymore. Records looked up by ascending id, as when the database is read
+ * page by page, are merged with the index in a single pass.
+ */
+public class IndexChangeDates {
+    /**
+     * Returned by {@link #find(int)} when the record is not in the index.
+     */
+    public static final long NOT_INDEXED = Long.MIN_VALUE;
+    /**
+     * Change date of a record with a missing or invalid change date in the index.
+     */
+    public static final long UNKNOWN = -1;
+
+    private int[] ids;
+    private long[] changeDates;
+    private int size;
+    private BitSet found;
+    /**
+     * Position of the first record with an id not lower than the last looked up one.
+     */
+    private int cursor;
+
+    public IndexChangeDates(int capacity) {
+        ids = new int[Math.max(capacity, 16)];
+        changeDates = new long[ids.length];
+    }
+
+    /**
+     * Add a record of the index. Records in several language indexes can be added more than once.
+     */
+    public void add(int id, long changeDate) {
+        if (found != null) {
+            throw new IllegalStateException("No record can be added once sorted");
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            changeDates = Arrays.copyOf(changeDates, size * 2);
+        }
+        ids[size] = id;
+        changeDates[size] = changeDate;
+        size++;
+    }
+
+    /**
+     * Sort the records by id and merge the records added more than once. If their change dates
+     * differ, the change date is {@link #UNKNOWN} so the record is indexed again.
+     */
+    public IndexChangeDates sort() {
+        // sort the positions by id without boxing: id in the high bits, position in the low bits
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] sortedIds = new int[size];
+        long[] sortedChangeDates = new long[size];
+        int count = 0;
+        for (long entry : order) {
+            int position = (int) entry;
+            int id = ids[position];
+            long changeDate = changeDates[position];
+            if (count > 0 && sortedIds[count - 1] == id) {
+                if (sortedChangeDates[count - 1] != changeDate) {
+                    sortedChangeDates[count - 1] = UNKNOWN;
+                }
+            } else {
+                sortedIds[count] = id;
+                sortedChangeDates[count] = changeDate;
+                count++;
+            }
+        }
+        ids = Arrays.copyOf(sortedIds, count);
+        changeDates = Arrays.copyOf(sortedChangeDates, count);
+        size = count;
+        found = new BitSet(count);
+        return this;
+    }
+
+    /**
+     * Look up a record and mark it as found.
+     *
+     * @return the change date of the record in the index or {@link #NOT_INDEXED}.
+     */
+    public long find(int id) {
+        if (found == null) {
+            throw new IllegalStateException("Records must be sorted first");
+        }
+        int position;
+        if (cursor == 0 || ids[cursor - 1] < id) {
+            // all records before the cursor have a lower id: move forward from there
+            while (cursor < size && ids[cursor] < id) {
+                cursor++;
+            }
+            position = cursor < size && ids[cursor] == id ? cursor : -1;
+        } else {
+            position = Arrays.binarySearch(ids, 0, size, id);
+        }
+        if (position < 0) {
+            return NOT_INDEXED;
+        }
+        found.set(position);
+        return changeDates[position];
+    }
+
+    /**
+     * @return the ids of the records which were never looked up.
+     */
+    public int[] getNotFound() {
+        int[] notFound = new int[size - found.cardinality()];
+        int count = 0;
+        for (int i = found.nextClearBit(0); i < size; i = found.nextClearBit(i + 1)) {
+            notFound[count++] = ids[i];
+        }
+        return notFound;
+    }
+
+    /**
+     * @return the number of distinct records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the date in epoch milliseconds or {@link #UNKNOWN} if the date is missing or invalid.
+     */
+    public static long toMillis(String date) {
+        if (date == null || date.isEmpty()) {
+            return UNKNOWN;
+        }
+        try {
+            return new ISODate(date).toDate().getTime();
+        } catch (RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+}
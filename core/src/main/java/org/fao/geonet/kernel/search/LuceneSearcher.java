@@ -85,6 +85,7 @@ import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.Operation;
 import org.fao.geonet.domain.MetadataSourceInfo;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.domain.Profile;
@@ -139,6 +140,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -162,6 +164,14 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     private Query _loggerQuery;
 
     private Filter _filter;
+    /**
+     * Description of the filter used to cache the search results.
+     */
+    private String _filterKey;
+    /**
+     * Result type and requested summary items used to cache the search results.
+     */
+    private String _summaryKey;
     private Sort _sort;
     private Element _elSummary;
 
@@ -227,6 +237,18 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 
     @VisibleForTesting
     static void buildPrivilegesMetadataInfo(ServiceContext context, Document doc, Element infoEl) throws Exception {
+        Integer id = Integer.valueOf(doc.get("_id"));
+        Map<Integer, Set<Operation>> operations = context.getBean(AccessManager.class)
+            .getOperations(context, Collections.singleton(id));
+        buildPrivilegesMetadataInfo(context, doc, infoEl, operations.get(id));
+    }
+
+    /**
+     * @param userOperations the operations the user can perform on the record (see {@link
+     *                       AccessManager#getOperations(ServiceContext, Collection)}).
+     */
+    private static void buildPrivilegesMetadataInfo(ServiceContext context, Document doc, Element infoEl,
+                                                    Set<Operation> userOperations) throws Exception {
         final Integer owner = Integer.valueOf(doc.get(Geonet.IndexFieldNames.OWNER));
         final String groupOwnerString = doc.get(Geonet.IndexFieldNames.GROUP_OWNER);
 
@@ -246,24 +268,19 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                 addElement(infoEl, "ownerId", owner.toString());
             }
         } else {
-            final Collection<Integer> groups = accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), false);
-            final Collection<Integer> editingGroups = accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), true);
             operations = Sets.newHashSet();
-            for (ReservedOperation operation : ReservedOperation.values()) {
-                IndexableField[] opFields = doc.getFields(Geonet.IndexFieldNames.OP_PREFIX + operation.getId());
-
-                for (IndexableField field : opFields) {
-                    Integer groupId = Integer.valueOf(field.stringValue());
-                    if (operation == ReservedOperation.editing &&
-                        editingGroups.contains(groupId)) {
-                        canEdit = true;
-                        break;
-                    }
-
-                    if (groups.contains(groupId)) {
-                        operations.add(operation);
-                        break;
-                    }
+            for (Operation operation : userOperations) {
+                ReservedOperation reservedOperation = ReservedOperation.lookup(operation.getId());
+                if (reservedOperation != null && reservedOperation != ReservedOperation.editing) {
+                    operations.add(reservedOperation);
+                }
+            }
+            // Editing is only granted through the groups where the user is an editor
+            final Collection<Integer> editingGroups = accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), true);
+            for (IndexableField field : doc.getFields(Geonet.IndexFieldNames.OP_PREFIX + ReservedOperation.editing.getId())) {
+                if (editingGroups.contains(Integer.valueOf(field.stringValue()))) {
+                    canEdit = true;
+                    break;
                 }
             }
         }
@@ -1381,16 +1398,30 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                 try (IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language.presentationLanguage, _versionToken);) {
                     _versionToken = indexAndTaxonomy.version;
 
+                    Document[] docs = new Document[nrHits];
                     for (int i = 0; i < nrHits; i++) {
-                        Document doc;
                         if (inFastMode) {
                             // no selector
-                            doc = indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc);
+                            docs[i] = indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc);
                         } else {
                             DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor("_id");
                             indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc, docVisitor);
-                            doc = docVisitor.getDocument();
+                            docs[i] = docVisitor.getDocument();
                         }
+                    }
+
+                    // Resolve the privileges of the whole page at once
+                    Map<Integer, Set<Operation>> pageOperations = null;
+                    if ("index".equals(sFast)) {
+                        List<Integer> ids = new ArrayList<>(nrHits);
+                        for (Document doc : docs) {
+                            ids.add(Integer.valueOf(doc.get("_id")));
+                        }
+                        pageOperations = gc.getBean(AccessManager.class).getOperations(srvContext, ids);
+                    }
+
+                    for (int i = 0; i < nrHits; i++) {
+                        Document doc = docs[i];
                         String id = doc.get("_id");
                         Element md = null;
 
@@ -1409,7 +1440,8 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                             // Retrieve information from the index for the record
                             md = LuceneSearcher.getMetadataFromIndex(doc, id, true, _language.presentationLanguage, _luceneConfig.getMultilingualSortFields(), _luceneConfig.getDumpFields(), extraDumpFields);
 
-                            buildPrivilegesMetadataInfo(srvContext, doc, md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE));
+                            buildPrivilegesMetadataInfo(srvContext, doc, md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE),
+                                pageOperations.get(Integer.valueOf(id)));
                         } else if (srvContext != null) {
                             boolean forEditing = false, withValidationErrors = false, keepXlinkAttributes = false;
                             md = gc.getBean(DataManager.class).getMetadata(srvContext, id, forEditing, withValidationErrors, keepXlinkAttributes);
@@ -1440,12 +1472,72 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         return response;
     }
 
+    /**
+     * Keyset paging of the records in change date then id order (both compared as indexed, as
+     * strings): only the records after the given change date and id are searched and only the
+     * first <code>maxHits</code> of them are loaded.
+     *
+     * @param lastChangeDate change date of the last record of the previous page or null for the
+     *                       first page
+     * @param lastId         id of the last record of the previous page
+     * @return the change date of the records found, by id, in keyset order. {@link #getSize()}
+     * returns the number of records after the cursor.
+     */
+    public Map<Integer, String> searchAfterChangeDate(ServiceContext srvContext, Element request, ServiceConfig config,
+                                                      @Nullable String lastChangeDate, int lastId, int maxHits) throws Exception {
+        _language = determineLanguage(srvContext, request, _sm.getSettingInfo());
+        initSearchRange(srvContext);
+        computeQuery(srvContext, request, config);
+
+        Query query = _query;
+        if (lastChangeDate != null) {
+            BooleanQuery sameChangeDate = new BooleanQuery();
+            sameChangeDate.add(new TermQuery(new Term(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, lastChangeDate)), BooleanClause.Occur.MUST);
+            sameChangeDate.add(TermRangeQuery.newStringRange(Geonet.IndexFieldNames.ID, String.valueOf(lastId), null, false, false), BooleanClause.Occur.MUST);
+            BooleanQuery after = new BooleanQuery();
+            after.add(TermRangeQuery.newStringRange(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, lastChangeDate, null, false, false), BooleanClause.Occur.SHOULD);
+            after.add(sameChangeDate, BooleanClause.Occur.SHOULD);
+
+            BooleanQuery bounded = new BooleanQuery();
+            bounded.add(_query, BooleanClause.Occur.MUST);
+            bounded.add(after, BooleanClause.Occur.MUST);
+            query = bounded;
+        }
+        Sort keysetOrder = new Sort(new SortField(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, SortField.Type.STRING),
+            new SortField(Geonet.IndexFieldNames.ID, SortField.Type.STRING));
+
+        Map<Integer, String> result = new LinkedHashMap<Integer, String>();
+        IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language.presentationLanguage, _versionToken);
+        try {
+            _versionToken = indexAndTaxonomy.version;
+            IndexSearcher searcher = new IndexSearcher(indexAndTaxonomy.indexReader);
+            TopDocs hits = searcher.search(query, _filter, Math.max(1, maxHits), keysetOrder);
+            _numHits = hits.totalHits;
+            for (ScoreDoc hit : hits.scoreDocs) {
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(Geonet.IndexFieldNames.ID,
+                    Geonet.IndexFieldNames.DATABASE_CHANGE_DATE);
+                indexAndTaxonomy.indexReader.document(hit.doc, visitor);
+                Document doc = visitor.getDocument();
+                String changeDate = doc.get(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE);
+                result.put(Integer.valueOf(doc.get(Geonet.IndexFieldNames.ID)), changeDate == null ? "" : changeDate);
+            }
+        } finally {
+            _sm.releaseIndexReader(indexAndTaxonomy);
+        }
+        return result;
+    }
+
     /**
      * Perform a query, loop over results in order to find values containing the search value for a
      * specific field.
      *
      * If the field is not stored in the index, an empty collection is returned.
      *
+     * Unlike {@link SearchManager#getTermsFequency} (see {@link TermSuggester}), the values only
+     * come from the records the user can see, so they are taken from the facet summary of a
+     * search with the user privileges. The values are counted by the facet collector over all the
+     * hits, the search itself only collects the first page.
+     *
      * @param searchField      The field to search in
      * @param searchValue      The value contained in field's value (case is ignored)
      * @param maxNumberOfTerms The maximum number of terms to search for
@@ -1477,7 +1569,7 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
             elData.addContent(new Element(searchField).setText(searchValue));
         }
         elData.addContent(new Element("from").setText("1"));
-        elData.addContent(new Element("to").setText(Integer.MAX_VALUE + ""));
+        elData.addContent(new Element("to").setText("1"));
         elData.addContent(new Element(Geonet.SearchResult.RESULT_TYPE).setText(Geonet.SearchResult.ResultType.SUGGESTIONS));
         elData.addContent(new Element(Geonet.SearchResult.SUMMARY_ITEMS).setText(searchField));
         search(srvContext, elData, config);
@@ -1563,10 +1655,12 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         }
 
         _summaryConfig = _luceneConfig.getSummaryTypes().get(resultType);
+        _summaryKey = resultType;
 
         final Element summaryItemsEl = request.getChild(Geonet.SearchResult.SUMMARY_ITEMS);
         if (summaryItemsEl != null) {
             summaryItemsEl.detach();
+            _summaryKey += "|" + summaryItemsEl.getValue();
 
             List<ItemConfig> requestedItems = new ArrayList<ItemConfig>();
             String[] items = summaryItemsEl.getValue().split(",");
@@ -1767,12 +1861,14 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 
         Collection<Geometry> geometry = getGeometry(srvContext, request);
         SpatialFilter spatialfilter = null;
+        _filterKey = "";
         if (geometry != null) {
             StringBuilder wkt = new StringBuilder();
             for (Geometry geom : geometry) {
                 wkt.append("geom:").append(geom.toText()).append("\n");
             }
             _geomWKT = wkt.toString();
+            _filterKey = _geomWKT + Util.getParam(request, Geonet.SearchResult.RELATION, "");
             spatialfilter = _sm.getSpatial().filter(_query, Integer.MAX_VALUE, geometry, request);
         }
 
@@ -1868,13 +1964,20 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language.presentationLanguage, _versionToken);
         _versionToken = indexAndTaxonomy.version;
         Pair<TopDocs, Element> results;
+        SearchResultCache cache = SearchResultCache.getInstance();
+        String cacheKey = _filterKey == null ? null : cache.getKey(_versionToken, _query, _filterKey, _sort,
+            _language.presentationLanguage, _summaryKey, startHit, endHit, buildSummary);
         try {
-            results = doSearchAndMakeSummary(endHit, startHit, endHit,
-                _language.presentationLanguage,
-                _summaryConfig, _luceneConfig,
-                indexAndTaxonomy.indexReader,
-                _query, _filter, _sort, indexAndTaxonomy.taxonomyReader,
-                buildSummary);
+            results = cache.get(_versionToken, cacheKey);
+            if (results == null) {
+                results = doSearchAndMakeSummary(endHit, startHit, endHit,
+                    _language.presentationLanguage,
+                    _summaryConfig, _luceneConfig,
+                    indexAndTaxonomy.indexReader,
+                    _query, _filter, _sort, indexAndTaxonomy.taxonomyReader,
+                    buildSummary);
+                cache.put(_versionToken, cacheKey, results);
+            }
         } finally {
             _sm.releaseIndexReader(indexAndTaxonomy);
         }
@@ -60,6 +60,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.Util;
@@ -120,6 +121,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -175,6 +177,7 @@ public class SearchManager implements ISearchManager {
     private Path _htmlCacheDir;
     private Spatial _spatial;
     private LuceneOptimizerManager _luceneOptimizerManager;
+    private final TermSuggester termSuggester = new TermSuggester();
 
     /**
      * Creates GeoNetworkAnalyzer, using Admin-defined stopwords if there are any.
@@ -563,6 +566,7 @@ public class SearchManager implements ISearchManager {
     public void reloadLuceneConfiguration() throws IOException {
         createAnalyzer();
         createDocumentBoost();
+        termSuggester.clear();
     }
 
     public synchronized void disableOptimizer() throws Exception {
@@ -886,30 +890,38 @@ public class SearchManager implements ISearchManager {
         }
     }
 
-    public Map<String, String> getDocsChangeDate() throws Exception {
+    /**
+     * Only the Lucene index is reconciled with the database at startup, the Elasticsearch index
+     * is kept up to date through the index API.
+     *
+     * @return the ids and change dates of all records of the index.
+     */
+    public IndexChangeDates getDocsChangeDates() throws Exception {
         IndexAndTaxonomy indexAndTaxonomy = getNewIndexReader(null);
         try {
             GeonetworkMultiReader reader = indexAndTaxonomy.indexReader;
 
-            int capacity = (int) (reader.maxDoc() / 0.75) + 1;
-            Map<String, String> docs = new HashMap<String, String>(capacity);
-            for (int i = 0; i < reader.maxDoc(); i++) {
-                // Commented this out for lucene 4.0 and NRT indexing.  It shouldn't be needed I would guess but leave it here
-                // for a bit longer:  Commented out since: Dec 10 2012
-                // FIXME: strange lucene hack: sometimes it tries to load a deleted document
-                // if (reader.isDeleted(i)) continue;
-
-                DocumentStoredFieldVisitor idChangeDateSelector = new DocumentStoredFieldVisitor(Geonet.IndexFieldNames.ID, "_changeDate");
-                reader.document(i, idChangeDateSelector);
-                Document doc = idChangeDateSelector.getDocument();
-                String id = doc.get(Geonet.IndexFieldNames.ID);
-                if (id == null) {
-                    IE_LOGGER.error("Document with no _id field skipped! Document is {}", doc);
-                    continue;
+            IndexChangeDates docs = new IndexChangeDates(reader.numDocs());
+            for (AtomicReaderContext atomicReaderContext : reader.leaves()) {
+                AtomicReader atomicReader = atomicReaderContext.reader();
+                Bits liveDocs = atomicReader.getLiveDocs();
+                for (int i = 0; i < atomicReader.maxDoc(); i++) {
+                    if (liveDocs != null && !liveDocs.get(i)) {
+                        continue;
+                    }
+                    DocumentStoredFieldVisitor idChangeDateSelector =
+                        new DocumentStoredFieldVisitor(Geonet.IndexFieldNames.ID, Geonet.IndexFieldNames.DATABASE_CHANGE_DATE);
+                    atomicReader.document(i, idChangeDateSelector);
+                    Document doc = idChangeDateSelector.getDocument();
+                    String id = doc.get(Geonet.IndexFieldNames.ID);
+                    if (id == null || !StringUtils.isNumeric(id)) {
+                        IE_LOGGER.error("Document with no valid _id field skipped! Document is {}", doc);
+                        continue;
+                    }
+                    docs.add(Integer.parseInt(id), IndexChangeDates.toMillis(doc.get(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE)));
                 }
-                docs.put(id, doc.get("_changeDate"));
             }
-            return docs;
+            return docs.sort();
         } finally {
             releaseIndexReader(indexAndTaxonomy);
         }
@@ -974,31 +986,13 @@ public class SearchManager implements ISearchManager {
         try {
             GeonetworkMultiReader multiReader = indexAndTaxonomy.indexReader;
             for (AtomicReaderContext atomicReaderContext : multiReader.getContext().leaves()) {
-                final AtomicReader reader = atomicReaderContext.reader();
-                Terms terms = reader.terms(fieldName);
-                if (terms != null) {
-                    TermsEnum termEnum = terms.iterator(null);
-                    int i = 1;
-                    BytesRef term = termEnum.next();
-                    while (term != null && i++ < maxNumberOfTerms) {
-                        String text = term.utf8ToString();
-                        if (termEnum.docFreq() >= threshold) {
-                            String analyzedText = LuceneSearcher.analyzeText(fieldName, text, analyzer);
-                            if ((startsWithOnly && StringUtils.startsWithIgnoreCase(analyzedText, analyzedSearchValue))
-                                || (!startsWithOnly && StringUtils.containsIgnoreCase(analyzedText, analyzedSearchValue))
-                                || (startsWithOnly && StringUtils.startsWithIgnoreCase(text, searchValueWithoutWildcard))
-                                || (!startsWithOnly && StringUtils.containsIgnoreCase(text, searchValueWithoutWildcard))) {
-                                final TermFrequency existing = termList.get(text);
-                                if (existing != null) {
-                                    existing.inc(termEnum.docFreq());
-                                } else {
-                                    TermFrequency freq = new TermFrequency(text, termEnum.docFreq());
-                                    termList.put(text, freq);
-                                }
-                            }
-                        }
-                        term = termEnum.next();
-                    }
+                termSuggester.collect(atomicReaderContext.reader(), fieldName, language, analyzer, maxNumberOfTerms,
+                    searchValueWithoutWildcard, analyzedSearchValue, startsWithOnly, termList);
+            }
+            Iterator<TermFrequency> iterator = termList.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getFrequency() < threshold) {
+                    iterator.remove();
                 }
             }
         } finally {
@@ -1438,6 +1432,14 @@ public class SearchManager implements ISearchManager {
         return _spatial;
     }
 
+    /**
+     * @return a number which changes each time the searchers may see new content, so that results
+     * computed from the index can be cached until it changes.
+     */
+    public long getIndexRefreshCount() {
+        return getIndexTracker().getRefreshCount();
+    }
+
     LuceneIndexLanguageTracker getIndexTracker() {
 
         ConfigurableApplicationContext context = ApplicationContextHolder.get();
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.fao.geonet.domain.Pair;
+import org.jdom.Element;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of search results shared by all {@link LuceneSearcher}s: the top documents and the
+ * summary of a query for a version of the index.
+ *
+ * The key is made of the query (which includes the privilege and portal filters of the user), a
+ * description of the filter (the spatial filter, duplicates are removed based on the query), the sort, the language, the summary configuration, the requested range and the version
+ * of the index searcher. Document numbers are only valid for a version of the index, when a new
+ * version is published the cache is cleared.
+ *
+ * The cache can be configured with the following system properties:
+ * <ul>
+ * <li><code>geonetwork.search.cache.size</code>: maximum number of results kept in the cache,
+ * 0 to disable the cache (default 500).</li>
+ * <li><code>geonetwork.search.cache.maxHits</code>: results with a larger requested range are not
+ * cached (default 1000).</li>
+ * </ul>
+ */
+public class SearchResultCache {
+    public static final String CACHE_SIZE_PROPERTY = "geonetwork.search.cache.size";
+    public static final String MAX_HITS_PROPERTY = "geonetwork.search.cache.maxHits";
+
+    private static final SearchResultCache instance = new SearchResultCache(
+        Integer.getInteger(CACHE_SIZE_PROPERTY, 500), Integer.getInteger(MAX_HITS_PROPERTY, 1000));
+
+    private final Cache<String, Pair<TopDocs, Element>> results;
+    private final int maxSize;
+    private final int maxHits;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong lastVersion = new AtomicLong(-1);
+
+    SearchResultCache(int maxSize, int maxHits) {
+        this.maxSize = maxSize;
+        this.maxHits = maxHits;
+        this.results = CacheBuilder.newBuilder().maximumSize(Math.max(0, maxSize)).build();
+    }
+
+    public static SearchResultCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the cache key of a search or null if the search can not be cached.
+     */
+    String getKey(long version, Query query, String filter, Sort sort, String language, String summaryConfig,
+                  int startHit, int endHit, boolean buildSummary) {
+        if (maxSize <= 0 || endHit > maxHits || query == null) {
+            return null;
+        }
+        return version + "|" + query + "|" + filter + "|" + sort + "|" + language + "|" + summaryConfig
+            + "|" + startHit + "|" + endHit + "|" + buildSummary;
+    }
+
+    /**
+     * @return the result of a search for the version of the index or null if not in the cache.
+     * The summary is a copy which can be modified by the caller.
+     */
+    Pair<TopDocs, Element> get(long version, String key) {
+        if (key == null) {
+            return null;
+        }
+        newVersion(version);
+        Pair<TopDocs, Element> result = results.getIfPresent(key);
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return Pair.read(result.one(), (Element) result.two().clone());
+    }
+
+    void put(long version, String key, Pair<TopDocs, Element> result) {
+        if (key != null && version >= lastVersion.get()) {
+            results.put(key, Pair.read(result.one(), (Element) result.two().clone()));
+        }
+    }
+
+    /**
+     * Clear the cache when a search is done on a newer version of the index. Searches on older
+     * versions (eg. paging with a version token) are still possible but are not cached anymore.
+     */
+    private void newVersion(long version) {
+        long last = lastVersion.get();
+        while (version > last) {
+            if (lastVersion.compareAndSet(last, version)) {
+                results.invalidateAll();
+                return;
+            }
+            last = lastVersion.get();
+        }
+    }
+
+    public void clear() {
+        results.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getSize() {
+        return results.size();
+    }
+}
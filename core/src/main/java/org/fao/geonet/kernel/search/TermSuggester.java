@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Suggestions of index terms for autocompletion.
+ *
+ * The terms of a field are read and analyzed once per index segment and language (up to
+ * {@link #MAX_TERMS_PER_SEGMENT} terms, the maximum number of terms of a request only limits the
+ * entries matched). The dictionaries of at most {@link #MAX_FIELDS_PER_SEGMENT} fields and
+ * languages are kept per segment. Segments never change, so a refresh of the index only builds the
+ * dictionaries of its new segments and the dictionaries of merged segments are dropped with their
+ * segment. A dictionary is a sorted array of keys (the lower case term and analyzed term) which is
+ * searched by binary search for prefix matches, and a second one starting at each word of the term
+ * for infix matches. Answering a request costs a binary search per segment plus the number of
+ * matches instead of analyzing every term of the field.
+ */
+public class TermSuggester {
+    /**
+     * Maximum number of terms of a field read in a segment.
+     */
+    static final int MAX_TERMS_PER_SEGMENT = 100000;
+    /**
+     * Maximum number of field dictionaries (by field and language) kept for a segment.
+     */
+    static final int MAX_FIELDS_PER_SEGMENT = 20;
+
+    private final Cache<Object, Cache<String, Segment>> segments = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Add the terms of the field in a segment matching the search value to the suggestions.
+     * The frequencies of terms found in several segments are summed.
+     *
+     * @param reader              a segment of the index
+     * @param analyzedSearchValue the search value analyzed like the field
+     * @param startsWithOnly      if false, terms with a word starting with the search value also
+     *                            match
+     */
+    void collect(AtomicReader reader, String fieldName, String language, PerFieldAnalyzerWrapper analyzer,
+                 int maxNumberOfTerms, String searchValue, String analyzedSearchValue, boolean startsWithOnly,
+                 Map<String, SearchManager.TermFrequency> suggestions) throws IOException {
+        Segment segment = getSegment(reader, fieldName, language, analyzer);
+        if (segment == null) {
+            return;
+        }
+        // the entries are in term order, the request only looks at the first terms
+        int maxEntry = Math.min(maxNumberOfTerms, MAX_TERMS_PER_SEGMENT) - 1;
+        Set<Integer> found = new HashSet<>();
+        segment.prefixes.find(searchValue.toLowerCase(Locale.ROOT), found);
+        segment.prefixes.find(analyzedSearchValue.toLowerCase(Locale.ROOT), found);
+        if (!startsWithOnly) {
+            segment.infixes.find(searchValue.toLowerCase(Locale.ROOT), found);
+            segment.infixes.find(analyzedSearchValue.toLowerCase(Locale.ROOT), found);
+        }
+        for (Integer entry : found) {
+            if (entry >= maxEntry) {
+                continue;
+            }
+            String term = segment.terms[entry];
+            SearchManager.TermFrequency existing = suggestions.get(term);
+            if (existing != null) {
+                existing.inc(segment.docFreqs[entry]);
+            } else {
+                suggestions.put(term, new SearchManager.TermFrequency(term, segment.docFreqs[entry]));
+            }
+        }
+    }
+
+    private Segment getSegment(final AtomicReader reader, final String fieldName, String language,
+                               final PerFieldAnalyzerWrapper analyzer) throws IOException {
+        try {
+            Cache<String, Segment> fields = segments.get(reader.getCoreCacheKey(), new Callable<Cache<String, Segment>>() {
+                @Override
+                public Cache<String, Segment> call() {
+                    return CacheBuilder.newBuilder().maximumSize(MAX_FIELDS_PER_SEGMENT).build();
+                }
+            });
+            Segment segment = fields.get(fieldName + "|" + language, new Callable<Segment>() {
+                @Override
+                public Segment call() throws IOException {
+                    return Segment.build(reader, fieldName, analyzer, MAX_TERMS_PER_SEGMENT);
+                }
+            });
+            return segment == Segment.EMPTY ? null : segment;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public void clear() {
+        segments.invalidateAll();
+    }
+
+    /**
+     * Terms of a field in a segment.
+     */
+    private static final class Segment {
+        static final Segment EMPTY = new Segment(new String[0], new int[0], new ArrayList<KeyEntry>(), new ArrayList<KeyEntry>());
+
+        final String[] terms;
+        final int[] docFreqs;
+        final KeyIndex prefixes;
+        final KeyIndex infixes;
+
+        private Segment(String[] terms, int[] docFreqs, List<KeyEntry> prefixes, List<KeyEntry> infixes) {
+            this.terms = terms;
+            this.docFreqs = docFreqs;
+            this.prefixes = new KeyIndex(prefixes);
+            this.infixes = new KeyIndex(infixes);
+        }
+
+        static Segment build(AtomicReader reader, String fieldName, PerFieldAnalyzerWrapper analyzer,
+                             int maxNumberOfTerms) throws IOException {
+            Terms fieldTerms = reader.terms(fieldName);
+            if (fieldTerms == null) {
+                return EMPTY;
+            }
+            List<String> terms = new ArrayList<>();
+            List<Integer> docFreqs = new ArrayList<>();
+            List<KeyEntry> prefixes = new ArrayList<>();
+            List<KeyEntry> infixes = new ArrayList<>();
+            TermsEnum termEnum = fieldTerms.iterator(null);
+            int i = 1;
+            BytesRef term = termEnum.next();
+            while (term != null && i++ < maxNumberOfTerms) {
+                String text = term.utf8ToString();
+                int entry = terms.size();
+                terms.add(text);
+                docFreqs.add(termEnum.docFreq());
+                String key = text.toLowerCase(Locale.ROOT);
+                String analyzedKey = LuceneSearcher.analyzeText(fieldName, text, analyzer).toLowerCase(Locale.ROOT);
+                addKeys(key, entry, prefixes, infixes);
+                if (!analyzedKey.equals(key)) {
+                    addKeys(analyzedKey, entry, prefixes, infixes);
+                }
+                term = termEnum.next();
+            }
+            int[] freqs = new int[docFreqs.size()];
+            for (int j = 0; j < freqs.length; j++) {
+                freqs[j] = docFreqs.get(j);
+            }
+            return new Segment(terms.toArray(new String[terms.size()]), freqs, prefixes, infixes);
+        }
+
+        private static void addKeys(String key, int entry, List<KeyEntry> prefixes, List<KeyEntry> infixes) {
+            prefixes.add(new KeyEntry(key, entry));
+            for (int start = 1; start < key.length(); start++) {
+                if (Character.isLetterOrDigit(key.charAt(start)) && !Character.isLetterOrDigit(key.charAt(start - 1))) {
+                    infixes.add(new KeyEntry(key.substring(start), entry));
+                }
+            }
+        }
+    }
+
+    private static final class KeyEntry {
+        final String key;
+        final int entry;
+
+        KeyEntry(String key, int entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Keys sorted for prefix search.
+     */
+    private static final class KeyIndex {
+        private final String[] keys;
+        private final int[] entries;
+
+        KeyIndex(List<KeyEntry> keyEntries) {
+            Collections.sort(keyEntries, new Comparator<KeyEntry>() {
+                @Override
+                public int compare(KeyEntry o1, KeyEntry o2) {
+                    return o1.key.compareTo(o2.key);
+                }
+            });
+            keys = new String[keyEntries.size()];
+            entries = new int[keyEntries.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keyEntries.get(i).key;
+                entries[i] = keyEntries.get(i).entry;
+            }
+        }
+
+        /**
+         * Add the entries of the keys starting with the prefix.
+         */
+        void find(String prefix, Set<Integer> found) {
+            int index = Arrays.binarySearch(keys, prefix);
+            if (index < 0) {
+                index = -index - 1;
+            } else {
+                // first of the keys equal to the prefix
+                while (index > 0 && keys[index - 1].equals(prefix)) {
+                    index--;
+                }
+            }
+            for (; index < keys.length && keys[index].startsWith(prefix); index++) {
+                found.add(entries[index]);
+            }
+        }
+    }
+}
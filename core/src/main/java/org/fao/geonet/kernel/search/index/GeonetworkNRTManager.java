@@ -65,6 +65,14 @@ class GeonetworkNRTManager implements Closeable {
     }
 
 
+    /**
+     * Register a listener notified each time the searchers are refreshed, by a search, a forced
+     * refresh or the reopen thread.
+     */
+    public void addRefreshListener(ReferenceManager.RefreshListener listener) {
+        actualManager.addListener(listener);
+    }
+
     public SearcherLifetimeManager getLifetimeManager() {
         return lifetimeManager;
     }
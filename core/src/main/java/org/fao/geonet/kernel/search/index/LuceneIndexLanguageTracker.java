@@ -36,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -53,6 +54,7 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.fao.geonet.ApplicationContextHolder;
@@ -80,6 +82,19 @@ public class LuceneIndexLanguageTracker {
     private Lock lock = new ReentrantLock();
     private AtomicInteger _openReaderCounter = new AtomicInteger(0);
     private AtomicBoolean destroyed = new AtomicBoolean(false);
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final ReferenceManager.RefreshListener refreshCounter = new ReferenceManager.RefreshListener() {
+        @Override
+        public void beforeRefresh() {
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) {
+            if (didRefresh) {
+                refreshCount.incrementAndGet();
+            }
+        }
+    };
 
     public LuceneIndexLanguageTracker() {
         // used by spring
@@ -162,6 +177,7 @@ public class LuceneIndexLanguageTracker {
             trackingIndexWriter = new TrackingIndexWriter(writer);
             nrtManager = new GeonetworkNRTManager(luceneConfig, indexId,
                 trackingIndexWriter, writer, null, true, taxonomyIndexTracker);
+            nrtManager.addRefreshListener(refreshCounter);
             done = true;
         } finally {
             if (!done) {
@@ -173,6 +189,15 @@ public class LuceneIndexLanguageTracker {
         dirs.put(indexId, cachedFSDir);
         trackingWriters.put(indexId, trackingIndexWriter);
         searchManagers.put(indexId, nrtManager);
+        refreshCount.incrementAndGet();
+    }
+
+    /**
+     * @return a number which changes each time the searchers may see new content (an index is
+     * opened or refreshed). Unlike the version of a reader it is known without acquiring one.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
     }
 
     /**
@@ -0,0 +1,180 @@
+//==============================================================================
+//===	Copyright (C) 2001-2016 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search.spatial;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The spatial index used by the spatial filters.
+ *
+ * It is made of an STRtree built from all the features of the spatial index store and of the
+ * features of the records changed since then: the entries of the changed records are ignored in
+ * the STRtree and looked up in an overlay quadtree. The STRtree is never modified, the overlay is
+ * updated in place with the records changed by each commit so applying a commit only costs the
+ * size of the commit.
+ */
+class OverlaySpatialIndex implements SpatialIndex {
+    private final STRtree base;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, List<SpatialIndexWriter.Data>> changes = new HashMap<>();
+    private final Quadtree overlay = new Quadtree();
+
+    /**
+     * @param base    the STRtree of all the features of the store, it must not be modified afterwards.
+     * @param changes the current entries (possibly none) of the records changed since the STRtree was
+     *                built, by metadata id.
+     */
+    OverlaySpatialIndex(STRtree base, Map<String, List<SpatialIndexWriter.Data>> changes) {
+        this.base = base;
+        this.base.build();
+        applyChanges(changes);
+    }
+
+    /**
+     * Replace the entries of the changed records.
+     *
+     * @param newChanges the current entries (possibly none) of the changed records, by metadata id.
+     */
+    void applyChanges(Map<String, List<SpatialIndexWriter.Data>> newChanges) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (Map.Entry<String, List<SpatialIndexWriter.Data>> entry : newChanges.entrySet()) {
+                List<SpatialIndexWriter.Data> entries = entry.getValue() == null ?
+                    Collections.<SpatialIndexWriter.Data>emptyList() : entry.getValue();
+                List<SpatialIndexWriter.Data> previous = changes.put(entry.getKey(), entries);
+                if (previous != null) {
+                    for (SpatialIndexWriter.Data data : previous) {
+                        overlay.remove(data.getEnv(), data);
+                    }
+                }
+                for (SpatialIndexWriter.Data data : entries) {
+                    overlay.insert(data.getEnv(), data);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the current entries of a record changed since the STRtree was built or null if the
+     * record did not change.
+     */
+    List<SpatialIndexWriter.Data> getChanges(String metadataId) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return changes.get(metadataId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records changed since the STRtree was built.
+     */
+    int getChangeCount() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return changes.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries of the STRtree built from the store.
+     */
+    int getBaseSize() {
+        return base.size();
+    }
+
+    @Override
+    public List query(Envelope searchEnv) {
+        final List<Object> result = new ArrayList<>();
+        query(searchEnv, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                result.add(item);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(final Envelope searchEnv, final ItemVisitor visitor) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (changes.isEmpty()) {
+                base.query(searchEnv, visitor);
+                return;
+            }
+            base.query(searchEnv, new ItemVisitor() {
+                @Override
+                public void visitItem(Object item) {
+                    if (!changes.containsKey(((SpatialIndexWriter.Data) item).getMetadataId())) {
+                        visitor.visitItem(item);
+                    }
+                }
+            });
+            // the quadtree returns all the items which may intersect the envelope
+            overlay.query(searchEnv, new ItemVisitor() {
+                @Override
+                public void visitItem(Object item) {
+                    if (((SpatialIndexWriter.Data) item).getEnv().intersects(searchEnv)) {
+                        visitor.visitItem(item);
+                    }
+                }
+            });
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item) {
+        throw new UnsupportedOperationException("The spatial index is only updated by the SpatialIndexWriter");
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item) {
+        throw new UnsupportedOperationException("The spatial index is only updated by the SpatialIndexWriter");
+    }
+}
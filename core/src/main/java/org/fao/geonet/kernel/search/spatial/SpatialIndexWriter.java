@@ -27,6 +27,8 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.util.GeometryTransformer;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.strtree.STRtree;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
 import org.apache.jcs.access.exception.CacheException;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.util.GMLParsers;
@@ -66,10 +68,16 @@ import java.io.StringReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
@@ -77,6 +85,11 @@ import java.util.logging.Level;
  * This class is responsible for extracting geographic information from metadata and writing that
  * information to a storage mechanism.
  *
+ * The in-memory index of the features is maintained incrementally: the records changed by a commit
+ * are reloaded from the store and replaced in the overlay of the {@link OverlaySpatialIndex}. When
+ * the changes represent a significant part of the index, the STRtree is rebuilt in the background
+ * and swapped once ready.
+ *
  * @author jeichar
  */
 @SuppressWarnings("unchecked")
@@ -86,14 +99,37 @@ public class SpatialIndexWriter implements FeatureListener {
     public static final String _SPATIAL_INDEX_TYPENAME = "spatialindex";
     public static final int MAX_WRITES_IN_TRANSACTION = 1000;
     static final String SPATIAL_FILTER_JCS = "SpatialFilterCache";
+    /**
+     * Minimum number of changed records before rebuilding the STRtree.
+     */
+    static final int MIN_CHANGES_BEFORE_REBUILD = 1000;
+    /**
+     * Maximum number of records loaded from the store by one query.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
     private static int _writes;
+    private final DataStore _datastore;
     private final Transaction _transaction;
     private final Lock _lock;
     private int _maxWrites;
     private FeatureStore<SimpleFeatureType, SimpleFeature> _featureStore;
-    private STRtree _index;
+    private volatile OverlaySpatialIndex _index;
+    /**
+     * Records written or deleted since the last commit.
+     */
+    private final Set<String> _pendingChanges = new HashSet<>();
+    /**
+     * Records committed while the STRtree is rebuilt, null if no rebuild is in progress.
+     */
+    private Set<String> _changedDuringRebuild;
+    /**
+     * Incremented when the index is reset to discard the rebuilds in progress.
+     */
+    private int _generation;
+    private ExecutorService _rebuildExecutor;
+    private int _minChangesBeforeRebuild = MIN_CHANGES_BEFORE_REBUILD;
     private Map<String, String> errorMessage;
-    private Name _idColumn;
+    private volatile Name _idColumn;
     private boolean _autocommit;
 
     /**
@@ -107,6 +143,7 @@ public class SpatialIndexWriter implements FeatureListener {
         // Note: The Configuration takes a long time to create so it is worth
         // re-using the same Configuration
         _lock = lock;
+        _datastore = datastore;
         _transaction = transaction;
         _maxWrites = maxWrites;
 
@@ -268,7 +305,6 @@ public class SpatialIndexWriter implements FeatureListener {
                       Element metadata) throws Exception {
         _lock.lock();
         try {
-            _index = null;
             errorMessage = new HashMap<>();
             Geometry geometry = extractGeometriesFrom(
                 schemaDir, metadata, errorMessage);
@@ -284,12 +320,16 @@ public class SpatialIndexWriter implements FeatureListener {
                 features.add(template);
 
                 _featureStore.addFeatures(features);
+                _pendingChanges.add(id);
 
                 _writes++;
 
-                if (!_autocommit && _writes > _maxWrites) {
+                if (_autocommit) {
+                    applyPendingChanges();
+                } else if (_writes > _maxWrites) {
                     _transaction.commit();
                     _writes = 0;
+                    applyPendingChanges();
                 }
             }
         } finally {
@@ -316,9 +356,13 @@ public class SpatialIndexWriter implements FeatureListener {
                 _transaction.commit();
                 _writes = 0;
             }
+            applyPendingChanges();
             _transaction.close();
-            _index = null;
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
+            if (_rebuildExecutor != null) {
+                _rebuildExecutor.shutdownNow();
+                _rebuildExecutor = null;
+            }
             // Done by JCSServletContextListener: SpatialFilter.getJCSCache().clear();
         } catch (Exception e) {
             Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter close error: " + e.getMessage(), e);
@@ -339,9 +383,11 @@ public class SpatialIndexWriter implements FeatureListener {
             Filter filter = factory.equals(
                 factory.property(getIdColumn()), factory.literal(id));
 
-            _index = null;
-
             _featureStore.removeFeatures(filter);
+            _pendingChanges.add(id);
+            if (_autocommit) {
+                applyPendingChanges();
+            }
             try {
                 SpatialFilter.getJCSCache().clear();
             } catch (Throwable e) {
@@ -366,9 +412,11 @@ public class SpatialIndexWriter implements FeatureListener {
                     factory.property(idColumn), factory.literal(id)));
             }
 
-            _index = null;
-
             _featureStore.removeFeatures(factory.or(filters));
+            _pendingChanges.addAll(ids);
+            if (_autocommit) {
+                applyPendingChanges();
+            }
             try {
                 SpatialFilter.getJCSCache().clear();
             } catch (Throwable e) {
@@ -387,7 +435,7 @@ public class SpatialIndexWriter implements FeatureListener {
             if (!_autocommit && _writes > 0) {
                 _writes = 0;
                 _transaction.commit();
-                _index = null;
+                applyPendingChanges();
                 SpatialFilter.getJCSCache().clear();
             }
         } catch (Throwable e) {
@@ -398,7 +446,15 @@ public class SpatialIndexWriter implements FeatureListener {
 
     }
 
+    /**
+     * @return the current index. Only the first call (or the first call after a reset) waits for the
+     * index to be built.
+     */
     public SpatialIndex getIndex() throws IOException {
+        SpatialIndex index = _index;
+        if (index != null) {
+            return index;
+        }
         _lock.lock();
         try {
 
@@ -418,9 +474,12 @@ public class SpatialIndexWriter implements FeatureListener {
         _lock.lock();
         try {
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
-            _index = null;
             _featureStore.removeFeatures(Filter.INCLUDE);
             _featureStore.setTransaction(_transaction);
+            _pendingChanges.clear();
+            _changedDuringRebuild = null;
+            _generation++;
+            _index = new OverlaySpatialIndex(new STRtree(), Collections.<String, List<Data>>emptyMap());
         } finally {
             _lock.unlock();
         }
@@ -432,19 +491,26 @@ public class SpatialIndexWriter implements FeatureListener {
         } catch (CacheException e) {
             Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache clear error: " + e.getMessage(), e);
         }
-        _index = new STRtree();
+        if (_idColumn == null) {
+            _idColumn = findIdColumn(_featureStore);
+        }
+        _index = new OverlaySpatialIndex(buildTree(_featureStore), Collections.<String, List<Data>>emptyMap());
+    }
 
+    /**
+     * Build an STRtree from all the features of a source.
+     */
+    private STRtree buildTree(FeatureSource<SimpleFeatureType, SimpleFeature> source) throws IOException {
+        STRtree tree = new STRtree();
         FeatureIterator<SimpleFeature> features = null;
         try {
-            features = _featureStore.getFeatures().features();
+            features = source.getFeatures().features();
             while (features.hasNext()) {
                 SimpleFeature feature = features.next();
-                if (_idColumn == null) {
-                    _idColumn = findIdColumn(_featureStore);
-                }
-
                 if (feature.getDefaultGeometry() != null) {
-                    insertFeatureInIndex(feature);
+                    for (Data data : buildData(feature)) {
+                        tree.insert(data.getEnv(), data);
+                    }
                 }
             }
 
@@ -453,6 +519,143 @@ public class SpatialIndexWriter implements FeatureListener {
                 features.close();
             }
         }
+        return tree;
+    }
+
+    /**
+     * Reload the features of the records written or deleted since the last commit and replace them in
+     * the index. Must be called with the lock held, once the changes are visible in the store.
+     */
+    private void applyPendingChanges() throws IOException {
+        if (_pendingChanges.isEmpty()) {
+            return;
+        }
+        OverlaySpatialIndex index = _index;
+        if (index == null) {
+            // The index will be built from the store on first use
+            _pendingChanges.clear();
+            return;
+        }
+
+        Map<String, List<Data>> changes = new HashMap<>();
+        FilterFactory2 factory = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
+        String idColumn = getIdColumn();
+        for (List<String> ids : Iterables.partition(_pendingChanges, MAX_IDS_PER_QUERY)) {
+            List<Filter> filters = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                changes.put(id, new ArrayList<Data>());
+                filters.add(factory.equals(factory.property(idColumn), factory.literal(id)));
+            }
+            FeatureIterator<SimpleFeature> features = null;
+            try {
+                features = _featureStore.getFeatures(factory.or(filters)).features();
+                while (features.hasNext()) {
+                    SimpleFeature feature = features.next();
+                    if (feature.getDefaultGeometry() != null) {
+                        for (Data data : buildData(feature)) {
+                            List<Data> entries = changes.get(data.getMetadataId());
+                            if (entries != null) {
+                                entries.add(data);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if (features != null) {
+                    features.close();
+                }
+            }
+        }
+        if (_changedDuringRebuild != null) {
+            _changedDuringRebuild.addAll(_pendingChanges);
+        }
+        _pendingChanges.clear();
+
+        index.applyChanges(changes);
+
+        if (_changedDuringRebuild == null &&
+            index.getChangeCount() > Math.max(_minChangesBeforeRebuild, index.getBaseSize() / 10)) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * Rebuild the STRtree from the committed features in the background. Must be called with the lock
+     * held.
+     */
+    private void scheduleRebuild() {
+        final int generation = _generation;
+        _changedDuringRebuild = new HashSet<>();
+        if (_rebuildExecutor == null) {
+            _rebuildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "spatial-index-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        _rebuildExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                rebuild(generation);
+            }
+        });
+    }
+
+    private void rebuild(int generation) {
+        STRtree tree = null;
+        try {
+            // Read the committed features without the lock and the transaction of the writer
+            tree = buildTree(_datastore.getFeatureSource(_featureStore.getSchema().getTypeName()));
+        } catch (Throwable e) {
+            Log.error(Geonet.INDEX_ENGINE, "SpatialIndexWriter rebuild error: " + e.getMessage(), e);
+        }
+
+        _lock.lock();
+        try {
+            if (generation != _generation || _index == null) {
+                return;
+            }
+            if (tree != null) {
+                // Keep the changes committed during the rebuild which may be missing in the new tree
+                Map<String, List<Data>> changes = new HashMap<>();
+                for (String id : _changedDuringRebuild) {
+                    changes.put(id, _index.getChanges(id));
+                }
+                _index = new OverlaySpatialIndex(tree, changes);
+            }
+            _changedDuringRebuild = null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    void setMinChangesBeforeRebuild(int minChangesBeforeRebuild) {
+        _minChangesBeforeRebuild = minChangesBeforeRebuild;
+    }
+
+    /**
+     * Wait until the rebuild in progress, if any, is done.
+     */
+    @VisibleForTesting
+    void awaitRebuild() throws Exception {
+        ExecutorService executor;
+        _lock.lock();
+        try {
+            executor = _rebuildExecutor;
+        } finally {
+            _lock.unlock();
+        }
+        if (executor != null) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        }
     }
 
     private FeatureStore<SimpleFeatureType, SimpleFeature> createFeatureStore(DataStore datastore) throws Exception {
@@ -577,22 +780,24 @@ public class SpatialIndexWriter implements FeatureListener {
         }
     }
 
-    private void insertFeatureInIndex(SimpleFeature feature) {
+    private List<Data> buildData(SimpleFeature feature) {
+        List<Data> entries = new ArrayList<>();
         Geometry defaultGeometry = (Geometry) feature.getDefaultGeometry();
         if (defaultGeometry instanceof MultiPolygon && defaultGeometry.getNumGeometries() > 1) {
             for (int i = 0; i < defaultGeometry.getNumGeometries(); i++) {
                 Data data = buildData(feature, defaultGeometry.getNumGeometries());
                 Envelope envelope = defaultGeometry.getGeometryN(i).getEnvelopeInternal();
                 data.setEnv(envelope);
-                _index.insert(envelope, data);
+                entries.add(data);
             }
 
         } else {
             Data data = buildData(feature, 1);
             Envelope envelope = defaultGeometry.getEnvelopeInternal();
             data.setEnv(envelope);
-            _index.insert(envelope, data);
+            entries.add(data);
         }
+        return entries;
     }
 
     private Data buildData(SimpleFeature feature, int numBrotherGeometries) {
@@ -697,7 +902,7 @@ public class SpatialIndexWriter implements FeatureListener {
     /**
      * Record stored in STRTree.
      */
-    public class Data {
+    public static class Data {
         /** FeatureID, can be used to select feature from data store */
         private FeatureId featureId;
 
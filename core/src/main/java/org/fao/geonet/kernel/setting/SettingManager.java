@@ -31,6 +31,7 @@ import org.fao.geonet.domain.HarvesterSetting;
 import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.SettingDataType;
 import org.fao.geonet.domain.Setting_;
+import org.fao.geonet.events.setting.SettingsUpdated;
 import org.fao.geonet.repository.LanguageRepository;
 import org.fao.geonet.repository.SettingRepository;
 import org.fao.geonet.repository.SortUtils;
@@ -38,13 +39,23 @@ import org.fao.geonet.repository.SourceRepository;
 import org.fao.geonet.utils.Log;
 import org.jdom.Element;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.PostConstruct;
@@ -62,9 +73,22 @@ import static org.fao.geonet.kernel.setting.Settings.SYSTEM_SITE_NAME_PATH;
  * A convenience class for updating and accessing settings.  One of the primary needs of this class
  * at the moment is to maintain backwards compatibility so not all code and xsl files that make use
  * of the settings need to be modified.
+ * <p/>
+ * Setting values are read from an immutable in-memory snapshot of the settings table which is
+ * replaced when settings updated through this class are committed or when {@link #refresh()} is
+ * called. Updates publish a {@link SettingsUpdated} event which can be used to tell other nodes sharing
+ * the same database to refresh their settings. The snapshot can also be reloaded periodically
+ * by setting the <code>geonetwork.settings.refreshInterval</code> system property (in seconds).
  */
 public class SettingManager {
 
+    public static final String REFRESH_INTERVAL_PROPERTY = "geonetwork.settings.refreshInterval";
+
+    private static final Pattern INTEGER = Pattern.compile("-?\\d{1,9}");
+
+    private final long refreshIntervalNanos =
+        TimeUnit.SECONDS.toNanos(Long.getLong(REFRESH_INTERVAL_PROPERTY, 0));
+
     @PersistenceContext
     private EntityManager _entityManager;
 
@@ -79,6 +103,21 @@ public class SettingManager {
     @Autowired
     SourceRepository sourceRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile Snapshot snapshot;
+    /**
+     * Guards the replacement of the snapshot so that concurrent updates and reloads do not lose
+     * values.
+     */
+    private final Object snapshotLock = new Object();
+    /**
+     * Key of the {@link TransactionUpdates} of the current transaction, bound as a transaction
+     * resource until they are applied to the snapshot once committed.
+     */
+    private final Object pendingUpdatesKey = new Object();
+
     @PostConstruct
     private void init() {
         this.pathFinder = new ServletPathFinder(servletContext);
@@ -170,12 +209,15 @@ public class SettingManager {
     }
 
     public String getValue(String path, boolean nullable) {
+        return getValue(getSnapshot(path), path, nullable);
+    }
+
+    private String getValue(Snapshot settings, String path, boolean nullable) {
         if (Log.isDebugEnabled(Geonet.SETTINGS)) {
             Log.debug(Geonet.SETTINGS, "Requested setting with name: " + path);
         }
 
-        Setting se = repo.findOne(path);
-        if (se == null) {
+        if (!settings.values.containsKey(path)) {
             // TODO : When a settings is not available in the settings table
             // we end here. It could be relevant to add a list of default
             // settings and populate the settings table when the settings is
@@ -183,7 +225,7 @@ public class SettingManager {
             Log.error(Geonet.SETTINGS, "  Requested setting with name: " + path + "  not found. Add it to the settings table.");
             return null;
         }
-        String value = se.getValue();
+        String value = settings.values.get(path);
         if (value == null && ! nullable) {
             Log.warning(Geonet.SETTINGS, "  Requested setting with name: " + path + " but null value found. Check the settings table.");
         }
@@ -218,11 +260,11 @@ public class SettingManager {
         Element env = new Element("settings");
         for (int i = 0; i < keys.length; i++) {
             String key = keys[i];
-            Setting se = repo.findOne(key);
-            if (se == null) {
+            Snapshot settings = getSnapshot(key);
+            if (!settings.values.containsKey(key)) {
                 Log.error(Geonet.SETTINGS, "  Requested setting with name: " + key + " not found. Add it to the settings table.");
             } else {
-                String value = se.getValue();
+                String value = settings.values.get(key);
                 if (value != null) {
                     Element setting = new Element("setting");
                     setting.setAttribute("name", key).setAttribute("value", value);
@@ -240,10 +282,10 @@ public class SettingManager {
      * @return The setting valueThe setting key
      */
     public boolean getValueAsBool(String key) {
-        String value = getValue(key);
-        if (value == null)
+        Snapshot settings = getSnapshot(key);
+        if (getValue(settings, key, false) == null)
             return false;
-        return Boolean.parseBoolean(value);
+        return settings.trueValues.contains(key);
     }
 
     /**
@@ -254,9 +296,10 @@ public class SettingManager {
      * @return The setting value as boolean
      */
     public boolean getValueAsBool(String key, boolean defaultValue) {
-        String value = getValue(key);
+        Snapshot settings = getSnapshot(key);
+        String value = getValue(settings, key, false);
         if (value != null) {
-            return "y".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || Boolean.parseBoolean(value);
+            return settings.yesValues.contains(key);
         } else {
             return defaultValue;
         }
@@ -269,10 +312,12 @@ public class SettingManager {
      * @return The integer value of the setting or null
      */
     public Integer getValueAsInt(String key) {
-        String value = getValue(key);
+        Snapshot settings = getSnapshot(key);
+        String value = getValue(settings, key, false);
         if (value == null || value.trim().length() == 0)
             return null;
-        return Integer.valueOf(value);
+        Integer intValue = settings.intValues.get(key);
+        return intValue != null ? intValue : Integer.valueOf(value);
     }
 
     /**
@@ -283,6 +328,12 @@ public class SettingManager {
      * @return true if the types are correct and the setting is found.
      */
     public boolean setValue(String key, String value) {
+        saveValue(key, value);
+        settingsUpdated(Collections.singletonMap(key, value));
+        return true;
+    }
+
+    private void saveValue(String key, String value) {
         if (Log.isDebugEnabled(Geonet.SETTINGS)) {
             Log.debug(Geonet.SETTINGS, "Setting with name: " + key + ", value: " + value);
         }
@@ -298,7 +349,6 @@ public class SettingManager {
         setting.setValue(value);
 
         repo.save(setting);
-        return true;
     }
 
     public boolean setValue(Settings.GNSetting setting, String value) {
@@ -327,11 +377,19 @@ public class SettingManager {
      */
     public final boolean setValues(final Map<String, String> values) {
         boolean success = true;
-        for (Map.Entry<String, String> entry : values.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            if (StringUtils.isNotEmpty(key)) {
-                 setValue(key, value);
+        Map<String, String> updated = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+                if (StringUtils.isNotEmpty(key)) {
+                    saveValue(key, value);
+                    updated.put(key, value);
+                }
+            }
+        } finally {
+            if (!updated.isEmpty()) {
+                settingsUpdated(updated);
             }
         }
         return success;
@@ -339,13 +397,172 @@ public class SettingManager {
 
     /**
      * Refreshes current settings manager. This has to be used when updating the Settings table
-     * without using this class. For example when using an SQL script.
+     * without using this class. For example when using an SQL script or when another node of a
+     * cluster updated the settings.
      */
     public final boolean refresh() throws SQLException {
         _entityManager.getEntityManagerFactory().getCache().evict(HarvesterSetting.class);
+        synchronized (snapshotLock) {
+            snapshot = loadSnapshot();
+        }
         return true;
     }
 
+    /**
+     * Apply the updated values to the snapshot and notify the listeners once the current
+     * transaction (if any) is committed, so that values which are rolled back are never served.
+     * Until then the updates are only visible to the current transaction.
+     */
+    private void settingsUpdated(Map<String, String> updated) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyUpdates(updated);
+            return;
+        }
+        TransactionUpdates pending = (TransactionUpdates) TransactionSynchronizationManager.getResource(pendingUpdatesKey);
+        if (pending == null) {
+            final TransactionUpdates transactionUpdates = new TransactionUpdates();
+            TransactionSynchronizationManager.bindResource(pendingUpdatesKey, transactionUpdates);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    applyUpdates(transactionUpdates.values);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingUpdatesKey);
+                }
+            });
+            pending = transactionUpdates;
+        }
+        pending.values.putAll(updated);
+        pending.snapshot = null;
+    }
+
+    /**
+     * Replace the snapshot by a copy containing the committed values and notify the listeners.
+     */
+    private void applyUpdates(Map<String, String> updated) {
+        synchronized (snapshotLock) {
+            Snapshot current = snapshot;
+            // if not loaded yet the committed values are read on first use
+            if (current != null) {
+                Map<String, String> values = new HashMap<>(current.values);
+                values.putAll(updated);
+                snapshot = new Snapshot(values);
+            }
+        }
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new SettingsUpdated(this, updated.keySet()));
+        }
+    }
+
+    /**
+     * @param path the setting looked up. If it is not in the snapshot but exists in the database
+     *             (eg. added by a migration script) the snapshot is reloaded. Settings which do not
+     *             exist in the database are remembered until the next reload.
+     */
+    private Snapshot getSnapshot(String path) {
+        Snapshot settings = snapshot;
+        if (settings == null
+            || (refreshIntervalNanos > 0 && System.nanoTime() - settings.loadTime > refreshIntervalNanos)) {
+            settings = reload(settings);
+        }
+        if (path != null && !settings.values.containsKey(path) && !settings.missingValues.contains(path)) {
+            if (repo.exists(path)) {
+                settings = reload(settings);
+            }
+            if (!settings.values.containsKey(path)) {
+                settings.missingValues.add(path);
+            }
+        }
+
+        TransactionUpdates pending = (TransactionUpdates) TransactionSynchronizationManager.getResource(pendingUpdatesKey);
+        if (pending != null && !pending.values.isEmpty()) {
+            settings = pending.getSnapshot(settings);
+        }
+        return settings;
+    }
+
+    /**
+     * Load the snapshot from the database unless another thread already replaced the current one.
+     */
+    private Snapshot reload(Snapshot current) {
+        synchronized (snapshotLock) {
+            if (snapshot == current) {
+                snapshot = loadSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot loadSnapshot() {
+        Map<String, String> values = new HashMap<>();
+        for (Setting setting : repo.findAll()) {
+            values.put(setting.getName(), setting.getValue());
+        }
+        return new Snapshot(values);
+    }
+
+    /**
+     * Updates done by a transaction and the snapshot seen by the transaction, built once until
+     * the next update or until the shared snapshot is replaced.
+     */
+    private static final class TransactionUpdates {
+        private final Map<String, String> values = new LinkedHashMap<>();
+        private Snapshot base;
+        private Snapshot snapshot;
+
+        private Snapshot getSnapshot(Snapshot current) {
+            if (snapshot == null || base != current) {
+                Map<String, String> merged = new HashMap<>(current.values);
+                merged.putAll(values);
+                base = current;
+                snapshot = new Snapshot(merged);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Immutable copy of the settings table with the values already parsed for the typed accessors.
+     */
+    private static final class Snapshot {
+        private final long loadTime = System.nanoTime();
+        private final Map<String, String> values;
+        /**
+         * Settings which are true for {@link Boolean#parseBoolean(String)}.
+         */
+        private final Set<String> trueValues = new HashSet<>();
+        /**
+         * Settings which are true, y or yes.
+         */
+        private final Set<String> yesValues = new HashSet<>();
+        private final Map<String, Integer> intValues = new HashMap<>();
+        /**
+         * Settings looked up which do not exist in the database.
+         */
+        private final Set<String> missingValues = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private Snapshot(Map<String, String> values) {
+            this.values = Collections.unmodifiableMap(values);
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                String value = entry.getValue();
+                if (value == null) {
+                    continue;
+                }
+                if (Boolean.parseBoolean(value)) {
+                    trueValues.add(entry.getKey());
+                    yesValues.add(entry.getKey());
+                } else if ("y".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) {
+                    yesValues.add(entry.getKey());
+                } else if (INTEGER.matcher(value).matches()) {
+                    intValues.put(entry.getKey(), Integer.valueOf(value));
+                }
+            }
+        }
+    }
+
     public final String getSiteId() {
         return getValue(Settings.SYSTEM_SITE_SITE_ID_PATH);
     }
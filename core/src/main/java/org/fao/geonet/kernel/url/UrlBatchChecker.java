@@ -0,0 +1,361 @@
+//=============================================================================
+//===	Copyright (C) 2001-2019 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.url;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jeeves.transaction.TransactionManager;
+import jeeves.transaction.TransactionTask;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Link;
+import org.fao.geonet.domain.LinkStatus;
+import org.fao.geonet.repository.LinkRepository;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static jeeves.transaction.TransactionManager.CommitBehavior.ALWAYS_COMMIT;
+import static jeeves.transaction.TransactionManager.TransactionRequirement.CREATE_NEW;
+
+/**
+ * Check the status of the links of the catalogue.
+ * <p>
+ * Only the links never checked or checked more than {@link #setTtl(int) ttl} hours ago are checked,
+ * each url (ignoring the fragment) is requested once even if several links differ only by their
+ * fragment. The requests are run by a pool of {@link #setThreads(int) threads} and spread over
+ * the hosts: the urls are queued host after host, at most {@link #setMaxRequestsPerHost(int)}
+ * requests are sent to a host at the same time and two requests to a host are started at least
+ * {@link #setHostDelay(int)} milliseconds apart. The status are written by batches of
+ * {@link #setBatchSize(int)} links, each batch in its own transaction.
+ * </p>
+ */
+public class UrlBatchChecker {
+
+    @Autowired
+    protected UrlChecker urlChecker;
+
+    @Autowired
+    protected LinkRepository linkRepository;
+
+    @Autowired
+    protected ApplicationContext applicationContext;
+
+    private int threads = 10;
+    private int maxRequestsPerHost = 2;
+    private int hostDelay = 200;
+    private int ttl = 24;
+    private int batchSize = 100;
+
+    /**
+     * Receives the progress of a check.
+     */
+    public interface Progress {
+        /**
+         * @param nbLinks number of links to check.
+         */
+        void toCheck(int nbLinks);
+
+        /**
+         * @param nbLinks number of links checked since the last call.
+         */
+        void checked(int nbLinks);
+    }
+
+    /**
+     * Check the links which need to be checked. The method returns once all the status are
+     * written.
+     *
+     * @param progress notified of the number of links to check and checked, may be null.
+     * @return the number of links checked.
+     */
+    public int checkLinks(Progress progress) throws InterruptedException {
+        String checkedBefore = new ISODate(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(ttl), false).getDateAndTime();
+
+        Map<String, List<Integer>> linksByUrl = new LinkedHashMap<>();
+        Map<String, Deque<String>> urlsByHost = new LinkedHashMap<>();
+        int nbLinks = 0;
+        for (Object[] idAndUrl : linkRepository.findIdAndUrlCheckedBefore(checkedBefore)) {
+            String url = withoutFragment((String) idAndUrl[1]);
+            List<Integer> ids = linksByUrl.get(url);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                linksByUrl.put(url, ids);
+                String host = getHost(url);
+                Deque<String> hostUrls = urlsByHost.get(host);
+                if (hostUrls == null) {
+                    hostUrls = new ArrayDeque<>();
+                    urlsByHost.put(host, hostUrls);
+                }
+                hostUrls.add(url);
+            }
+            ids.add((Integer) idAndUrl[0]);
+            nbLinks++;
+        }
+        if (progress != null) {
+            progress.toCheck(nbLinks);
+        }
+        if (Log.isDebugEnabled(Geonet.GEONETWORK)) {
+            Log.debug(Geonet.GEONETWORK, String.format("Link checker: %d links to check, %d distinct urls on %d hosts.",
+                nbLinks, linksByUrl.size(), urlsByHost.size()));
+        }
+        if (nbLinks == 0) {
+            return 0;
+        }
+
+        final String batchKey = UUID.randomUUID().toString();
+        final LinkedBlockingQueue<CheckResult> results = new LinkedBlockingQueue<>();
+        final Map<String, HostLimiter> limiters = new HashMap<>();
+        // bound the number of queued requests so that the results are written while checking
+        final Semaphore queued = new Semaphore(threads * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("link-checker-%d").build());
+        int submitted = 0;
+        int written = 0;
+        try {
+            List<CheckResult> batch = new ArrayList<>();
+            // one url of each host in turn so that the threads do not wait for the same host
+            while (!urlsByHost.isEmpty()) {
+                Iterator<Deque<String>> hosts = urlsByHost.values().iterator();
+                while (hosts.hasNext()) {
+                    Deque<String> hostUrls = hosts.next();
+                    final String url = hostUrls.poll();
+                    if (hostUrls.isEmpty()) {
+                        hosts.remove();
+                    }
+                    final List<Integer> ids = linksByUrl.get(url);
+                    final HostLimiter limiter = getLimiter(limiters, getHost(url));
+                    while (!queued.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        written += writeResults(results, batch, batchKey, false, progress);
+                    }
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            LinkStatus status = null;
+                            try {
+                                status = limiter.check(url);
+                            } finally {
+                                results.add(new CheckResult(ids, status));
+                                queued.release();
+                            }
+                        }
+                    });
+                    submitted++;
+                    written += writeResults(results, batch, batchKey, false, progress);
+                }
+            }
+            while (written + batch.size() < submitted) {
+                CheckResult result = results.poll(100, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    batch.add(result);
+                    if (batch.size() >= batchSize) {
+                        written += write(batch, batchKey, progress);
+                    }
+                }
+            }
+            written += writeResults(results, batch, batchKey, true, progress);
+        } finally {
+            executor.shutdownNow();
+        }
+        return nbLinks;
+    }
+
+    /**
+     * Move the available results to the batch and write it when it is full.
+     *
+     * @param flush write the batch even if it is not full.
+     * @return the number of urls written.
+     */
+    private int writeResults(LinkedBlockingQueue<CheckResult> results, List<CheckResult> batch, String batchKey,
+                             boolean flush, Progress progress) {
+        int written = 0;
+        CheckResult result;
+        while ((result = results.poll()) != null) {
+            batch.add(result);
+            if (batch.size() >= batchSize) {
+                written += write(batch, batchKey, progress);
+            }
+        }
+        if (flush && !batch.isEmpty()) {
+            written += write(batch, batchKey, progress);
+        }
+        return written;
+    }
+
+    private int write(final List<CheckResult> batch, final String batchKey, Progress progress) {
+        final int nbUrls = batch.size();
+        int nbLinks = TransactionManager.runInTransaction("urlbatchchecker-write", applicationContext,
+            CREATE_NEW, ALWAYS_COMMIT, false, new TransactionTask<Integer>() {
+                @Override
+                public Integer doInTransaction(TransactionStatus transaction) throws Throwable {
+                    Map<Integer, LinkStatus> statusByLink = new HashMap<>();
+                    for (CheckResult result : batch) {
+                        if (result.status == null) {
+                            // not checked, the check was interrupted
+                            continue;
+                        }
+                        for (Integer id : result.linkIds) {
+                            statusByLink.put(id, result.status);
+                        }
+                    }
+                    List<Link> links = linkRepository.findAll(statusByLink.keySet());
+                    for (Link link : links) {
+                        LinkStatus checked = statusByLink.get(link.getId());
+                        // a status belongs to one link
+                        LinkStatus linkStatus = new LinkStatus();
+                        linkStatus.setStatusValue(checked.getStatusValue());
+                        linkStatus.setStatusInfo(checked.getStatusInfo());
+                        linkStatus.setFailing(checked.isFailing());
+                        linkStatus.setCheckDate(checked.getCheckDate());
+                        linkStatus.setBatchKey(batchKey);
+                        link.addStatus(linkStatus);
+                    }
+                    linkRepository.save(links);
+                    return statusByLink.size();
+                }
+            });
+        batch.clear();
+        if (progress != null) {
+            progress.checked(nbLinks);
+        }
+        return nbUrls;
+    }
+
+    private HostLimiter getLimiter(Map<String, HostLimiter> limiters, String host) {
+        HostLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            limiter = new HostLimiter();
+            limiters.put(host, limiter);
+        }
+        return limiter;
+    }
+
+    /**
+     * The fragment is not sent to the server.
+     */
+    static String withoutFragment(String url) {
+        int index = url.indexOf('#');
+        return index < 0 ? url.trim() : url.substring(0, index).trim();
+    }
+
+    static String getHost(String url) {
+        try {
+            String host = new URI(url).getHost();
+            if (host != null) {
+                return host.toLowerCase();
+            }
+        } catch (Exception e) {
+            // invalid url, the checker reports it
+        }
+        return "";
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+    }
+
+    public void setHostDelay(int hostDelay) {
+        this.hostDelay = Math.max(0, hostDelay);
+    }
+
+    public void setTtl(int ttl) {
+        this.ttl = Math.max(0, ttl);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Limits the requests sent to one host.
+     */
+    private final class HostLimiter {
+        private final Semaphore permits = new Semaphore(maxRequestsPerHost);
+        private long nextStart;
+
+        LinkStatus check(String url) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            try {
+                long wait = reserve();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                return urlChecker.getUrlStatus(url);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * @return the time to wait before starting the request.
+         */
+        private synchronized long reserve() {
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, nextStart);
+            nextStart = start + hostDelay;
+            return start - now;
+        }
+    }
+
+    private static final class CheckResult {
+        private final List<Integer> linkIds;
+        /**
+         * Null if the url was not checked.
+         */
+        private final LinkStatus status;
+
+        CheckResult(List<Integer> linkIds, LinkStatus status) {
+            this.linkIds = linkIds;
+            this.status = status;
+        }
+    }
+}
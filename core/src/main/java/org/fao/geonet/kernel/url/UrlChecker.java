@@ -90,8 +90,9 @@ public class UrlChecker {
                 return getFTPStatus(url);
             }
             LinkStatus status =  getUrlStatus(url, 5);
-            Log.info(Geonet.GEONETWORK,"getUrlStatus for: "+url);
-            Log.info(Geonet.GEONETWORK,"result: "+status);
+            if (Log.isDebugEnabled(Geonet.GEONETWORK)) {
+                Log.debug(Geonet.GEONETWORK, "getUrlStatus for: " + url + ", result: " + status);
+            }
             return status;
         } catch (Exception e) {
             return buildExceptionStatus(e);
@@ -159,6 +160,8 @@ public class UrlChecker {
         if (!shouldTryGetInsteadOfHead(response.getRawStatusCode())) {
             return response;
         }
+        // give the connection back to the pool before asking again
+        response.close();
         HttpGet get = new HttpGet(url);
         return requestFactory.execute(get, HTTP_CLIENT_CONFIGURATOR2);
     }
@@ -166,8 +169,10 @@ public class UrlChecker {
     private boolean shouldTryGetInsteadOfHead(int statusCode) {
         return  statusCode == HttpStatus.SC_NOT_FOUND ||
                 statusCode == HttpStatus.SC_BAD_REQUEST ||
+                statusCode == HttpStatus.SC_FORBIDDEN ||
                 statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED ||
-                statusCode == HttpStatus.SC_INTERNAL_SERVER_ERROR;
+                statusCode == HttpStatus.SC_INTERNAL_SERVER_ERROR ||
+                statusCode == HttpStatus.SC_NOT_IMPLEMENTED;
     }
 
     private LinkStatus buildTooManyRedirectStatus() {
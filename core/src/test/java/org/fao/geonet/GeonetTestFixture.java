@@ -171,6 +171,9 @@ public class GeonetTestFixture {
         ApplicationContextHolder.set(_applicationContext);
         //serviceContext.setAsThreadLocal();
 
+        // settings are kept in memory, start each test from the values in the database
+        _applicationContext.getBean(SettingManager.class).refresh();
+
         _applicationContext.getBean(LuceneConfig.class).configure("WEB-INF/config-lucene.xml");
         _applicationContext.getBean(SearchManager.class).initNonStaticData(100);
         _applicationContext.getBean(DataManager.class).init(serviceContext);
@@ -22,12 +22,26 @@
  */
 package org.fao.geonet.kernel;
 
+import jeeves.server.context.ServiceContext;
 import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.Operation;
+import org.fao.geonet.domain.OperationAllowed;
+import org.fao.geonet.domain.OperationAllowedId;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.repository.OperationAllowedRepository;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -39,6 +53,10 @@ public class AccessManagerTest extends AbstractCoreIntegrationTest {
     private SettingManager settingManager;
     @Autowired
     private AccessManager accessManager;
+    @Autowired
+    private MetadataRepository metadataRepository;
+    @Autowired
+    private OperationAllowedRepository operationAllowedRepository;
 
     /**
      * In previous versions network needed to end in a series of zeroes to be recognized as part
@@ -93,4 +111,39 @@ public class AccessManagerTest extends AbstractCoreIntegrationTest {
         }
         assertFalse("IP " + "192.168.2.1" +" is not in the intranet", accessManager.isIntranet("192.168.2.1"));
     }
+
+    @Test
+    public void testGetOperationsBulk() throws Exception {
+        Metadata shared = createMetadata("shared-record");
+        Metadata notShared = createMetadata("not-shared-record");
+        operationAllowedRepository.save(new OperationAllowed(
+            new OperationAllowedId(shared.getId(), ReservedGroup.all.getId(), ReservedOperation.view.getId())));
+
+        ServiceContext context = createServiceContext();
+        Map<Integer, Set<Operation>> operations = accessManager.getOperations(context,
+            Arrays.asList(shared.getId(), notShared.getId()));
+        assertEquals(2, operations.size());
+        assertEquals(accessManager.getOperations(context, String.valueOf(shared.getId()), context.getIpAddress()),
+            operations.get(shared.getId()));
+        assertEquals(1, operations.get(shared.getId()).size());
+        assertTrue(operations.get(notShared.getId()).isEmpty());
+
+        // Privileges modified during the request are taken into account
+        operationAllowedRepository.save(new OperationAllowed(
+            new OperationAllowedId(notShared.getId(), ReservedGroup.all.getId(), ReservedOperation.download.getId())));
+        operations = accessManager.getOperations(context, Arrays.asList(shared.getId(), notShared.getId()));
+        assertEquals(1, operations.get(notShared.getId()).size());
+        assertEquals(ReservedOperation.download.getId(), operations.get(notShared.getId()).iterator().next().getId());
+    }
+
+    private Metadata createMetadata(String uuid) {
+        Metadata md = new Metadata();
+        md.setUuid(uuid);
+        md.setData("<xml></xml>");
+        md.getSourceInfo().setGroupOwner(ReservedGroup.all.getId());
+        md.getSourceInfo().setOwner(1);
+        md.getSourceInfo().setSourceId("test-faking");
+        md.getDataInfo().setSchemaId("isoFake");
+        return metadataRepository.save(md);
+    }
 }
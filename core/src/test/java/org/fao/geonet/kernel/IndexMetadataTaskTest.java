@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2001-2019 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import jeeves.server.context.ServiceContext;
+import jeeves.server.dispatchers.ServiceManager;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
+import org.fao.geonet.kernel.search.ISearchManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexMetadataTaskTest {
+
+    private DataManager dataManager;
+    private ServiceContext context;
+    private ISearchManager searchManager;
+    private IndexingProgress progress;
+    private Set<IndexMetadataTask> batchIndex;
+
+    @Before
+    public void setUp() {
+        dataManager = mock(DataManager.class);
+        searchManager = mock(ISearchManager.class);
+        ServiceManager serviceManager = mock(ServiceManager.class);
+        context = mock(ServiceContext.class);
+        when(context.getService()).thenReturn("test");
+        when(context.getBean(ServiceManager.class)).thenReturn(serviceManager);
+        when(context.getBean(DataManager.class)).thenReturn(dataManager);
+        when(serviceManager.createServiceContext(anyString(), any(ConfigurableApplicationContext.class))).thenReturn(context);
+
+        progress = new IndexingProgress();
+        progress.reconciled(progress.getFailures());
+        batchIndex = Collections.newSetFromMap(new ConcurrentHashMap<IndexMetadataTask, Boolean>());
+    }
+
+    private void index(List<Integer> ids) {
+        progress.submit(ids.size());
+        new IndexMetadataTask(context, ids, batchIndex, new AtomicInteger(), searchManager, progress).run();
+    }
+
+    @Test
+    public void indexedChunkKeepsTheIndexClean() throws Exception {
+        when(dataManager.indexMetadataBatch(anyListOf(String.class), any(ISearchManager.class))).thenReturn(0);
+
+        index(Arrays.asList(1, 2));
+
+        assertFalse(progress.isDirty());
+        assertEquals(0, progress.getFailures());
+        assertEquals(0, progress.getPending());
+        assertTrue(batchIndex.isEmpty());
+    }
+
+    @Test
+    public void failedChunkMarksTheIndexDirty() throws Exception {
+        when(dataManager.indexMetadataBatch(anyListOf(String.class), any(ISearchManager.class)))
+            .thenThrow(new RuntimeException("database unavailable"));
+
+        index(Arrays.asList(1, 2));
+
+        assertTrue("No watermark must be written after a failed chunk", progress.isDirty());
+        assertEquals(2, progress.getFailures());
+        assertEquals(2, progress.getErrors());
+        assertEquals(0, progress.getPending());
+        assertTrue(batchIndex.isEmpty());
+    }
+
+    @Test
+    public void discardedTaskMarksTheIndexDirty() {
+        progress.submit(3);
+        IndexMetadataTask task = new IndexMetadataTask(context, Arrays.asList(1, 2, 3), batchIndex, new AtomicInteger(),
+            searchManager, progress);
+        assertEquals(1, batchIndex.size());
+
+        task.discarded();
+
+        assertTrue(progress.isDirty());
+        assertEquals(0, progress.getPending());
+        assertTrue(batchIndex.isEmpty());
+    }
+}
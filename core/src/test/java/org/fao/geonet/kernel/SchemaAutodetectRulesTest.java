@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaAutodetectRulesTest {
+    private static final Namespace GMD = Namespace.getNamespace("gmd", "http://www.isotc211.org/2005/gmd");
+    private static final Namespace GCO = Namespace.getNamespace("gco", "http://www.isotc211.org/2005/gco");
+
+    @Test
+    public void rootRules() {
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        schemas.put("iso19139", schema(new Element("elements").setAttribute("type", "root")
+            .addContent(new Element("MD_Metadata", GMD))));
+        schemas.put("dublin-core", schema(new Element("elements").setAttribute("type", "root")
+            .addContent(new Element("simpledc"))));
+        SchemaAutodetectRules rules = new SchemaAutodetectRules(schemas);
+
+        Element md = new Element("MD_Metadata", GMD);
+        assertEquals(Arrays.asList("iso19139"), rules.match(rules.summarize(md), SchemaManager.MODE_ROOT));
+        assertEquals(Collections.emptyList(),
+            rules.match(rules.summarize(new Element("MD_Metadata")), SchemaManager.MODE_ROOT));
+        assertEquals(Arrays.asList("dublin-core"),
+            rules.match(rules.summarize(new Element("simpledc")), SchemaManager.MODE_ROOT));
+    }
+
+    @Test
+    public void elementAndValueRules() {
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        schemas.put("iso19139", schema(new Element("elements").setAttribute("type", "root")
+            .addContent(new Element("MD_Metadata", GMD))));
+        schemas.put("iso19139.profile", schema(new Element("elements")
+            .addContent(new Element("metadataStandardName", GMD).setText("Profile.*"))));
+        schemas.put("iso19139.search", schema(new Element("elements").setAttribute("type", "search")
+            .addContent(new Element("featureCatalogueCitation", GMD))));
+        SchemaAutodetectRules rules = new SchemaAutodetectRules(schemas);
+
+        Element md = new Element("MD_Metadata", GMD).addContent(
+            new Element("metadataStandardName", GMD).addContent(
+                new Element("CharacterString", GCO).setText("Profile of ISO 19115")));
+        SchemaAutodetectRules.RecordSummary record = rules.summarize(md);
+        assertEquals(Arrays.asList("iso19139.profile"), rules.match(record, SchemaManager.MODE_NEEDLEWITHVALUE));
+        assertEquals(Collections.emptyList(), rules.match(record, SchemaManager.MODE_NEEDLE));
+
+        md.addContent(new Element("featureCatalogueCitation", GMD));
+        record = rules.summarize(md);
+        assertEquals(Arrays.asList("iso19139.search"), rules.match(record, SchemaManager.MODE_NEEDLE));
+    }
+
+    @Test
+    public void attributeAndNamespaceRules() {
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        schemas.put("a", schema(new Element("attributes").setAttribute("codeListValue", "dataset")));
+        Element namespaces = new Element("namespaces");
+        namespaces.addNamespaceDeclaration(GCO);
+        schemas.put("b", schema(namespaces));
+        SchemaAutodetectRules rules = new SchemaAutodetectRules(schemas);
+
+        Element md = new Element("MD_Metadata", GMD).addContent(
+            new Element("hierarchyLevel", GMD).setAttribute("codeListValue", "dataset"));
+        SchemaAutodetectRules.RecordSummary record = rules.summarize(md);
+        assertEquals(Arrays.asList("a"), rules.match(record, SchemaManager.MODE_ATTRIBUTEWITHVALUE));
+        assertEquals(Collections.emptyList(), rules.match(record, SchemaManager.MODE_NAMESPACE));
+
+        md.addNamespaceDeclaration(GCO);
+        assertEquals(Arrays.asList("b"), rules.match(rules.summarize(md), SchemaManager.MODE_NAMESPACE));
+    }
+
+    @Test
+    public void compiledFrom() {
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        schemas.put("iso19139", schema(new Element("elements").setAttribute("type", "root")
+            .addContent(new Element("MD_Metadata", GMD))));
+        SchemaAutodetectRules rules = new SchemaAutodetectRules(schemas);
+        assertTrue(rules.isCompiledFrom(schemas));
+
+        schemas.put("iso19139", schema(new Element("elements")));
+        assertFalse(rules.isCompiledFrom(schemas));
+    }
+
+    private static Schema schema(Element... autodetectElements) {
+        Schema schema = new Schema();
+        List<Element> elements = Arrays.asList(autodetectElements);
+        schema.setAutodetectElements(elements);
+        return schema;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.languages.IsoLanguagesMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.sesame.Sesame;
+import org.openrdf.sesame.repository.local.LocalService;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the on-disk store of the external thesauri.
+ */
+public class ThesaurusNativeStoreTest {
+    private static final IsoLanguagesMapper ISO_LANGUAGES_MAPPER = new IsoLanguagesMapper() {
+        {
+            _isoLanguagesMap639.put("en", "eng");
+        }
+    };
+    private static final String KEYWORD_URI = "http://native.store.test#added";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalService service;
+    private Path rdfFile;
+    private Path storeDirectory;
+    private Thesaurus thesaurus;
+
+    @Before
+    public void setUp() throws Exception {
+        service = Sesame.getService();
+        Path thesauri = folder.newFolder("thesauri").toPath();
+        rdfFile = thesauri.resolve("thesaurus.rdf");
+        Files.copy(Paths.get(ThesaurusNativeStoreTest.class.getResource("testThesaurus.rdf").toURI()), rdfFile);
+        storeDirectory = folder.newFolder("store").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        close();
+    }
+
+    private boolean open() throws Exception {
+        thesaurus = new Thesaurus(ISO_LANGUAGES_MAPPER, rdfFile.getFileName().toString(), Geonet.CodeList.EXTERNAL,
+            "theme", rdfFile, "http://concept");
+        return ThesaurusManager.openNativeRepository(service, thesaurus, storeDirectory);
+    }
+
+    private void close() {
+        if (thesaurus != null) {
+            service.removeRepository(thesaurus.getKey());
+            thesaurus = null;
+        }
+    }
+
+    private Path checksumFile() {
+        return storeDirectory.resolve(thesaurus.getKey()).resolve("checksum");
+    }
+
+    @Test
+    public void testIsStoreUpToDate() throws Exception {
+        Path checksumFile = folder.getRoot().toPath().resolve("checksum");
+        assertFalse(ThesaurusManager.isStoreUpToDate(rdfFile, checksumFile));
+
+        Thesaurus.writeChecksum(rdfFile, checksumFile);
+        assertTrue(ThesaurusManager.isStoreUpToDate(rdfFile, checksumFile));
+
+        Files.write(rdfFile, "<!-- changed -->".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertFalse(ThesaurusManager.isStoreUpToDate(rdfFile, checksumFile));
+    }
+
+    @Test
+    public void testStoreIsReusedUntilTheFileChanges() throws Exception {
+        assertTrue("The store is built the first time", open());
+        assertTrue(ThesaurusManager.isStoreUpToDate(rdfFile, checksumFile()));
+        close();
+
+        assertFalse("The store is reused", open());
+        close();
+
+        Files.write(rdfFile, "<!-- changed -->".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertTrue("The store is rebuilt when the file changes", open());
+    }
+
+    @Test
+    public void testModificationsAreWrittenToTheFile() throws Exception {
+        open();
+        String checksum = Thesaurus.checksum(rdfFile);
+        thesaurus.addElement(new KeywordBean(ISO_LANGUAGES_MAPPER).setUriCode(KEYWORD_URI).setValue("added", "eng"));
+        thesaurus.addElement(new KeywordBean(ISO_LANGUAGES_MAPPER).setUriCode(KEYWORD_URI + "2").setValue("added 2", "eng"));
+        assertTrue(thesaurus.hasKeyword(KEYWORD_URI));
+        // The file is not written after each modification
+        assertEquals(checksum, Thesaurus.checksum(rdfFile));
+
+        thesaurus.flush();
+        assertNotEquals(checksum, Thesaurus.checksum(rdfFile));
+        // The file and its checksum are updated so the store is not rebuilt
+        assertTrue(ThesaurusManager.isStoreUpToDate(rdfFile, checksumFile()));
+        close();
+
+        assertFalse(open());
+        assertTrue(thesaurus.hasKeyword(KEYWORD_URI));
+
+        // The keyword is in the file
+        Path copy = rdfFile.resolveSibling("copy.rdf");
+        Files.copy(rdfFile, copy);
+        Thesaurus memoryThesaurus = new Thesaurus(ISO_LANGUAGES_MAPPER, copy.getFileName().toString(),
+            Geonet.CodeList.EXTERNAL, "theme", copy, "http://concept");
+        memoryThesaurus.initRepository();
+        try {
+            assertTrue(memoryThesaurus.hasKeyword(KEYWORD_URI));
+        } finally {
+            memoryThesaurus.getRepository().shutDown();
+        }
+    }
+}
@@ -40,14 +40,25 @@ import org.openrdf.sesame.config.AccessDeniedException;
 import org.openrdf.sesame.config.ConfigurationException;
 import org.openrdf.sesame.query.MalformedQueryException;
 import org.openrdf.sesame.query.QueryEvaluationException;
+import org.openrdf.sesame.query.QueryResultsTable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ThesaurusTest extends AbstractThesaurusBasedTest {
 
@@ -482,6 +493,92 @@ public class ThesaurusTest extends AbstractThesaurusBasedTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testKeywordCacheInvalidatedByModifications() throws Exception {
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper).setUriCode(TEST_KEYWORD).setValue("Hello", "eng"));
+        KeywordBean keyword = writableThesaurus.getKeyword(TEST_KEYWORD, "eng");
+        assertEquals("Hello", keyword.getDefaultValue());
+
+        // the cached keyword is not changed by the caller
+        keyword.setValue("Changed", "eng");
+        assertEquals("Hello", writableThesaurus.getKeyword(TEST_KEYWORD, "eng").getDefaultValue());
+
+        writableThesaurus.updateElement(new KeywordBean(isoLangMapper).setUriCode(TEST_KEYWORD).setValue("Updated", "eng"), true);
+        assertEquals("Updated", writableThesaurus.getKeyword(TEST_KEYWORD, "eng").getDefaultValue());
+
+        writableThesaurus.removeElement(TEST_KEYWORD);
+        assertFalse(writableThesaurus.hasKeyword(TEST_KEYWORD));
+        try {
+            writableThesaurus.getKeyword(TEST_KEYWORD, "eng");
+            fail("The removed keyword must not be returned from the cache");
+        } catch (TermNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQueryCacheInvalidatedByModifications() throws Exception {
+        Query<KeywordBean> query = QueryBuilder.keywordQueryBuilder(isoLangMapper, "eng").build();
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper).setUriCode("http://test.com/keywords#first").setValue("First", "eng"));
+
+        QueryResultsTable results = query.rawExecute(writableThesaurus);
+        assertSame(results, query.rawExecute(writableThesaurus));
+        assertEquals(1, query.execute(writableThesaurus).size());
+
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper).setUriCode(TEST_KEYWORD).setValue("Second", "eng"));
+        assertNotSame(results, query.rawExecute(writableThesaurus));
+        assertEquals(2, query.execute(writableThesaurus).size());
+
+        writableThesaurus.removeElement(TEST_KEYWORD);
+        assertEquals(1, query.execute(writableThesaurus).size());
+    }
+
+    @Test
+    public void testReadersNeverSeeAHalfAppliedUpdate() throws Exception {
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper).setUriCode(TEST_KEYWORD)
+            .setValue("v0", "eng").setValue("v0", "fre"));
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(readers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        try {
+                            KeywordBean keyword = writableThesaurus.getKeyword(TEST_KEYWORD, "eng", "fre");
+                            String eng = keyword.getValues().get("eng");
+                            String fre = keyword.getValues().get("fre");
+                            if (eng == null || !eng.equals(fre)) {
+                                errors.add(eng + " / " + fre);
+                            }
+                        } catch (RuntimeException e) {
+                            errors.add(e.toString());
+                        }
+                    }
+                }
+            }));
+        }
+        try {
+            // each update replaces the labels in both languages
+            for (int i = 1; i <= 100; i++) {
+                writableThesaurus.updateElement(new KeywordBean(isoLangMapper).setUriCode(TEST_KEYWORD)
+                    .setValue("v" + i, "eng").setValue("v" + i, "fre"), true);
+            }
+        } finally {
+            done.set(true);
+            readers.shutdown();
+        }
+        assertTrue(readers.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals("v100", writableThesaurus.getKeyword(TEST_KEYWORD, "eng", "fre").getValues().get("fre"));
+    }
+
     private void addKeywordToWritableThesaurus(String uri)
         throws IOException, AccessDeniedException, GraphException {
         KeywordBean keyword = new KeywordBean(isoLangMapper);
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexingProgressTest {
+
+    @Test
+    public void testProgress() {
+        IndexingProgress progress = new IndexingProgress();
+        progress.submit(10);
+        progress.submit(5);
+        assertEquals(15, progress.getSubmitted());
+        assertEquals(-1, progress.getEndTime());
+
+        progress.done(10, 1);
+        assertEquals(5, progress.getPending());
+        assertEquals(-1, progress.getEndTime());
+
+        progress.done(5, 0);
+        assertEquals(0, progress.getPending());
+        assertEquals(1, progress.getErrors());
+        assertTrue(progress.getEndTime() > 0);
+    }
+
+    @Test
+    public void testNewJobResetsCounters() {
+        IndexingProgress progress = new IndexingProgress();
+        progress.submit(2);
+        progress.record(IndexingProgress.Stage.index, System.nanoTime());
+        progress.done(2, 2);
+
+        progress.submit(3);
+        assertEquals(3, progress.getSubmitted());
+        assertEquals(0, progress.getIndexed());
+        assertEquals(0, progress.getErrors());
+        assertEquals(0, progress.getStages().get(IndexingProgress.Stage.index).getCount());
+    }
+
+    @Test
+    public void testDirtyUntilReconciled() {
+        IndexingProgress progress = new IndexingProgress();
+        assertTrue(progress.isDirty());
+        progress.reconciled(progress.getFailures());
+        assertFalse(progress.isDirty());
+
+        // a failure is not forgotten when a new job resets the counters
+        progress.submit(1);
+        progress.failed();
+        progress.done(1, 1);
+        progress.submit(1);
+        progress.done(1, 0);
+        assertEquals(0, progress.getErrors());
+        assertTrue(progress.isDirty());
+
+        // a failure during the reconciliation keeps the index dirty
+        long failures = progress.getFailures();
+        progress.failed();
+        progress.reconciled(failures);
+        assertTrue(progress.isDirty());
+
+        progress.reconciled(progress.getFailures());
+        assertFalse(progress.isDirty());
+    }
+
+    @Test
+    public void testStageStatistics() {
+        IndexingProgress progress = new IndexingProgress();
+        long start = System.nanoTime() - 2000000;
+        progress.record(IndexingProgress.Stage.fetch, start);
+        progress.record(IndexingProgress.Stage.fetch, System.nanoTime());
+
+        IndexingProgress.StageStatistics fetch = progress.getStages().get(IndexingProgress.Stage.fetch);
+        assertEquals(2, fetch.getCount());
+        assertTrue(fetch.getMaxMillis() >= 2);
+        assertTrue(fetch.getAverageMillis() >= 1);
+    }
+}
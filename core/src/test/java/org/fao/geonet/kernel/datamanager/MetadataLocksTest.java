@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataLocksTest {
+
+    @Test
+    public void testDifferentRecordsAreUpdatedConcurrently() throws Exception {
+        final MetadataLocks locks = new MetadataLocks(256);
+        final int otherId = idOnAnotherStripe(locks, 1);
+        final CyclicBarrier bothLocked = new CyclicBarrier(2);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Lock lock = locks.lock(otherId);
+                try {
+                    bothLocked.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    error.set(e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        other.start();
+
+        Lock lock = locks.lock(1);
+        try {
+            // would time out if the second update had to wait for the first one
+            bothLocked.await(5, TimeUnit.SECONDS);
+        } finally {
+            lock.unlock();
+        }
+        other.join();
+        assertNull(error.get());
+        assertEquals(0, locks.getContentions());
+    }
+
+    @Test
+    public void testSameRecordIsSerialized() throws Exception {
+        final MetadataLocks locks = new MetadataLocks(256);
+        Lock lock = locks.lock(1);
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                locks.lock(1).unlock();
+            }
+        });
+        try {
+            other.start();
+            long timeout = System.currentTimeMillis() + 5000;
+            while (locks.getContentions() == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, locks.getContentions());
+            assertTrue(other.isAlive());
+        } finally {
+            lock.unlock();
+        }
+        other.join(5000);
+        assertEquals(2, locks.getAcquisitions());
+        assertTrue(locks.getWaitMillis() > 0);
+    }
+
+    @Test
+    public void testLocksAreReentrant() {
+        MetadataLocks locks = new MetadataLocks(256);
+        Lock lock = locks.lock(1);
+        locks.lock(1).unlock();
+        lock.unlock();
+        assertEquals(0, locks.getContentions());
+    }
+
+    private static int idOnAnotherStripe(MetadataLocks locks, int id) {
+        Lock lock = locks.lock(id);
+        lock.unlock();
+        for (int other = id + 1; ; other++) {
+            Lock otherLock = locks.lock(other);
+            otherLock.unlock();
+            if (otherLock != lock) {
+                return other;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2001-2019 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.mef;
+
+import org.fao.geonet.api.records.attachments.Store;
+import org.fao.geonet.domain.MetadataResource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MEFOutputTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static class Resource implements Store.ResourceHolder {
+        private final Path path;
+        private boolean closed;
+
+        Resource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        public MetadataResource getMetadata() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void streamedArchiveCanBeReadBack() throws Exception {
+        Path file = temporaryFolder.newFile("data.txt").toPath();
+        Files.write(file, bytes("data"));
+        Resource resource = new Resource(file);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MEFOutput output = MEFOutput.forStream(out, 1)) {
+            output.write("uuid/metadata/metadata.xml", bytes("<record/>"));
+            output.write("uuid/public/data.txt", resource);
+            output.write("uuid/info.xml", bytes("<info/>"));
+        }
+        assertTrue(resource.closed);
+
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                names.add(entry.getName());
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = zis.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                contents.add(new String(content.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(Arrays.asList("uuid/", "uuid/metadata/", "uuid/metadata/metadata.xml",
+            "uuid/public/", "uuid/public/data.txt", "uuid/info.xml"), names);
+        assertEquals(Arrays.asList("", "", "<record/>", "", "data", "<info/>"), contents);
+    }
+
+    @Test
+    public void abortedArchiveIsNotCompleted() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MEFOutput output = MEFOutput.forStream(out, 1)) {
+            output.write("uuid/metadata/metadata.xml", bytes("<record/>"));
+            output.abort();
+        }
+
+        Path archive = temporaryFolder.newFile("aborted.zip").toPath();
+        Files.write(archive, out.toByteArray());
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            fail("The archive has no central directory, " + zipFile.size() + " entries found");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void entryIsClosedWhenTheOutputFailed() throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        Path file = temporaryFolder.newFile("data.txt").toPath();
+        Files.write(file, bytes("data"));
+
+        MEFOutput output = MEFOutput.forStream(failing, 1);
+        // the second entry waits until the first one failed
+        output.write("uuid/metadata/metadata.xml", bytes("<record/>"));
+        Resource skipped = new Resource(file);
+        output.write("uuid/public/data.txt", skipped);
+
+        Resource rejected = new Resource(file);
+        try {
+            output.write("uuid/public/other.txt", rejected);
+            fail("The failure of the stream must be reported");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        assertTrue(rejected.closed);
+
+        try {
+            output.close();
+            fail("The failure of the stream must be reported");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        assertTrue(skipped.closed);
+    }
+}
@@ -46,6 +46,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -76,6 +77,8 @@ public abstract class AbstractLanguageSearchOrderIntegrationTest extends Abstrac
     @Autowired
     private SettingRepository _settingRepository;
     @Autowired
+    private SettingManager _settingManager;
+    @Autowired
     private SearchManager _searchManager;
 
     @BeforeClass
@@ -370,6 +373,11 @@ public abstract class AbstractLanguageSearchOrderIntegrationTest extends Abstrac
                 entity.setValue(autoDetectSearchLanguage.toString());
             }
         });
+        try {
+            _settingManager.refresh();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
     }
 
 }
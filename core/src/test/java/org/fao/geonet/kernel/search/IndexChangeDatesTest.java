@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IndexChangeDatesTest {
+
+    @Test
+    public void findRecordsAndLeftOvers() {
+        IndexChangeDates docs = new IndexChangeDates(2);
+        docs.add(30, 3000);
+        docs.add(10, 1000);
+        docs.add(20, 2000);
+        docs.add(100000, 4000);
+        docs.sort();
+
+        assertEquals(4, docs.size());
+        assertEquals(1000, docs.find(10));
+        assertEquals(4000, docs.find(100000));
+        assertEquals(IndexChangeDates.NOT_INDEXED, docs.find(15));
+        assertArrayEquals(new int[]{20, 30}, docs.getNotFound());
+    }
+
+    @Test
+    public void findRecordsByAscendingIdThenOutOfOrder() {
+        IndexChangeDates docs = new IndexChangeDates(8);
+        for (int id = 2; id <= 20; id += 2) {
+            docs.add(id, id * 1000);
+        }
+        docs.sort();
+
+        assertEquals(IndexChangeDates.NOT_INDEXED, docs.find(1));
+        assertEquals(4000, docs.find(4));
+        assertEquals(IndexChangeDates.NOT_INDEXED, docs.find(5));
+        assertEquals(12000, docs.find(12));
+        assertEquals(IndexChangeDates.NOT_INDEXED, docs.find(21));
+        assertEquals(6000, docs.find(6));
+        assertEquals(IndexChangeDates.NOT_INDEXED, docs.find(13));
+        assertEquals(14000, docs.find(14));
+        assertArrayEquals(new int[]{2, 8, 10, 16, 18, 20}, docs.getNotFound());
+    }
+
+    @Test
+    public void recordsInSeveralIndexesAreMerged() {
+        IndexChangeDates docs = new IndexChangeDates(4);
+        docs.add(1, 1000);
+        docs.add(1, 1000);
+        docs.add(2, 1000);
+        docs.add(2, 2000);
+        docs.sort();
+
+        assertEquals(2, docs.size());
+        assertEquals(1000, docs.find(1));
+        assertEquals(IndexChangeDates.UNKNOWN, docs.find(2));
+        assertEquals(0, docs.getNotFound().length);
+    }
+
+    @Test
+    public void invalidDatesAreUnknown() {
+        assertEquals(IndexChangeDates.UNKNOWN, IndexChangeDates.toMillis(null));
+        assertEquals(IndexChangeDates.UNKNOWN, IndexChangeDates.toMillis("not a date"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.fao.geonet.domain.Pair;
+import org.jdom.Element;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class SearchResultCacheTest {
+    private final TermQuery query = new TermQuery(new Term("any", "water"));
+
+    @Test
+    public void cacheResultsOfAVersion() {
+        SearchResultCache cache = new SearchResultCache(10, 100);
+        String key = cache.getKey(1, query, "", Sort.RELEVANCE, "eng", "hits", 0, 10, true);
+        assertNull(cache.get(1, key));
+
+        Element summary = new Element("summary").setAttribute("count", "1");
+        cache.put(1, key, Pair.read(new TopDocs(1, new ScoreDoc[]{new ScoreDoc(3, 1f)}, 1f), summary));
+
+        Pair<TopDocs, Element> result = cache.get(1, key);
+        assertNotNull(result);
+        assertEquals(3, result.one().scoreDocs[0].doc);
+        assertEquals("1", result.two().getAttributeValue("count"));
+        assertNotSame(summary, result.two());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void newVersionClearsTheCache() {
+        SearchResultCache cache = new SearchResultCache(10, 100);
+        String key = cache.getKey(1, query, "", Sort.RELEVANCE, "eng", "hits", 0, 10, true);
+        cache.put(1, key, Pair.read(new TopDocs(0, new ScoreDoc[0], 0f), new Element("summary")));
+
+        String newKey = cache.getKey(2, query, "", Sort.RELEVANCE, "eng", "hits", 0, 10, true);
+        assertNull(cache.get(2, newKey));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void largeRangesAreNotCached() {
+        SearchResultCache cache = new SearchResultCache(10, 100);
+        assertNull(cache.getKey(1, query, "", Sort.RELEVANCE, "eng", "hits", 0, 1000, true));
+        assertNull(new SearchResultCache(0, 100).getKey(1, query, "", Sort.RELEVANCE, "eng", "hits", 0, 10, true));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TermSuggesterTest {
+    private final PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer());
+    private final TermSuggester suggester = new TermSuggester();
+    private RAMDirectory directory;
+    private DirectoryReader reader;
+
+    @Before
+    public void createIndex() throws Exception {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, analyzer));
+        addDocument(writer, "Sea surface temperature");
+        addDocument(writer, "Water quality");
+        writer.commit();
+        // a second segment
+        addDocument(writer, "Sea surface temperature");
+        addDocument(writer, "Seabed habitats");
+        writer.close();
+        reader = DirectoryReader.open(directory);
+    }
+
+    @After
+    public void closeIndex() throws Exception {
+        reader.close();
+        directory.close();
+    }
+
+    private void addDocument(IndexWriter writer, String keyword) throws Exception {
+        Document document = new Document();
+        document.add(new StringField("keyword", keyword, Field.Store.NO));
+        writer.addDocument(document);
+    }
+
+    private Map<String, SearchManager.TermFrequency> suggest(String value, boolean startsWithOnly) throws Exception {
+        return suggest(value, startsWithOnly, 1000);
+    }
+
+    private Map<String, SearchManager.TermFrequency> suggest(String value, boolean startsWithOnly, int maxNumberOfTerms)
+        throws Exception {
+        Map<String, SearchManager.TermFrequency> suggestions = new HashMap<>();
+        for (AtomicReaderContext leaf : reader.leaves()) {
+            suggester.collect(leaf.reader(), "keyword", "eng", analyzer, maxNumberOfTerms, value, value, startsWithOnly,
+                suggestions);
+        }
+        return suggestions;
+    }
+
+    @Test
+    public void prefixMatchesIgnoringCase() throws Exception {
+        Map<String, SearchManager.TermFrequency> suggestions = suggest("sea", true);
+        assertEquals(2, suggestions.size());
+        assertEquals(2, suggestions.get("Sea surface temperature").getFrequency());
+        assertEquals(1, suggestions.get("Seabed habitats").getFrequency());
+    }
+
+    @Test
+    public void infixMatchesWordStart() throws Exception {
+        Map<String, SearchManager.TermFrequency> suggestions = suggest("temp", false);
+        assertEquals(1, suggestions.size());
+        assertEquals(2, suggestions.get("Sea surface temperature").getFrequency());
+
+        assertNull(suggest("temp", true).get("Sea surface temperature"));
+        assertEquals(0, suggest("ality", false).size());
+    }
+
+    @Test
+    public void maxNumberOfTermsLimitsTheTermsOfEachSegment() throws Exception {
+        // only the first term of each segment
+        Map<String, SearchManager.TermFrequency> suggestions = suggest("sea", true, 2);
+        assertEquals(1, suggestions.size());
+        assertEquals(2, suggestions.get("Sea surface temperature").getFrequency());
+
+        // same dictionaries, all the terms
+        assertEquals(2, suggest("sea", true, 1000).size());
+    }
+
+    @Test
+    public void unknownFieldHasNoSuggestion() throws Exception {
+        Map<String, SearchManager.TermFrequency> suggestions = new HashMap<>();
+        for (AtomicReaderContext leaf : reader.leaves()) {
+            suggester.collect(leaf.reader(), "title", "eng", analyzer, 1000, "sea", "sea", false, suggestions);
+        }
+        assertEquals(0, suggestions.size());
+    }
+}
@@ -23,21 +23,44 @@
 
 package org.fao.geonet.kernel.search.spatial;
 
+import org.fao.geonet.utils.Xml;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.memory.MemoryDataStore;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.util.factory.Hints;
+import org.jdom.Element;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.WKTReader;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
 import static org.junit.Assert.*;
 
 public class SpatialIndexWriterTest {
     protected GeometryFactory factory = JTSFactoryFinder.getGeometryFactory(new Hints(Hints.JTS_SRID, 4326));
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void point() throws Exception {
         checkBounds("POINT(0 0)");
@@ -72,6 +95,95 @@ public class SpatialIndexWriterTest {
         checkBounds( "GEOMETRYCOLLECTION (POINT (40 10),LINESTRING (10 10, 20 20, 10 40),POLYGON ((40 40, 20 45, 45 30, 40 40)))");
     }
 
+    @Test
+    public void overlayChanges() throws Exception {
+        STRtree tree = new STRtree();
+        tree.insert(new Envelope(0, 1, 0, 1), data("1", new Envelope(0, 1, 0, 1)));
+        tree.insert(new Envelope(5, 6, 5, 6), data("2", new Envelope(5, 6, 5, 6)));
+        tree.insert(new Envelope(0, 1, 0, 1), data("3", new Envelope(0, 1, 0, 1)));
+        OverlaySpatialIndex index = new OverlaySpatialIndex(tree, Collections.<String, List<SpatialIndexWriter.Data>>emptyMap());
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), query(index, new Envelope(0, 2, 0, 2)));
+
+        // record 1 moved, record 3 deleted, record 4 added
+        Map<String, List<SpatialIndexWriter.Data>> changes = new HashMap<>();
+        changes.put("1", Collections.singletonList(data("1", new Envelope(5, 6, 5, 6))));
+        changes.put("3", Collections.<SpatialIndexWriter.Data>emptyList());
+        changes.put("4", Collections.singletonList(data("4", new Envelope(0, 1, 0, 1))));
+        index.applyChanges(changes);
+
+        assertEquals(new HashSet<>(Arrays.asList("4")), query(index, new Envelope(0, 2, 0, 2)));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), query(index, new Envelope(4, 7, 4, 7)));
+        assertEquals(3, index.getBaseSize());
+        assertEquals(3, index.getChangeCount());
+
+        // record 4 moved again, its previous entry is replaced in the overlay
+        index.applyChanges(Collections.singletonMap("4", Collections.singletonList(data("4", new Envelope(5, 6, 5, 6)))));
+        assertEquals(Collections.<String>emptySet(), query(index, new Envelope(0, 2, 0, 2)));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2", "4")), query(index, new Envelope(4, 7, 4, 7)));
+        assertEquals(3, index.getChangeCount());
+    }
+
+    @Test
+    public void writerAddDeleteRebuild() throws Exception {
+        Path schemaDir = folder.newFolder("schema").toPath();
+        Files.write(schemaDir.resolve("extract-gml.xsl"), ("<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" " +
+            "xmlns:gml=\"http://www.opengis.net/gml/3.2\" version=\"2.0\">" +
+            "<xsl:template match=\"/\"><gml:GeometryCollection><xsl:copy-of copy-namespaces=\"no\" select=\"//gml:Polygon\"/>" +
+            "</gml:GeometryCollection></xsl:template></xsl:stylesheet>").getBytes(StandardCharsets.UTF_8));
+
+        SpatialIndexWriter writer = new SpatialIndexWriter(new MemoryDataStore(), new DefaultTransaction(), 1, new ReentrantLock());
+        try {
+            writer.setMinChangesBeforeRebuild(2);
+            writer.index(schemaDir, "1", metadata(0, 0));
+            writer.index(schemaDir, "2", metadata(5, 5));
+            assertEquals(new HashSet<>(Arrays.asList("1")), query(writer.getIndex(), new Envelope(0, 2, 0, 2)));
+
+            // changes once the index is built go to the overlay
+            writer.index(schemaDir, "3", metadata(0, 0));
+            assertEquals(new HashSet<>(Arrays.asList("1", "3")), query(writer.getIndex(), new Envelope(0, 2, 0, 2)));
+            writer.delete("1");
+            assertEquals(new HashSet<>(Arrays.asList("3")), query(writer.getIndex(), new Envelope(0, 2, 0, 2)));
+            assertEquals(2, ((OverlaySpatialIndex) writer.getIndex()).getBaseSize());
+
+            // the third change triggers a rebuild of the STRtree from the store
+            writer.index(schemaDir, "4", metadata(5, 5));
+            writer.awaitRebuild();
+            OverlaySpatialIndex index = (OverlaySpatialIndex) writer.getIndex();
+            assertEquals(3, index.getBaseSize());
+            assertEquals(0, index.getChangeCount());
+            assertEquals(new HashSet<>(Arrays.asList("3")), query(index, new Envelope(0, 2, 0, 2)));
+            assertEquals(new HashSet<>(Arrays.asList("2", "4")), query(index, new Envelope(4, 7, 4, 7)));
+
+            writer.delete(Arrays.asList("2", "3"));
+            assertEquals(new HashSet<>(Arrays.asList("4")), query(writer.getIndex(), new Envelope(-1, 7, -1, 7)));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Element metadata(int x, int y) throws Exception {
+        String posList = x + " " + y + " " + (x + 1) + " " + y + " " + (x + 1) + " " + (y + 1) + " " + x + " " + (y + 1) + " " + x + " " + y;
+        return Xml.loadString("<metadata><gml:Polygon xmlns:gml=\"http://www.opengis.net/gml/3.2\" gml:id=\"p\">" +
+            "<gml:exterior><gml:LinearRing><gml:posList>" + posList + "</gml:posList></gml:LinearRing></gml:exterior>" +
+            "</gml:Polygon></metadata>", false);
+    }
+
+    private SpatialIndexWriter.Data data(String metadataId, Envelope envelope) {
+        SpatialIndexWriter.Data data = new SpatialIndexWriter.Data();
+        data.setMetadataId(metadataId);
+        data.setEnv(envelope);
+        data.setNumBrotherGeometries(1);
+        return data;
+    }
+
+    private Set<String> query(SpatialIndex index, Envelope envelope) {
+        Set<String> ids = new HashSet<>();
+        for (Object o : index.query(envelope)) {
+            ids.add(((SpatialIndexWriter.Data) o).getMetadataId());
+        }
+        return ids;
+    }
+
     protected void checkBounds(String wkt) throws Exception {
         String message = wkt.substring(0, wkt.indexOf('('));
         WKTReader reader = new WKTReader(factory);
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2001-2019 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.setting;
+
+import org.fao.geonet.domain.HarvesterSetting;
+import org.fao.geonet.domain.Setting;
+import org.fao.geonet.repository.SettingRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SettingManagerTest {
+
+    /**
+     * Values of the settings table.
+     */
+    private final Map<String, String> table = new ConcurrentHashMap<>();
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+    private SettingRepository repo;
+    private Cache cache;
+    private SettingManager settingManager;
+
+    @Before
+    public void setUp() {
+        table.put("system/feature/count", "1");
+        table.put("system/feature/enable", "false");
+
+        repo = mock(SettingRepository.class);
+        when(repo.findAll()).thenAnswer(new Answer<List<Setting>>() {
+            @Override
+            public List<Setting> answer(InvocationOnMock invocation) {
+                List<Setting> settings = new ArrayList<>();
+                for (Map.Entry<String, String> entry : table.entrySet()) {
+                    settings.add(new Setting().setName(entry.getKey()).setValue(entry.getValue()));
+                }
+                return settings;
+            }
+        });
+        when(repo.findOne(anyString())).thenAnswer(new Answer<Setting>() {
+            @Override
+            public Setting answer(InvocationOnMock invocation) {
+                String name = (String) invocation.getArguments()[0];
+                return table.containsKey(name) ? new Setting().setName(name).setValue(table.get(name)) : null;
+            }
+        });
+        when(repo.exists(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return table.containsKey((String) invocation.getArguments()[0]);
+            }
+        });
+
+        EntityManager entityManager = mock(EntityManager.class);
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        cache = mock(Cache.class);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.getCache()).thenReturn(cache);
+
+        settingManager = new SettingManager();
+        settingManager.repo = repo;
+        ReflectionTestUtils.setField(settingManager, "_entityManager", entityManager);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        otherThread.shutdownNow();
+    }
+
+    private Integer countInOtherThread() throws Exception {
+        return otherThread.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return settingManager.getValueAsInt("system/feature/count");
+            }
+        }).get();
+    }
+
+    private void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (commit) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void updatesAreVisibleToOtherThreadsOnceCommitted() throws Exception {
+        assertEquals(Integer.valueOf(1), settingManager.getValueAsInt("system/feature/count"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        settingManager.setValue("system/feature/count", "2");
+        assertEquals(Integer.valueOf(2), settingManager.getValueAsInt("system/feature/count"));
+        assertFalse(settingManager.getValueAsBool("system/feature/enable"));
+        assertEquals(Integer.valueOf(1), countInOtherThread());
+
+        // a second update of the same transaction is visible to it
+        settingManager.setValue("system/feature/enable", true);
+        assertTrue(settingManager.getValueAsBool("system/feature/enable"));
+        assertEquals(Integer.valueOf(2), settingManager.getValueAsInt("system/feature/count"));
+
+        // the values reloaded meanwhile are seen with the updates of the transaction
+        table.put("system/feature/name", "reloaded");
+        settingManager.refresh();
+        assertEquals("reloaded", settingManager.getValue("system/feature/name"));
+        assertEquals(Integer.valueOf(2), settingManager.getValueAsInt("system/feature/count"));
+
+        complete(true);
+        assertEquals(Integer.valueOf(2), settingManager.getValueAsInt("system/feature/count"));
+        assertTrue(settingManager.getValueAsBool("system/feature/enable"));
+        assertEquals(Integer.valueOf(2), countInOtherThread());
+    }
+
+    @Test
+    public void updatesAreDiscardedOnRollback() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        settingManager.setValue("system/feature/count", "2");
+        assertEquals(Integer.valueOf(2), settingManager.getValueAsInt("system/feature/count"));
+
+        complete(false);
+        assertEquals(Integer.valueOf(1), settingManager.getValueAsInt("system/feature/count"));
+        assertEquals(Integer.valueOf(1), countInOtherThread());
+    }
+
+    @Test
+    public void missingValuesAreLookedUpOnce() throws Exception {
+        assertNull(settingManager.getValue("system/feature/missing"));
+        assertNull(settingManager.getValue("system/feature/missing"));
+        verify(repo, times(1)).exists("system/feature/missing");
+
+        // remembered until the next reload
+        table.put("system/feature/missing", "value");
+        assertNull(settingManager.getValue("system/feature/missing"));
+        verify(repo, times(1)).findAll();
+
+        // a setting added by a migration script is read without a refresh, reloading all the settings
+        table.put("system/feature/added", "yes");
+        assertTrue(settingManager.getValueAsBool("system/feature/added", false));
+        verify(repo, times(2)).findAll();
+        assertEquals("value", settingManager.getValue("system/feature/missing"));
+    }
+
+    @Test
+    public void refreshReloadsTheSettings() throws Exception {
+        assertEquals(Integer.valueOf(1), settingManager.getValueAsInt("system/feature/count"));
+
+        table.put("system/feature/count", "5");
+        assertEquals(Integer.valueOf(1), settingManager.getValueAsInt("system/feature/count"));
+
+        settingManager.refresh();
+        verify(cache).evict(HarvesterSetting.class);
+        assertEquals(Integer.valueOf(5), settingManager.getValueAsInt("system/feature/count"));
+        assertEquals(Integer.valueOf(5), countInOtherThread());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2001-2019 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.url;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Link;
+import org.fao.geonet.domain.LinkStatus;
+import org.fao.geonet.repository.LinkRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UrlBatchCheckerTest {
+
+    private UrlBatchChecker toTest;
+    private StubUrlChecker urlChecker;
+    private LinkRepository linkRepository;
+    private Map<Integer, Link> links;
+
+    @Before
+    public void setUp() {
+        urlChecker = new StubUrlChecker();
+        links = new HashMap<>();
+        linkRepository = mock(LinkRepository.class);
+        when(linkRepository.findAll(any(Iterable.class))).thenAnswer(new Answer<List<Link>>() {
+            @Override
+            public List<Link> answer(InvocationOnMock invocation) {
+                List<Link> found = new ArrayList<>();
+                for (Object id : (Iterable<?>) invocation.getArguments()[0]) {
+                    Link link = links.get(id);
+                    if (link == null) {
+                        link = new Link().setId((Integer) id);
+                        links.put((Integer) id, link);
+                    }
+                    found.add(link);
+                }
+                return found;
+            }
+        });
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(mock(TransactionStatus.class));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean(PlatformTransactionManager.class)).thenReturn(transactionManager);
+
+        toTest = new UrlBatchChecker();
+        toTest.urlChecker = urlChecker;
+        toTest.linkRepository = linkRepository;
+        toTest.applicationContext = applicationContext;
+        toTest.setHostDelay(0);
+    }
+
+    @Test
+    public void fragmentIsIgnored() {
+        assertEquals("http://www.geonetwork.org/doc.html",
+            UrlBatchChecker.withoutFragment("http://www.geonetwork.org/doc.html#section"));
+        assertEquals("http://www.geonetwork.org/doc.html",
+            UrlBatchChecker.withoutFragment(" http://www.geonetwork.org/doc.html "));
+    }
+
+    @Test
+    public void host() {
+        assertEquals("www.geonetwork.org", UrlBatchChecker.getHost("https://WWW.GeoNetwork.org:8443/wms?service=WMS"));
+        assertEquals("", UrlBatchChecker.getHost("not a url"));
+    }
+
+    @Test
+    public void onlyLinksCheckedBeforeTheTtlAreChecked() throws Exception {
+        toTest.setTtl(5);
+        String before = new ISODate(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(5), false).getDateAndTime();
+        when(linkRepository.findIdAndUrlCheckedBefore(anyString())).thenReturn(new ArrayList<Object[]>());
+
+        assertEquals(0, toTest.checkLinks(null));
+
+        String after = new ISODate(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(5), false).getDateAndTime();
+        ArgumentCaptor<String> checkedBefore = ArgumentCaptor.forClass(String.class);
+        verify(linkRepository).findIdAndUrlCheckedBefore(checkedBefore.capture());
+        assertTrue(checkedBefore.getValue().compareTo(before) >= 0);
+        assertTrue(checkedBefore.getValue().compareTo(after) <= 0);
+        assertTrue(urlChecker.checked.isEmpty());
+        verify(linkRepository, never()).save(any(Iterable.class));
+    }
+
+    @Test
+    public void eachUrlIsCheckedOnce() throws Exception {
+        links(1, "http://www.geonetwork.org/doc.html#intro",
+            2, "http://www.geonetwork.org/doc.html#install",
+            3, "http://www.geonetwork.org/doc.html",
+            4, "http://www.fao.org/");
+
+        assertEquals(4, toTest.checkLinks(null));
+
+        assertEquals(2, urlChecker.checked.size());
+        assertEquals(1, urlChecker.checked.get("http://www.geonetwork.org/doc.html").get());
+        assertEquals(1, urlChecker.checked.get("http://www.fao.org/").get());
+        assertEquals(4, links.size());
+        for (Link link : links.values()) {
+            assertEquals(1, link.getLinkStatus().size());
+            assertEquals("200", link.getLinkStatus().iterator().next().getStatusValue());
+        }
+    }
+
+    @Test
+    public void requestsToAHostAreLimited() throws Exception {
+        toTest.setThreads(8);
+        toTest.setMaxRequestsPerHost(2);
+        urlChecker.duration = 50;
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(i);
+            rows.add("http://www.geonetwork.org/doc" + i + ".html");
+            rows.add(100 + i);
+            rows.add("http://www.fao.org/doc" + i + ".html");
+        }
+        links(rows.toArray());
+
+        assertEquals(20, toTest.checkLinks(null));
+
+        assertEquals(20, urlChecker.checked.size());
+        assertEquals(2, urlChecker.maxRunning("www.geonetwork.org"));
+        assertEquals(2, urlChecker.maxRunning("www.fao.org"));
+    }
+
+    @Test
+    public void statusAreWrittenByBatches() throws Exception {
+        toTest.setBatchSize(3);
+        links(1, "http://www.geonetwork.org/doc1.html",
+            2, "http://www.geonetwork.org/doc2.html",
+            3, "http://www.geonetwork.org/doc3.html",
+            4, "http://www.geonetwork.org/doc4.html",
+            5, "http://www.geonetwork.org/doc5.html",
+            6, "http://www.geonetwork.org/doc6.html",
+            7, "http://www.geonetwork.org/doc7.html");
+        final List<Integer> progress = new ArrayList<>();
+
+        int checked = toTest.checkLinks(new UrlBatchChecker.Progress() {
+            @Override
+            public void toCheck(int nbLinks) {
+                progress.add(nbLinks);
+            }
+
+            @Override
+            public void checked(int nbLinks) {
+                progress.add(nbLinks);
+            }
+        });
+
+        assertEquals(7, checked);
+        assertEquals(Arrays.asList(7, 3, 3, 1), progress);
+        verify(linkRepository, times(3)).save(any(Iterable.class));
+        assertEquals(7, links.size());
+    }
+
+    /**
+     * @param idsAndUrls the id and the url of each link to check.
+     */
+    private void links(Object... idsAndUrls) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < idsAndUrls.length; i += 2) {
+            rows.add(new Object[]{idsAndUrls[i], idsAndUrls[i + 1]});
+        }
+        when(linkRepository.findIdAndUrlCheckedBefore(anyString())).thenReturn(rows);
+    }
+
+    /**
+     * Counts the requests by url and the requests running at the same time by host.
+     */
+    private static class StubUrlChecker extends UrlChecker {
+        private final ConcurrentMap<String, AtomicInteger> checked = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+        private volatile long duration;
+
+        @Override
+        public LinkStatus getUrlStatus(String url) {
+            counter(checked, url).incrementAndGet();
+            String host = UrlBatchChecker.getHost(url);
+            int nowRunning = counter(running, host).incrementAndGet();
+            AtomicInteger max = counter(maxRunning, host);
+            int previousMax;
+            while ((previousMax = max.get()) < nowRunning && !max.compareAndSet(previousMax, nowRunning)) {
+                // retry
+            }
+            try {
+                if (duration > 0) {
+                    Thread.sleep(duration);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                counter(running, host).decrementAndGet();
+            }
+            LinkStatus status = new LinkStatus();
+            status.setStatusValue("200");
+            status.setFailing(false);
+            return status;
+        }
+
+        int maxRunning(String host) {
+            return counter(maxRunning, host).get();
+        }
+
+        private static AtomicInteger counter(ConcurrentMap<String, AtomicInteger> counters, String key) {
+            AtomicInteger counter = counters.get(key);
+            if (counter == null) {
+                counters.putIfAbsent(key, new AtomicInteger());
+                counter = counters.get(key);
+            }
+            return counter;
+        }
+    }
+}
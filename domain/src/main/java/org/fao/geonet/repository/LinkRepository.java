@@ -25,9 +25,11 @@ package org.fao.geonet.repository;
 
 import org.fao.geonet.domain.Link;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Data Access object for the {@link Link} entities.
@@ -40,4 +42,13 @@ public interface LinkRepository extends GeonetRepository<Link, Integer>, LinkRep
      */
     @Nullable
     Link findOneByUrl(@Nonnull String url);
+
+    /**
+     * Find the links never checked or last checked before a date.
+     *
+     * @param checkedBefore date and time as returned by {@link org.fao.geonet.domain.ISODate#getDateAndTime()}
+     * @return the id and the url of the links.
+     */
+    @Query("SELECT l.id, l.url FROM Link l WHERE l.lastCheck.dateAndTime IS NULL OR l.lastCheck.dateAndTime < ?1")
+    List<Object[]> findIdAndUrlCheckedBefore(@Nonnull String checkedBefore);
 }
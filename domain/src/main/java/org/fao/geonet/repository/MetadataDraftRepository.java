@@ -30,6 +30,7 @@ import javax.annotation.Nullable;
 
 import org.fao.geonet.domain.MetadataDraft;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 
 /**
  * Data Access object for the {@link MetadataDraft} entities.
@@ -68,4 +69,13 @@ public interface MetadataDraftRepository
      */
     @Nonnull
     List<MetadataDraft> findAllByHarvestInfo_Uuid(@Nonnull String uuid);
+
+    /**
+     * Summarize the table to detect changes: the number of records, the greatest id and the most
+     * recent change date.
+     *
+     * @return one row with the count, the greatest id and the most recent change date.
+     */
+    @Query("SELECT COUNT(m), MAX(m.id), MAX(m.dataInfo.changeDate.dateAndTime) FROM " + MetadataDraft.TABLENAME + " m")
+    List<Object[]> findChangeSummary();
 }
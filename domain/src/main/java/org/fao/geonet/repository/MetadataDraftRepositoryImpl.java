@@ -117,6 +117,30 @@ public class MetadataDraftRepositoryImpl implements MetadataRepositoryCustom<Met
         return new PageImpl<Pair<Integer, ISODate>>(finalResults, pageable, total);
     }
 
+    @Override
+    public
+    @Nonnull
+    List<Pair<Integer, ISODate>> findIdsAndChangeDatesAfter(int afterId, int maxResults) {
+        CriteriaBuilder cb = _entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cbQuery = cb.createQuery(Tuple.class);
+        Root<MetadataDraft> root = cbQuery.from(MetadataDraft.class);
+
+        cbQuery.multiselect(root.get(MetadataDraft_.id), root.get(MetadataDraft_.dataInfo).get(MetadataDataInfo_.changeDate));
+        cbQuery.where(cb.greaterThan(root.get(MetadataDraft_.id), afterId));
+        cbQuery.orderBy(cb.asc(root.get(MetadataDraft_.id)));
+
+        TypedQuery<Tuple> query = _entityManager.createQuery(cbQuery);
+        query.setMaxResults(maxResults);
+
+        ArrayList<Pair<Integer, ISODate>> finalResults = new ArrayList<Pair<Integer, ISODate>>();
+        for (Tuple tuple : query.getResultList()) {
+            final Integer mdId = (Integer) tuple.get(0);
+            final ISODate changeDate = (ISODate) tuple.get(1);
+            finalResults.add(Pair.read(mdId, changeDate));
+        }
+        return finalResults;
+    }
+
     @Nonnull
     @Override
     public List<Integer> findAllIdsBy(@Nonnull Specification<MetadataDraft> spec) {
@@ -80,4 +80,13 @@ public interface MetadataRepository extends GeonetRepository<Metadata, Integer>,
     @Transactional
     @Query("UPDATE " + Metadata.TABLENAME + " m SET m.dataInfo.popularity = m.dataInfo.popularity + 1 WHERE m.id = ?1")
     void incrementPopularity(int mdId);
+
+    /**
+     * Summarize the table to detect changes: the number of records, the greatest id and the most
+     * recent change date.
+     *
+     * @return one row with the count, the greatest id and the most recent change date.
+     */
+    @Query("SELECT COUNT(m), MAX(m.id), MAX(m.dataInfo.changeDate.dateAndTime) FROM " + Metadata.TABLENAME + " m")
+    List<Object[]> findChangeSummary();
 }
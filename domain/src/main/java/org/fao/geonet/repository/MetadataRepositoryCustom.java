@@ -80,6 +80,17 @@ public interface MetadataRepositoryCustom<T extends AbstractMetadata> {
     @Nonnull
     Page<Pair<Integer, ISODate>> findAllIdsAndChangeDates(@Nonnull Pageable pageable);
 
+    /**
+     * Find the next ids and change dates of the metadata, sorted by id. Unlike an offset page,
+     * the cost of a call does not grow with the number of records already read.
+     *
+     * @param afterId    only return the metadata with an id greater than this one.
+     * @param maxResults the maximum number of results to return.
+     * @return List of &lt;MetadataId, changeDate&gt; sorted by id
+     */
+    @Nonnull
+    List<Pair<Integer, ISODate>> findIdsAndChangeDatesAfter(int afterId, int maxResults);
+
     /**
      * Find all ids of metadata that match the specification.
      *
@@ -7,6 +7,8 @@ import org.fao.geonet.domain.MetadataValidationId_;
 
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.Collection;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Path;
@@ -48,4 +50,15 @@ public class MetadataValidationSpecs {
             }
         };
     }
+
+    public static Specification<MetadataValidation> hasMetadataIdIn(final Collection<Integer> metadataIds) {
+        return new Specification<MetadataValidation>() {
+            @Override
+            public Predicate toPredicate(Root<MetadataValidation> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+                Path<Integer> metadataIdAttributePath = root.get(MetadataValidation_.id).get(MetadataValidationId_.metadataId);
+
+                return metadataIdAttributePath.in(metadataIds);
+            }
+        };
+    }
 }
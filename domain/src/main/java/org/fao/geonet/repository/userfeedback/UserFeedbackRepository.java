@@ -22,6 +22,7 @@
  */
 package org.fao.geonet.repository.userfeedback;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -56,6 +57,15 @@ public interface UserFeedbackRepository extends JpaRepository<UserFeedback, UUID
      */
     List<UserFeedback> findByMetadata_Uuid(String metadataUuid);
 
+    /**
+     * Count the feedbacks of each metadata in a set of metadata uuids.
+     *
+     * @param metadataUuids the metadata uuids
+     * @return a list of [metadata uuid, count] pairs. Metadata without feedback are not returned.
+     */
+    @Query("SELECT uf.metadata.uuid, COUNT(uf) from GUF_UserFeedback uf WHERE uf.metadata.uuid IN ?1 GROUP BY uf.metadata.uuid")
+    List<Object[]> countByMetadata_UuidIn(Collection<String> metadataUuids);
+
     /**
      * Find by metadata uuid and status order by date desc.
      *
@@ -237,6 +237,28 @@ public class MetadataRepositoryTest extends AbstractSpringDataTest {
         assertEquals(metadata3.getDataInfo().getChangeDate(), secondPage.getContent().get(2).two());
     }
 
+    @Test
+    public void testFindIdsAndChangeDatesAfter() throws Exception {
+
+        AbstractMetadata metadata = _repo.save(updateChangeDate(newMetadata(), "1990-12-13"));
+        AbstractMetadata metadata2 = _repo.save(updateChangeDate(newMetadata(), "1980-12-13"));
+        AbstractMetadata metadata3 = _repo.save(updateChangeDate(newMetadata(), "1995-12-13"));
+
+        List<Pair<Integer, ISODate>> firstPage = _repo.findIdsAndChangeDatesAfter(Integer.MIN_VALUE, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals((Integer) metadata.getId(), firstPage.get(0).one());
+        assertEquals((Integer) metadata2.getId(), firstPage.get(1).one());
+        assertEquals(metadata.getDataInfo().getChangeDate(), firstPage.get(0).two());
+        assertEquals(metadata2.getDataInfo().getChangeDate(), firstPage.get(1).two());
+
+        List<Pair<Integer, ISODate>> secondPage = _repo.findIdsAndChangeDatesAfter(firstPage.get(1).one(), 2);
+        assertEquals(1, secondPage.size());
+        assertEquals((Integer) metadata3.getId(), secondPage.get(0).one());
+        assertEquals(metadata3.getDataInfo().getChangeDate(), secondPage.get(0).two());
+
+        assertTrue(_repo.findIdsAndChangeDatesAfter(metadata3.getId(), 2).isEmpty());
+    }
+
     @Test
     public void testFindAllSourceInfo() throws Exception {
         Metadata metadata = _repo.save(newMetadata());
@@ -28,6 +28,7 @@ import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.UUID;
@@ -37,6 +38,7 @@ import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.MetadataStatus;
 import org.fao.geonet.domain.MetadataStatus_;
 import org.fao.geonet.domain.StatusValue;
+import org.fao.geonet.domain.StatusValueType;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
@@ -117,6 +119,22 @@ public class MetadataStatusRepositoryTest extends AbstractSpringDataTest {
         assertEquals(1, _repo.findAllByMetadataId(status1.getMetadataId(), sort).size());
     }
 
+    @Test
+    public void testFindAllByMetadataIdInAndByType() {
+        MetadataStatus status = _repo.save(newMetadataStatus());
+        MetadataStatus status2 = newMetadataStatus();
+        status2.setMetadataId(status.getMetadataId());
+        status2 = _repo.save(status2);
+        MetadataStatus status1 = _repo.save(newMetadataStatus());
+        MetadataStatus other = _repo.save(newMetadataStatus());
+
+        final Sort sort = SortUtils.createSort(MetadataStatus_.metadataId);
+        assertEquals(3, _repo.findAllByMetadataIdInAndByType(
+            Arrays.asList(status.getMetadataId(), status1.getMetadataId()), StatusValueType.workflow, sort).size());
+        assertEquals(0, _repo.findAllByMetadataIdInAndByType(
+            Arrays.asList(other.getMetadataId()), StatusValueType.event, sort).size());
+    }
+
     private MetadataStatus newMetadataStatus() {
 
         return newMetadataStatus(_inc, _statusRepo);
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.es;
+
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Index;
+import org.fao.geonet.utils.Log;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates index requests and sends them to Elasticsearch in asynchronous bulk requests.
+ *
+ * A bulk request is sent when the number of documents or their size reach the configured limits,
+ * or when the flush interval is elapsed. Up to <code>concurrentRequests</code> bulk requests are
+ * in flight at the same time, {@link #add(String, String, String)} blocks when this limit is
+ * reached. Documents rejected because Elasticsearch is overloaded (HTTP 429) and bulk requests
+ * failing with an I/O error are retried with an exponential backoff, the other failures are
+ * reported to the {@link Listener}.
+ *
+ * There is at most one document in flight for an index and id: a document added while a previous
+ * version of the same document is sent (or waiting for a retry) is held back until the previous one
+ * is indexed or failed, and a rejected document is not retried if a newer version was added in the
+ * meantime. So a retry never overwrites a more recent version of a document.
+ *
+ * Documents queued from the processor thread (a held version once the previous one completed, or a
+ * document added by the {@link Listener}) are sent as soon as a bulk request completes and a permit
+ * is available, so they do not wait for the next flush.
+ */
+public class EsBulkProcessor implements Closeable {
+    private final static String LOGGER_MODULE = "geonetwork.index";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Receives the documents which could not be indexed.
+     */
+    public interface Listener {
+        /**
+         * Called from the processor thread, must not wait for the completion of other bulk requests.
+         */
+        void onFailure(String index, String id, String source, String error);
+    }
+
+    private final EsClient client;
+    private final Listener listener;
+    private final int bulkActions;
+    private final long bulkSizeInBytes;
+    private final int concurrentRequests;
+    private final int maxRetries;
+    private final long backoffMillis;
+
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler;
+    private volatile Thread schedulerThread;
+
+    private List<Action> actions = new ArrayList<>();
+    private long actionsSize = 0;
+    /**
+     * Last document sent by index and id, until it is indexed or failed.
+     */
+    private final Map<String, Action> inFlightActions = new HashMap<>();
+    /**
+     * Documents added while a previous version is in flight, by index and id.
+     */
+    private final Map<String, Action> heldActions = new HashMap<>();
+    /**
+     * Documents were queued from the processor thread and are not sent yet.
+     */
+    private boolean requeued = false;
+    private volatile boolean closed = false;
+
+    private final AtomicLong pendingActions = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong bulkTimeNanos = new AtomicLong();
+    private final AtomicLong retriedActions = new AtomicLong();
+    private final AtomicLong failedActions = new AtomicLong();
+
+    /**
+     * @param bulkActions         number of documents triggering a bulk request.
+     * @param bulkSizeInBytes     size of the documents triggering a bulk request, 0 or less for no limit.
+     * @param flushIntervalMillis delay after which the documents are sent whatever their number, 0 or
+     *                            less to only send them when a limit is reached or on {@link #flush()}.
+     * @param concurrentRequests  maximum number of bulk requests in flight.
+     * @param maxRetries          maximum number of retries of a rejected document.
+     * @param backoffMillis       delay before the first retry, doubled on each retry.
+     */
+    public EsBulkProcessor(EsClient client, Listener listener, int bulkActions, long bulkSizeInBytes,
+                           long flushIntervalMillis, int concurrentRequests, int maxRetries, long backoffMillis) {
+        this.client = client;
+        this.listener = listener;
+        this.bulkActions = Math.max(1, bulkActions);
+        this.bulkSizeInBytes = bulkSizeInBytes;
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.inFlight = new Semaphore(this.concurrentRequests);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "es-bulk-processor");
+                thread.setDaemon(true);
+                schedulerThread = thread;
+                return thread;
+            }
+        });
+        if (flushIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushIfIdle();
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Add a document to index. Blocks if the bulk request has to be sent and the maximum number of
+     * bulk requests in flight is reached.
+     */
+    public void add(String index, String id, String source) {
+        List<Action> toSend = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Bulk processor is closed");
+            }
+            Action action = new Action(index, id, source);
+            pendingActions.incrementAndGet();
+            if (inFlightActions.containsKey(action.key)) {
+                // only the most recent version is sent once the previous one is completed
+                if (heldActions.put(action.key, action) != null) {
+                    pendingActions.decrementAndGet();
+                }
+                return;
+            }
+            actions.add(action);
+            actionsSize += source.length();
+            if (Thread.currentThread() == schedulerThread) {
+                // The processor thread must not wait for a permit, see flushRequeued
+                requeued = true;
+            } else if (actions.size() >= bulkActions || (bulkSizeInBytes > 0 && actionsSize >= bulkSizeInBytes)) {
+                toSend = swap();
+            }
+        }
+        if (toSend != null) {
+            inFlight.acquireUninterruptibly();
+            send(toSend, 0);
+        }
+    }
+
+    /**
+     * Send the documents added so far without waiting for the response.
+     */
+    public void flush() {
+        List<Action> toSend;
+        synchronized (this) {
+            if (actions.isEmpty()) {
+                return;
+            }
+            toSend = swap();
+        }
+        inFlight.acquireUninterruptibly();
+        send(toSend, 0);
+    }
+
+    /**
+     * Send the documents added so far and wait until all the bulk requests are completed.
+     *
+     * @return false if the timeout elapsed before all the requests completed.
+     */
+    public boolean flushAndWait(long timeout, TimeUnit unit) throws InterruptedException {
+        flush();
+        if (inFlight.tryAcquire(concurrentRequests, timeout, unit)) {
+            inFlight.release(concurrentRequests);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            // Failures reported while flushing may have added documents
+            while (flushAndWait(1, TimeUnit.MINUTES) && hasBufferedActions()) {
+                Log.debug(LOGGER_MODULE, "EsBulkProcessor: flushing documents added while closing.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        scheduler.shutdown();
+    }
+
+    /**
+     * Number of documents added and not indexed yet (including the documents being retried).
+     */
+    public long getPendingActions() {
+        return pendingActions.get();
+    }
+
+    public int getInFlightRequests() {
+        return concurrentRequests - inFlight.availablePermits();
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long getAverageBulkMillis() {
+        long nb = bulkRequests.get();
+        return nb == 0 ? 0 : bulkTimeNanos.get() / 1000000 / nb;
+    }
+
+    public long getRetriedActions() {
+        return retriedActions.get();
+    }
+
+    public long getFailedActions() {
+        return failedActions.get();
+    }
+
+    private synchronized boolean hasBufferedActions() {
+        return !actions.isEmpty();
+    }
+
+    private List<Action> swap() {
+        List<Action> toSend = actions;
+        actions = new ArrayList<>();
+        actionsSize = 0;
+        requeued = false;
+        for (Action action : toSend) {
+            inFlightActions.put(action.key, action);
+        }
+        return toSend;
+    }
+
+    /**
+     * Called once a document is indexed or failed: the version of the document added meanwhile
+     * (if any) is queued for the next bulk request.
+     *
+     * @return true if a newer version of the document was added.
+     */
+    private synchronized boolean completed(Action action) {
+        if (inFlightActions.get(action.key) != action) {
+            // a later version was sent in the same bulk request
+            return true;
+        }
+        inFlightActions.remove(action.key);
+        Action held = heldActions.remove(action.key);
+        if (held != null) {
+            actions.add(held);
+            actionsSize += held.source.length();
+            requeued = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the documents which can be retried, the documents for which a newer version was
+     * added (or sent in the same bulk request) are dropped.
+     */
+    private synchronized List<Action> removeSuperseded(List<Action> toRetry) {
+        List<Action> current = new ArrayList<>(toRetry.size());
+        for (Action action : toRetry) {
+            if (inFlightActions.get(action.key) == action && !heldActions.containsKey(action.key)) {
+                current.add(action);
+            } else {
+                pendingActions.decrementAndGet();
+                completed(action);
+            }
+        }
+        return current;
+    }
+
+    private void flushIfIdle() {
+        List<Action> toSend;
+        synchronized (this) {
+            if (actions.isEmpty() || !inFlight.tryAcquire()) {
+                return;
+            }
+            toSend = swap();
+        }
+        send(toSend, 0);
+    }
+
+    /**
+     * Send the documents queued from the processor thread if a permit is available. Otherwise they
+     * are sent once the next bulk request in flight completes.
+     */
+    private void flushRequeued() {
+        List<Action> toSend;
+        synchronized (this) {
+            if (!requeued) {
+                return;
+            }
+            if (actions.isEmpty()) {
+                requeued = false;
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                return;
+            }
+            toSend = swap();
+        }
+        send(toSend, 0);
+    }
+
+    /**
+     * Send a bulk request, the caller holds a permit which is released once all the documents are
+     * indexed or failed.
+     */
+    private void send(final List<Action> toSend, final int attempt) {
+        Bulk.Builder bulk = new Bulk.Builder();
+        for (Action action : toSend) {
+            bulk.addAction(new Index.Builder(action.source).index(action.index).id(action.id).build());
+        }
+        final long start = System.nanoTime();
+        try {
+            client.bulkRequestAsync(bulk, new JestResultHandler<BulkResult>() {
+                @Override
+                public void completed(final BulkResult result) {
+                    record(start);
+                    runInProcessorThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            handleResult(toSend, attempt, result);
+                        }
+                    }, toSend);
+                }
+
+                @Override
+                public void failed(final Exception e) {
+                    record(start);
+                    runInProcessorThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            retryOrFail(toSend, attempt, e.getMessage());
+                        }
+                    }, toSend);
+                }
+            });
+        } catch (RuntimeException e) {
+            retryOrFail(toSend, attempt, e.getMessage());
+        }
+    }
+
+    private void record(long start) {
+        bulkRequests.incrementAndGet();
+        bulkTimeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void runInProcessorThread(final Runnable task, List<Action> toSend) {
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    task.run();
+                    flushRequeued();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(toSend, "Bulk processor is closed");
+            inFlight.release();
+        }
+    }
+
+    private void handleResult(List<Action> toSend, int attempt, BulkResult result) {
+        if (result.isSucceeded()) {
+            pendingActions.addAndGet(-toSend.size());
+            for (Action action : toSend) {
+                completed(action);
+            }
+            inFlight.release();
+            return;
+        }
+
+        List<BulkResult.BulkResultItem> items = result.getItems();
+        if (items.size() != toSend.size()) {
+            // The whole request failed
+            if (result.getResponseCode() == TOO_MANY_REQUESTS || result.getResponseCode() >= 500) {
+                retryOrFail(toSend, attempt, result.getErrorMessage());
+            } else {
+                fail(toSend, result.getErrorMessage());
+                inFlight.release();
+            }
+            return;
+        }
+
+        List<Action> toRetry = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResult.BulkResultItem item = items.get(i);
+            Action action = toSend.get(i);
+            if (item.error == null) {
+                pendingActions.decrementAndGet();
+                completed(action);
+            } else if (item.status == TOO_MANY_REQUESTS) {
+                toRetry.add(action);
+            } else {
+                fail(action, item.errorType + ": " + item.errorReason);
+            }
+        }
+        if (toRetry.isEmpty()) {
+            inFlight.release();
+        } else {
+            retryOrFail(toRetry, attempt, "Rejected by Elasticsearch");
+        }
+    }
+
+    private void retryOrFail(List<Action> rejected, final int attempt, String error) {
+        final List<Action> toRetry = removeSuperseded(rejected);
+        if (toRetry.isEmpty()) {
+            inFlight.release();
+            return;
+        }
+        if (attempt >= maxRetries || scheduler.isShutdown()) {
+            fail(toRetry, error);
+            inFlight.release();
+            return;
+        }
+        retriedActions.addAndGet(toRetry.size());
+        long delay = backoffMillis << attempt;
+        Log.warning(LOGGER_MODULE, String.format(
+            "EsBulkProcessor: %d document(s) not indexed (%s), retrying in %d ms.", toRetry.size(), error, delay));
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send(toRetry, attempt + 1);
+                    flushRequeued();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            fail(toRetry, error);
+            inFlight.release();
+        }
+    }
+
+    private void fail(List<Action> failed, String error) {
+        for (Action action : failed) {
+            fail(action, error);
+        }
+    }
+
+    private void fail(Action action, String error) {
+        pendingActions.decrementAndGet();
+        failedActions.incrementAndGet();
+        if (completed(action)) {
+            // the failure must not replace the newer version of the document
+            Log.debug(LOGGER_MODULE, "EsBulkProcessor: " + action.key + " not indexed, a newer version is queued.");
+            return;
+        }
+        try {
+            listener.onFailure(action.index, action.id, action.source, error);
+        } catch (RuntimeException e) {
+            Log.error(LOGGER_MODULE, "EsBulkProcessor: error while reporting failure of " + action.id, e);
+        }
+    }
+
+    private static final class Action {
+        private final String index;
+        private final String id;
+        private final String source;
+        private final String key;
+
+        private Action(String index, String id, String source) {
+            this.index = index;
+            this.id = id;
+            this.source = source;
+            this.key = index + "/" + id;
+        }
+    }
+}
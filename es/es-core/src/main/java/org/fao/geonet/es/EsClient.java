@@ -146,6 +146,10 @@ public class EsClient implements InitializingBean {
         }
     }
 
+    public boolean isActivated() {
+        return activated;
+    }
+
     public String getServerUrl() {
         return serverUrl;
     }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2001-2019 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.es;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EsBulkProcessorTest {
+
+    /**
+     * Keeps the bulk requests until the test completes them.
+     */
+    private static class StubEsClient extends EsClient {
+        private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+        @Override
+        public void bulkRequestAsync(Bulk.Builder bulk, JestResultHandler<BulkResult> handler) {
+            requests.add(new Request(bulk.build().getData(new Gson()), handler));
+        }
+
+        Request next() throws InterruptedException {
+            Request request = requests.poll(5, TimeUnit.SECONDS);
+            assertNotNull("No bulk request sent", request);
+            return request;
+        }
+
+        void assertNoRequest() throws InterruptedException {
+            assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static class Request {
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> sources = new ArrayList<>();
+        private final JestResultHandler<BulkResult> handler;
+
+        Request(String data, JestResultHandler<BulkResult> handler) {
+            this.handler = handler;
+            String[] lines = data.split("\n");
+            for (int i = 0; i + 1 < lines.length; i += 2) {
+                JsonObject action = new JsonParser().parse(lines[i]).getAsJsonObject().getAsJsonObject("index");
+                ids.add(action.get("_id").getAsString());
+                sources.add(lines[i + 1]);
+            }
+        }
+
+        /**
+         * Complete the request with the status of each document.
+         */
+        void complete(int... statuses) {
+            StringBuilder items = new StringBuilder();
+            boolean errors = false;
+            for (int i = 0; i < statuses.length; i++) {
+                items.append(i == 0 ? "" : ",")
+                    .append("{\"index\":{\"_index\":\"records\",\"_type\":\"_doc\",\"_id\":\"").append(ids.get(i))
+                    .append("\",\"status\":").append(statuses[i]);
+                if (statuses[i] >= 300) {
+                    errors = true;
+                    items.append(",\"error\":{\"type\":\"error_").append(statuses[i]).append("\",\"reason\":\"failed\"}");
+                }
+                items.append("}}");
+            }
+            BulkResult result = new BulkResult(new Gson());
+            result.setResponseCode(200);
+            result.setSucceeded(!errors);
+            result.setJsonObject(new JsonParser().parse("{\"errors\":" + errors + ",\"items\":[" + items + "]}").getAsJsonObject());
+            handler.completed(result);
+        }
+    }
+
+    private final StubEsClient client = new StubEsClient();
+    private final List<String> failures = new ArrayList<>();
+    private EsBulkProcessor processor;
+
+    private EsBulkProcessor processor(int bulkActions, EsBulkProcessor.Listener listener) {
+        processor = new EsBulkProcessor(client, listener, bulkActions, 0, 0, 1, 3, 1);
+        return processor;
+    }
+
+    private EsBulkProcessor processor(int bulkActions) {
+        return processor(bulkActions, new EsBulkProcessor.Listener() {
+            @Override
+            public void onFailure(String index, String id, String source, String error) {
+                synchronized (failures) {
+                    failures.add(id);
+                }
+            }
+        });
+    }
+
+    @After
+    public void close() {
+        if (processor != null) {
+            processor.close();
+        }
+    }
+
+    private void waitForPendingActions(long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && processor.getPendingActions() != expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, processor.getPendingActions());
+    }
+
+    @Test
+    public void rejectedDocumentsAreRetried() throws Exception {
+        processor(2);
+        processor.add("records", "1", "{\"v\":1}");
+        processor.add("records", "2", "{\"v\":1}");
+
+        Request request = client.next();
+        assertEquals(2, request.ids.size());
+        request.complete(201, 429);
+
+        Request retry = client.next();
+        assertEquals(1, retry.ids.size());
+        assertEquals("2", retry.ids.get(0));
+        retry.complete(201);
+
+        waitForPendingActions(0);
+        assertEquals(1, processor.getRetriedActions());
+        assertEquals(0, processor.getFailedActions());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void newerVersionSupersedesTheRetry() throws Exception {
+        processor(1);
+        processor.add("records", "1", "{\"v\":1}");
+        Request request = client.next();
+
+        // held until the first version completes
+        processor.add("records", "1", "{\"v\":2}");
+        client.assertNoRequest();
+
+        // the rejected version is dropped and the newer one sent without waiting for a flush
+        request.complete(429);
+        Request next = client.next();
+        assertEquals(1, next.ids.size());
+        assertEquals("{\"v\":2}", next.sources.get(0));
+        next.complete(201);
+
+        waitForPendingActions(0);
+        assertEquals(0, processor.getRetriedActions());
+        client.assertNoRequest();
+    }
+
+    @Test
+    public void documentsAddedByTheListenerAreSent() throws Exception {
+        processor(1, new EsBulkProcessor.Listener() {
+            @Override
+            public void onFailure(String index, String id, String source, String error) {
+                processor.add("errors", id, "{\"error\":\"" + error + "\"}");
+            }
+        });
+        processor.add("records", "1", "{\"v\":1}");
+        client.next().complete(400);
+
+        // no flush interval: the error document is sent once the failed request completed
+        Request errors = client.next();
+        assertEquals("1", errors.ids.get(0));
+        assertTrue(errors.sources.get(0).contains("error_400"));
+        errors.complete(201);
+
+        waitForPendingActions(0);
+        assertEquals(1, processor.getFailedActions());
+    }
+
+    @Test
+    public void flushSendsTheBufferedDocuments() throws Exception {
+        processor(100);
+        processor.add("records", "1", "{\"v\":1}");
+        processor.add("records", "2", "{\"v\":1}");
+        client.assertNoRequest();
+        assertEquals(2, processor.getPendingActions());
+
+        processor.flush();
+        Request request = client.next();
+        assertEquals(2, request.ids.size());
+        assertEquals(1, processor.getInFlightRequests());
+        request.complete(201, 201);
+
+        assertTrue(processor.flushAndWait(5, TimeUnit.SECONDS));
+        assertEquals(0, processor.getPendingActions());
+        assertEquals(0, processor.getInFlightRequests());
+        assertEquals(1, processor.getBulkRequests());
+    }
+}
@@ -24,6 +24,8 @@
 package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jeeves.server.context.ServiceContext;
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.GeonetContext;
@@ -49,6 +51,7 @@ import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
 import org.fao.geonet.kernel.datamanager.IMetadataManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.harvester.AbstractParams.OverrideUuid;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
@@ -82,6 +85,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.fao.geonet.kernel.setting.Settings.SYSTEM_CSW_TRANSACTION_XPATH_UPDATE_CREATE_NEW_ELEMENTS;
@@ -103,7 +111,16 @@ public class Aligner extends BaseAligner<CswParams> {
     private IMetadataIndexer metadataIndexer;
 
     private HarvestResult result;
+    private CswOperation oper;
     private GetRecordByIdRequest request;
+    /**
+     * Pool of threads retrieving the records from the remote catalogue.
+     */
+    private ExecutorService retrievalExecutor;
+    /**
+     * Pending retrieval of the records of the current alignment, by uuid.
+     */
+    private final Map<String, Future<Map<String, Element>>> retrievals = new HashMap<>();
     private String processName;
     private Map<String, Object> processParams = new HashMap<String, Object>();
     private Logger log;
@@ -127,10 +144,16 @@ public class Aligner extends BaseAligner<CswParams> {
 
         //--- setup get-record-by-id request
 
-        request = new GetRecordByIdRequest(sc);
-        request.setElementSetName(ElementSetName.FULL);
+        oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
+        request = createGetRecordByIdRequest();
 
-        CswOperation oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
+        retrievalExecutor = Executors.newFixedThreadPool(Math.max(1, params.maxConcurrentRequests),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("csw-harvester-" + params.getUuid() + "-%d").build());
+    }
+
+    private GetRecordByIdRequest createGetRecordByIdRequest() throws OperationAbortedEx {
+        GetRecordByIdRequest request = new GetRecordByIdRequest(context);
+        request.setElementSetName(ElementSetName.FULL);
 
         // Use the preferred HTTP method and check one exist.
         if (oper.getGetUrl() != null && Harvester.PREFERRED_HTTP_METHOD.equals("GET")) {
@@ -164,7 +187,14 @@ public class Aligner extends BaseAligner<CswParams> {
         if (params.isUseAccount()) {
             request.setCredentials(params.getUsername(), params.getPassword());
         }
+        return request;
+    }
 
+    /**
+     * Stop the threads retrieving records.
+     */
+    public void close() {
+        retrievalExecutor.shutdownNow();
     }
 
     public HarvestResult align(Collection<RecordInfo> records, Collection<HarvestError> errors) throws Exception {
@@ -193,63 +223,151 @@ public class Aligner extends BaseAligner<CswParams> {
     }
 
     private void insertOrUpdate(Collection<RecordInfo> records, Collection<HarvestError> errors) {
+        try {
+            startRetrievals(records);
+            for (RecordInfo ri : records) {
+                insertOrUpdate(ri, errors);
+            }
+        } finally {
+            for (Future<Map<String, Element>> retrieval : retrievals.values()) {
+                retrieval.cancel(true);
+            }
+            retrievals.clear();
+        }
+    }
+
+    /**
+     * Retrieve in the background, by batches of {@link CswParams#recordsPerRequest}, the records
+     * which are going to be added or updated. Records are then inserted or updated one after the
+     * other in the harvester thread (which owns the service context and the transaction) while the
+     * next records are downloaded.
+     */
+    private void startRetrievals(Collection<RecordInfo> records) {
+        List<String> uuids = new ArrayList<>();
         for (RecordInfo ri : records) {
+            try {
+                if (isRetrievalRequired(ri)) {
+                    uuids.add(ri.uuid);
+                }
+            } catch (Exception e) {
+                log.debug("Unable to check if record " + ri.uuid + " needs to be retrieved: " + e.getMessage());
+            }
+        }
+        for (final List<String> batch : Lists.partition(uuids, Math.max(1, params.recordsPerRequest))) {
+            Future<Map<String, Element>> retrieval = retrievalExecutor.submit(new Callable<Map<String, Element>>() {
+                @Override
+                public Map<String, Element> call() throws Exception {
+                    return retrieveRecords(batch);
+                }
+            });
+            for (String uuid : batch) {
+                retrievals.put(uuid, retrieval);
+            }
+        }
+    }
 
-            if (cancelMonitor.get()) {
-                return;
+    /**
+     * Same decision as {@link #insertOrUpdate(RecordInfo, Collection)}: the record is retrieved
+     * if it is new, if it is overridden or if it is more recent than the local copy.
+     */
+    private boolean isRetrievalRequired(RecordInfo ri) throws Exception {
+        if (metadataUtils.getMetadataId(ri.uuid) == null) {
+            return true;
+        }
+        if (localUuids.getID(ri.uuid) == null) {
+            return params.getOverrideUuid() != OverrideUuid.SKIP;
+        }
+        String date = localUuids.getChangeDate(ri.uuid);
+        return date != null && ri.isMoreRecentThan(date);
+    }
+
+    /**
+     * Does one CSW GetRecordById request for several records.
+     *
+     * @return the records found by uuid. Records which were not returned by the server or whose
+     * uuid could not be extracted are missing.
+     */
+    private Map<String, Element> retrieveRecords(List<String> uuids) throws Exception {
+        GetRecordByIdRequest batchRequest = createGetRecordByIdRequest();
+        for (String uuid : uuids) {
+            batchRequest.addId(uuid);
+        }
+        log.debug("Getting " + uuids.size() + " records from : " + batchRequest.getHost());
+        Element response = batchRequest.execute();
+
+        @SuppressWarnings("unchecked")
+        List<Element> list = new ArrayList<>(response.getChildren());
+        Map<String, Element> records = new HashMap<>();
+        for (Element record : list) {
+            record = (Element) record.detach();
+            if (uuids.size() == 1) {
+                records.put(uuids.get(0), record);
+                break;
             }
-            try {
-                String id = metadataUtils.getMetadataId(ri.uuid);
-
-                if (id == null) {
-                    //record doesn't exist (so it doesn't belong to this harvester)
-                    log.debug("Adding record with uuid " + ri.uuid);
-                    addMetadata(ri, ri.uuid);
-                } else if (localUuids.getID(ri.uuid) == null) {
-                    //Record does not belong to this harvester
-                    result.datasetUuidExist++;
-
-                    switch (params.getOverrideUuid()) {
-                        case OVERRIDE:
-                            updateMetadata(ri, Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
-                            log.debug("Overriding record with uuid " + ri.uuid);
-
-                            if (params.isIfRecordExistAppendPrivileges()) {
-                                addPrivileges(id, params.getPrivileges(), localGroups, context);
-                                result.privilegesAppendedOnExistingRecord++;
-                            }
-                            break;
-                        case RANDOM:
-                            log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
-                            addMetadata(ri, UUID.randomUUID().toString());
-                            break;
-                        case SKIP:
-                            log.debug("Skipping record with uuid " + ri.uuid);
-                            result.uuidSkipped++;
-                        default:
-                            break;
-                    }
-                } else {
-                    //record exists and belongs to this harvester
-                    updateMetadata(ri, id, false);
+            String schema = dataMan.autodetectSchema(record, null);
+            String uuid = schema == null ? null : metadataUtils.extractUUID(schema, record);
+            if (uuid != null && uuids.contains(uuid)) {
+                records.put(uuid, record);
+            }
+        }
+        return records;
+    }
 
-                    if (params.isIfRecordExistAppendPrivileges()) {
-                        addPrivileges(id, params.getPrivileges(), localGroups, context);
-                        result.privilegesAppendedOnExistingRecord++;
-                    }
+    private void insertOrUpdate(RecordInfo ri, Collection<HarvestError> errors) {
+        if (cancelMonitor.get()) {
+            return;
+        }
+        try {
+            String id = metadataUtils.getMetadataId(ri.uuid);
+
+            if (id == null) {
+                //record doesn't exist (so it doesn't belong to this harvester)
+                log.debug("Adding record with uuid " + ri.uuid);
+                addMetadata(ri, ri.uuid);
+            } else if (localUuids.getID(ri.uuid) == null) {
+                //Record does not belong to this harvester
+                result.datasetUuidExist++;
+
+                switch (params.getOverrideUuid()) {
+                    case OVERRIDE:
+                        updateMetadata(ri, Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
+                        log.debug("Overriding record with uuid " + ri.uuid);
+
+                        if (params.isIfRecordExistAppendPrivileges()) {
+                            addPrivileges(id, params.getPrivileges(), localGroups, context);
+                            result.privilegesAppendedOnExistingRecord++;
+                        }
+                        break;
+                    case RANDOM:
+                        log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
+                        addMetadata(ri, UUID.randomUUID().toString());
+                        break;
+                    case SKIP:
+                        log.debug("Skipping record with uuid " + ri.uuid);
+                        result.uuidSkipped++;
+                    default:
+                        break;
                 }
+            } else {
+                //record exists and belongs to this harvester
+                updateMetadata(ri, id, false);
 
-                context.getBean(LuceneIndexLanguageTracker.class).commit();
-
-                result.totalMetadata++;
-            } catch (Throwable t) {
-                errors.add(new HarvestError(this.context, t));
-                log.error("Unable to process record from csw (" + this.params.getName() + ")");
-                log.error("   Record failed: " + ri.uuid + ". Error is: " + t.getMessage());
-                log.error(t);
-            } finally {
-                result.originalMetadata++;
+                if (params.isIfRecordExistAppendPrivileges()) {
+                    addPrivileges(id, params.getPrivileges(), localGroups, context);
+                    result.privilegesAppendedOnExistingRecord++;
+                }
             }
+
+            context.getBean(LuceneIndexLanguageTracker.class).commit();
+
+            result.totalMetadata++;
+        } catch (Throwable t) {
+            errors.add(new HarvestError(this.context, t));
+            log.error("Unable to process record from csw (" + this.params.getName() + ")");
+            log.error("   Record failed: " + ri.uuid + ". Error is: " + t.getMessage());
+            log.error(t);
+        } finally {
+            result.originalMetadata++;
         }
     }
 
@@ -484,28 +602,35 @@ public class Aligner extends BaseAligner<CswParams> {
      * @return metadata the metadata
      */
     private Element retrieveMetadata(String uuid) {
-        request.clearIds();
-        request.addId(uuid);
+        Element retrieved = getRetrievedRecord(uuid);
 
         try {
-            log.debug("Getting record from : " + request.getHost() + " (uuid:" + uuid + ")");
+            Element response;
+            if (retrieved != null) {
+                response = retrieved;
+            } else {
+                request.clearIds();
+                request.addId(uuid);
 
-            Element response = request.execute();
-            if (log.isDebugEnabled()) {
-                log.debug("Record got: " + Xml.getString(response) + "\n");
-            }
+                log.debug("Getting record from : " + request.getHost() + " (uuid:" + uuid + ")");
 
-            @SuppressWarnings("unchecked")
-            List<Element> list = response.getChildren();
+                response = request.execute();
+                if (log.isDebugEnabled()) {
+                    log.debug("Record got: " + Xml.getString(response) + "\n");
+                }
 
-            //--- maybe the metadata has been removed
+                @SuppressWarnings("unchecked")
+                List<Element> list = response.getChildren();
 
-            if (list.size() == 0) {
-                return null;
-            }
+                //--- maybe the metadata has been removed
 
-            response = list.get(0);
-            response = (Element) response.detach();
+                if (list.size() == 0) {
+                    return null;
+                }
+
+                response = list.get(0);
+                response = (Element) response.detach();
+            }
 
 
             try {
@@ -539,6 +664,27 @@ public class Aligner extends BaseAligner<CswParams> {
         }
     }
 
+    /**
+     * @return the record retrieved in the background or null if it was not (yet) retrieved, in
+     * which case it is requested on its own.
+     */
+    private Element getRetrievedRecord(String uuid) {
+        Future<Map<String, Element>> retrieval = retrievals.remove(uuid);
+        if (retrieval == null) {
+            return null;
+        }
+        try {
+            return retrieval.get().get(uuid);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.debug("Unable to get record " + uuid + " with other records, requesting it alone. Error is: "
+                + e.getCause().getMessage());
+            return null;
+        }
+    }
+
     /**
      * Check for metadata in the catalog having the same resource identifier as the harvested
      * record.
@@ -55,6 +55,8 @@ public class CswHarvester extends AbstractHarvester<HarvestResult, CswParams> {
         harvesterSettingsManager.add("id:" + siteId, "rejectDuplicateResource", params.rejectDuplicateResource);
         harvesterSettingsManager.add("id:" + siteId, "queryScope", params.queryScope);
         harvesterSettingsManager.add("id:" + siteId, "hopCount", params.hopCount);
+        harvesterSettingsManager.add("id:" + siteId, "recordsPerRequest", params.recordsPerRequest);
+        harvesterSettingsManager.add("id:" + siteId, "maxConcurrentRequests", params.maxConcurrentRequests);
         harvesterSettingsManager.add("id:" + siteId, "xpathFilter", params.xpathFilter);
         harvesterSettingsManager.add("id:" + siteId, "xslfilter", params.xslfilter);
         harvesterSettingsManager.add("id:" + siteId, "outputSchema", params.outputSchema);
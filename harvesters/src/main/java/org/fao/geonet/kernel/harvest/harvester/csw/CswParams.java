@@ -51,6 +51,16 @@ public class CswParams extends AbstractParams {
 
     public Integer hopCount;
 
+    /**
+     * Number of records requested in one GetRecordById request.
+     */
+    public int recordsPerRequest;
+
+    /**
+     * Maximum number of GetRecordById requests sent in parallel to the remote catalogue.
+     */
+    public int maxConcurrentRequests;
+
     /**
      * The filter is a process (see schema/process folder) which depends on the schema. It could be
      * composed of parameter which will be sent to XSL transformation using the following syntax :
@@ -84,6 +94,8 @@ public class CswParams extends AbstractParams {
         rejectDuplicateResource = Util.getParam(site, "rejectDuplicateResource", false);
         queryScope = Util.getParam(site, "queryScope", "local");
         hopCount = Util.getParam(site, "hopCount", 2);
+        recordsPerRequest = Util.getParam(site, "recordsPerRequest", 10);
+        maxConcurrentRequests = Util.getParam(site, "maxConcurrentRequests", 4);
         xslfilter = Util.getParam(site, "xslfilter", "");
         xpathFilter = Util.getParam(site, "xpathFilter", "");
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
@@ -115,6 +127,8 @@ public class CswParams extends AbstractParams {
         rejectDuplicateResource = Util.getParam(site, "rejectDuplicateResource", rejectDuplicateResource);
         queryScope = Util.getParam(site, "queryScope", queryScope);
         hopCount = Util.getParam(site, "hopCount", hopCount);
+        recordsPerRequest = Util.getParam(site, "recordsPerRequest", recordsPerRequest);
+        maxConcurrentRequests = Util.getParam(site, "maxConcurrentRequests", maxConcurrentRequests);
         xpathFilter = Util.getParam(site, "xpathFilter", "");
         xslfilter = Util.getParam(site, "xslfilter", "");
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
@@ -147,6 +161,8 @@ public class CswParams extends AbstractParams {
         copy.rejectDuplicateResource = rejectDuplicateResource;
         copy.queryScope = queryScope;
         copy.hopCount = hopCount;
+        copy.recordsPerRequest = recordsPerRequest;
+        copy.maxConcurrentRequests = maxConcurrentRequests;
         copy.xpathFilter = xpathFilter;
         copy.xslfilter = xslfilter;
         copy.outputSchema = outputSchema;
@@ -133,8 +133,9 @@ class Harvester implements IHarvester<HarvestResult> {
         boolean error = false;
         HarvestResult result = null;
     	Set<String> uuids = new HashSet<String>();
+        Aligner aligner = null;
         try {
-            Aligner aligner = new Aligner(cancelMonitor, context, server, params, log);
+            aligner = new Aligner(cancelMonitor, context, server, params, log);
             searchAndAlign(server, s, uuids, aligner, errors);
             result = aligner.cleanupRemovedRecords(uuids);
         } catch (Exception t) {
@@ -148,6 +149,10 @@ class Harvester implements IHarvester<HarvestResult> {
             log.fatal("Something unknown and terrible happened while harvesting");
             log.fatal(t.getMessage());
             errors.add(new HarvestError(context, t));
+        } finally {
+            if (aligner != null) {
+                aligner.close();
+            }
         }
 
         log.info("Total records processed in all searches :" + uuids.size());
@@ -233,13 +238,15 @@ class Harvester implements IHarvester<HarvestResult> {
     private void searchAndAlign(CswServer server, Search s, Set<String> uuids,
         Aligner aligner, List<HarvestError> harvesterErrors) throws Exception {
         int start = 1;
+        // request enough records per page to keep all the GetRecordById requests of the aligner busy
+        int pageSize = Math.max(GETRECORDS_REQUEST_MAXRECORDS, params.recordsPerRequest * params.maxConcurrentRequests);
 
         GetRecordsRequest request = new GetRecordsRequest(context);
 
         request.setResultType(ResultType.RESULTS);
         //request.setOutputSchema(OutputSchema.OGC_CORE);	// Use default value
         request.setElementSetName(ElementSetName.SUMMARY);
-        request.setMaxRecords(GETRECORDS_REQUEST_MAXRECORDS);
+        request.setMaxRecords(pageSize);
         request.setDistribSearch(params.queryScope.equalsIgnoreCase("distributed"));
         request.setHopCount(params.hopCount);
 
@@ -275,7 +282,7 @@ class Harvester implements IHarvester<HarvestResult> {
               return;
             }
             request.setStartPosition(start);
-            Element response = doSearch(request, start, GETRECORDS_REQUEST_MAXRECORDS);
+            Element response = doSearch(request, start, pageSize);
             if (log.isDebugEnabled()) {
                 log.debug("Number of child elements in response: " + response.getChildren().size());
             }
@@ -342,8 +349,8 @@ class Harvester implements IHarvester<HarvestResult> {
 
             //== Some log lines, in case we do not like some of the received values
 
-            if (returnedCount != GETRECORDS_REQUEST_MAXRECORDS) {
-                log.warning("Declared number of returned records (" + returnedCount + ") does not match requested record count (" + GETRECORDS_REQUEST_MAXRECORDS + ")");
+            if (returnedCount != pageSize) {
+                log.warning("Declared number of returned records (" + returnedCount + ") does not match requested record count (" + pageSize + ")");
             }
 
             if (returnedCount != foundCnt) {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.monitor.gauge;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.es.EsBulkProcessor;
+import org.fao.geonet.kernel.search.EsSearchManager;
+
+/**
+ * Abstract super class for all Gauges that report statistics of the Elasticsearch bulk indexing.
+ * -1 is reported if Elasticsearch is not configured.
+ */
+public abstract class AbstractEsBulkGauge implements MetricsFactory<Gauge<Long>> {
+    private final String name;
+
+    protected AbstractEsBulkGauge(String name) {
+        this.name = name;
+    }
+
+    protected abstract long valueImpl(EsBulkProcessor processor);
+
+    public Gauge<Long> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(EsBulkProcessor.class, name, new Gauge<Long>() {
+            @Override
+            public Long value() {
+                try {
+                    EsBulkProcessor processor = context.getBean(EsSearchManager.class).getBulkProcessor();
+                    if (processor != null) {
+                        return valueImpl(processor);
+                    }
+                    return -1L;
+                } catch (Exception e) {
+                    return -1L;
+                }
+            }
+        });
+    }
+}
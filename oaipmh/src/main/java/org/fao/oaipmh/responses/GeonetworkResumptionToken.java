@@ -23,11 +23,11 @@
 
 package org.fao.oaipmh.responses;
 
-import java.math.BigInteger;
-import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.CRC32;
 
 import org.fao.geonet.domain.ISODate;
-import org.fao.oaipmh.util.SearchResult;
 import org.fao.oaipmh.OaiPmh;
 import org.fao.oaipmh.exceptions.BadResumptionTokenException;
 import org.fao.oaipmh.requests.TokenListRequest;
@@ -35,21 +35,28 @@ import org.jdom.Element;
 
 //=============================================================================
 
-
+/**
+ * Stateless resumption token.
+ *
+ * The token contains the arguments of the initial request and a keyset cursor (change date and id
+ * of the last record returned) so that any node can serve the next page without keeping the result
+ * set in memory. The text of the token is encoded in base64 and ends with a checksum of its content.
+ */
 public class GeonetworkResumptionToken extends ResumptionToken {
 
     public static final String SEPARATOR = "/-/";
+    private static final int NB_FIELDS = 9;
     private Integer listSize;
     private Integer cursor;
-    private Integer pos;
     private String set = "";
     private String from = "";
     private String until = "";
     private String prefix = "";
+    private String lastChangeDate = "";
+    private int lastId = -1;
+    private int pos = 0;
+    private long expiration = 0;
     private Boolean isReset = false;
-    private String randomid;
-    private SearchResult res;
-    private SecureRandom random = new SecureRandom();
 
     /**
      * Default constructor. Builds a GeonetworkResumptionToken.
@@ -59,7 +66,8 @@ public class GeonetworkResumptionToken extends ResumptionToken {
     }
 
     /**
-     * Default constructor. Builds a GeonetworkResumptionToken.
+     * Builds a GeonetworkResumptionToken from the arguments of a request or from its resumption
+     * token.
      */
     public GeonetworkResumptionToken(TokenListRequest req) throws BadResumptionTokenException {
 
@@ -68,50 +76,33 @@ public class GeonetworkResumptionToken extends ResumptionToken {
         if (strToken == null) {
 
             if (req.getFrom() != null)
-                from = req.getFrom().toString();
+                from = req.getFrom().isDateOnly() ? req.getFrom().getDateAsString() : req.getFrom().toString();
             if (req.getUntil() != null)
-                until = req.getUntil().toString();
+                until = req.getUntil().isDateOnly() ? req.getUntil().getDateAsString() : req.getUntil().toString();
             if (req.getSet() != null)
                 set = req.getSet();
             prefix = req.getMetadataPrefix();
 
-
-            randomid = generateRandomString();
-
         } else {
 
             parseToken(strToken);
         }
     }
 
-    /**
-     * Default constructor. Builds a GeonetworkResumptionToken.
-     */
-    public GeonetworkResumptionToken(TokenListRequest req, SearchResult res) throws BadResumptionTokenException {
-        this(req);
-        this.res = res;
-    }
-
-    public static String buildKey(TokenListRequest req) throws BadResumptionTokenException {
-        GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-        return temp.getKey();
-    }
-
     //---------------------------------------------------------------------------
     //---
     //--- API methods
     //---
     //---------------------------------------------------------------------------
 
-    public static int getPos(TokenListRequest req) throws BadResumptionTokenException {
-        GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-        return temp.getPos();
-    }
-
     public String getToken() {
         if (isReset)
             return ""; // we are at the last chunk
-        return getKey() + SEPARATOR + pos;
+        String content = set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
+            + SEPARATOR + lastChangeDate + SEPARATOR + lastId + SEPARATOR + pos
+            + SEPARATOR + (listSize == null ? "" : listSize) + SEPARATOR + expiration;
+        content = content + SEPARATOR + checksum(content);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(content.getBytes(StandardCharsets.UTF_8));
     }
 
     public void setToken(String token) {
@@ -127,25 +118,54 @@ public class GeonetworkResumptionToken extends ResumptionToken {
         return isReset;
     }
 
+    /**
+     * @return the number of records returned by the previous pages.
+     */
     public int getPos() {
         return pos;
     }
 
-    public void setPos(int pos) {
-        this.pos = pos;
+    public String getSet() {
+        return set;
+    }
+
+    /**
+     * @return the lower bound of the request, formatted as a search parameter, or an empty string.
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the upper bound of the request, formatted as a search parameter, or an empty string.
+     */
+    public String getUntil() {
+        return until;
+    }
+
+    public String getPrefix() {
+        return prefix;
     }
 
-    public String getKey() {
-        return set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
-            + SEPARATOR + randomid;
+    /**
+     * @return the change date of the last record returned, empty for the first page.
+     */
+    public String getLastChangeDate() {
+        return lastChangeDate;
     }
 
-    public SearchResult getRes() {
-        return res;
+    /**
+     * @return the id of the last record returned, -1 for the first page.
+     */
+    public int getLastId() {
+        return lastId;
     }
 
-    public void setRes(SearchResult res) {
-        this.res = res;
+    /**
+     * @return true if the token has an expiration date which is passed.
+     */
+    public boolean isExpired() {
+        return expiration > 0 && expiration < System.currentTimeMillis();
     }
 
     public void reset() {
@@ -154,11 +174,24 @@ public class GeonetworkResumptionToken extends ResumptionToken {
 
     //---------------------------------------------------------------------------
 
-    public void setupToken(int newpos) {
-        if (newpos < res.getIds().size()) // update token so that it refers to the next chunk
-            setPos(newpos);
-        else {
-            reset();    // reset token to indicate last chunk
+    /**
+     * Update the token so that it refers to the page following the last record returned.
+     *
+     * @param lastChangeDate the change date of the last record returned
+     * @param lastId         the id of the last record returned
+     * @param nbReturned     the number of records returned by the current page
+     * @param completeListSize the number of records of the complete list
+     * @param timeout        the validity of the token in seconds, 0 or less for no expiration
+     */
+    public void setupToken(String lastChangeDate, int lastId, int nbReturned, int completeListSize, long timeout) {
+        this.cursor = pos;
+        this.lastChangeDate = lastChangeDate == null ? "" : lastChangeDate;
+        this.lastId = lastId;
+        this.pos = pos + nbReturned;
+        this.listSize = completeListSize;
+        if (timeout > 0) {
+            this.expiration = System.currentTimeMillis() + timeout * 1000;
+            setExpirDate(new ISODate(expiration, false));
         }
     }
 
@@ -173,7 +206,7 @@ public class GeonetworkResumptionToken extends ResumptionToken {
 
         root.setText(getToken());
 
-        if (getExpirDate() != null)
+        if (getExpirDate() != null && !isReset)
             root.setAttribute("expirationDate", getExpirDate().toString());
 
         if (listSize != null)
@@ -203,22 +236,41 @@ public class GeonetworkResumptionToken extends ResumptionToken {
 
     private void parseToken(String strToken) throws BadResumptionTokenException {
 
-        String[] temp = strToken.split(SEPARATOR);
+        String content;
+        try {
+            content = new String(Base64.getUrlDecoder().decode(strToken.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadResumptionTokenException("unknown resumptionToken format: " + strToken);
+        }
+
+        String[] temp = content.split(SEPARATOR, -1);
 
-        if (temp.length != 6)
+        if (temp.length != NB_FIELDS + 1)
             throw new BadResumptionTokenException("unknown resumptionToken format: " + strToken);
 
-        set = temp[0];
-        prefix = temp[1];
-        from = temp[2];
-        until = temp[3];
-        randomid = temp[4];
+        String checksum = temp[NB_FIELDS];
+        if (!checksum.equals(checksum(content.substring(0, content.length() - checksum.length() - SEPARATOR.length()))))
+            throw new BadResumptionTokenException("invalid resumptionToken: " + strToken);
 
-        pos = Integer.parseInt(temp[5]);
+        try {
+            set = temp[0];
+            prefix = temp[1];
+            from = temp[2];
+            until = temp[3];
+            lastChangeDate = temp[4];
+            lastId = Integer.parseInt(temp[5]);
+            pos = Integer.parseInt(temp[6]);
+            listSize = temp[7].isEmpty() ? null : Integer.valueOf(temp[7]);
+            expiration = Long.parseLong(temp[8]);
+        } catch (NumberFormatException e) {
+            throw new BadResumptionTokenException("unknown resumptionToken format: " + strToken);
+        }
     }
 
-    public String generateRandomString() {
-        return new BigInteger(130, random).toString(36);
+    private static String checksum(String content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
     }
 
 }
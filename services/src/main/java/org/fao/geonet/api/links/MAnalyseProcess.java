@@ -2,9 +2,9 @@ package org.fao.geonet.api.links;
 
 import jeeves.transaction.TransactionManager;
 import jeeves.transaction.TransactionTask;
-import org.fao.geonet.domain.Link;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.kernel.url.UrlAnalyzer;
+import org.fao.geonet.kernel.url.UrlBatchChecker;
 import org.fao.geonet.repository.LinkRepository;
 import org.fao.geonet.repository.MetadataRepository;
 import org.jdom.Element;
@@ -18,7 +18,6 @@ import org.springframework.transaction.TransactionStatus;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import java.io.IOException;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -142,16 +141,22 @@ public class MAnalyseProcess implements SelfNaming {
 
 
         if (testLink) {
-            runInNewTransaction("manalyseprocess-testlink", new TransactionTask<Object>() {
-                @Override
-                public Object doInTransaction(TransactionStatus transaction) throws Throwable {
-                    testLinkDate = System.currentTimeMillis();
-                    List<Link> all = linkRepository.findAll();
-                    urlToCheckCount = all.size();
-                    all.parallelStream().peek(urlAnalyser::testLink).forEach(x -> urlChecked.getAndIncrement());
-                    return null;
-                }
-            });
+            testLinkDate = System.currentTimeMillis();
+            try {
+                appContext.getBean(UrlBatchChecker.class).checkLinks(new UrlBatchChecker.Progress() {
+                    @Override
+                    public void toCheck(int nbLinks) {
+                        urlToCheckCount = nbLinks;
+                    }
+
+                    @Override
+                    public void checked(int nbLinks) {
+                        urlChecked.addAndGet(nbLinks);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -38,6 +38,7 @@ import org.fao.geonet.api.API;
 import org.fao.geonet.api.ApiParams;
 import org.fao.geonet.api.ApiUtils;
 import org.fao.geonet.api.exception.ResourceNotFoundException;
+import org.fao.geonet.api.records.editing.EditingSession;
 import org.fao.geonet.api.records.editing.InspireValidatorUtils;
 import org.fao.geonet.api.records.formatters.FormatType;
 import org.fao.geonet.api.records.formatters.FormatterApi;
@@ -209,12 +210,13 @@ public class InspireValidationApi {
         String URL = settingManager.getValue(Settings.SYSTEM_INSPIRE_REMOTE_VALIDATION_URL);
 
         try {
-            Element md = (Element) ApiUtils.getUserSession(session).getProperty(Geonet.Session.METADATA_EDITING + id);
-            if (md == null) {
+            EditingSession editingSession = (EditingSession) ApiUtils.getUserSession(session).getProperty(Geonet.Session.METADATA_EDITING + id);
+            if (editingSession == null) {
                 response.setStatus(HttpStatus.SC_NOT_FOUND);
                 return String.format("Metadata with id '%s' not found in session. To be validated, the record must be in edition session.", id);
                 // TODO: Add support for such validation from not editing session ?
             }
+            Element md = editingSession.copyMetadata();
 
             // Use formatter to convert the record
             if (!schema.equals("iso19139")) {
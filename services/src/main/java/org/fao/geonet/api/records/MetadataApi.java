@@ -465,9 +465,15 @@ public class MetadataApi {
             Log.info(Geonet.MEF, "Building MEF2 file with " + tmpUuid.size()
                 + " records.");
 
-            file = MEFLib.doMEF2Export(context, tmpUuid, format.toString(), false, stylePath, withXLinksResolved, withXLinkAttribute, false, addSchemaLocation, approved);
-
+            // MEF2 archives are streamed to the response, the length is not known in advance
             response.setContentType(MEFLib.Version.Constants.MEF_V2_ACCEPT_TYPE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, String.format(
+                "inline; filename=\"%s.zip\"",
+                metadata.getUuid()
+            ));
+            MEFLib.doMEF2Export(context, tmpUuid, format.toString(), false, stylePath, withXLinksResolved, withXLinkAttribute, false, addSchemaLocation, approved,
+                response.getOutputStream());
+            return;
         }
         response.setHeader(HttpHeaders.CONTENT_DISPOSITION, String.format(
             "inline; filename=\"%s.zip\"",
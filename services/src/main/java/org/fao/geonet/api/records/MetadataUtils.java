@@ -31,10 +31,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -50,6 +53,7 @@ import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.domain.Source;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.datamanager.IMetadataValidator;
@@ -75,10 +79,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import jeeves.constants.Jeeves;
 import jeeves.server.ServiceConfig;
+import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
 
 /**
@@ -100,10 +108,62 @@ public class MetadataUtils {
     private static final String ORIGIN_CATALOG = "catalog";
     private static final String ORIGIN_REMOTE = "remote";
 
+    /**
+     * Related records by record, user, groups of the user (including the intranet group of the
+     * client address), index refresh count and request parameters. The refresh count changes as
+     * soon as new content is searchable, so the cached relations are never older than the index,
+     * apart from the relation table which is only refreshed when the entry expires. The groups
+     * are resolved from the privileges of the request, so a change of membership changes the key.
+     */
+    private static final Cache<String, Element> relatedCache = CacheBuilder.newBuilder()
+        .maximumSize(Integer.getInteger("geonetwork.related.cache.size", 500))
+        .expireAfterWrite(Integer.getInteger("geonetwork.related.cache.ttl", 300), TimeUnit.SECONDS)
+        .build();
+
     public static Element getRelated(ServiceContext context, int iId, String uuid,
                                      RelatedItemType[] type,
                                      int from_, int to_, boolean fast_)
         throws Exception {
+        // The record being edited in the session is not the one in the index
+        if (Show.getCached(context.getUserSession(), String.valueOf(iId)) != null) {
+            return computeRelated(context, iId, uuid, type, from_, to_, fast_);
+        }
+
+        String key = getRelatedCacheKey(context, iId, type, from_, to_, fast_);
+        Element related = relatedCache.getIfPresent(key);
+        if (related == null) {
+            related = computeRelated(context, iId, uuid, type, from_, to_, fast_);
+            relatedCache.put(key, related);
+        }
+        return (Element) related.clone();
+    }
+
+    private static String getRelatedCacheKey(ServiceContext context, int iId, RelatedItemType[] type,
+                                             int from, int to, boolean fast) throws Exception {
+        UserSession session = context.getUserSession();
+        Set<Integer> groups = context.getBean(AccessManager.class).getUserGroups(session, context.getIpAddress(), false);
+        NodeInfo node = context.getBean(NodeInfo.class);
+        return getRelatedCacheKey(iId, context.getBean(SearchManager.class).getIndexRefreshCount(), type, from, to, fast,
+            session, groups, node == null ? null : node.getId(), context.getLanguage());
+    }
+
+    @VisibleForTesting
+    static String getRelatedCacheKey(int iId, long indexRefreshCount, RelatedItemType[] type,
+                                     int from, int to, boolean fast,
+                                     UserSession session, Set<Integer> groups, String nodeId, String language) {
+        return iId + "|" + indexRefreshCount
+            + "|" + (type == null ? "" : Arrays.toString(type))
+            + "|" + from + "|" + to + "|" + fast
+            + "|" + (session == null ? "" : session.getUserId() + "|" + session.getProfile())
+            + "|" + Joiner.on(',').join(new TreeSet<>(groups))
+            + "|" + (nodeId == null ? "" : nodeId)
+            + "|" + language;
+    }
+
+    private static Element computeRelated(ServiceContext context, int iId, String uuid,
+                                          RelatedItemType[] type,
+                                          int from_, int to_, boolean fast_)
+        throws Exception {
         final String id = String.valueOf(iId);
         final String from = "" + from_;
         final String to = "" + to_;
@@ -179,16 +239,15 @@ public class MetadataUtils {
             Set<AssociatedResource> listOfAssociatedResources = schemaPlugin.getAssociatedResourcesUUIDs(md);
 
             if (listOfAssociatedResources != null) {
+                Set<String> siblingUuids = new HashSet<>();
                 for (AssociatedResource resource : listOfAssociatedResources) {
-                    String origin;
-                    // Search in the index to use the portal filter and verify the metadata is available for the portal
-                    Element searchResult = search(resource.getUuid(), RelatedItemType.siblings.value(), context, from, to, fast, null, false);
-                    // If can't be find, skip the result.
-                    if (hasResult(searchResult)) {
-                        origin = ORIGIN_PORTAL;
-                    } else {
-                        origin = ORIGIN_CATALOG;
-                    }
+                    siblingUuids.add(resource.getUuid());
+                }
+                // Search in the index to use the portal filter and verify the metadata are available for the portal
+                Set<String> uuidsInPortal = getUuidsInPortal(siblingUuids, context, fast);
+
+                for (AssociatedResource resource : listOfAssociatedResources) {
+                    String origin = uuidsInPortal.contains(resource.getUuid()) ? ORIGIN_PORTAL : ORIGIN_CATALOG;
 
                     Element sibContent = getRecord(resource.getUuid(), context, dm);
 
@@ -306,16 +365,11 @@ public class MetadataUtils {
 
                     fcat = new Element("fcats");
 
+                    // Search in the index to use the portal filter and verify the metadata are available for the portal
+                    Set<String> uuidsInPortal = getUuidsInPortal(listOfUUIDs, context, fast);
+
                     for (String fcat_uuid : listOfUUIDs) {
-                        String origin;
-                        // Search in the index to use the portal filter and verify the metadata is available for the portal
-                        Element searchResult = search(fcat_uuid, RelatedItemType.fcats.value(), context, from, to, fast, null, false);
-                        // If can't be find, skip the result.
-                        if (hasResult(searchResult)) {
-                            origin = ORIGIN_PORTAL;
-                        } else {
-                            origin = ORIGIN_CATALOG;
-                        }
+                        String origin = uuidsInPortal.contains(fcat_uuid) ? ORIGIN_PORTAL : ORIGIN_CATALOG;
 
                         Element metadata = new Element("metadata");
                         Element response = new Element("response");
@@ -546,34 +600,29 @@ public class MetadataUtils {
 
 
     /**
-     * Checks if a result for a search query has results.
-     *
-     * Response examples:
+     * Search with a single query which of the records are available in the current portal.
      *
-     * <siblings>
-     *   <response from="1" to="0" />
-     * </siblings>
-     *
-     *
-     * <siblings>
-     *   <response from="1" to="1">
-     *      <metadata>...</metadata>
-     *   </response>
-     * </siblings>
-     *
-     * @param searchResponse
-     * @return True it the response has results, False in other cases.
+     * @param uuids the records to check
+     * @return the uuids of the records matching the portal filter.
      */
-    private static boolean hasResult(Element searchResponse) {
+    private static Set<String> getUuidsInPortal(Collection<String> uuids, ServiceContext context, String fast) throws Exception {
+        Set<String> uuidsInPortal = new HashSet<>();
+        if (uuids.isEmpty()) {
+            return uuidsInPortal;
+        }
 
-        if (searchResponse.getChildren().size() > 0) {
-            Element containerResults = (Element) searchResponse.getChildren().get(0);
-            if (containerResults.getChildren().size() > 0) {
-                return true;
+        Element result = search(Joiner.on(" or ").join(uuids), "uuid", context,
+            "1", String.valueOf(uuids.size()), fast, null, false);
+        Element response = result.getChild("response");
+        if (response != null) {
+            for (Element r : (List<Element>) response.getChildren()) {
+                Element info = r.getChild("info", Geonet.Namespaces.GEONET);
+                if (info != null) {
+                    uuidsInPortal.add(info.getChildText("uuid"));
+                }
             }
         }
-
-        return false;
+        return uuidsInPortal;
     }
 
 
@@ -65,19 +65,18 @@ public class AjaxEditUtils extends EditUtils {
     }
 
     /**
-     * TODO javadoc.
+     * @return the editing session of the record.
      */
-    protected static Element getMetadataFromSession(UserSession session, String id) throws ResourceNotFoundException {
+    protected static EditingSession getEditingSession(UserSession session, String id) throws ResourceNotFoundException {
         if (Log.isDebugEnabled(Geonet.EDITOR))
             Log.debug(Geonet.EDITOR, "Retrieving metadata from session " + session.getUserId());
-        Element md = (Element) session.getProperty(Geonet.Session.METADATA_EDITING + id);
-        if (md == null) {
+        EditingSession editingSession = (EditingSession) session.getProperty(Geonet.Session.METADATA_EDITING + id);
+        if (editingSession == null) {
             throw new ResourceNotFoundException(String.format(
                 "Requested metadata with id '%s' is not available in current session. " +
                     "Open an editing session on this record first.", id));
         }
-        md.detach();
-        return md;
+        return editingSession;
     }
 
     /**
@@ -141,7 +140,8 @@ public class AjaxEditUtils extends EditUtils {
         }
 
         // --- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        Element md = editingSession.getMetadata();
 
         // Store XML fragments to be handled after other elements update
         Map<String, String> xmlInputs = new HashMap<String, String>();
@@ -175,7 +175,7 @@ public class AjaxEditUtils extends EditUtils {
             }
 
             String actualRef = ref != null ? ref : originalRef;
-            Element el = editLib.findElement(md, actualRef);
+            Element el = editingSession.findElement(actualRef);
             if (el == null) {
                 Log.error(Geonet.EDITOR, EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + originalRef);
                 continue;
@@ -229,7 +229,7 @@ public class AjaxEditUtils extends EditUtils {
                 ref = ref.substring(0, at);
             }
 
-            Element el = editLib.findElement(md, ref);
+            Element el = editingSession.findElement(ref);
             if (el == null) {
                 Log.error(Geonet.EDITOR, EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
                 continue;
@@ -268,13 +268,12 @@ public class AjaxEditUtils extends EditUtils {
             editLib.addElementOrFragmentFromXpaths(md, xmlAndXpathInputs, metadataSchema, true);
         }
 
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
-        // --- remove editing info
-        editLib.removeEditingInfo(md);
-        editLib.contractElements(md);
+        // --- remove editing info from a copy, the session keeps the expanded record
+        Element result = editingSession.copyMetadata();
+        editLib.removeEditingInfo(result);
+        editLib.contractElements(result);
 
-        return (Element) md.detach();
+        return result;
     }
 
     /**
@@ -315,12 +314,12 @@ public class AjaxEditUtils extends EditUtils {
     }
 
     /**
-     * TODO javadoc.
+     * Open an editing session on the record.
      */
     private void setMetadataIntoSession(UserSession session, Element md, String id) {
         if (Log.isDebugEnabled(Geonet.EDITOR))
             Log.debug(Geonet.EDITOR, "Storing metadata in session " + session.getUserId());
-        session.setProperty(Geonet.Session.METADATA_EDITING + id, md);
+        session.setProperty(Geonet.Session.METADATA_EDITING + id, new EditingSession(md));
     }
 
     /**
@@ -351,11 +350,12 @@ public class AjaxEditUtils extends EditUtils {
         Lib.resource.checkEditPrivilege(context, id);
         String schema = dataManager.getMetadataSchema(id);
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        Element md = editingSession.getMetadata();
 
         //--- ref is parent element so find it
         EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, ref);
+        Element el = editingSession.findElement(ref);
         if (el == null)
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
 
@@ -421,6 +421,7 @@ public class AjaxEditUtils extends EditUtils {
             int iRef = editLib.findMaximumRef(md);
             editLib.expandElements(schema, child);
             editLib.enumerateTreeStartingAt(child, iRef + 1, Integer.parseInt(ref));
+            editingSession.index(child);
 
             //--- add editing info to everything from the parent down
             editLib.expandTree(mds, el);
@@ -459,9 +460,6 @@ public class AjaxEditUtils extends EditUtils {
             md.addContent((Element) info.clone());
         }
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         // Return element added
         return child;
 
@@ -476,19 +474,20 @@ public class AjaxEditUtils extends EditUtils {
         String schema = dataManager.getMetadataSchema(id);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
-
-        //--- locate the geonet:info element and clone for later re-use
-        Element info = (Element) (md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE)).clone();
-        md.removeChild(Edit.RootChild.INFO, Edit.NAMESPACE);
+        EditingSession editingSession = getEditingSession(session, id);
+        Element md = editingSession.getMetadata();
 
         //--- get element to remove
         EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, ref);
+        Element el = editingSession.findElement(ref);
 
         if (el == null)
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
 
+        //--- locate the geonet:info element and clone for later re-use
+        Element info = (Element) (md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE)).clone();
+        md.removeChild(Edit.RootChild.INFO, Edit.NAMESPACE);
+
 
         String uName = el.getName();
         Namespace ns = el.getNamespace();
@@ -544,9 +543,6 @@ public class AjaxEditUtils extends EditUtils {
         //--- reattach the info element to the metadata
         md.addContent((Element) info.clone());
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         return result;
     }
 
@@ -564,20 +560,18 @@ public class AjaxEditUtils extends EditUtils {
         Element result = new Element(Edit.RootChild.NULL, Edit.NAMESPACE);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        Element md = editingSession.getMetadata();
 
         //--- get element to remove
         EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, elementId);
+        Element el = editingSession.findElement(elementId);
 
         if (el != null) {
             Pair<Namespace, String> attInfo = parseAttributeName(attributeName, ":", id, md, editLib);
             el.removeAttribute(attInfo.two(), attInfo.one());
         }
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         return result;
     }
 
@@ -607,11 +601,11 @@ public class AjaxEditUtils extends EditUtils {
         dataManager.getMetadataSchema(id);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        Element md = editingSession.getMetadata();
 
         //--- get element to swap
-        EditLib editLib = dataManager.getEditLib();
-        Element elSwap = editLib.findElement(md, ref);
+        Element elSwap = editingSession.findElement(ref);
 
         if (elSwap == null)
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
@@ -636,10 +630,6 @@ public class AjaxEditUtils extends EditUtils {
 
         if (down) swapElements(elSwap, (Element) list.get(iSwapIndex + 1));
         else swapElements(elSwap, (Element) list.get(iSwapIndex - 1));
-
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
     }
 
     /**
@@ -648,9 +638,8 @@ public class AjaxEditUtils extends EditUtils {
     public Element validateMetadataEmbedded(UserSession session, String id, String lang) throws Exception {
         String schema = dataManager.getMetadataSchema(id);
 
-        //--- get metadata from session and clone it for validation
-        Element realMd = getMetadataFromSession(session, id);
-        Element md = (Element) realMd.clone();
+        //--- get a copy of the metadata from session for validation
+        Element md = getEditingSession(session, id).copyMetadata();
 
         //--- remove editing info
         EditLib editLib = dataManager.getEditLib();
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.editing;
+
+import org.fao.geonet.constants.Edit;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Record of an editing session, stored in the user session.
+ *
+ * Between two editor actions the expanded record (with the geonet:element editing information)
+ * is kept as a single JDOM tree which the actions edit in place, so that an action neither parses
+ * nor copies the record. Elements are looked up by ref in an index of the tree which is kept from
+ * one action to the next: elements added by an action are indexed with {@link #index(Element)}
+ * and elements removed from the record are detected on lookup. The record is only written as
+ * compressed XML when the user session is serialized (eg. persisted or replicated) and parsed again
+ * when it is read back.
+ */
+public class EditingSession implements Serializable {
+    private static final long serialVersionUID = 4405162178411437265L;
+
+    private transient Element metadata;
+
+    private transient Map<String, Element> elementsByRef;
+
+    public EditingSession(Element metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return the record in the session, changes to the record are kept in the session.
+     */
+    public synchronized Element getMetadata() {
+        metadata.detach();
+        return metadata;
+    }
+
+    /**
+     * @return a copy of the record in the session, to process the record without changing the
+     * session (eg. to remove the editing information).
+     */
+    public synchronized Element copyMetadata() {
+        return (Element) metadata.clone();
+    }
+
+    /**
+     * Find an element of the record by ref like {@link org.fao.geonet.kernel.EditLib#findElement(Element,
+     * String)} using an index of the refs of the record. The index is built on the first lookup and
+     * rebuilt if the ref is not indexed or the element found is not in the record anymore.
+     *
+     * @return the element or null if no element has this ref.
+     */
+    public synchronized Element findElement(String ref) {
+        Element element = elementsByRef == null ? null : elementsByRef.get(ref);
+        if (element == null || !isIndexed(element, ref)) {
+            elementsByRef = new HashMap<>();
+            index(metadata, elementsByRef);
+            element = elementsByRef.get(ref);
+        }
+        return element;
+    }
+
+    /**
+     * Index the refs of an element added to the record and of its descendants, so that they can
+     * be found without indexing the whole record again.
+     */
+    public synchronized void index(Element element) {
+        if (elementsByRef != null) {
+            Map<String, Element> added = new HashMap<>();
+            index(element, added);
+            elementsByRef.putAll(added);
+        }
+    }
+
+    private boolean isIndexed(Element element, String ref) {
+        Element info = element.getChild(Edit.RootChild.ELEMENT, Edit.NAMESPACE);
+        if (info == null || !ref.equals(info.getAttributeValue(Edit.Element.Attr.REF))) {
+            return false;
+        }
+        for (Element ancestor = element; ancestor != null; ancestor = ancestor.getParentElement()) {
+            if (ancestor == metadata) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void index(Element element, Map<String, Element> elementsByRef) {
+        Element info = element.getChild(Edit.RootChild.ELEMENT, Edit.NAMESPACE);
+        if (info != null) {
+            String ref = info.getAttributeValue(Edit.Element.Attr.REF);
+            if (ref != null && !elementsByRef.containsKey(ref)) {
+                elementsByRef.put(ref, element);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Element> children = element.getChildren();
+        for (Element child : children) {
+            if (!Edit.NAMESPACE.getPrefix().equals(child.getNamespacePrefix())) {
+                index(child, elementsByRef);
+            }
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            new XMLOutputter(Format.getRawFormat()).output(metadata, gzip);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] record = new byte[in.readInt()];
+        in.readFully(record);
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(record))) {
+            metadata = Xml.loadStream(gzip);
+        } catch (JDOMException e) {
+            throw new IOException("Invalid record in the editing session", e);
+        }
+    }
+}
@@ -69,6 +69,11 @@ public class MapRenderer {
 
     private final ServiceContext context;
 
+    /**
+     * Error raised when loading the background of the last image rendered, if any.
+     */
+    private Exception backgroundError;
+
     private static final double WGS_DIAG = sqrt(pow(360, 2) + pow(180, 2));
 
     public MapRenderer(ServiceContext context) {
@@ -254,9 +259,18 @@ public class MapRenderer {
         } finally {
             graphics.dispose();
         }
+        backgroundError = error;
         return image;
     }
 
+    /**
+     * @return the error raised when loading the background of the last image rendered (the
+     * message is drawn on the image instead of the background) or null.
+     */
+    public Exception getBackgroundError() {
+        return backgroundError;
+    }
+
     private Color getColor(String color, Color defaultColor) {
         if (StringUtils.isNotEmpty(color)) {
             String[] colorsConfig = color.split(",");
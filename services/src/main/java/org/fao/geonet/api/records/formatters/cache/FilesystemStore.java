@@ -25,19 +25,24 @@ package org.fao.geonet.api.records.formatters.cache;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.Striped;
 
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Pair;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.lib.Lib;
 import org.fao.geonet.utils.IO;
 import org.fao.geonet.utils.Log;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -47,18 +52,44 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 
 import static org.fao.geonet.constants.Params.Access.PRIVATE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.fao.geonet.constants.Params.Access.PUBLIC;
 
 /**
  * A {@link org.fao.geonet.api.records.formatters.cache.PersistentStore} that saves the files to
  * disk.
+ * <p/>
+ * The store info of all entries is kept in memory (and in a H2 database so that it survives a
+ * restart) so lookups do not hit the database. Accesses to an entry are guarded by a lock striped
+ * on the key so that requests on different records do not wait for each other. The H2 connection
+ * is shared so all the statements are executed while holding the database lock.
+ * <p/>
+ * Files are written to a temporary file which is then moved over the previous version so that a
+ * published link to the previous version is never truncated while it is read. A put that makes
+ * the store overflow removes the oldest entries, if another thread is already doing that the put
+ * does not wait and a background job enforces the size limit once the running resize is done (and
+ * periodically checks the limit).
  *
  * @author Jesse on 3/5/2015.
  */
@@ -77,22 +108,37 @@ public class FilesystemStore implements PersistentStore {
     private static final String VALUE = "value";
     public static final String QUERY_SETCURRENT_SIZE = "MERGE INTO " + STATS_TABLE + " (" + NAME + ", " + VALUE + ") VALUES ('" + CURRENT_SIZE + "', ?)";
     public static final String QUERY_GETCURRENT_SIZE = "SELECT " + VALUE + " FROM " + STATS_TABLE + " WHERE " + NAME + " = '" + CURRENT_SIZE + "'";
-    private static final String QUERY_GET_INFO = "SELECT * FROM " + INFO_TABLE + " WHERE " + KEY + "=?";
-    private static final String QUERY_GET_INFO_FOR_RESIZE = "SELECT " + KEY + "," + PATH + " FROM " + INFO_TABLE + " ORDER BY " + CHANGE_DATE + " ASC";
+    private static final String QUERY_GET_ALL_INFO = "SELECT " + KEY + "," + CHANGE_DATE + "," + PUBLISHED + " FROM " + INFO_TABLE;
+    private static final String QUERY_GET_INFO_FOR_RESIZE = "SELECT " + KEY + "," + PATH + " FROM " + INFO_TABLE + " ORDER BY " + CHANGE_DATE + " ASC LIMIT ?";
     private static final String QUERY_PUT = "MERGE INTO " + INFO_TABLE + " (" + KEY + "," + CHANGE_DATE + "," + PUBLISHED + "," + PATH + ") VALUES (?,?,?, ?)";
     private static final String QUERY_REMOVE = "DELETE FROM " + INFO_TABLE + " WHERE " + KEY + "=?";
     private static final String QUERY_CLEAR_INFO = "DELETE FROM " + INFO_TABLE;
     private static final String QUERY_CLEAR_STATS = "DELETE FROM " + STATS_TABLE;
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int RESIZE_BATCH_SIZE = 500;
     @VisibleForTesting
     Connection metadataDb;
     @Autowired
     private GeonetworkDataDirectory geonetworkDataDir;
     private boolean testing = false;
     private volatile long maxSizeB = 10000;
-    private volatile long currentSize = 0;
+    private final AtomicLong currentSize = new AtomicLong();
     private volatile boolean initialized = false;
+    private final ConcurrentMap<Integer, StoreInfo> infoIndex = new ConcurrentHashMap<>();
+    private final Striped<ReadWriteLock> keyLocks = Striped.readWriteLock(64);
+    private final Lock resizeLock = new ReentrantLock();
+    private final Object dbLock = new Object();
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean(false);
+    private ScheduledExecutorService evictionExecutor;
+    private long evictionIntervalSeconds = 300;
+
+    private void init() throws SQLException {
+        if (!initialized) {
+            doInit();
+        }
+    }
 
-    private synchronized void init() throws SQLException {
+    private synchronized void doInit() throws SQLException {
         if (!initialized) {
             // using a h2 database and not normal geonetwork DB to ensure that the accesses are always on localhost and therefore
             // hopefully quick.
@@ -117,7 +163,14 @@ public class FilesystemStore implements PersistentStore {
                 Statement statement = metadataDb.createStatement();
                 ResultSet rs = statement.executeQuery(QUERY_GETCURRENT_SIZE)) {
                 if (rs.next()) {
-                    this.currentSize = Long.parseLong(rs.getString(1));
+                    this.currentSize.set(Long.parseLong(rs.getString(1)));
+                }
+            }
+            try (
+                Statement statement = metadataDb.createStatement();
+                ResultSet rs = statement.executeQuery(QUERY_GET_ALL_INFO)) {
+                while (rs.next()) {
+                    infoIndex.put(rs.getInt(KEY), new StoreInfo(rs.getLong(CHANGE_DATE), rs.getBoolean(PUBLISHED)));
                 }
             }
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
@@ -130,6 +183,18 @@ public class FilesystemStore implements PersistentStore {
                     }
                 }
             }));
+
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("FormatterCache-eviction-");
+            threadFactory.setDaemon(true);
+            evictionExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            if (evictionIntervalSeconds > 0) {
+                evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictIfRequired();
+                    }
+                }, evictionIntervalSeconds, evictionIntervalSeconds, TimeUnit.SECONDS);
+            }
             initialized = true;
         }
 
@@ -138,89 +203,160 @@ public class FilesystemStore implements PersistentStore {
     @PreDestroy
     synchronized void close() throws ClassNotFoundException, SQLException {
         Log.info(Geonet.FORMATTER, "Stopping the FileSystemStore");
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdownNow();
+        }
         if (metadataDb != null) {
-            metadataDb.close();
+            synchronized (dbLock) {
+                metadataDb.close();
+            }
         }
     }
 
     @Override
-    public synchronized StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
+    public StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
         init();
-        StoreInfo info = getInfo(key);
-        if (info == null) {
+        final Lock readLock = keyLocks.get(key.hashCode()).readLock();
+        readLock.lock();
+        try {
+            StoreInfo info = getInfo(key);
+            if (info == null) {
+                return null;
+            }
+            byte[] data = Files.readAllBytes(getPrivatePath(key));
+            return new StoreInfoAndData(info, data);
+        } catch (NoSuchFileException e) {
             return null;
+        } finally {
+            readLock.unlock();
         }
-        byte[] data = Files.readAllBytes(getPrivatePath(key));
-        return new StoreInfoAndData(info, data);
     }
 
     @Override
-    public synchronized StoreInfo getInfo(@Nonnull Key key) throws SQLException {
+    public StoreInfo getInfo(@Nonnull Key key) throws SQLException {
         init();
-        try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_GET_INFO)) {
-            statement.setInt(1, key.hashCode());
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    long date = resultSet.getLong(CHANGE_DATE);
-                    boolean isPublished = resultSet.getBoolean(PUBLISHED);
-                    return new StoreInfo(date, isPublished);
-                } else {
-                    return null;
-                }
-            }
-        }
+        return infoIndex.get(key.hashCode());
     }
 
     @Override
-    public synchronized void put(@Nonnull Key key, @Nonnull StoreInfoAndData data) throws IOException, SQLException {
+    public void put(@Nonnull Key key, @Nonnull StoreInfoAndData data) throws IOException, SQLException {
         init();
-        resizeIfRequired(key, data);
-        final Path privatePath = getPrivatePath(key);
+        final Lock writeLock = keyLocks.get(key.hashCode()).writeLock();
+        writeLock.lock();
+        try {
+            resizeIfRequired(key, data);
+            final Path privatePath = getPrivatePath(key);
+            final Path publicPath = getPublicPath(key);
 
-        if (Files.exists(privatePath)) {
-            currentSize -= Files.size(privatePath);
+            // write to a new file and move it over the previous version: the public link keeps
+            // pointing to the previous content until it is replaced below.
+            Files.createDirectories(privatePath.getParent());
+            Path tmpFile = Files.createTempFile(privatePath.getParent(), privatePath.getFileName().toString(), TMP_SUFFIX);
+            try {
+                Files.write(tmpFile, data.data);
+                long previousSize = Files.exists(privatePath) ? Files.size(privatePath) : 0;
+                move(tmpFile, privatePath);
+                currentSize.addAndGet(data.data.length - previousSize);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+
+            // only publish if withheld (hidden) elements are hidden.
+            if (data.isPublished() && key.hideWithheld) {
+                Files.createDirectories(publicPath.getParent());
+                Path tmpLink = publicPath.resolveSibling(publicPath.getFileName() + "." + UUID.randomUUID() + TMP_SUFFIX);
+                try {
+                    try {
+                        Files.createLink(tmpLink, privatePath);
+                    } catch (UnsupportedOperationException | SecurityException e) {
+                        // Link likely not supported on this FS use copy then.
+                        Files.copy(privatePath, tmpLink);
+                    }
+                    move(tmpLink, publicPath);
+                } finally {
+                    Files.deleteIfExists(tmpLink);
+                }
+            } else {
+                Files.deleteIfExists(publicPath);
+            }
+
+            synchronized (dbLock) {
+                updateDbCurrentSize();
+                try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_PUT)) {
+                    statement.setInt(1, key.hashCode());
+                    statement.setLong(2, data.getChangeDate());
+                    statement.setBoolean(3, data.isPublished());
+                    statement.setString(4, privatePath.toUri().toString());
+                    statement.execute();
+                }
+            }
+            infoIndex.put(key.hashCode(), new StoreInfo(data.getChangeDate(), data.isPublished()));
+        } finally {
+            writeLock.unlock();
         }
+        if (currentSize.get() > maxSizeB) {
+            // another thread was resizing while this entry was added
+            scheduleEviction();
+        }
+    }
 
-        Files.createDirectories(privatePath.getParent());
-        Files.write(privatePath, data.data);
-        currentSize += data.data.length;
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, REPLACE_EXISTING);
+        }
+    }
 
-        updateDbCurrentSize();
+    private void updateDbCurrentSize() throws SQLException {
+        synchronized (dbLock) {
+            try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_SETCURRENT_SIZE)) {
+                statement.setString(1, String.valueOf(currentSize.get()));
+                statement.execute();
+            }
+        }
+    }
 
-        Path publicPath = getPublicPath(key);
-        Files.deleteIfExists(publicPath);
-        // only publish if withheld (hidden) elements are hidden.
-        if (data.isPublished() && key.hideWithheld) {
-            Files.createDirectories(publicPath.getParent());
+    private void scheduleEviction() {
+        if (evictionExecutor != null && evictionScheduled.compareAndSet(false, true)) {
             try {
-                Files.createLink(publicPath, privatePath);
-            } catch (UnsupportedOperationException | SecurityException e) {
-                // Link likely not supported on this FS use copy then.
-                Files.copy(privatePath, publicPath);
+                evictionExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictionScheduled.set(false);
+                        evictIfRequired();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the store is closed
+                evictionScheduled.set(false);
             }
         }
-        try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_PUT)) {
-            statement.setInt(1, key.hashCode());
-            statement.setLong(2, data.getChangeDate());
-            statement.setBoolean(3, data.isPublished());
-            statement.setString(4, privatePath.toUri().toString());
-            statement.execute();
-        }
     }
 
-    private void updateDbCurrentSize() throws SQLException {
-        try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_SETCURRENT_SIZE)) {
-            statement.setString(1, String.valueOf(currentSize));
-            statement.execute();
+    @VisibleForTesting
+    void evictIfRequired() {
+        if (currentSize.get() <= maxSizeB) {
+            return;
+        }
+        resizeLock.lock();
+        try {
+            if (currentSize.get() > maxSizeB) {
+                doResize();
+            }
+        } catch (SQLException | IOException e) {
+            Log.error(Geonet.FORMATTER, "Error while reducing the size of the formatter cache", e);
+        } finally {
+            resizeLock.unlock();
         }
     }
 
     private void resizeIfRequired(Key key, StoreInfoAndData data) throws IOException, SQLException {
-        if (this.currentSize + data.data.length > this.maxSizeB) {
+        if (this.currentSize.get() + data.data.length > this.maxSizeB) {
             final Path privatePath = getPrivatePath(key);
             if (Files.exists(privatePath)) {
                 long fileSize = Files.size(privatePath);
-                if (currentSize - fileSize + data.data.length > this.maxSizeB) {
+                if (currentSize.get() - fileSize + data.data.length > this.maxSizeB) {
                     resize();
                 }
             } else {
@@ -229,21 +365,61 @@ public class FilesystemStore implements PersistentStore {
         }
     }
 
+    /**
+     * Remove the oldest entries until the store is half of its maximum size. If another thread is
+     * already resizing the store this returns immediately.
+     */
     private void resize() throws SQLException, IOException {
+        if (!resizeLock.tryLock()) {
+            return;
+        }
+        try {
+            doResize();
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    private void doResize() throws SQLException, IOException {
         int targetSize = (int) (maxSizeB / 2);
         Log.warning(Geonet.FORMATTER, "Resizing Formatter cache.  Required to reduce size by " + targetSize);
         long startTime = System.currentTimeMillis();
-        try (
-            Statement statement = metadataDb.createStatement();
-            ResultSet resultSet = statement.executeQuery(QUERY_GET_INFO_FOR_RESIZE);
-        ) {
-            while (currentSize > targetSize && resultSet.next()) {
-                Path path = IO.toPath(new URI(resultSet.getString(PATH)));
-                doRemove(path, resultSet.getInt(KEY), false);
+        try {
+            // the oldest entries are read by batches so that the database is not locked while the files are removed
+            List<Pair<Integer, String>> oldest = new ArrayList<>();
+            while (currentSize.get() > targetSize) {
+                oldest.clear();
+                synchronized (dbLock) {
+                    try (PreparedStatement statement = metadataDb.prepareStatement(QUERY_GET_INFO_FOR_RESIZE)) {
+                        statement.setInt(1, RESIZE_BATCH_SIZE);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                oldest.add(Pair.read(resultSet.getInt(KEY), resultSet.getString(PATH)));
+                            }
+                        }
+                    }
+                }
+                if (oldest.isEmpty()) {
+                    break;
+                }
+                for (Pair<Integer, String> entry : oldest) {
+                    if (currentSize.get() <= targetSize) {
+                        break;
+                    }
+                    int keyHashCode = entry.one();
+                    final Lock writeLock = keyLocks.get(keyHashCode).writeLock();
+                    writeLock.lock();
+                    try {
+                        doRemove(IO.toPath(new URI(entry.two())), keyHashCode, false);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
             }
         } catch (URISyntaxException e) {
             throw new Error(e);
         }
+        updateDbCurrentSize();
         Log.warning(Geonet.FORMATTER, "Resize took " + (System.currentTimeMillis() - startTime) + "ms to complete");
     }
 
@@ -255,20 +431,26 @@ public class FilesystemStore implements PersistentStore {
         } catch (SQLException e) {
             throw new Error(e);
         }
-        final Path publicPath = getPublicPath(key);
-        if (Files.exists(publicPath)) {
-            return Files.readAllBytes(publicPath);
-        } else {
+        // the public file is a link which is replaced (not rewritten) on update so it can be read without locking
+        try {
+            return Files.readAllBytes(getPublicPath(key));
+        } catch (NoSuchFileException e) {
             return null;
         }
     }
 
     @Override
-    public synchronized void remove(@Nonnull Key key) throws IOException, SQLException {
+    public void remove(@Nonnull Key key) throws IOException, SQLException {
         init();
         final Path path = getPrivatePath(key);
         final int keyHashCode = key.hashCode();
-        doRemove(path, keyHashCode, true);
+        final Lock writeLock = keyLocks.get(keyHashCode).writeLock();
+        writeLock.lock();
+        try {
+            doRemove(path, keyHashCode, true);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
@@ -287,6 +469,10 @@ public class FilesystemStore implements PersistentStore {
 
                 @Override
                 public FileVisitResult visitFile(Path privatePath, BasicFileAttributes attrs) throws IOException {
+                    if (privatePath.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                        // a file being written by put
+                        return FileVisitResult.CONTINUE;
+                    }
                     final Path publicPath = toPublicPath(privatePath);
                     if (published) {
                         if (!Files.exists(publicPath)) {
@@ -307,10 +493,13 @@ public class FilesystemStore implements PersistentStore {
     @Override
     public void clear() throws SQLException, IOException {
         init();
-        try (Statement statement = this.metadataDb.createStatement()) {
-            statement.execute(QUERY_CLEAR_INFO);
-            statement.execute(QUERY_CLEAR_STATS);
-            currentSize = 0;
+        synchronized (dbLock) {
+            try (Statement statement = this.metadataDb.createStatement()) {
+                statement.execute(QUERY_CLEAR_INFO);
+                statement.execute(QUERY_CLEAR_STATS);
+            }
+            infoIndex.clear();
+            currentSize.set(0);
             Files.walkFileTree(getBaseCacheDir(), new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -338,17 +527,22 @@ public class FilesystemStore implements PersistentStore {
     private void doRemove(Path privatePath, int keyHashCode, boolean updateDbCurrentSize) throws IOException, SQLException {
         try {
             if (Files.exists(privatePath)) {
-                currentSize -= Files.size(privatePath);
+                currentSize.addAndGet(-Files.size(privatePath));
                 Files.delete(privatePath);
             }
         } finally {
+            infoIndex.remove(keyHashCode);
             try {
                 final Path publicPath = toPublicPath(privatePath);
                 Files.deleteIfExists(publicPath);
             } finally {
-                try (PreparedStatement statement = metadataDb.prepareStatement(QUERY_REMOVE)) {
-                    statement.setInt(1, keyHashCode);
-                    statement.execute();
+                try {
+                    synchronized (dbLock) {
+                        try (PreparedStatement statement = metadataDb.prepareStatement(QUERY_REMOVE)) {
+                            statement.setInt(1, keyHashCode);
+                            statement.execute();
+                        }
+                    }
                 } finally {
                     if (updateDbCurrentSize) {
                         updateDbCurrentSize();
@@ -402,4 +596,12 @@ public class FilesystemStore implements PersistentStore {
     public void setTesting(boolean testing) {
         this.testing = testing;
     }
+
+    /**
+     * Set how often the background job checks the size of the store. 0 or less disables the
+     * periodic check (overflows are still handled).
+     */
+    public void setEvictionIntervalSeconds(long evictionIntervalSeconds) {
+        this.evictionIntervalSeconds = evictionIntervalSeconds;
+    }
 }
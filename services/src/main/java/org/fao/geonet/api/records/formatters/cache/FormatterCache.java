@@ -30,6 +30,7 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 
 import org.fao.geonet.domain.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,8 +42,12 @@ import java.util.Collection;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -64,6 +69,11 @@ import javax.annotation.PreDestroy;
  * parallel with writing to the cache.
  * <p/>
  * Note: The Persistent cache used can be configured.
+ * <p/>
+ * Lookups and additions only share the lock (the caches are thread safe), the exclusive lock is
+ * only taken to remove or publish values. Values are loaded without holding any lock so that
+ * the formatting of a record does not block the other requests, concurrent misses on the same key
+ * wait for the first load instead of formatting the record again.
  *
  * @author Jesse on 3/5/2015.
  */
@@ -71,9 +81,11 @@ public class FormatterCache {
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final PersistentStore persistentStore;
     private final Cache<Key, StoreInfoAndData> memoryCache;
-    private final Multimap<Integer, Pair<Key, StoreInfoAndData>> mdIdIndex = ArrayListMultimap.create();
+    private final Multimap<Integer, Pair<Key, StoreInfoAndData>> mdIdIndex =
+        Multimaps.synchronizedListMultimap(ArrayListMultimap.<Integer, Pair<Key, StoreInfoAndData>>create());
     private final ExecutorService executor;
     private final BlockingQueue<Pair<Key, StoreInfoAndDataLoadResult>> storeRequests;
+    private final ConcurrentMap<Key, FutureTask<StoreInfoAndDataLoadResult>> loading = new ConcurrentHashMap<>();
     @Autowired
     private CacheConfig cacheConfig;
 
@@ -142,51 +154,77 @@ public class FormatterCache {
      *                                    another thread.
      */
     @Nullable
-    public byte[] get(Key key, Validator validator, Callable<StoreInfoAndDataLoadResult> loader,
-                      boolean writeToStoreInCurrentThread) throws Exception {
+    public byte[] get(final Key key, Validator validator, final Callable<StoreInfoAndDataLoadResult> loader,
+                      final boolean writeToStoreInCurrentThread) throws Exception {
         final Lock readLock = lock.readLock();
         StoreInfoAndData cached;
+        final boolean allowCaching;
         try {
             readLock.lock();
-            if (!cacheConfig.allowCaching(key)) {
-                return loader.call().data;
-            }
-
-            cached = memoryCache.getIfPresent(key);
-            boolean invalid = false;
-            if (cached != null && !validator.isCacheVersionValid(cached)) {
-                cached = null;
-                invalid = true;
-            }
+            allowCaching = cacheConfig.allowCaching(key);
+            cached = null;
+            if (allowCaching) {
+                cached = memoryCache.getIfPresent(key);
+                boolean invalid = false;
+                if (cached != null && !validator.isCacheVersionValid(cached)) {
+                    cached = null;
+                    invalid = true;
+                }
 
-            if (!invalid && cached == null) {
-                cached = loadFromPersistentCache(key, validator);
+                if (!invalid && cached == null) {
+                    cached = loadFromPersistentCache(key, validator);
+                }
             }
-
         } finally {
             readLock.unlock();
         }
-        final Lock writeLock = lock.writeLock();
         if (cached == null) {
-            try {
-                writeLock.lock();
-                StoreInfoAndDataLoadResult loaded = loader.call();
-                cached = loaded;
-                push(key, loaded, writeToStoreInCurrentThread);
-            } finally {
-                writeLock.unlock();
-            }
+            cached = load(key, new Callable<StoreInfoAndDataLoadResult>() {
+                @Override
+                public StoreInfoAndDataLoadResult call() throws Exception {
+                    StoreInfoAndDataLoadResult loaded = loader.call();
+                    if (allowCaching) {
+                        push(key, loaded, writeToStoreInCurrentThread);
+                    }
+                    return loaded;
+                }
+            });
         }
 
         return cached.data;
 
     }
 
+    /**
+     * Run the loader unless another thread is already loading the same key, in which case wait for
+     * its result.
+     */
+    private StoreInfoAndDataLoadResult load(Key key, Callable<StoreInfoAndDataLoadResult> loader) throws Exception {
+        FutureTask<StoreInfoAndDataLoadResult> task = new FutureTask<>(loader);
+        FutureTask<StoreInfoAndDataLoadResult> running = loading.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private void push(Key key, StoreInfoAndDataLoadResult cached,
                       boolean writeToStoreInCurrentThread) throws IOException, SQLException {
-        final Lock writeLock = lock.writeLock();
+        final Lock readLock = lock.readLock();
         try {
-            writeLock.lock();
+            readLock.lock();
 
             this.memoryCache.put(key, cached);
             this.mdIdIndex.put(key.mdId, Pair.read(key, (StoreInfoAndData) cached));
@@ -200,7 +238,7 @@ public class FormatterCache {
         } catch (InterruptedException e) {
             // return
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -260,7 +298,7 @@ public class FormatterCache {
     /**
      * Remove all cached values related to the metadataId.
      */
-    public synchronized void removeAll(int metadataId) throws IOException, SQLException {
+    public void removeAll(int metadataId) throws IOException, SQLException {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
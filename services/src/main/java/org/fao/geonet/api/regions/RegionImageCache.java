@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.regions;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+
+/**
+ * Cache of the PNG renderings of region geometries.
+ *
+ * The most recently used images are kept in memory (bounded by their total size) and all the
+ * images are written in a folder of the html cache directory, bounded by a number of files: the
+ * least recently used files are removed when the limit is exceeded. When several requests need an
+ * image which is not cached, it is only rendered once and the other requests wait for it.
+ */
+public class RegionImageCache {
+    private static final String BASE_CACHE_DIR = "region-images";
+    private static final String FILE_EXTENSION = ".png";
+    /**
+     * Number of images written between two checks of the number of files.
+     */
+    private static final int PRUNE_INTERVAL = 100;
+
+    @Autowired
+    private GeonetworkDataDirectory geonetworkDataDir;
+
+    private long memorySizeKb = 16 * 1024;
+    private int maxFiles = 10000;
+
+    private Cache<String, byte[]> memoryCache;
+    private final ConcurrentMap<String, FutureTask<byte[]>> rendering = new ConcurrentHashMap<>();
+    private final AtomicInteger writesSincePrune = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        memoryCache = CacheBuilder.newBuilder()
+            .maximumWeight(memorySizeKb * 1024)
+            .weigher(new Weigher<String, byte[]>() {
+                @Override
+                public int weigh(String key, byte[] value) {
+                    return value.length;
+                }
+            })
+            .build();
+    }
+
+    /**
+     * @return a key for the cache, the hash of the parameters of the image.
+     */
+    public static String key(Object... parameters) {
+        return Hashing.sha1().hashString(Joiner.on('\n').useForNull("").join(parameters), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Get an image from the cache, or render it if not in the cache.
+     *
+     * @param renderer renders the image, the boolean is false if the image must not be cached (for
+     *                 example if the background could not be loaded).
+     * @return the image or null if the renderer did not return any.
+     */
+    @Nullable
+    public byte[] get(final String key, final Callable<Pair<byte[], Boolean>> renderer) throws Exception {
+        byte[] data = memoryCache.getIfPresent(key);
+        if (data != null) {
+            hits.incrementAndGet();
+            return data;
+        }
+
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return load(key, renderer);
+            }
+        });
+        FutureTask<byte[]> running = rendering.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                rendering.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private byte[] load(String key, Callable<Pair<byte[], Boolean>> renderer) throws Exception {
+        Path file = getCacheDir().resolve(key + FILE_EXTENSION);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            memoryCache.put(key, data);
+            return data;
+        } catch (NoSuchFileException e) {
+            // not rendered yet
+        }
+
+        renders.incrementAndGet();
+        Pair<byte[], Boolean> rendered = renderer.call();
+        byte[] data = rendered.one();
+        if (data == null || !rendered.two()) {
+            return data;
+        }
+        memoryCache.put(key, data);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmpFile = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(tmpFile, data);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            if (writesSincePrune.incrementAndGet() >= PRUNE_INTERVAL) {
+                writesSincePrune.set(0);
+                prune();
+            }
+        } catch (IOException e) {
+            Log.warning(Geonet.REGION, "Unable to write region image " + file + " in the cache: " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * Remove the least recently used files once the maximum number of files is exceeded.
+     */
+    private synchronized void prune() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(getCacheDir(), "*" + FILE_EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        if (files.size() <= maxFiles) {
+            return;
+        }
+        final List<Pair<Path, Long>> filesAndDates = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                filesAndDates.add(Pair.read(file, Files.getLastModifiedTime(file).toMillis()));
+            } catch (NoSuchFileException e) {
+                // removed by another request
+            }
+        }
+        Collections.sort(filesAndDates, new Comparator<Pair<Path, Long>>() {
+            @Override
+            public int compare(Pair<Path, Long> o1, Pair<Path, Long> o2) {
+                return Long.compare(o1.two(), o2.two());
+            }
+        });
+        for (int i = 0; i < filesAndDates.size() - maxFiles; i++) {
+            Files.deleteIfExists(filesAndDates.get(i).one());
+        }
+    }
+
+    private Path getCacheDir() {
+        return geonetworkDataDir.getHtmlCacheDir().resolve(BASE_CACHE_DIR);
+    }
+
+    public void setMemorySizeKb(long memorySizeKb) {
+        this.memorySizeKb = memorySizeKb;
+    }
+
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getRenders() {
+        return renders.get();
+    }
+}
@@ -32,11 +32,14 @@ import org.fao.geonet.api.ApiUtils;
 import org.fao.geonet.api.records.extent.MapRenderer;
 import org.fao.geonet.api.regions.model.Category;
 import org.fao.geonet.api.tools.i18n.LanguageUtils;
+import org.fao.geonet.domain.Pair;
 import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.kernel.KeywordBean;
 import org.fao.geonet.kernel.region.Region;
 import org.fao.geonet.kernel.region.RegionsDAO;
 import org.fao.geonet.kernel.region.Request;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.kernel.setting.Settings;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpEntity;
@@ -57,6 +60,8 @@ import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import static org.fao.geonet.api.records.extent.MetadataExtentApi.*;
@@ -79,6 +84,9 @@ public class RegionsApi {
     @Autowired
     LanguageUtils languageUtils;
 
+    @Autowired
+    RegionImageCache regionImageCache;
+
     @ApiOperation(
         value = "Get list of regions",
         nickname = "getRegions"
@@ -242,25 +250,57 @@ public class RegionsApi {
         }
 
         String outputFileName = "geom.png";
-        String regionId = null;
+        final String regionId = null;
 
         if (nativeWebRequest.checkNotModified(geomParam + srs + background)) {
             return null;
         }
 
-        MapRenderer renderer = new MapRenderer(context);
-        BufferedImage image = renderer.render(regionId, srs, width, height, background, geomParam, geomType, geomSrs, null, null);
+        final MapRenderer renderer = new MapRenderer(context);
+        byte[] image = regionImageCache.get(
+            RegionImageCache.key(regionId, srs, width, height, getBackgroundKey(context, background), geomParam, geomType, geomSrs),
+            new Callable<Pair<byte[], Boolean>>() {
+                @Override
+                public Pair<byte[], Boolean> call() throws Exception {
+                    BufferedImage image = renderer.render(regionId, srs, width, height, background,
+                        geomParam, geomType, geomSrs, null, null);
+                    if (image == null) {
+                        return Pair.read(null, false);
+                    }
+                    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                        ImageIO.write(image, "png", out);
+                        return Pair.read(out.toByteArray(), renderer.getBackgroundError() == null);
+                    }
+                }
+            });
 
         if (image == null) return null;
 
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", out);
-            MultiValueMap<String, String> headers = new HttpHeaders();
-            headers.add("Content-Disposition", "inline; filename=\"" + outputFileName + "\"");
-            headers.add("Cache-Control", "public, max-age: " + TimeUnit.DAYS.toSeconds(5));
-            headers.add("Content-Type", "image/png");
-            return new HttpEntity<>(out.toByteArray(), headers);
-        }
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        headers.add("Content-Disposition", "inline; filename=\"" + outputFileName + "\"");
+        headers.add("Cache-Control", "public, max-age: " + TimeUnit.DAYS.toSeconds(5));
+        headers.add("Content-Type", "image/png");
+        return new HttpEntity<>(image, headers);
       }
     }
+
+    /**
+     * @return the background URL (or named layer) used to render the image, so that cached images
+     * are not used once the background setting changes.
+     */
+    private static String getBackgroundKey(ServiceContext context, String background) {
+        if (background == null) {
+            return null;
+        }
+        String backgroundKey = background;
+        if (background.equalsIgnoreCase(SETTING_BACKGROUND)) {
+            backgroundKey = context.getBean(SettingManager.class).getValue(Settings.REGION_GETMAP_BACKGROUND);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> backgroundLayers = context.getApplicationContext().getBean("regionGetMapBackgroundLayers", Map.class);
+        if (backgroundKey != null && backgroundLayers.containsKey(backgroundKey)) {
+            backgroundKey = backgroundLayers.get(backgroundKey);
+        }
+        return backgroundKey;
+    }
 }
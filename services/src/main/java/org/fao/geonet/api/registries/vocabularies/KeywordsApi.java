@@ -529,6 +529,7 @@ public class KeywordsApi {
         if (directory == null)
             throw new IllegalArgumentException("Thesaurus not found --> " + thesaurus);
 
+        directory.flush();
         Path directoryFile = directory.getFile();
         if (!Files.exists(directoryFile))
             throw new IllegalArgumentException("Thesaurus file not found --> " + thesaurus);
@@ -57,6 +57,7 @@ import org.fao.geonet.exceptions.OperationAbortedEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.datamanager.IMetadataManager;
+import org.fao.geonet.kernel.datamanager.IndexingProgress;
 import org.fao.geonet.kernel.harvest.HarvestManager;
 import org.fao.geonet.kernel.search.EsSearchManager;
 import org.fao.geonet.kernel.search.SearchManager;
@@ -576,6 +577,22 @@ public class SiteApi {
       }
     }
 
+    @ApiOperation(
+        value = "Indexing progress",
+        notes = "Number of records submitted, indexed and in error for the current (or last) indexing job, " +
+            "throughput in records per second and latency of each indexing stage.",
+        nickname = "getIndexingProgress")
+    @RequestMapping(
+        path = "/indexing/progress",
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.GET)
+    @ResponseStatus(value = HttpStatus.OK)
+    @PreAuthorize("hasRole('Editor')")
+    @ResponseBody
+    public IndexingProgress getIndexingProgress() throws Exception {
+        return ApplicationContextHolder.get().getBean(DataManager.class).getIndexingProgress();
+    }
+
     @ApiOperation(
         value = "Index",
         notes = "",
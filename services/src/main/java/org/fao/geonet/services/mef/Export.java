@@ -25,6 +25,7 @@ package org.fao.geonet.services.mef;
 
 import jeeves.constants.Jeeves;
 import jeeves.interfaces.Service;
+import jeeves.interfaces.StreamedResponse;
 import jeeves.server.ServiceConfig;
 import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
@@ -45,6 +46,7 @@ import org.fao.geonet.kernel.search.MetaSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.jdom.Element;
 
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -166,15 +168,47 @@ public class Export implements Service {
             Log.info(Geonet.MEF, "Building MEF2 file with " + uuids.size()
                 + " records.");
 
-            file = MEFLib.doMEF2Export(context, uuids, format, false, stylePath, resolveXlink, removeXlinkAttribute, false, addSchemaLocation, approved);
+            // MEF2 files are streamed to the response once the selection is reset
+            streamMEF2(context, new HashSet<>(uuids), format, resolveXlink, removeXlinkAttribute, addSchemaLocation, approved);
         }
 
         // -- Reset selection manager
         selectionManger.close(SelectionManager.SELECTION_METADATA);
 
-        String fname = String.valueOf(Calendar.getInstance().getTimeInMillis());
+        if (file == null) {
+            return new Element(Jeeves.Elem.RESPONSE);
+        }
+        return BinaryFile.encode(200, file, getFileName(format), true).getElement();
+    }
 
-        return BinaryFile.encode(200, file, "export-" + format + "-" + fname + ".zip", true).getElement();
+    private void streamMEF2(final ServiceContext context, final Set<String> uuids, final String format,
+                            final boolean resolveXlink, final boolean removeXlinkAttribute,
+                            final boolean addSchemaLocation, final boolean approved) throws Exception {
+        // check the format before anything is written to the response
+        Format.parse(format);
+        final String contentDisposition = "attachment;filename=" + getFileName(format);
+        context.setStreamedResponse(new StreamedResponse() {
+            @Override
+            public String getContentType() {
+                return "application/zip";
+            }
+
+            @Override
+            public String getContentDisposition() {
+                return contentDisposition;
+            }
+
+            @Override
+            public void write(OutputStream out) throws Exception {
+                MEFLib.doMEF2Export(context, uuids, format, false, stylePath, resolveXlink, removeXlinkAttribute, false,
+                    addSchemaLocation, approved, out);
+            }
+        });
+    }
+
+    private String getFileName(String format) {
+        String fname = String.valueOf(Calendar.getInstance().getTimeInMillis());
+        return "export-" + format + "-" + fname + ".zip";
     }
 
     /**
@@ -32,6 +32,7 @@ import org.fao.geonet.domain.Source;
 import org.fao.geonet.domain.responses.OkResponse;
 import org.fao.geonet.kernel.harvest.harvester.AbstractParams;
 import org.fao.geonet.kernel.setting.HarvesterSettingsManager;
+import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.repository.HarvesterSettingRepository;
 import org.fao.geonet.repository.SettingRepository;
@@ -44,6 +45,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
@@ -66,6 +68,8 @@ public class SourcesController {
     @Autowired
     private SettingRepository settingRepository;
     @Autowired
+    private SettingManager settingManager;
+    @Autowired
     private SourceRepository sourceRepository;
     @Autowired
     private HarvesterSettingsManager harvesterSettingsManager;
@@ -77,7 +81,7 @@ public class SourcesController {
     public OkResponse updateTranslations(
         @PathVariable String lang,
         @PathVariable String uuid,
-        final HttpServletRequest request) {
+        final HttpServletRequest request) throws SQLException {
         if (settingRepository.findOne(Settings.SYSTEM_SITE_SITE_ID_PATH).getValue().equals(uuid)) {
             updateSite(request);
         }
@@ -88,7 +92,7 @@ public class SourcesController {
         return new OkResponse();
     }
 
-    private void updateSite(HttpServletRequest request) {
+    private void updateSite(HttpServletRequest request) throws SQLException {
         settingRepository.deleteAll(SettingSpec.nameStartsWith(Settings.SYSTEM_SITE_LABEL_PREFIX));
 
         List<Setting> translationSettings = Lists.newArrayList();
@@ -109,7 +113,7 @@ public class SourcesController {
         }
 
         settingRepository.save(translationSettings);
-
+        settingManager.refresh();
     }
 
     public void updateNormalSource(String uuid, final HttpServletRequest request) {
@@ -74,6 +74,7 @@ public class Download implements Service {
         if (directory == null)
             throw new IllegalArgumentException("Thesaurus not found: " + name);
 
+        directory.flush();
         Path directoryFile = directory.getFile();
         if (!Files.exists(directoryFile))
             throw new IllegalArgumentException("Thesaurus file not found: " + name);
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records;
+
+import org.fao.geonet.api.records.model.related.RelatedItemType;
+import org.fao.geonet.domain.ReservedGroup;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class MetadataUtilsTest {
+
+    private static final RelatedItemType[] TYPES = {RelatedItemType.children, RelatedItemType.parent};
+
+    private static String key(long indexRefreshCount, Set<Integer> groups) {
+        return MetadataUtils.getRelatedCacheKey(12, indexRefreshCount, TYPES, 1, 100, false, null, groups, "srv", "eng");
+    }
+
+    @Test
+    public void relatedCacheKeyIsStable() {
+        Set<Integer> groups = new LinkedHashSet<>(Arrays.asList(5, ReservedGroup.all.getId(), 2));
+        Set<Integer> sameGroups = new LinkedHashSet<>(Arrays.asList(2, 5, ReservedGroup.all.getId()));
+        assertEquals(key(3, groups), key(3, sameGroups));
+    }
+
+    @Test
+    public void relatedCacheKeyChangesWithTheIndex() {
+        Set<Integer> groups = Collections.singleton(ReservedGroup.all.getId());
+        assertNotEquals(key(3, groups), key(4, groups));
+    }
+
+    @Test
+    public void relatedCacheKeyIsNotSharedBetweenIntranetAndInternet() {
+        Set<Integer> internet = Collections.singleton(ReservedGroup.all.getId());
+        Set<Integer> intranet = new HashSet<>(Arrays.asList(ReservedGroup.all.getId(), ReservedGroup.intranet.getId()));
+        assertNotEquals(key(3, internet), key(3, intranet));
+    }
+
+    @Test
+    public void relatedCacheKeyChangesWithTheGroupsOfTheUser() {
+        Set<Integer> before = new HashSet<>(Arrays.asList(ReservedGroup.all.getId(), 2));
+        Set<Integer> after = new HashSet<>(Arrays.asList(ReservedGroup.all.getId(), 2, 5));
+        assertNotEquals(key(3, before), key(3, after));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.editing;
+
+import org.fao.geonet.constants.Edit;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EditingSessionTest {
+
+    /**
+     * Counts the copies of the record and the full scans of its children.
+     */
+    private static class CountingElement extends Element {
+        private int clones;
+        private int scans;
+
+        CountingElement(String name) {
+            super(name, "gmd", "http://www.isotc211.org/2005/gmd");
+        }
+
+        @Override
+        public Object clone() {
+            clones++;
+            return super.clone();
+        }
+
+        @Override
+        public List getChildren() {
+            scans++;
+            return super.getChildren();
+        }
+    }
+
+    private static Element element(String name, String ref) {
+        return info(new Element(name, "gmd", "http://www.isotc211.org/2005/gmd"), ref);
+    }
+
+    private static Element info(Element element, String ref) {
+        element.addContent(new Element(Edit.RootChild.ELEMENT, Edit.NAMESPACE).setAttribute(Edit.Element.Attr.REF, ref));
+        return element;
+    }
+
+    private static CountingElement record() {
+        CountingElement root = new CountingElement("MD_Metadata");
+        info(root, "1");
+        Element contact = element("contact", "2");
+        contact.addContent(element("individualName", "3").addContent("John"));
+        root.addContent(contact);
+        root.addContent(element("language", "4"));
+        return root;
+    }
+
+    @Test
+    public void actionsEditTheRecordInPlace() throws Exception {
+        CountingElement record = record();
+        EditingSession editingSession = new EditingSession(record);
+
+        for (String language : new String[]{"fre", "eng", "ger"}) {
+            Element md = editingSession.getMetadata();
+            assertSame(record, md);
+            editingSession.findElement("4").setAttribute("codeListValue", language);
+        }
+        assertEquals("ger", editingSession.findElement("4").getAttributeValue("codeListValue"));
+        assertEquals(0, record.clones);
+        assertEquals(1, record.scans);
+
+        // a copy can be processed without changing the session
+        Element copy = editingSession.copyMetadata();
+        assertEquals(1, record.clones);
+        copy.removeContent();
+        assertEquals("ger", editingSession.findElement("4").getAttributeValue("codeListValue"));
+    }
+
+    @Test
+    public void findElementByRef() throws Exception {
+        CountingElement record = record();
+        EditingSession editingSession = new EditingSession(record);
+        Element md = editingSession.getMetadata();
+
+        assertSame(md, editingSession.findElement("1"));
+        assertEquals("language", editingSession.findElement("4").getName());
+        assertEquals(1, record.scans);
+
+        // added elements are indexed without scanning the record
+        Element contact = editingSession.findElement("2");
+        Element newContact = element("contact", "5");
+        newContact.addContent(element("individualName", "6"));
+        md.addContent(newContact);
+        editingSession.index(newContact);
+        assertSame(newContact, editingSession.findElement("5"));
+        assertEquals("individualName", editingSession.findElement("6").getName());
+        assertEquals(1, record.scans);
+
+        // removed elements are not found anymore
+        md.removeContent(contact);
+        assertNull(editingSession.findElement("2"));
+        assertNull(editingSession.findElement("3"));
+        Element otherContact = element("contact", "2");
+        md.addContent(otherContact);
+        assertSame(otherContact, editingSession.findElement("2"));
+    }
+
+    @Test
+    public void serializable() throws Exception {
+        EditingSession editingSession = new EditingSession(record());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(editingSession);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            EditingSession copy = (EditingSession) in.readObject();
+            Element md = copy.getMetadata();
+            assertEquals(Xml.getString(record()), Xml.getString(md));
+            assertEquals("John", copy.findElement("3").getText());
+
+            // the record is parsed once, then edited in place and serialized again
+            copy.findElement("3").setText("Jane");
+            assertSame(md, copy.getMetadata());
+            bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(copy);
+            }
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            EditingSession copy = (EditingSession) in.readObject();
+            assertEquals("Jane", copy.findElement("3").getText());
+        }
+    }
+}
@@ -28,6 +28,7 @@ import com.google.common.collect.Sets;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 
+import org.fao.geonet.Constants;
 import org.fao.geonet.api.records.formatters.FormatType;
 import org.fao.geonet.api.records.formatters.FormatterWidth;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
@@ -46,7 +47,13 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -166,6 +173,33 @@ public class FilesystemStoreTest {
 
     }
 
+    @Test
+    public void testEvictIfRequired() throws Exception {
+        this.store.setMaxSizeKb(2);
+        Key[] keys = new Key[5];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+            store.put(keys[i], new StoreInfoAndData(new byte[400], i, false));
+        }
+        store.evictIfRequired();
+        assertStoreContains(keys, keys[0], keys[1], keys[2], keys[3], keys[4]);
+
+        this.store.setMaxSizeKb(1);
+        store.evictIfRequired();
+        assertStoreContains(keys, keys[4]);
+    }
+
+    @Test
+    public void testPutReplacesPublishedFile() throws Exception {
+        final Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        store.put(key, new StoreInfoAndData("first", 1, true));
+        assertEquals("first", new String(store.getPublished(key), Constants.CHARSET));
+        store.put(key, new StoreInfoAndData("second", 2, true));
+
+        assertEquals("second", new String(store.getPublished(key), Constants.CHARSET));
+        assertEquals("second", store.get(key).getDataAsString());
+    }
+
 
     @Test
     public void testDiskSizeRestrictionReplace() throws Exception {
@@ -294,6 +328,37 @@ public class FilesystemStoreTest {
         store.remove(key); // no exception ? good
     }
 
+    @Test(timeout = 10000L)
+    public void testConcurrentAccess() throws Exception {
+        final int nbThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < nbThreads; i++) {
+                final int mdId = i;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Key key = new Key(mdId, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+                        for (int j = 0; j < 20; j++) {
+                            String value = mdId + "-" + j;
+                            store.put(key, new StoreInfoAndData(value, j, true));
+                            assertEquals(value, store.get(key).getDataAsString());
+                            assertEquals(value, new String(store.getPublished(key), Constants.CHARSET));
+                            assertEquals(j, store.getInfo(key).getChangeDate());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testSetPublished() throws Exception {
         StoreInfoAndData data = new StoreInfoAndData("result", 10000, true);
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.regions;
+
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RegionImageCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GeonetworkDataDirectory dataDirectory;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        dataDirectory = Mockito.mock(GeonetworkDataDirectory.class);
+        Mockito.when(dataDirectory.getHtmlCacheDir()).thenReturn(folder.getRoot().toPath());
+    }
+
+    private RegionImageCache newCache() {
+        RegionImageCache cache = new RegionImageCache();
+        ReflectionTestUtils.setField(cache, "geonetworkDataDir", dataDirectory);
+        cache.init();
+        return cache;
+    }
+
+    private Callable<Pair<byte[], Boolean>> renderer(final byte[] data, final boolean cacheable) {
+        return new Callable<Pair<byte[], Boolean>>() {
+            @Override
+            public Pair<byte[], Boolean> call() throws Exception {
+                calls.incrementAndGet();
+                return Pair.read(data, cacheable);
+            }
+        };
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(RegionImageCache.key("a", 1, null), RegionImageCache.key("a", 1, null));
+        assertNotEquals(RegionImageCache.key("a", 1, null), RegionImageCache.key("a", 2, null));
+    }
+
+    @Test
+    public void testRenderedOnce() throws Exception {
+        byte[] image = {1, 2, 3};
+        String key = RegionImageCache.key("region", 100);
+
+        RegionImageCache cache = newCache();
+        assertArrayEquals(image, cache.get(key, renderer(image, true)));
+        assertArrayEquals(image, cache.get(key, renderer(image, true)));
+        assertEquals(1, calls.get());
+
+        // a new instance reads the image from the disk
+        RegionImageCache other = newCache();
+        assertArrayEquals(image, other.get(key, renderer(image, true)));
+        assertEquals(1, calls.get());
+        assertEquals(1, other.getHits());
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        byte[] image = {1, 2, 3};
+        String key = RegionImageCache.key("region", 100);
+
+        RegionImageCache cache = newCache();
+        cache.get(key, renderer(image, false));
+        cache.get(key, renderer(image, false));
+        assertEquals(2, calls.get());
+        assertEquals(2, cache.getRenders());
+    }
+}
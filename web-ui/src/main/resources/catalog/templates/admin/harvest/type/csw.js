@@ -23,7 +23,9 @@ var gnHarvestercsw = {
         "xslfilter": [],
         "outputSchema": "http://www.isotc211.org/2005/gmd",
         "queryScope": "local",
-        "hopCount": 2
+        "hopCount": 2,
+        "recordsPerRequest": 10,
+        "maxConcurrentRequests": 4
       },
       "content" : {
         "validate" : "NOVALIDATION",
@@ -92,6 +94,8 @@ var gnHarvestercsw = {
       + '    <outputSchema>' + h.site.outputSchema + '</outputSchema>'
       + '    <queryScope>' + h.site.queryScope + '</queryScope>'
       + '    <hopCount>' + h.site.hopCount + '</hopCount>'
+      + '    <recordsPerRequest>' + h.site.recordsPerRequest + '</recordsPerRequest>'
+      + '    <maxConcurrentRequests>' + h.site.maxConcurrentRequests + '</maxConcurrentRequests>'
       + '  </site>'
       + gnHarvestercsw.buildResponseCSWSearch($scope)
       + '  <options>'
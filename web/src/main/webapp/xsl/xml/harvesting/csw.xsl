@@ -16,6 +16,12 @@
     <hopCount>
       <xsl:value-of select="hopCount/value"/>
     </hopCount>
+    <recordsPerRequest>
+      <xsl:value-of select="recordsPerRequest/value"/>
+    </recordsPerRequest>
+    <maxConcurrentRequests>
+      <xsl:value-of select="maxConcurrentRequests/value"/>
+    </maxConcurrentRequests>
     <xpathFilter>
       <xsl:value-of select="xpathFilter/value"/>
     </xpathFilter>
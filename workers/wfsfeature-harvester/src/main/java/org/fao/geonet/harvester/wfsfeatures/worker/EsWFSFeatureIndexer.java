@@ -23,13 +23,14 @@
 
 package org.fao.geonet.harvester.wfsfeatures.worker;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
@@ -44,7 +45,9 @@ import org.apache.camel.Exchange;
 import org.apache.jcs.access.exception.InvalidArgumentException;
 import org.fao.geonet.es.EsClient;
 import org.fao.geonet.harvester.wfsfeatures.model.WFSHarvesterParameter;
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.store.ReprojectingFeatureCollection;
 import org.geotools.data.wfs.WFSDataStore;
 import org.geotools.feature.FeatureIterator;
@@ -55,6 +58,7 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.sort.SortBy;
 import org.opengis.geometry.BoundingBox;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.slf4j.Logger;
@@ -66,13 +70,23 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // TODO: GeoServer WFS 1.0.0 in some case return
 // Feb 18, 2016 12:04:22 PM org.geotools.data.wfs.v1_0_0.NonStrictWFSStrategy createFeatureReaderGET
@@ -112,6 +126,42 @@ public class EsWFSFeatureIndexer {
     }
 
 
+    @Value("${es.index.features.pageSize:10000}")
+    private int featurePageSize;
+
+    public int getFeaturePageSize() {
+        return featurePageSize;
+    }
+
+    public void setFeaturePageSize(int featurePageSize) {
+        this.featurePageSize = featurePageSize;
+    }
+
+
+    @Value("${es.index.features.pageThreads:4}")
+    private int featurePageThreads;
+
+    public int getFeaturePageThreads() {
+        return featurePageThreads;
+    }
+
+    public void setFeaturePageThreads(int featurePageThreads) {
+        this.featurePageThreads = featurePageThreads;
+    }
+
+
+    @Value("${es.index.features.maxConcurrentBulks:8}")
+    private int maxConcurrentBulks;
+
+    public int getMaxConcurrentBulks() {
+        return maxConcurrentBulks;
+    }
+
+    public void setMaxConcurrentBulks(int maxConcurrentBulks) {
+        this.maxConcurrentBulks = maxConcurrentBulks;
+    }
+
+
     @Value("${es.index.features.applyPrecisionModel:false}")
     private boolean applyPrecisionModel;
 
@@ -148,7 +198,7 @@ public class EsWFSFeatureIndexer {
 
     private ObjectMapper jacksonMapper = new ObjectMapper();
 
-    private int nbOfFeatures;
+    private final AtomicInteger nbOfFeatures = new AtomicInteger();
 
     /**
      * Create exchange states for this feature type.
@@ -246,111 +296,163 @@ public class EsWFSFeatureIndexer {
         }
 
         try {
-            nbOfFeatures = 0;
+            nbOfFeatures.set(0);
 
-            final Phaser phaser = new Phaser();
-            BulkResutHandler brh = new AsyncBulkResutHandler(phaser, typeName, url, nbOfFeatures, report);
+            final FeatureTypeIndexer indexer = new FeatureTypeIndexer(url, typeName, protoNode,
+                titleResolver, featureAttributes, tokenizedFields, report);
 
             long begin = System.currentTimeMillis();
 
-            SimpleFeatureCollection fc = wfs.getFeatureSource(typeName).getFeatures();
-            ReprojectingFeatureCollection rfc = new ReprojectingFeatureCollection(fc, CRS.decode("urn:ogc:def:crs:OGC:1.3:CRS84"));
+            final SimpleFeatureSource source = wfs.getFeatureSource(typeName);
+            final CoordinateReferenceSystem crs84 = CRS.decode("urn:ogc:def:crs:OGC:1.3:CRS84");
+
+            int count = -1;
+            if (featurePageSize > 0 && source.getQueryCapabilities().isOffsetSupported()) {
+                count = source.getCount(Query.ALL);
+            }
+
+            if (count > featurePageSize) {
+                // The WFS supports paging, fetch and convert pages concurrently. The pages must
+                // be requested in a stable order for features not to be skipped or read twice.
+                final SortBy[] pageOrder = new SortBy[]{SortBy.NATURAL_ORDER};
+                final boolean sorted = source.getQueryCapabilities().supportsSorting(pageOrder);
+                if (!sorted) {
+                    LOGGER.warn("{} - the service does not support sorting, pages may overlap if the features change while indexing.",
+                        typeName);
+                }
+                final int nbPages = (count + featurePageSize - 1) / featurePageSize;
+                report.put("pages_i", nbPages);
+                report.put("pagesIndexed_i", 0);
+                LOGGER.info("{} - {} features, indexing {} pages of {} features with {} threads.", new Object[]{
+                    typeName, count, nbPages, featurePageSize, featurePageThreads});
+
+                final AtomicInteger pagesIndexed = new AtomicInteger();
+                ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(featurePageThreads, nbPages)),
+                    new ThreadFactoryBuilder().setNameFormat("wfs-features-" + typeName + "-%d").setDaemon(true).build());
+                try {
+                    List<Future<Integer>> pages = new ArrayList<>();
+                    for (int page = 0; page < nbPages; page++) {
+                        final int startIndex = page * featurePageSize;
+                        pages.add(executor.submit(new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                Query query = new Query(typeName);
+                                query.setStartIndex(startIndex);
+                                query.setMaxFeatures(featurePageSize);
+                                if (sorted) {
+                                    query.setSortBy(pageOrder);
+                                }
+                                int nb = indexer.index(
+                                    new ReprojectingFeatureCollection(source.getFeatures(query), crs84), startIndex);
+
+                                report.put("pagesIndexed_i", pagesIndexed.incrementAndGet());
+                                report.put("featuresIndexed_i", nbOfFeatures.get());
+                                report.saveHarvesterReport();
+                                LOGGER.info("{} - page from {}, {} features read ({}/{} pages).", new Object[]{
+                                    typeName, startIndex, nb, pagesIndexed.get(), nbPages});
+                                return nb;
+                            }
+                        }));
+                    }
+                    for (Future<Integer> page : pages) {
+                        try {
+                            page.get();
+                        } catch (ExecutionException e) {
+                            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            } else {
+                indexer.index(new ReprojectingFeatureCollection(source.getFeatures(), crs84), 0);
+            }
+
+            indexer.awaitBulks();
+            LOGGER.info("Total number of {} features indexed is {} in {} ms.", new Object[]{
+                typeName, nbOfFeatures.get(),
+                System.currentTimeMillis() - begin});
+            report.success(nbOfFeatures.get());
+        } catch (Exception e) {
+            report.put("status_s", "error");
+            report.put("error_ss", e.getMessage());
+            LOGGER.error(e.getMessage());
+            throw e;
+        } finally {
+            report.saveHarvesterReport();
+        }
+    }
+
+    /**
+     * Convert the features of a feature type to documents and send them to the index in bulk
+     * requests. Pages of features can be indexed concurrently, the number of bulk requests in
+     * flight is bounded so that reading features waits for the index when it is the bottleneck.
+     */
+    private class FeatureTypeIndexer {
+        private final String url;
+        private final String typeName;
+        private final ObjectNode protoNode;
+        private final TitleResolver titleResolver;
+        private final Map<String, String> featureAttributes;
+        private final Map<String, String> tokenizedFields;
+        private final Report report;
+        /**
+         * The indexer is a party until all features are read so that the phase does not advance
+         * when all bulk requests in flight complete before the next one is launched.
+         */
+        private final Phaser phaser = new Phaser(1);
+        private final Semaphore bulkPermits = new Semaphore(Math.max(1, maxConcurrentBulks));
+        /**
+         * Number of features read so far by hash of their document, for the features without id.
+         */
+        private final ConcurrentMap<String, AtomicInteger> featureOccurrences = new ConcurrentHashMap<>();
+
+        FeatureTypeIndexer(String url, String typeName, ObjectNode protoNode, TitleResolver titleResolver,
+                           Map<String, String> featureAttributes, Map<String, String> tokenizedFields, Report report) {
+            this.url = url;
+            this.typeName = typeName;
+            this.protoNode = protoNode;
+            this.titleResolver = titleResolver;
+            this.featureAttributes = featureAttributes;
+            this.tokenizedFields = tokenizedFields;
+            this.report = report;
+        }
 
-            FeatureIterator<SimpleFeature> features = rfc.features();
+        /**
+         * @param fc                the features to index
+         * @param firstFeatureIndex the index of the first feature of the collection in the feature type
+         * @return the number of features read.
+         */
+        int index(SimpleFeatureCollection fc, int firstFeatureIndex) {
+            int featureIndex = firstFeatureIndex;
+            BulkResutHandler brh = new AsyncBulkResutHandler(phaser, bulkPermits, typeName, url, featureIndex, report);
 
+            FeatureIterator<SimpleFeature> features = fc.features();
             try {
                 while (features.hasNext()) {
 
                     try {
                         SimpleFeature feature = features.next();
-                        ObjectNode rootNode = protoNode.deepCopy();
-                        titleResolver.setTitle(rootNode, feature);
-
-                        for (String attributeName : featureAttributes.keySet()) {
-                            Object attributeValue = feature.getAttribute(attributeName);
-                            if (attributeValue == null) {
-
-                            } else if (tokenizedFields != null && tokenizedFields.get(attributeName) != null) {
-                                String rawValue = (String) attributeValue;
-                                String value = rawValue.startsWith(CDATA_START) ?
-                                    rawValue.replaceFirst(CDATA_START_REGEX, "").substring(0, rawValue.length() - CDATA_END.length() - CDATA_START.length()) :
-                                    rawValue;
-
-                                String separator = tokenizedFields.get(attributeName);
-                                String[] tokens = value.split(separator);
-                                ArrayNode arrayNode = jacksonMapper.createArrayNode();
-                                for (String token : tokens) {
-                                    arrayNode.add(token.trim());
-                                }
-                                rootNode.putPOJO(getDocumentFieldName(attributeName), arrayNode);
-                            } else if (getDocumentFieldName(attributeName).equals("geom")) {
-                                Geometry geom = (Geometry) feature.getDefaultGeometry();
-
-                                if (applyPrecisionModel) {
-                                    PrecisionModel precisionModel = new PrecisionModel(Math.pow(10, numberOfDecimals - 1));
-                                    geom = GeometryPrecisionReducer.reduce(geom, precisionModel);
-                                    // numberOfDecimals is equal to
-                                    // precisionModel.getMaximumSignificantDigits()
-                                }
-
-                                // An issue here is that GeometryJSON conversion may over simplify
-                                // the geometry by truncating coordinates based on numberOfDecimals
-                                // which on default constructor is set to 4. This may lead to
-                                // invalid geometry and Elasticsearch will fail parsing the GeoJSON
-                                // with the following type of error:
-                                // Caused by: org.locationtech.spatial4j.exception.InvalidShapeException:
-                                // Provided shape has duplicate
-                                // consecutive coordinates at: (-3.9997, 48.7463, NaN)
-                                //
-                                // To avoid this, it may be relevant to apply the reduction model
-                                // preserving topology.
-                                String gjson = new GeometryJSON(numberOfDecimals).toString(geom);
-
-                                JsonNode jsonNode = jacksonMapper.readTree(gjson.getBytes(StandardCharsets.UTF_8));
-                                rootNode.put(getDocumentFieldName(attributeName), jsonNode);
-
-                                boolean isPoint = geom instanceof Point;
-                                if (isPoint) {
-                                    Coordinate point = geom.getCoordinate();
-                                    rootNode.put("location", String.format("%s,%s", point.y , point.x));
-                                } else {
-                                    report.setPointOnlyForGeomsFalse();
-                                }
+                        ObjectNode rootNode = createDocument(feature);
 
-                                // Populate bbox coordinates to be able to compute
-                                // global bbox of search results
-                                final BoundingBox bbox = feature.getBounds();
-                                rootNode.put("bbox_xmin", bbox.getMinX());
-                                rootNode.put("bbox_ymin", bbox.getMinY());
-                                rootNode.put("bbox_xmax", bbox.getMaxX());
-                                rootNode.put("bbox_ymax", bbox.getMaxY());
-
-                            } else {
-                                String value = attributeValue.toString();
-                                rootNode.put(getDocumentFieldName(attributeName),
-                                    value.startsWith(CDATA_START) ?
-                                        value.replaceFirst(CDATA_START_REGEX, "").substring(0, value.length() - CDATA_END.length() - CDATA_START.length()) :
-                                        value
-
-                                );
-                            }
-                        }
-
-                        nbOfFeatures ++;
-                        brh.addAction(rootNode, feature);
+                        nbOfFeatures.incrementAndGet();
+                        featureIndex++;
+                        String document = jacksonMapper.writeValueAsString(rootNode);
+                        brh.addAction(document, getFeatureId(feature, document));
 
                     } catch (Exception ex) {
                         LOGGER.warn("Error while creating document for {} feature {}. Exception is: {}", new Object[] {
-                            typeName, nbOfFeatures, ex.getMessage()});
+                            typeName, featureIndex, ex.getMessage()});
                         report.put("error_ss", String.format(
                             "Error while creating document for %s feature %d. Exception is: %s",
-                            typeName, nbOfFeatures, ex.getMessage()
+                            typeName, featureIndex, ex.getMessage()
                         ));
                     }
 
                     if (brh.getBulkSize() >= featureCommitInterval) {
                         brh.launchBulk(client);
-                        brh = new AsyncBulkResutHandler(phaser, typeName, url, nbOfFeatures, report);
+                        brh = new AsyncBulkResutHandler(phaser, bulkPermits, typeName, url, featureIndex, report);
                     }
                 }
             } finally {
@@ -360,25 +462,113 @@ public class EsWFSFeatureIndexer {
             if (brh.getBulkSize() > 0) {
                 brh.launchBulk(client);
             }
+            return featureIndex - firstFeatureIndex;
+        }
 
-            try {
-                if (nbOfFeatures > 0) {
-                    phaser.awaitAdvanceInterruptibly(0, 3, TimeUnit.HOURS);
+        /**
+         * Generate a feature id when geotools gives us a placeholder one. The id is computed from
+         * the feature content and not its position, which depends on the page the feature is read
+         * in, and numbered so that identical features are not merged in a single document.
+         */
+        private String getFeatureId(SimpleFeature feature, String document) {
+            String featureId = feature.getID();
+            if (featureId.toLowerCase().indexOf("placeholder") > -1) {
+                String hash = Hashing.sha1().hashString(document, StandardCharsets.UTF_8).toString();
+                AtomicInteger occurrences = featureOccurrences.get(hash);
+                if (occurrences == null) {
+                    AtomicInteger first = new AtomicInteger();
+                    occurrences = featureOccurrences.putIfAbsent(hash, first);
+                    if (occurrences == null) {
+                        occurrences = first;
+                    }
                 }
+                featureId = "fid-" + hash + "-" + occurrences.getAndIncrement();
+            }
+            return featureId;
+        }
+
+        void awaitBulks() throws Exception {
+            try {
+                phaser.awaitAdvanceInterruptibly(phaser.arrive(), 3, TimeUnit.HOURS);
             } catch (TimeoutException e) {
                 throw new Exception("Timeout when awaiting all bulks to be processed.");
             }
-            LOGGER.info("Total number of {} features indexed is {} in {} ms.", new Object[]{
-                typeName, nbOfFeatures,
-                System.currentTimeMillis() - begin});
-            report.success(nbOfFeatures);
-        } catch (Exception e) {
-            report.put("status_s", "error");
-            report.put("error_ss", e.getMessage());
-            LOGGER.error(e.getMessage());
-            throw e;
-        } finally {
-            report.saveHarvesterReport();
+        }
+
+        private ObjectNode createDocument(SimpleFeature feature) throws IOException {
+            ObjectNode rootNode = protoNode.deepCopy();
+            titleResolver.setTitle(rootNode, feature);
+
+            for (String attributeName : featureAttributes.keySet()) {
+                Object attributeValue = feature.getAttribute(attributeName);
+                if (attributeValue == null) {
+
+                } else if (tokenizedFields != null && tokenizedFields.get(attributeName) != null) {
+                    String rawValue = (String) attributeValue;
+                    String value = rawValue.startsWith(CDATA_START) ?
+                        rawValue.replaceFirst(CDATA_START_REGEX, "").substring(0, rawValue.length() - CDATA_END.length() - CDATA_START.length()) :
+                        rawValue;
+
+                    String separator = tokenizedFields.get(attributeName);
+                    String[] tokens = value.split(separator);
+                    ArrayNode arrayNode = jacksonMapper.createArrayNode();
+                    for (String token : tokens) {
+                        arrayNode.add(token.trim());
+                    }
+                    rootNode.putPOJO(getDocumentFieldName(attributeName), arrayNode);
+                } else if (getDocumentFieldName(attributeName).equals("geom")) {
+                    Geometry geom = (Geometry) feature.getDefaultGeometry();
+
+                    if (applyPrecisionModel) {
+                        PrecisionModel precisionModel = new PrecisionModel(Math.pow(10, numberOfDecimals - 1));
+                        geom = GeometryPrecisionReducer.reduce(geom, precisionModel);
+                        // numberOfDecimals is equal to
+                        // precisionModel.getMaximumSignificantDigits()
+                    }
+
+                    // An issue here is that GeometryJSON conversion may over simplify
+                    // the geometry by truncating coordinates based on numberOfDecimals
+                    // which on default constructor is set to 4. This may lead to
+                    // invalid geometry and Elasticsearch will fail parsing the GeoJSON
+                    // with the following type of error:
+                    // Caused by: org.locationtech.spatial4j.exception.InvalidShapeException:
+                    // Provided shape has duplicate
+                    // consecutive coordinates at: (-3.9997, 48.7463, NaN)
+                    //
+                    // To avoid this, it may be relevant to apply the reduction model
+                    // preserving topology.
+                    String gjson = new GeometryJSON(numberOfDecimals).toString(geom);
+
+                    JsonNode jsonNode = jacksonMapper.readTree(gjson.getBytes(StandardCharsets.UTF_8));
+                    rootNode.put(getDocumentFieldName(attributeName), jsonNode);
+
+                    boolean isPoint = geom instanceof Point;
+                    if (isPoint) {
+                        Coordinate point = geom.getCoordinate();
+                        rootNode.put("location", String.format("%s,%s", point.y , point.x));
+                    } else {
+                        report.setPointOnlyForGeomsFalse();
+                    }
+
+                    // Populate bbox coordinates to be able to compute
+                    // global bbox of search results
+                    final BoundingBox bbox = feature.getBounds();
+                    rootNode.put("bbox_xmin", bbox.getMinX());
+                    rootNode.put("bbox_ymin", bbox.getMinY());
+                    rootNode.put("bbox_xmax", bbox.getMaxX());
+                    rootNode.put("bbox_ymax", bbox.getMaxY());
+
+                } else {
+                    String value = attributeValue.toString();
+                    rootNode.put(getDocumentFieldName(attributeName),
+                        value.startsWith(CDATA_START) ?
+                            value.replaceFirst(CDATA_START_REGEX, "").substring(0, value.length() - CDATA_END.length() - CDATA_START.length()) :
+                            value
+
+                    );
+                }
+            }
+            return rootNode;
         }
     }
 
@@ -424,7 +614,12 @@ public class EsWFSFeatureIndexer {
         private Map<String, Object> report = new HashMap<>();
         private String url;
         private String typeName;
-        private boolean pointOnlyForGeoms;
+        private volatile boolean pointOnlyForGeoms;
+        /**
+         * Pages save the report concurrently, saves are sent one at a time so that a report is
+         * never replaced by an older one.
+         */
+        private final Object saveLock = new Object();
 
         public Report(String url, String typeName) throws UnsupportedEncodingException {
             this.typeName = typeName;
@@ -434,7 +629,7 @@ public class EsWFSFeatureIndexer {
             report.put("docType", "harvesterReport");
         }
 
-        public void put(String key, Object value) {
+        public synchronized void put(String key, Object value) {
             report.put(key, value);
         }
 
@@ -442,7 +637,7 @@ public class EsWFSFeatureIndexer {
             this.pointOnlyForGeoms = false;
         }
 
-        public void success(int nbOfFeatures) {
+        public synchronized void success(int nbOfFeatures) {
             report.put("status_s","success");
             report.put("totalRecords_i", nbOfFeatures);
             DateTime dateTime = new DateTime(DateTimeZone.UTC);
@@ -454,10 +649,20 @@ public class EsWFSFeatureIndexer {
         }
 
         public boolean saveHarvesterReport() {
-            Index search = new Index.Builder(report)
+            synchronized (saveLock) {
+                return doSaveHarvesterReport();
+            }
+        }
+
+        private boolean doSaveHarvesterReport() {
+            Map<String, Object> content;
+            synchronized (this) {
+                content = new HashMap<>(report);
+            }
+            Index search = new Index.Builder(content)
                 .index(index)
                 .type("_doc")
-                .id(report.get("id").toString()).build();
+                .id(content.get("id").toString()).build();
             try {
                 DocumentResult response = client.getClient().execute(search);
                 if (response.getErrorMessage() != null) {
@@ -489,6 +694,7 @@ public class EsWFSFeatureIndexer {
     abstract class BulkResutHandler implements JestResultHandler<BulkResult> {
 
         protected Phaser phaser;
+        private Semaphore bulkPermits;
         protected String typeName;
         private String url;
         protected int firstFeatureIndex;
@@ -497,8 +703,9 @@ public class EsWFSFeatureIndexer {
         protected Bulk.Builder bulk;
         protected int bulkSize;
 
-        public BulkResutHandler(Phaser phaser, String typeName, String url, int firstFeatureIndex, Report report) {
+        public BulkResutHandler(Phaser phaser, Semaphore bulkPermits, String typeName, String url, int firstFeatureIndex, Report report) {
             this.phaser = phaser;
+            this.bulkPermits = bulkPermits;
             this.typeName = typeName;
             this.url = url;
             this.firstFeatureIndex = firstFeatureIndex;
@@ -512,6 +719,7 @@ public class EsWFSFeatureIndexer {
         public void completed(BulkResult bulkResult) {
             LOGGER.debug("  {} - from {}, {}/{} features, indexed in {} ms.", new Object[]{
                 typeName, firstFeatureIndex, bulkSize, featureCommitInterval, System.currentTimeMillis() - begin});
+            bulkPermits.release();
             phaser.arriveAndDeregister();
         }
 
@@ -523,6 +731,7 @@ public class EsWFSFeatureIndexer {
             ));
             LOGGER.error("  {} - from {}, {}/{} features, NOT indexed in {} ms. ({}).", new Object[]{
                 typeName, firstFeatureIndex, bulkSize, featureCommitInterval, System.currentTimeMillis() - begin, e.getMessage()});
+            bulkPermits.release();
             phaser.arriveAndDeregister();
         }
 
@@ -530,19 +739,15 @@ public class EsWFSFeatureIndexer {
             return bulkSize;
         }
 
-        public void addAction(ObjectNode rootNode, SimpleFeature feature) throws JsonProcessingException {
-            // generate a unique feature id when geotools gives us a placeholder one
-            String featureId = feature.getID();
-            if (featureId.toLowerCase().indexOf("placeholder") > -1) {
-                featureId = "fid-" + nbOfFeatures;
-            }
-
+        public void addAction(String document, String featureId) {
             String id = String.format("%s#%s#%s", url, typeName, featureId);
-            bulk.addAction(new Index.Builder(jacksonMapper.writeValueAsString(rootNode)).id(id).build());
+            bulk.addAction(new Index.Builder(document).id(id).build());
             bulkSize++;
         }
 
         protected void prepareLaunch() {
+            // Wait for a bulk request in flight to complete when the index is the bottleneck
+            bulkPermits.acquireUninterruptibly();
             phaser.register();
             this.begin = System.currentTimeMillis();
             LOGGER.debug("  {} - from {}, {}/{} features, launching bulk.", new Object[]{
@@ -553,8 +758,8 @@ public class EsWFSFeatureIndexer {
 
     // depending on situation, one can expect going up to 1.5 faster using an async result handler (e.g. hudge collection of points)
     class AsyncBulkResutHandler extends BulkResutHandler {
-        public AsyncBulkResutHandler(Phaser phaser, String typeName, String url, int firstFeatureIndex, Report report) {
-            super(phaser, typeName, url, firstFeatureIndex, report);
+        public AsyncBulkResutHandler(Phaser phaser, Semaphore bulkPermits, String typeName, String url, int firstFeatureIndex, Report report) {
+            super(phaser, bulkPermits, typeName, url, firstFeatureIndex, report);
         }
 
         public void launchBulk(EsClient client) {
@@ -564,8 +769,8 @@ public class EsWFSFeatureIndexer {
     }
 
     class SyncBulkResutHandler extends BulkResutHandler {
-        public SyncBulkResutHandler(Phaser phaser, String typeName, String url, int firstFeatureIndex, Report report) {
-            super(phaser, typeName, url, firstFeatureIndex, report);
+        public SyncBulkResutHandler(Phaser phaser, Semaphore bulkPermits, String typeName, String url, int firstFeatureIndex, Report report) {
+            super(phaser, bulkPermits, typeName, url, firstFeatureIndex, report);
         }
 
         public void launchBulk(EsClient client) {